@@ -2,7 +2,8 @@ package com.mycompany.chat;
 
 import java.awt.GridLayout;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -11,15 +12,23 @@ import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -27,24 +36,37 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.SwingUtilities;
 
-import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.imgcodecs.Imgcodecs;
-import org.opencv.videoio.VideoCapture;
-
 import com.mycompany.chat.commands.ChangeRecipientCommand;
 import com.mycompany.chat.commands.ChatCommand;
 import com.mycompany.chat.commands.Command;
 import com.mycompany.chat.commands.ExitCommand;
 import com.mycompany.chat.commands.FileCommand;
+import com.mycompany.chat.commands.HistoryCommand;
+import com.mycompany.chat.commands.SearchCommand;
 import com.mycompany.chat.commands.MenuCommandInvoker;
 import com.mycompany.chat.commands.VideoCommand;
+import com.mycompany.chat.config.ConfigManager;
+import com.mycompany.chat.config.SessionStore;
 import com.mycompany.chat.factory.DefaultSocketFactory;
 import com.mycompany.chat.factory.SocketFactory;
 import com.mycompany.chat.protocol.MessageBuilder;
 import com.mycompany.chat.util.Constants;
+import com.mycompany.chat.video.FrameSource;
+import com.mycompany.chat.video.FrameSources;
+import com.mycompany.chat.video.H264Support;
+import com.mycompany.chat.video.MultiFormatVideoDecoder;
+import com.mycompany.chat.video.SimulcastEncoder;
+import com.mycompany.chat.video.VideoCodecs;
+import com.mycompany.chat.video.VideoDecodeWorker;
+import com.mycompany.chat.video.VideoPacket;
+import com.mycompany.chat.video.VideoSender;
+import com.mycompany.chat.video.VideoStreamStats;
 
 public class ChatClient {
+    private static final int VIDEO_BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter HISTORY_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MM HH:mm").withZone(ZoneId.systemDefault());
+
     private String host;
     private int port;
 
@@ -57,9 +79,19 @@ public class ChatClient {
     private volatile boolean running;
     private boolean videoActive;
     private String currentRecipient; // Destinatario actual para mensajes
-    private CountDownLatch loginLatch; // Sincronización de login
+    private volatile CountDownLatch loginLatch; // Sincronización de login (y de la reanudación)
+    private volatile boolean loggedIn;
+    private volatile CompletableFuture<String> videoCodec; // Modo de video negociado para la llamada actual
+    private volatile CompletableFuture<String> historyPage; // Cursor de la página de historial pedida
+    private volatile CompletableFuture<String> searchPage; // Posición de la siguiente página de búsqueda
+    private volatile VideoSender videoSender; // Transmisión en curso (para informar los fps)
+    private volatile String deliveryEpoch; // Numeración de entrega vigente en el servidor
+    private final Map<String, Long> lastSeqBySender = new ConcurrentHashMap<>(); // Último mensaje mostrado
+    private final Map<String, Long> pendingAcks = new HashMap<>(); // Confirmaciones por enviar (sincronizado)
     
     private final Map<String, JLabel> videoViews = new ConcurrentHashMap<>();
+    private final Map<String, Long> telemetryShownAt = new HashMap<>(); // Solo se usa en el EDT
+    private final Map<String, VideoDecodeWorker> decodeWorkers = new ConcurrentHashMap<>(); // Un decodificador por remitente
     private JFrame videoFrame; // Ventana de video (se crea solo cuando se inicia video)
     private JPanel videoPanel; // Panel de video (se crea solo cuando se inicia video)
     private ExecutorService executorService; // Pool de threads para gestionar hilos
@@ -101,7 +133,8 @@ public class ChatClient {
             // Usar el factory para crear los sockets
             socket = socketFactory.createClientSocket(host, port);
             videoSocket = socketFactory.createVideoClientSocket(host, port, Constants.DEFAULT_VIDEO_PORT_OFFSET);
-            videoOut = new DataOutputStream(videoSocket.getOutputStream());
+            // Con buffer: cabecera y frame salen en una sola escritura al hacer flush
+            videoOut = new DataOutputStream(new BufferedOutputStream(videoSocket.getOutputStream(), VIDEO_BUFFER_SIZE));
             dataIn = new DataInputStream(socket.getInputStream());
             dataOut = new DataOutputStream(socket.getOutputStream());
 
@@ -122,35 +155,43 @@ public class ChatClient {
                 return;
             }
 
-            // Pedir credenciales
-            System.out.println("-------------------------------------");
-            System.out.println("           INICIAR SESION");
-            System.out.println("-------------------------------------");
-            System.out.print("Usuario: ");
-            String username = scanner.nextLine().trim();
+            // Si hay una sesión guardada para este servidor, reanudarla sin pedir la contraseña
+            if (!resumeSavedSession()) {
+                // Pedir credenciales
+                System.out.println("-------------------------------------");
+                System.out.println("           INICIAR SESION");
+                System.out.println("-------------------------------------");
+                System.out.print("Usuario: ");
+                String username = scanner.nextLine().trim();
 
-            System.out.print("Contrasena: ");
-            String password = scanner.nextLine().trim();
+                System.out.print("Contrasena: ");
+                String password = scanner.nextLine().trim();
 
-            // Enviar login al servidor según nuevo formato (debe ser síncrono)
-            sendMessageBlocking(MessageBuilder.buildLogin(username, password));
+                // Enviar login al servidor según nuevo formato (debe ser síncrono)
+                sendMessageBlocking(MessageBuilder.buildLogin(username, password, Constants.CAPABILITY_ACKS));
 
-            // Esperar respuesta del login con timeout
-            boolean loginReceived = false;
-            try {
-                loginReceived = loginLatch.await(Constants.LOGIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.err.println("Error: Login interrumpido");
-                return;
-            }
-            
-            if (!loginReceived) {
-                System.err.println("Error: Timeout esperando confirmación de login. Cerrando...");
-                return;
+                // Esperar respuesta del login con timeout
+                boolean loginReceived = false;
+                try {
+                    loginReceived = loginLatch.await(Constants.LOGIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    System.err.println("Error: Login interrumpido");
+                    return;
+                }
+
+                if (!loginReceived) {
+                    System.err.println("Error: Timeout esperando confirmación de login. Cerrando...");
+                    return;
+                }
             }
             
             System.out.println("-------------------------------------\n");
+
+            // Anunciar qué modos de video sabemos decodificar (para negociar el códec de cada llamada)
+            if (loggedIn) {
+                sendMessageBlocking(MessageBuilder.buildVideoCodecs(VideoCodecs.join(VideoCodecs.supported())));
+            }
             
             // Ahora pedir que elija destinatario
             selectRecipientAndShowMenu();
@@ -163,6 +204,34 @@ public class ChatClient {
         }
     }
 
+    // Intenta reanudar la sesión guardada; si el servidor la rechaza se borra y se sigue con LOGIN
+    private boolean resumeSavedSession() {
+        SessionStore.Session saved = SessionStore.load(host, port);
+        if (saved == null) {
+            return false;
+        }
+        System.out.println("Reanudando la sesion de " + saved.getUsername() + "...");
+        sendMessageBlocking(MessageBuilder.buildResume(saved.getToken(), Constants.CAPABILITY_ACKS));
+        try {
+            loginLatch.await(Constants.LOGIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (loggedIn) {
+            return true;
+        }
+        SessionStore.clear();
+        loginLatch = new CountDownLatch(1); // El siguiente intento es un LOGIN normal
+        return false;
+    }
+
+    // Cierra la sesión en el servidor (que revoca el token) y olvida la sesión guardada
+    public void logout() {
+        sendMessageBlocking(Constants.CMD_LOGOUT);
+        SessionStore.clear();
+    }
+
     // Recibe mensajes del servidor (hilo separado)
     private void receiveMessages() {
         try {
@@ -190,12 +259,13 @@ public class ChatClient {
                 break;
 
             case "OK":
-                if (parts.length >= 2 && Constants.CMD_LOGIN.equals(parts[1])) {
+                if (parts.length >= 2 && (Constants.CMD_LOGIN.equals(parts[1]) || Constants.CMD_RESUME.equals(parts[1]))) {
                     System.out.println("\n" + (parts.length > 2 ? parts[2] : "Login exitoso"));
                     System.out.println("\n====================================================");
                     System.out.println("  !Bienvenido! Ahora debes seleccionar un destinatario");
                     System.out.println("====================================================\n");
                     // Liberar el latch para indicar que el login fue exitoso
+                    loggedIn = true;
                     if (loginLatch != null) {
                         loginLatch.countDown();
                     }
@@ -204,6 +274,25 @@ public class ChatClient {
                     if (parts.length > 2) {
                         System.out.println("[OK] " + parts[2]);
                     }
+                } else if (parts.length >= 2 && Constants.CMD_HISTORY.equals(parts[1])) {
+                    // Fin de una página del historial; parts[3] es el cursor de la anterior
+                    CompletableFuture<String> page = historyPage;
+                    if (page != null) {
+                        page.complete(parts.length > 3 ? parts[3] : "");
+                    }
+                } else if (parts.length >= 3 && Constants.CMD_SEARCH.equals(parts[1])) {
+                    // Fin de una página de resultados: parts[2] es el total, parts[3] desde dónde seguir
+                    CompletableFuture<String> results = searchPage;
+                    if (results != null) {
+                        System.out.println("(" + parts[2] + " mensajes encontrados)");
+                        results.complete(parts.length > 3 ? parts[3] : "");
+                    }
+                } else if (parts.length >= 3 && Constants.CMD_VIDEO.equals(parts[1])) {
+                    // Modo de video negociado por el servidor para la llamada
+                    CompletableFuture<String> codec = videoCodec;
+                    if (codec != null) {
+                        codec.complete(parts[2]);
+                    }
                 } else if (parts.length > 1) {
                     System.out.println("[OK] " + parts[1]);
                 }
@@ -212,6 +301,14 @@ public class ChatClient {
             case "ERROR":
                 String errorMsg = parts.length > 1 ? parts[1] : "Error desconocido";
                 System.out.println("Error: " + errorMsg);
+                CompletableFuture<String> pendingHistory = historyPage;
+                if (pendingHistory != null) {
+                    pendingHistory.complete(null);
+                }
+                CompletableFuture<String> pendingSearch = searchPage;
+                if (pendingSearch != null) {
+                    pendingSearch.complete(null);
+                }
                 // Si hay un error durante el login, liberar el latch para evitar bloqueo
                 if (loginLatch != null && loginLatch.getCount() > 0) {
                     loginLatch.countDown();
@@ -227,11 +324,91 @@ public class ChatClient {
                         System.err.println("Advertencia: Mensaje recibido excede el tamaño máximo");
                         break;
                     }
+                    if (parts.length >= 4) {
+                        // Mensaje numerado: se confirma aunque sea un reenvío ya mostrado
+                        long seq;
+                        try {
+                            seq = Long.parseLong(parts[3]);
+                        } catch (NumberFormatException e) {
+                            // Sin número válido no se puede confirmar: se muestra como uno
+                            // sin numerar, con el resto del texto
+                            System.err.println("Advertencia: número de mensaje inválido de " + sender + ": " + parts[3]);
+                            System.out.println("[" + sender + "]: " + msg + "|" + parts[3]);
+                            break;
+                        }
+                        Long last = lastSeqBySender.get(sender);
+                        if (last == null || seq > last) {
+                            lastSeqBySender.put(sender, seq);
+                            System.out.println("[" + sender + "]: " + msg);
+                        }
+                        scheduleAck(sender, seq);
+                        break;
+                    }
                     // Mostrar mensaje privado recibido
                     System.out.println("[" + sender + "]: " + msg);
                 }
                 break;
 
+            case "ACKS":
+                // Numeración de entrega del servidor; si cambió (reinicio) se empieza de cero
+                String epoch = parts.length > 1 ? parts[1] : "";
+                if (!epoch.equals(deliveryEpoch)) {
+                    lastSeqBySender.clear();
+                    deliveryEpoch = epoch;
+                }
+                break;
+
+            case "DELIVERED":
+                // DELIVERED|destinatario|número
+                if (parts.length >= 3) {
+                    System.out.println("[Entregado] " + parts[1] + " recibió tus mensajes hasta el #" + parts[2]);
+                }
+                break;
+
+            case "HISTORY":
+                // HISTORY|id|fecha ms|remitente|mensaje
+                String[] entry = message.split("\\|", 5);
+                if (entry.length >= 5) {
+                    try {
+                        String time = HISTORY_TIME_FORMAT.format(Instant.ofEpochMilli(Long.parseLong(entry[2])));
+                        System.out.println("[" + time + "] " + entry[3] + ": " + entry[4]);
+                    } catch (NumberFormatException e) {
+                        System.out.println(entry[3] + ": " + entry[4]);
+                    }
+                }
+                break;
+
+            case "SEARCH":
+                // SEARCH|id|fecha ms|remitente|destinatario|mensaje
+                String[] hit = message.split("\\|", 6);
+                if (hit.length >= 6) {
+                    try {
+                        String time = HISTORY_TIME_FORMAT.format(Instant.ofEpochMilli(Long.parseLong(hit[2])));
+                        System.out.println("[" + time + "] " + hit[3] + " -> " + hit[4] + ": " + hit[5]);
+                    } catch (NumberFormatException e) {
+                        System.out.println(hit[3] + " -> " + hit[4] + ": " + hit[5]);
+                    }
+                }
+                break;
+
+            case "SESSION":
+                // Token para reanudar la sesión si la conexión se corta
+                if (parts.length >= 4) {
+                    try {
+                        SessionStore.save(host, port, parts[1], parts[2], Long.parseLong(parts[3]));
+                    } catch (NumberFormatException e) {
+                        System.err.println("Token de sesion con formato invalido");
+                    }
+                }
+                break;
+
+            case "STATS":
+                // Una métrica del servidor por línea (solo administradores)
+                if (parts.length >= 2) {
+                    System.out.println("[STATS] " + message.substring(type.length() + 1));
+                }
+                break;
+
             case "SYSTEM":
                 if (parts.length >= 2) {
                     System.out.println(parts[1]);
@@ -296,7 +473,7 @@ public class ChatClient {
             String input = scanner.nextLine().trim();
             
             if (input.equalsIgnoreCase("salir") || input.equalsIgnoreCase("exit")) {
-                sendMessageBlocking(Constants.CMD_LOGOUT);
+                logout();
                 running = false;
                 return;
             }
@@ -321,8 +498,10 @@ public class ChatClient {
         invoker.registerCommand("1", new ChatCommand(this, scanner));
         invoker.registerCommand("2", new FileCommand(this, scanner));
         invoker.registerCommand("3", new VideoCommand(this, scanner));
-        invoker.registerCommand("4", new ChangeRecipientCommand(this));
-        invoker.registerCommand("5", new ExitCommand(this));
+        invoker.registerCommand("4", new HistoryCommand(this, scanner));
+        invoker.registerCommand("5", new SearchCommand(this, scanner));
+        invoker.registerCommand("6", new ChangeRecipientCommand(this));
+        invoker.registerCommand("7", new ExitCommand(this));
         
         while (running && currentRecipient != null && !currentRecipient.isEmpty()) {
             System.out.println("\n====================================================");
@@ -354,11 +533,11 @@ public class ChatClient {
             
             if (!executed) {
                 System.out.println("\n[!] Opcion invalida. Por favor selecciona una opcion valida.\n");
-            } else if ("4".equals(option)) {
+            } else if ("6".equals(option)) {
                 // Si se cambió el destinatario, volver a seleccionar
                 selectRecipientAndShowMenu();
                 return;
-            } else if ("5".equals(option)) {
+            } else if ("7".equals(option)) {
                 // Si se salió, terminar el bucle
                 return;
             }
@@ -398,7 +577,9 @@ public class ChatClient {
             videoFrame.setVisible(true);
         }
         
-        sendMessageBlocking(MessageBuilder.buildVideoStart(recipient));
+        videoCodec = new CompletableFuture<>();
+        String offer = VideoCodecs.join(VideoCodecs.offer(ConfigManager.getVideoMode()));
+        sendMessageBlocking(MessageBuilder.buildVideoStart(recipient, offer));
         executorService.submit(this::sendVideo);
         executorService.submit(this::receiveVideo);
     }
@@ -406,6 +587,7 @@ public class ChatClient {
     public void stopVideoCall() {
         videoActive = false;
         sendMessageBlocking(MessageBuilder.buildVideoStop());
+        stopDecodeWorkers();
         
         // Cerrar y limpiar la ventana de video
         if (videoFrame != null) {
@@ -419,6 +601,66 @@ public class ChatClient {
         }
     }
     
+    // Ritmo de la transmisión propia: fps objetivo, medidos y frames saltados (null si no se transmite)
+    public String getVideoSendSummary() {
+        VideoSender sender = videoSender;
+        return sender != null ? sender.getPacer().toString() : null;
+    }
+
+    // Estadísticas de frames por remitente de la videollamada actual
+    public List<VideoStreamStats> getVideoStats() {
+        List<VideoStreamStats> stats = new ArrayList<>();
+        for (VideoDecodeWorker worker : decodeWorkers.values()) {
+            stats.add(worker.getStats());
+        }
+        return stats;
+    }
+
+    // Obtiene (o crea) el decodificador asociado a un remitente
+    private VideoDecodeWorker getDecodeWorker(String sender) {
+        return decodeWorkers.computeIfAbsent(sender, s -> {
+            VideoDecodeWorker worker = new VideoDecodeWorker(s, new MultiFormatVideoDecoder(),
+                                                             img -> showVideoFrame(s, img));
+            worker.start();
+            return worker;
+        });
+    }
+
+    // Pinta un frame decodificado (se ejecuta en el EDT)
+    private void showVideoFrame(String sender, BufferedImage img) {
+        if (videoPanel == null) {
+            return;
+        }
+        JLabel label = videoViews.computeIfAbsent(sender, s -> {
+            JLabel l = new JLabel("Yo".equals(s) ? "" : "Cargando...");
+            l.setHorizontalTextPosition(JLabel.CENTER);
+            l.setVerticalTextPosition(JLabel.BOTTOM);
+            videoPanel.add(l);
+            videoPanel.revalidate();
+            videoPanel.repaint();
+            return l;
+        });
+        label.setIcon(new ImageIcon(img));
+
+        // Telemetría del flujo bajo la imagen, actualizada una vez por segundo
+        VideoDecodeWorker worker = decodeWorkers.get(sender);
+        long now = System.currentTimeMillis();
+        if (worker != null && !"Yo".equals(sender)
+                && now - telemetryShownAt.getOrDefault(sender, 0L) >= 1000) {
+            telemetryShownAt.put(sender, now);
+            label.setText(sender + " - " + worker.getStats().getTelemetry().snapshot().toShortString());
+        }
+    }
+
+    // Detiene los decodificadores y muestra el resumen de frames
+    private void stopDecodeWorkers() {
+        for (VideoDecodeWorker worker : decodeWorkers.values()) {
+            worker.stop();
+            System.out.println("[VIDEO] " + worker.getStats());
+        }
+        decodeWorkers.clear();
+    }
+    
     // Envía un archivo al servidor (al destinatario actual) - versión síncrona interna
     private void sendFileSync(String filePath) {
         if (currentRecipient == null || currentRecipient.isEmpty()) {
@@ -487,6 +729,79 @@ public class ChatClient {
         }
     }
     
+    /**
+     * Pide una página del historial con un usuario y espera a que termine de llegar;
+     * los mensajes se muestran a medida que llegan.
+     *
+     * @param before cursor de la página anterior, o null para los más recientes
+     * @return cursor para seguir hacia atrás ("" si no hay más), o null si falló
+     */
+    public String requestHistory(String withUser, String before) {
+        CompletableFuture<String> page = new CompletableFuture<>();
+        historyPage = page;
+        try {
+            sendMessageBlocking(MessageBuilder.buildHistoryRequest(withUser, Constants.HISTORY_PAGE_SIZE, before));
+            return page.get(Constants.HISTORY_RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException | ExecutionException e) {
+            System.out.println("[!] El servidor no respondio el pedido de historial.");
+        } finally {
+            historyPage = null;
+        }
+        return null;
+    }
+    
+    /**
+     * Pide una página de resultados de búsqueda y espera a que termine de llegar;
+     * los mensajes se muestran a medida que llegan.
+     *
+     * @param offset resultados a saltear
+     * @return posición de la página siguiente ("" si no hay más), o null si falló
+     */
+    public String requestSearch(String query, int offset) {
+        CompletableFuture<String> page = new CompletableFuture<>();
+        searchPage = page;
+        try {
+            sendMessageBlocking(MessageBuilder.buildSearchRequest(query, Constants.HISTORY_PAGE_SIZE, offset));
+            return page.get(Constants.HISTORY_RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException | ExecutionException e) {
+            System.out.println("[!] El servidor no respondio la busqueda.");
+        } finally {
+            searchPage = null;
+        }
+        return null;
+    }
+    
+    // Agrupa las confirmaciones: una sola por remitente cada ACK_DELAY_MS
+    private void scheduleAck(String sender, long seq) {
+        boolean first;
+        synchronized (pendingAcks) {
+            first = pendingAcks.isEmpty();
+            pendingAcks.merge(sender, seq, Math::max);
+        }
+        if (first) {
+            CompletableFuture.delayedExecutor(Constants.ACK_DELAY_MS, TimeUnit.MILLISECONDS)
+                    .execute(this::flushAcks);
+        }
+    }
+
+    private void flushAcks() {
+        Map<String, Long> acks;
+        synchronized (pendingAcks) {
+            acks = new HashMap<>(pendingAcks);
+            pendingAcks.clear();
+        }
+        if (!running) {
+            return;
+        }
+        for (Map.Entry<String, Long> ack : acks.entrySet()) {
+            sendMessageSync(MessageBuilder.buildAck(ack.getKey(), ack.getValue()));
+        }
+    }
+    
     // Envía un mensaje al servidor en un hilo separado (versión pública asíncrona)
     public void sendMessage(String message) {
         executorService.submit(() -> {
@@ -503,6 +818,7 @@ public class ChatClient {
     private void disconnect() {
         running = false;
         videoActive = false; // Detener video si está activo
+        stopDecodeWorkers();
 
         // Cerrar ventana de video si está abierta
         if (videoFrame != null) {
@@ -540,12 +856,6 @@ public class ChatClient {
                     // Ignorar errores al cerrar dataIn
                 }
             }
-            if (out != null) {
-                out.close();
-            }
-            if (in != null) {
-                in.close();
-            }
             if (videoSocket != null && !videoSocket.isClosed()) {
                 videoSocket.close();
             }
@@ -575,154 +885,80 @@ public class ChatClient {
         System.out.println("\nDesconectado del servidor. !Hasta luego!");
     }
     private void sendVideo() {
-        VideoCapture cam = null;
-        Mat frame = null;
-        int consecutiveFailures = 0;
-        final int MAX_CONSECUTIVE_FAILURES = 10; // Máximo de fallos consecutivos antes de detener
-        
+        FrameSource source;
         try {
-            // Intentar abrir la cámara con un pequeño delay para inicialización
-            cam = new VideoCapture(Constants.VIDEO_CAMERA_INDEX);
-            
-            // Dar tiempo a la cámara para inicializarse (especialmente importante en Windows)
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            }
-            
-            if (!cam.isOpened()) {
-                System.err.println("\n[ERROR] No se pudo abrir la cámara.");
-                System.err.println("Posibles causas:");
-                System.err.println("  - La cámara está siendo usada por otra aplicación");
-                System.err.println("  - La cámara no está conectada o no funciona");
-                System.err.println("  - Problemas con los drivers de la cámara");
-                System.err.println("  - Permisos insuficientes para acceder a la cámara\n");
-                videoActive = false;
-                sendMessageBlocking(MessageBuilder.buildVideoStop());
-                return;
-            }
-
-            frame = new Mat();
-            System.out.println("[VIDEO] Cámara iniciada correctamente. Transmitiendo...\n");
-            
-            try {
-                while (videoActive && running) {
-                    // Intentar leer un frame
-                    boolean frameRead = cam.read(frame);
-                    
-                    if (!frameRead || frame.empty()) {
-                        consecutiveFailures++;
-                        
-                        if (consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
-                            System.err.println("\n[ERROR] No se pueden capturar más frames de la cámara.");
-                            System.err.println("La cámara puede haberse desconectado o estar siendo usada por otra aplicación.\n");
-                            break;
-                        }
-                        
-                        // Esperar un poco antes de reintentar
-                        try {
-                            Thread.sleep(100);
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
-                        continue;
-                    }
-                    
-                    // Frame leído correctamente, resetear contador
-                    consecutiveFailures = 0;
+            source = FrameSources.create(ConfigManager.getVideoSource());
+        } catch (IllegalArgumentException e) {
+            System.err.println("\n[ERROR] " + e.getMessage());
+            videoActive = false;
+            sendMessageBlocking(MessageBuilder.buildVideoStop());
+            return;
+        }
 
-                    // Verificar que videoOut esté disponible antes de escribir
-                    if (videoOut == null || videoSocket == null || videoSocket.isClosed()) {
-                        System.err.println("[ERROR] Conexión de video perdida.");
-                        break;
-                    }
+        try {
+            source.open();
+        } catch (Exception e) {
+            System.err.println("\n[ERROR] No se pudo abrir la fuente de video (" + source.getDescription() + "): " + e.getMessage());
+            System.err.println("Posibles causas:");
+            System.err.println("  - La cámara está siendo usada por otra aplicación");
+            System.err.println("  - La cámara no está conectada o no funciona");
+            System.err.println("  - Problemas con los drivers de la cámara");
+            System.err.println("  - Permisos insuficientes para acceder a la cámara\n");
+            source.close();
+            videoActive = false;
+            sendMessageBlocking(MessageBuilder.buildVideoStop());
+            return;
+        }
 
-                    try {
-                        // Codificar frame a JPEG
-                        MatOfByte mob = new MatOfByte();
-                        Imgcodecs.imencode(".jpg", frame, mob);
-                        byte[] bytes = mob.toArray();
-                        
-                        if (bytes.length == 0) {
-                            continue; // Frame vacío, saltar
-                        }
+        String mode = awaitVideoCodec();
+        SimulcastEncoder encoder = new SimulcastEncoder(mode, ConfigManager.getVideoSimulcastLayers());
+        if (Constants.VIDEO_MODE_TILES.equals(mode)) {
+            System.out.println("[VIDEO] Modo mosaicos: solo se envian las zonas que cambian.");
+        } else if (Constants.VIDEO_MODE_H264.equals(mode)) {
+            System.out.println("[VIDEO] Modo H.264 (" + H264Support.getEncoderName() + ", baja latencia).");
+        }
+        if (encoder.getLayerCount() > 1) {
+            System.out.println("[VIDEO] Simulcast: " + encoder.getLayerCount() + " capas de resolucion.");
+        }
+        System.out.println("[VIDEO] Fuente de video iniciada (" + source.getDescription() + "). Transmitiendo...\n");
 
-                        // Enviar el frame al servidor
-                        videoOut.writeInt(bytes.length);
-                        videoOut.write(bytes);
-                        videoOut.flush();
-                        
-                        // Mostrar el frame localmente (solo si la ventana está creada)
+        try {
+            // Mostrar el frame localmente (solo si la ventana está creada).
+            // La decodificación ocurre en otro hilo para no frenar la captura.
+            VideoSender sender = new VideoSender(source, encoder, videoOut,
+                    () -> videoActive && running && videoSocket != null && !videoSocket.isClosed(),
+                    bytes -> {
                         if (videoPanel != null) {
-                            try {
-                                BufferedImage img = ImageIO.read(new ByteArrayInputStream(bytes));
-                                if (img != null) {
-                                    SwingUtilities.invokeLater(() -> {
-                                        if (videoPanel != null) {
-                                            JLabel label = videoViews.computeIfAbsent("Yo", s -> {
-                                                JLabel l = new JLabel();
-                                                videoPanel.add(l);
-                                                videoPanel.revalidate();
-                                                videoPanel.repaint();
-                                                return l;
-                                            });
-                                            label.setIcon(new ImageIcon(img));
-                                        }
-                                    });
-                                }
-                            } catch (Exception e) {
-                                // Error al mostrar frame local, continuar enviando
-                            }
+                            getDecodeWorker("Yo").submit(bytes);
                         }
-                    } catch (IOException e) {
-                        System.err.println("[ERROR] Error enviando video: " + e.getMessage());
-                        break;
-                    } catch (Exception e) {
-                        System.err.println("[ERROR] Error procesando frame: " + e.getMessage());
-                        // Continuar intentando
-                        continue;
-                    }
-
-                    // Control de FPS
-                    try {
-                        Thread.sleep(Constants.VIDEO_FPS_DELAY_MS);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("[ERROR] Error en captura de video: " + e.getMessage());
-                e.printStackTrace();
-            } finally {
-                // Liberar el frame
-                if (frame != null) {
-                    frame.release();
-                }
-            }
+                    });
+            videoSender = sender;
+            System.out.println("[VIDEO] Ritmo de captura: " + sender.getPacer().getTargetFps() + " fps.");
+            sender.run();
+        } catch (IOException e) {
+            System.err.println("[ERROR] Error enviando video: " + e.getMessage());
         } catch (Exception e) {
-            System.err.println("\n[ERROR] Error inicializando cámara: " + e.getMessage());
-            System.err.println("Detalles: " + e.getClass().getSimpleName());
+            System.err.println("[ERROR] Error en captura de video: " + e.getMessage());
             e.printStackTrace();
-            videoActive = false;
         } finally {
             // Guardar estado antes de cambiar
             boolean wasActive = videoActive;
             videoActive = false;
-            
-            // Asegurar que la cámara se libere siempre
-            if (cam != null) {
-                try {
-                    cam.release();
-                    System.out.println("[VIDEO] Cámara liberada correctamente.");
-                } catch (Exception e) {
-                    System.err.println("[ERROR] Error liberando cámara: " + e.getMessage());
-                }
+            encoder.close();
+            VideoSender sender = videoSender;
+            if (sender != null) {
+                System.out.println("[VIDEO] Transmision: " + sender.getPacer());
+                videoSender = null;
             }
-            
+
+            // Asegurar que la fuente (cámara) se libere siempre
+            try {
+                source.close();
+                System.out.println("[VIDEO] Fuente de video liberada correctamente.");
+            } catch (Exception e) {
+                System.err.println("[ERROR] Error liberando la fuente de video: " + e.getMessage());
+            }
+
             // Notificar al servidor que se detuvo el video si estaba activo
             if (wasActive) {
                 try {
@@ -733,39 +969,38 @@ public class ChatClient {
             }
         }
     }
+
+    // Espera el modo negociado; si el servidor no responde a tiempo se usa JPEG
+    private String awaitVideoCodec() {
+        CompletableFuture<String> codec = videoCodec;
+        if (codec == null) {
+            return Constants.VIDEO_MODE_JPEG;
+        }
+        try {
+            return codec.get(Constants.VIDEO_CODEC_NEGOTIATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException | ExecutionException e) {
+            System.out.println("[VIDEO] El servidor no confirmo el codec; se usa JPEG.");
+        }
+        return Constants.VIDEO_MODE_JPEG;
+    }
+
     private void receiveVideo() {
         DataInputStream videoIn = null;
         try {
             if (videoSocket == null || videoSocket.isClosed()) {
                 return;
             }
-            videoIn = new DataInputStream(videoSocket.getInputStream());
+            videoIn = new DataInputStream(new BufferedInputStream(videoSocket.getInputStream(), VIDEO_BUFFER_SIZE));
             
             while (videoActive && running && !videoSocket.isClosed()) {
                 try {
-                    int nameLen = videoIn.readInt();
-                    byte[] nameBytes = new byte[nameLen];
-                    videoIn.readFully(nameBytes);
-                    String sender = new String(nameBytes);
-
-                    int frameLen = videoIn.readInt();
-                    byte[] frame = new byte[frameLen];
-                    videoIn.readFully(frame);
-
-                    BufferedImage img = ImageIO.read(new ByteArrayInputStream(frame));
-                    if (img != null && videoPanel != null) {
-                        SwingUtilities.invokeLater(() -> {
-                            if (videoPanel != null) {
-                                JLabel label = videoViews.computeIfAbsent(sender, s -> {
-                                    JLabel l = new JLabel("Cargando...");
-                                    videoPanel.add(l);
-                                    videoPanel.revalidate();
-                                    videoPanel.repaint();
-                                    return l;
-                                });
-                                label.setIcon(new ImageIcon(img));
-                            }
-                        });
+                    VideoPacket packet = VideoPacket.readDownlink(videoIn);
+
+                    // Decodificar fuera del hilo del socket; aquí solo se entrega el frame
+                    if (videoPanel != null) {
+                        getDecodeWorker(packet.getSender()).submit(packet);
                     }
                 } catch (IOException e) {
                     if (running) {
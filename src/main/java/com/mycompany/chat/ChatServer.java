@@ -1,21 +1,44 @@
 package com.mycompany.chat;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import com.mycompany.chat.config.ConfigManager;
+import com.mycompany.chat.security.PasswordHasher;
+import com.mycompany.chat.security.SessionTokens;
+import com.mycompany.chat.service.AuthenticationService;
 import com.mycompany.chat.service.DatabaseService;
+import com.mycompany.chat.service.DeliveryService;
+import com.mycompany.chat.service.MessagePersister;
+import com.mycompany.chat.repository.DatabaseMessageRepository;
 import com.mycompany.chat.util.Constants;
 import com.mycompany.chat.factory.DefaultSocketFactory;
 import com.mycompany.chat.factory.SocketFactory;
+import com.mycompany.chat.history.MessageHistory;
+import com.mycompany.chat.history.OfflineQueue;
+import com.mycompany.chat.history.TailCache;
+import com.mycompany.chat.metrics.MetricsExporter;
+import com.mycompany.chat.metrics.MetricsRegistry;
+import com.mycompany.chat.metrics.ServerMetrics;
+import com.mycompany.chat.observer.ChatEvent;
+import com.mycompany.chat.observer.ChatEventPublisher;
+import com.mycompany.chat.observer.LoggingObserver;
+import com.mycompany.chat.protocol.MessageBuilder;
+import com.mycompany.chat.protocol.handlers.HistoryHandler;
+import com.mycompany.chat.repository.ConnectionPool;
+import com.mycompany.chat.video.CallRecorder;
+import com.mycompany.chat.video.StreamTelemetry;
+import com.mycompany.chat.video.VideoPacket;
 
 public class ChatServer {
     private int port;
@@ -26,6 +49,17 @@ public class ChatServer {
     private volatile boolean running;
     private final SocketFactory socketFactory; // Factory para crear sockets
     private final DatabaseService databaseService;
+    private final CallRecorder callRecorder; // null si la grabación está desactivada
+    private final MessageHistory messageHistory; // null si el historial está desactivado
+    private final OfflineQueue offlineQueue; // null si la bandeja de desconectados está desactivada
+    private final MessagePersister messagePersister; // null si no se copian los mensajes a MySQL
+    private final DeliveryService deliveryService; // Mensajes numerados para clientes que confirman la entrega
+    private final AuthenticationService authenticationService; // Verifica logins fuera de los hilos de clientes
+    private final SessionTokens sessionTokens; // Tokens para reanudar sesión sin repetir LOGIN
+    private final ChatEventPublisher eventPublisher = new ChatEventPublisher(); // Publicar nunca bloquea a los handlers
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final MetricsExporter metricsExporter; // null si las métricas no se exportan
+    private final Set<String> adminUsers; // Pueden consultar STATS
 
     // Constructor por defecto (puerto 9000)
     public ChatServer() {
@@ -45,10 +79,141 @@ public class ChatServer {
     public ChatServer(int port, SocketFactory socketFactory, DatabaseService databaseService) {
         this.port = port;
         this.clients = ConcurrentHashMap.newKeySet();
-        this.threadPool = Executors.newFixedThreadPool(Constants.SERVER_THREAD_POOL_SIZE);
+        this.threadPool = Executors.newFixedThreadPool(ConfigManager.getServerThreadPoolSize());
         this.running = true;
         this.socketFactory = socketFactory;
         this.databaseService = databaseService;
+        this.callRecorder = createCallRecorder();
+        this.messageHistory = createMessageHistory();
+        this.offlineQueue = createOfflineQueue();
+        this.messagePersister = createMessagePersister();
+        this.deliveryService = new DeliveryService(this::getClientByUsername, offlineQueue,
+                Constants.DELIVERY_WINDOW, Constants.DELIVERY_BACKLOG, Constants.DELIVERY_RETRANSMIT_MS,
+                Constants.DELIVERY_MAX_RETRANSMIT_MS, TimeUnit.SECONDS.toMillis(Constants.DELIVERY_HOLD_SECONDS));
+        this.authenticationService = new AuthenticationService(ConfigManager.getAuthThreads(),
+                ConfigManager.getAuthQueueCapacity(), Constants.LOGIN_TIMEOUT_MS);
+        this.sessionTokens = new SessionTokens(TimeUnit.MINUTES.toMillis(ConfigManager.getSessionTokenTtlMinutes()));
+        databaseService.setPasswordChangeListener(sessionTokens::revoke); // Otra contraseña: no se reanuda
+        if (ConfigManager.isEventLogEnabled()) {
+            eventPublisher.subscribe(new LoggingObserver());
+        }
+        this.adminUsers = ConfigManager.getAdminUsers();
+        if (adminUsers.isEmpty()) {
+            System.out.println("[METRICAS] STATS desactivado: no hay usuarios en admin.users");
+        }
+        registerGauges(metrics.getRegistry());
+        this.metricsExporter = createMetricsExporter(metrics.getRegistry());
+    }
+
+    // Indicadores que se leen del estado actual de cada componente al consultarlos
+    private void registerGauges(MetricsRegistry registry) {
+        registry.gauge("chat_sesiones", "Usuarios autenticados conectados", clients::size);
+        String queueHelp = "Elementos esperando en cada cola interna";
+        registry.gauge("chat_cola", queueHelp, authenticationService::getQueuedCount, "cola", "logins");
+        registry.gauge("chat_cola", queueHelp, eventPublisher::getBacklog, "cola", "eventos");
+        if (messageHistory != null) {
+            registry.gauge("chat_cola", queueHelp, messageHistory::getQueueDepth, "cola", "historial");
+        }
+        if (messagePersister != null) {
+            registry.gauge("chat_cola", queueHelp, messagePersister::getQueueDepth, "cola", "mensajes_db");
+        }
+        String busyHelp = "Hilos o conexiones ocupados de cada pool";
+        String usageHelp = "Fracción ocupada de cada pool (0 a 1)";
+        if (threadPool instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) threadPool;
+            registry.gauge("chat_pool_ocupados", busyHelp, executor::getActiveCount, "pool", "clientes");
+            registry.gauge("chat_pool_uso", usageHelp,
+                    () -> (double) executor.getActiveCount() / executor.getMaximumPoolSize(), "pool", "clientes");
+        }
+        ConnectionPool dbPool = databaseService.getConnectionPool();
+        if (dbPool != null) {
+            registry.gauge("chat_pool_ocupados", busyHelp, dbPool::getActiveConnections, "pool", "db");
+            registry.gauge("chat_pool_uso", usageHelp,
+                    () -> (double) dbPool.getActiveConnections() / dbPool.getMaxSize(), "pool", "db");
+        }
+    }
+
+    private static MetricsExporter createMetricsExporter(MetricsRegistry registry) {
+        String file = ConfigManager.getMetricsFile();
+        int httpPort = ConfigManager.getMetricsHttpPort();
+        if (file.isEmpty() && httpPort == 0) {
+            return null;
+        }
+        MetricsExporter exporter = new MetricsExporter(registry, file.isEmpty() ? null : Paths.get(file),
+                TimeUnit.SECONDS.toMillis(ConfigManager.getMetricsFileSeconds()), httpPort);
+        try {
+            exporter.start();
+            return exporter;
+        } catch (IOException e) {
+            System.err.println("No se pudieron exportar las métricas: " + e.getMessage());
+            exporter.close();
+            return null;
+        }
+    }
+
+    private static MessageHistory createMessageHistory() {
+        if (!ConfigManager.isHistoryEnabled()) {
+            return null;
+        }
+        try {
+            MessageHistory history = new MessageHistory(Paths.get(ConfigManager.getHistoryDir()),
+                    ConfigManager.getHistorySegmentMb() * 1024L * 1024L, Constants.HISTORY_QUEUE_MESSAGES,
+                    ConfigManager.isHistorySearchEnabled());
+            int tailCacheMb = ConfigManager.getHistoryTailCacheMb();
+            if (tailCacheMb > 0) {
+                history.setTailCache(new TailCache(tailCacheMb * 1024L * 1024L, Constants.HISTORY_MAX_PAGE_SIZE,
+                        HistoryHandler::encode));
+            }
+            history.start();
+            history.startCompaction(ConfigManager.getHistoryHotSegments(),
+                    TimeUnit.DAYS.toMillis(ConfigManager.getHistoryRetentionDays()),
+                    ConfigManager.getHistoryRetentionKeepLast(),
+                    TimeUnit.MINUTES.toMillis(ConfigManager.getHistoryCompactMinutes()));
+            return history;
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir el historial de mensajes: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static MessagePersister createMessagePersister() {
+        if (!ConfigManager.isMessagesDbEnabled()) {
+            return null;
+        }
+        MessagePersister persister = new MessagePersister(new DatabaseMessageRepository(),
+                ConfigManager.getMessagesDbQueue(), ConfigManager.getMessagesDbBatchSize(),
+                ConfigManager.getMessagesDbFlushMs());
+        persister.start();
+        return persister;
+    }
+
+    private static OfflineQueue createOfflineQueue() {
+        if (!ConfigManager.isOfflineQueueEnabled()) {
+            return null;
+        }
+        try {
+            return new OfflineQueue(Paths.get(ConfigManager.getOfflineQueueFile()),
+                    ConfigManager.getOfflineMaxPerUser(), TimeUnit.HOURS.toMillis(ConfigManager.getOfflineTtlHours()));
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir la bandeja de mensajes pendientes: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static CallRecorder createCallRecorder() {
+        if (!ConfigManager.isVideoRecordingEnabled()) {
+            return null;
+        }
+        try {
+            CallRecorder recorder = new CallRecorder(Paths.get(ConfigManager.getVideoRecordingDir()),
+                    ConfigManager.getVideoRecordingSegmentMb() * 1024L * 1024L,
+                    ConfigManager.getVideoRecordingQueueFrames());
+            recorder.start();
+            return recorder;
+        } catch (IOException e) {
+            System.err.println("No se pudo iniciar la grabación de llamadas: " + e.getMessage());
+            return null;
+        }
     }
     
     public void start() {
@@ -69,6 +234,7 @@ public class ChatServer {
                 System.err.println("  Asegurate de que MySQL este corriendo y ejecuta schema.sql\n");
                 return;
             }
+            configurarCostoBcrypt();
 
             while (running) {
                 try {
@@ -92,6 +258,24 @@ public class ChatServer {
             shutdown();
         }
     }
+    // Costo BCrypt fijo por configuración o calibrado en este CPU; de él depende cuántos
+    // logins por segundo soporta el servidor
+    private void configurarCostoBcrypt() {
+        long nanos;
+        int fixed = ConfigManager.getBcryptCost();
+        if (fixed > 0) {
+            PasswordHasher.setRounds(fixed);
+            nanos = PasswordHasher.benchmark();
+        } else {
+            nanos = PasswordHasher.calibrate(ConfigManager.getBcryptBudgetMs(), ConfigManager.getBcryptMinCost());
+        }
+        double millis = nanos / 1e6;
+        int threads = ConfigManager.getAuthThreads();
+        System.out.printf("[AUTH] BCrypt costo %d%s: %.0f ms por hash, capacidad ~%.0f logins/s con %d hilos%n%n",
+                PasswordHasher.getRounds(), fixed > 0 ? " (fijo)" : " (calibrado)", millis,
+                threads * 1000 / Math.max(millis, 0.001), threads);
+    }
+
     // Envía un mensaje a todos los clientes excepto al emisor (para mensajes del sistema)
     public void broadcast(String message, ClientHandler sender) {
         for (ClientHandler client : clients) {
@@ -112,6 +296,62 @@ public class ChatServer {
         return false; // Destinatario no encontrado
     }
     
+    // Entrega al cliente recién autenticado lo que recibió estando desconectado, en una sola ráfaga.
+    // Si ya hay una entrega en curso para ese usuario, esa se lleva también lo que llegue ahora.
+    public void deliverOfflineMessages(ClientHandler client) {
+        if (offlineQueue == null) {
+            return;
+        }
+        if (client.isAcksEnabled()) {
+            deliverOfflineMessagesConfirmed(client);
+            return;
+        }
+        String user = client.getUsername();
+        List<OfflineQueue.OfflineMessage> batch;
+        while (!(batch = offlineQueue.take(user)).isEmpty()) {
+            List<String> burst = new ArrayList<>(batch.size() + 1);
+            burst.add(MessageBuilder.buildServerMessage("Tienes " + batch.size()
+                    + " mensaje(s) recibidos mientras estabas desconectado"));
+            for (OfflineQueue.OfflineMessage message : batch) {
+                burst.add(MessageBuilder.create()
+                        .withType(Constants.CMD_MSG)
+                        .withParams(message.getSender(), message.getBody())
+                        .build());
+            }
+            boolean sent = client.isAuthenticated() && client.sendMessages(burst);
+            offlineQueue.finish(user, batch, sent);
+            if (!sent) {
+                return;
+            }
+            System.out.println("[BANDEJA] " + batch.size() + " mensaje(s) entregados a " + user);
+        }
+    }
+
+    // Con entrega confirmada la bandeja pasa a DeliveryService: los mensajes se numeran y
+    // se reenvían hasta el ACK, y si el cliente se desconecta antes vuelven a la bandeja.
+    // Se registran como entregados al pasarlos, no al escribirlos en el socket
+    private void deliverOfflineMessagesConfirmed(ClientHandler client) {
+        String user = client.getUsername();
+        List<OfflineQueue.OfflineMessage> batch;
+        while (!(batch = offlineQueue.take(user)).isEmpty()) {
+            client.sendMessage(MessageBuilder.buildServerMessage("Tienes " + batch.size()
+                    + " mensaje(s) recibidos mientras estabas desconectado"));
+            int handed = 0;
+            for (OfflineQueue.OfflineMessage message : batch) {
+                if (deliveryService.sendStored(client, message.getSender(), message.getBody())
+                        == DeliveryService.NOT_CONNECTED) {
+                    break;
+                }
+                handed++;
+            }
+            offlineQueue.finish(user, batch, handed);
+            if (handed < batch.size()) {
+                return; // Se desconectó: el resto sigue en la bandeja
+            }
+            System.out.println("[BANDEJA] " + batch.size() + " mensaje(s) pasados a la entrega confirmada de " + user);
+        }
+    }
+
     // Obtiene la lista de usuarios conectados (excepto el solicitante)
     public List<String> getConnectedUsers(ClientHandler requester) {
         List<String> users = new ArrayList<>();
@@ -133,20 +373,25 @@ public class ChatServer {
         return null;
     }
     
+    // Obtiene el ClientHandler al que se entregó un token de sesión
+    public ClientHandler getClientBySessionToken(String token) {
+        for (ClientHandler client : clients) {
+            if (client.isAuthenticated() && token.equals(client.getSessionToken())) {
+                return client;
+            }
+        }
+        return null;
+    }
+    
     // Envía video privado a un destinatario específico
-    public boolean sendPrivateVideo(byte[] frame, String recipient, ClientHandler sender) {
+    public boolean sendPrivateVideo(VideoPacket frame, String recipient, ClientHandler sender) {
         ClientHandler target = getClientByUsername(recipient);
         if (target != null && target.isAuthenticated() && target.getVideoSocket() != null) {
             try {
-                DataOutputStream out = new DataOutputStream(target.getVideoSocket().getOutputStream());
-                byte[] nameBytes = sender.getUsername().getBytes();
-                out.writeInt(nameBytes.length);
-                out.write(nameBytes);
-
-                // Enviar longitud del frame y el frame mismo
-                out.writeInt(frame.length);
-                out.write(frame);
-                out.flush();
+                target.sendVideoFrame(sender, frame);
+                if (callRecorder != null) {
+                    callRecorder.record(sender.getUsername(), recipient, frame); // Nunca bloquea
+                }
                 return true;
             } catch (IOException e) {
                 System.err.println("Error enviando frame a " + recipient + ": " + e.getMessage());
@@ -155,6 +400,26 @@ public class ChatServer {
         }
         return false;
     }
+    // Cierra la grabación de una llamada (si se estaba grabando)
+    public void videoCallEnded(String sender, String recipient) {
+        if (callRecorder != null) {
+            callRecorder.endCall(sender, recipient);
+        }
+    }
+
+    // Telemetría de los flujos de video en los que participa un usuario (enviados y recibidos)
+    public List<StreamTelemetry.Snapshot> getVideoStreamStats(String username) {
+        List<StreamTelemetry.Snapshot> stats = new ArrayList<>();
+        for (ClientHandler client : clients) {
+            StreamTelemetry telemetry = client.getVideoTelemetry();
+            if (telemetry != null && client.getVideoActive()
+                    && (username.equals(client.getUsername()) || username.equals(client.getVideoRecipient()))) {
+                stats.add(telemetry.snapshot());
+            }
+        }
+        return stats;
+    }
+
     // Envía un archivo privado a un destinatario específico
     public boolean sendPrivateFile(String fileName, byte[] fileData, String recipient, ClientHandler sender) {
         ClientHandler target = getClientByUsername(recipient);
@@ -170,14 +435,19 @@ public class ChatServer {
         clients.add(client);
         System.out.println("Usuario autenticado: " + client.getUsername()
                 + " (Total conectados: " + clients.size() + ")");
+        eventPublisher.publishEvent(ChatEvent.EventType.USER_CONNECTED, client.getUsername(), "conectado");
     }
 
     // Remueve un cliente de la sala
     public void removeClient(ClientHandler client) {
         clients.remove(client);
+        if (client.isAcksEnabled()) {
+            deliveryService.detach(client);
+        }
         if (client.getUsername() != null) {
             System.out.println("Usuario desconectado: " + client.getUsername()
                     + " (Total conectados: " + clients.size() + ")");
+            eventPublisher.publishEvent(ChatEvent.EventType.USER_DISCONNECTED, client.getUsername(), "desconectado");
             broadcast(Constants.RESP_SYSTEM + Constants.PROTOCOL_SEPARATOR + 
                      client.getUsername() + " se ha desconectado", client);
         }
@@ -213,6 +483,57 @@ public class ChatServer {
                 }
             }
 
+            if (messageHistory != null) {
+                messageHistory.close();
+                System.out.println("[HISTORIAL] " + messageHistory.describe());
+                String tailCache = messageHistory.describeTailCache();
+                if (tailCache != null) {
+                    System.out.println("[HISTORIAL] Caché de últimos mensajes: " + tailCache);
+                }
+                if (messageHistory.isSearchable()) {
+                    System.out.println("[BUSQUEDA] " + messageHistory.describeSearchIndex());
+                }
+            }
+
+            // Lo que quedó sin confirmar pasa a la bandeja antes de cerrarla
+            deliveryService.close();
+            System.out.println("[ENTREGA] " + deliveryService.describe());
+
+            eventPublisher.close(Constants.EVENT_SHUTDOWN_MS);
+            for (String line : eventPublisher.describe()) {
+                System.out.println("[EVENTOS] " + line);
+            }
+
+            if (offlineQueue != null) {
+                offlineQueue.close();
+                System.out.println("[BANDEJA] " + offlineQueue.describe());
+            }
+
+            if (messagePersister != null) {
+                messagePersister.close(ConfigManager.getMessagesDbShutdownMs());
+                System.out.println("[MENSAJES-DB] " + messagePersister.describe());
+            }
+
+            if (callRecorder != null) {
+                callRecorder.close();
+                System.out.println("[GRABACION] " + callRecorder.describe());
+            }
+
+            authenticationService.shutdown();
+            System.out.println("[AUTH] " + authenticationService);
+
+            for (String line : metrics.describeCommands()) {
+                System.out.println("[COMANDOS] " + line);
+            }
+
+            if (metricsExporter != null) {
+                metricsExporter.close(); // Último volcado con los valores finales
+                for (String line : metricsExporter.describe()) {
+                    System.out.println("[METRICAS] " + line);
+                }
+            }
+            databaseService.cerrar();
+
             // Cerrar pool de threads
             if (threadPool != null) {
                 threadPool.shutdown();
@@ -244,4 +565,52 @@ public class ChatServer {
     public ExecutorService getThreadPool() {
         return threadPool;
     }
+
+    public AuthenticationService getAuthenticationService() {
+        return authenticationService;
+    }
+
+    /**
+     * @return el historial de mensajes, o null si está desactivado
+     */
+    public MessageHistory getMessageHistory() {
+        return messageHistory;
+    }
+
+    /**
+     * @return la bandeja de mensajes para desconectados, o null si está desactivada
+     */
+    public OfflineQueue getOfflineQueue() {
+        return offlineQueue;
+    }
+
+    /**
+     * @return la copia de mensajes a MySQL, o null si está desactivada
+     */
+    public MessagePersister getMessagePersister() {
+        return messagePersister;
+    }
+
+    public DeliveryService getDeliveryService() {
+        return deliveryService;
+    }
+
+    public ChatEventPublisher getEventPublisher() {
+        return eventPublisher;
+    }
+
+    public SessionTokens getSessionTokens() {
+        return sessionTokens;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return true si el usuario puede consultar las métricas del servidor (admin.users)
+     */
+    public boolean isAdmin(String username) {
+        return username != null && adminUsers.contains(username);
+    }
 }
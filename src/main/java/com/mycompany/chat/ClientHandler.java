@@ -1,41 +1,77 @@
 package com.mycompany.chat;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.mycompany.chat.protocol.MessageHandler;
 import com.mycompany.chat.protocol.MessageHandlerRegistry;
 import com.mycompany.chat.protocol.MessageBuilder;
+import com.mycompany.chat.security.SessionTokens;
 import com.mycompany.chat.service.DatabaseService;
+import com.mycompany.chat.util.Constants;
+import com.mycompany.chat.video.StreamTelemetry;
+import com.mycompany.chat.video.VideoPacket;
+import com.mycompany.chat.video.ViewerChannel;
 
 public class ClientHandler implements Runnable {
+    private static final int VIDEO_BUFFER_SIZE = 64 * 1024;
+
     private final Socket socket;
     private final ChatServer server;
     private final Socket videoClient;
     private DataInputStream dataIn;
     private DataInputStream videoIn;
     private DataOutputStream dataOut;
+    private ViewerChannel videoChannel; // Frames que otros usuarios envían a este cliente
+    private byte[] usernameBytes; // Nombre en UTF-8 para la cabecera de los frames reenviados
     private String username;
     private boolean videoActive = false;
-    private String videoRecipient = null; // Destinatario para video privado
-    private boolean authenticated;
+    private volatile String videoRecipient = null; // Destinatario para video privado
+    private volatile StreamTelemetry videoTelemetry; // Calidad del video que sube este cliente
+    private volatile List<String> videoCodecs = Collections.singletonList(Constants.VIDEO_MODE_JPEG); // Lo que sabe decodificar
+    private volatile boolean authenticated; // Lo fija un hilo de autenticación al terminar el login
     private volatile boolean running;
+    private final AtomicBoolean loginPending = new AtomicBoolean(); // Login enviado a verificar
     private final MessageHandlerRegistry handlerRegistry; // Registry para Strategy Pattern
     private final DatabaseService databaseService;
+    private volatile String sessionToken; // Último token entregado a esta conexión
+    private volatile boolean acksEnabled; // El cliente confirma la entrega de los mensajes (ver DeliveryService)
+    private final Object dataOutLock = new Object(); // Otros hilos (broadcast, mensajes privados) también escriben aquí
+    private final Object videoChannelLock = new Object(); // Varios remitentes pueden enviar video a este cliente
     
     public Socket getSocket(){return socket;}
     public String getUsername(){return username;}
     public Socket getVideoSocket(){return videoClient;}
     public boolean getVideoActive(){return videoActive;}
+    public String getVideoRecipient(){return videoRecipient;}
+    public StreamTelemetry getVideoTelemetry(){return videoTelemetry;}
+    public List<String> getVideoCodecs(){return videoCodecs;}
+    public void setVideoCodecs(List<String> codecs){this.videoCodecs = codecs;}
     // Métodos públicos para los handlers del Strategy Pattern
     public ChatServer getServer() { return server; }
     public boolean isAuthenticated() { return authenticated; }
-    public void setUsername(String username) { this.username = username; }
+    public void setUsername(String username) {
+        this.username = username;
+        this.usernameBytes = username != null ? username.getBytes(StandardCharsets.UTF_8) : null;
+    }
     public void setAuthenticated(boolean authenticated) { this.authenticated = authenticated; }
     public void setRunning(boolean running) { this.running = running; }
+    public boolean isRunning() { return running; }
+    public boolean isAcksEnabled() { return acksEnabled; }
+    public void setAcksEnabled(boolean acksEnabled) { this.acksEnabled = acksEnabled; }
+    public String getSessionToken() { return sessionToken; }
+    // Marca un login en verificación; false si ya había uno pendiente
+    public boolean beginLogin() { return loginPending.compareAndSet(false, true); }
+    public void endLogin() { loginPending.set(false); }
 
     public byte[] readBytes(int length) throws IOException {
         byte[] data = new byte[length];
@@ -50,7 +86,8 @@ public class ClientHandler implements Runnable {
         if (videoClient == null) {
             throw new IOException("Socket de video no disponible");
         }
-        videoIn = new DataInputStream(videoClient.getInputStream());
+        videoIn = new DataInputStream(new BufferedInputStream(videoClient.getInputStream(), VIDEO_BUFFER_SIZE));
+        videoTelemetry = new StreamTelemetry(username + " -> " + recipient);
         videoActive = true;
         videoRecipient = recipient;
         ExecutorService executor = server.getThreadPool();
@@ -83,6 +120,13 @@ public class ClientHandler implements Runnable {
         sendMessage(MessageBuilder.buildOk(command, message));
     }
 
+    // Entrega un token nuevo para que el cliente pueda reanudar la sesión si se corta
+    public void sendSessionToken() {
+        SessionTokens.Token token = server.getSessionTokens().issue(username);
+        sessionToken = token.getValue();
+        sendMessage(MessageBuilder.buildSessionToken(username, token.getValue(), token.getExpiresAtMillis()));
+    }
+
     public ClientHandler(Socket socket, ChatServer server, Socket videoSocket, DatabaseService databaseService) {
         this.socket = socket;
         this.videoClient = videoSocket;
@@ -90,7 +134,7 @@ public class ClientHandler implements Runnable {
         this.authenticated = false;
         this.running = true;
         this.databaseService = databaseService;
-        this.handlerRegistry = new MessageHandlerRegistry(databaseService);
+        this.handlerRegistry = new MessageHandlerRegistry(databaseService, server.getMetrics());
     }
 
     @Override
@@ -129,19 +173,8 @@ public class ClientHandler implements Runnable {
         String command = parts[0];
 
         try {
-            // Usar Strategy Pattern para procesar comandos
-            MessageHandler handler = handlerRegistry.getHandler(command);
-
-            if (handler != null) {
-                // Verificar si requiere autenticación
-                if (handler.requiresAuthentication() && !authenticated) {
-                    sendError("Debes iniciar sesión primero");
-                    return;
-                }
-
-                // Procesar con el handler
-                handler.handle(parts, this);
-            } else {
+            // Usar Strategy Pattern para procesar comandos (el registro mide cada despacho)
+            if (!handlerRegistry.dispatch(parts, this)) {
                 sendError("Comando desconocido: " + command);
             }
         } catch (Exception e) {
@@ -151,14 +184,20 @@ public class ClientHandler implements Runnable {
     }
     
     private void receiveVideo() {
+        String recipient = videoRecipient;
         try {
             while (videoActive && running && videoRecipient != null) {
-                int length = videoIn.readInt(); // tamaño del frame
-                byte[] frame = new byte[length];
-                videoIn.readFully(frame);
+                VideoPacket packet = VideoPacket.readUplink(videoIn);
+                if (packet.getLayer() == 0) {
+                    // Todas las capas comparten secuencia; la telemetría sigue la capa base
+                    videoTelemetry.record(packet.getSequence(), packet.getCaptureTimeMillis(),
+                            System.currentTimeMillis(), packet.getPayload().length);
+                }
                 // Enviar video solo al destinatario privado
-                boolean sent = server.sendPrivateVideo(frame, videoRecipient, this);
-                if (!sent) {
+                boolean sent = server.sendPrivateVideo(packet, videoRecipient, this);
+                if (sent) {
+                    server.getMetrics().videoFrameRelayed(packet.getPayload().length);
+                } else {
                     System.out.println("Error: No se pudo enviar video a " + videoRecipient);
                     videoActive = false;
                     sendError("No se pudo enviar video. El destinatario puede haberse desconectado.");
@@ -168,32 +207,108 @@ public class ClientHandler implements Runnable {
         } catch (IOException e) {
             System.out.println("Video finalizado para " + username);
         }
+        if (recipient != null) {
+            server.videoCallEnded(username, recipient);
+        }
+        StreamTelemetry telemetry = videoTelemetry;
+        if (telemetry != null) {
+            System.out.println("[VIDEO] " + telemetry);
+        }
+    }
+
+    /**
+     * Reenvía a este cliente un frame de otro usuario por el socket de video. El frame se
+     * encola en el {@link ViewerChannel} del cliente, que decide qué capa de simulcast le llega.
+     *
+     * @param sender quien envía el frame
+     * @param packet frame recibido del remitente
+     * @throws IOException si la salida de video de este cliente ya está cerrada
+     */
+    public void sendVideoFrame(ClientHandler sender, VideoPacket packet) throws IOException {
+        ViewerChannel channel = getVideoChannel();
+        if (!channel.offer(sender.getUsername(), sender.usernameBytes, packet) && !channel.isRunning()) {
+            throw new IOException("Salida de video cerrada");
+        }
+    }
+
+    private ViewerChannel getVideoChannel() throws IOException {
+        synchronized (videoChannelLock) {
+            if (videoChannel == null) {
+                // Buffer de envío pequeño: la congestión se nota en la cola del canal, que es
+                // donde se mide, y no queda escondida en el kernel sumando latencia
+                videoClient.setSendBufferSize(VIDEO_BUFFER_SIZE);
+                videoChannel = new ViewerChannel(username, new DataOutputStream(
+                        new BufferedOutputStream(videoClient.getOutputStream(), VIDEO_BUFFER_SIZE)));
+                videoChannel.start();
+            }
+            return videoChannel;
+        }
+    }
+
+    /**
+     * @return estado del video que este cliente está recibiendo (capa y conexión por remitente)
+     */
+    public List<String> describeIncomingVideo() {
+        synchronized (videoChannelLock) {
+            return videoChannel != null ? videoChannel.describe() : Collections.emptyList();
+        }
     }
 
     public void sendMessage(String message) {
         try {
-            if (dataOut != null && !socket.isClosed()) {
-                dataOut.writeUTF(message);
-                dataOut.flush();
+            synchronized (dataOutLock) {
+                if (dataOut != null && !socket.isClosed()) {
+                    dataOut.writeUTF(message);
+                    dataOut.flush();
+                }
             }
         } catch (IOException e) {
             System.err.println("Error enviando mensaje a " + username + ": " + e.getMessage());
         }
     }
 
+    /**
+     * Envía varios mensajes con una sola escritura al socket y un solo flush, sin que
+     * otro mensaje se intercale (entrega de la bandeja de desconectados al iniciar sesión).
+     *
+     * @return true si todos los mensajes se escribieron
+     */
+    public boolean sendMessages(List<String> messages) {
+        ByteArrayOutputStream burst = new ByteArrayOutputStream(messages.size() * 64);
+        try {
+            DataOutputStream out = new DataOutputStream(burst);
+            for (String message : messages) {
+                out.writeUTF(message);
+            }
+            synchronized (dataOutLock) {
+                if (dataOut == null || socket.isClosed()) {
+                    return false;
+                }
+                burst.writeTo(dataOut);
+                dataOut.flush();
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error enviando mensajes a " + username + ": " + e.getMessage());
+            return false;
+        }
+    }
+
 
     public void sendFile(String fileName, byte[] fileData) {
         try {
-            // Enviar encabezado
-            int fileSize = fileData.length;
-            sendMessage(MessageBuilder.buildFileTransferMetadata(fileName, fileSize));
-            
-            // No necesitamos Thread.sleep aquí - el cliente leerá cuando esté listo
-            // El flush() asegura que el mensaje se envíe inmediatamente
-            
-            // Enviar los bytes del archivo
-            dataOut.write(fileData);
-            dataOut.flush();
+            // Encabezado y bytes bajo el mismo lock para que ningún otro mensaje se intercale
+            synchronized (dataOutLock) {
+                int fileSize = fileData.length;
+                sendMessage(MessageBuilder.buildFileTransferMetadata(fileName, fileSize));
+                
+                // No necesitamos Thread.sleep aquí - el cliente leerá cuando esté listo
+                // El flush() asegura que el mensaje se envíe inmediatamente
+                
+                // Enviar los bytes del archivo
+                dataOut.write(fileData);
+                dataOut.flush();
+            }
 
             System.out.println("Enviando archivo " + fileName + " a " + username);
 
@@ -207,6 +322,11 @@ public class ClientHandler implements Runnable {
         running = false;
         videoActive = false; // Detener video si está activo
         server.removeClient(this);
+        synchronized (videoChannelLock) {
+            if (videoChannel != null) {
+                videoChannel.close();
+            }
+        }
 
         try {
             // Cerrar recursos de video primero
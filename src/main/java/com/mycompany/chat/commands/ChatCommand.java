@@ -31,7 +31,7 @@ public class ChatCommand implements Command {
         System.out.println("           ENVIAR MENSAJE DE CHAT");
         System.out.println("----------------------------------------------------");
         System.out.println("Destinatario: " + recipient);
-        System.out.println("(Escribe 'volver' para regresar al menu)");
+        System.out.println("(Escribe 'volver' para regresar al menu, '/stats' para ver las metricas del servidor)");
         System.out.println("NOTA: Los mensajes se envian en segundo plano.");
         System.out.println("      Puedes seguir escribiendo mientras se envian.\n");
         
@@ -42,6 +42,10 @@ public class ChatCommand implements Command {
             if (message.equalsIgnoreCase("volver")) {
                 break;
             }
+            if (message.equalsIgnoreCase("/stats")) {
+                client.sendMessage(Constants.CMD_STATS); // Solo responde a administradores
+                continue;
+            }
             
             if (!message.isEmpty()) {
                 // Validar tamaño del mensaje antes de enviar
@@ -15,7 +15,7 @@ public class ExitCommand implements Command {
     
     @Override
     public boolean execute() {
-        client.sendMessage("LOGOUT");
+        client.logout();
         client.setRunning(false);
         return true;
     }
@@ -0,0 +1,52 @@
+package com.mycompany.chat.commands;
+
+import java.util.Scanner;
+
+import com.mycompany.chat.ChatClient;
+
+/**
+ * Comando para ver el historial de la conversación con el destinatario actual.
+ * Implementa el patrón Command; pagina hacia atrás de a una página por vez.
+ */
+public class HistoryCommand implements Command {
+    private final ChatClient client;
+    private final Scanner scanner;
+    
+    public HistoryCommand(ChatClient client, Scanner scanner) {
+        this.client = client;
+        this.scanner = scanner;
+    }
+    
+    @Override
+    public boolean execute() {
+        String recipient = client.getCurrentRecipient();
+        if (recipient == null || recipient.isEmpty()) {
+            System.out.println("[!] Error: No hay destinatario seleccionado.");
+            return false;
+        }
+        
+        System.out.println("\n----------------------------------------------------");
+        System.out.println("           HISTORIAL DE MENSAJES");
+        System.out.println("----------------------------------------------------");
+        System.out.println("Conversacion con: " + recipient + "\n");
+        
+        String cursor = client.requestHistory(recipient, null);
+        while (cursor != null && !cursor.isEmpty() && client.isRunning()) {
+            System.out.print("\nEnter para ver mensajes anteriores, 'volver' para regresar: ");
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("volver")) {
+                return true;
+            }
+            cursor = client.requestHistory(recipient, cursor);
+        }
+        if (cursor != null) {
+            System.out.println("\n(No hay mensajes anteriores)");
+        }
+        return true;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Ver historial de mensajes";
+    }
+}
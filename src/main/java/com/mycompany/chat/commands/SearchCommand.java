@@ -0,0 +1,51 @@
+package com.mycompany.chat.commands;
+
+import java.util.Scanner;
+
+import com.mycompany.chat.ChatClient;
+
+/**
+ * Comando para buscar texto en los mensajes enviados y recibidos.
+ * Implementa el patrón Command; muestra los resultados de a una página por vez.
+ */
+public class SearchCommand implements Command {
+    private final ChatClient client;
+    private final Scanner scanner;
+    
+    public SearchCommand(ChatClient client, Scanner scanner) {
+        this.client = client;
+        this.scanner = scanner;
+    }
+    
+    @Override
+    public boolean execute() {
+        System.out.println("\n----------------------------------------------------");
+        System.out.println("           BUSCAR EN MENSAJES");
+        System.out.println("----------------------------------------------------");
+        System.out.print("Palabras a buscar (o 'volver' para regresar): ");
+        String query = scanner.nextLine().trim();
+        if (query.isEmpty() || query.equalsIgnoreCase("volver")) {
+            return true;
+        }
+        if (query.contains("|")) {
+            System.out.println("[!] Error: La busqueda no puede contener el caracter '|'.");
+            return false;
+        }
+        
+        String next = client.requestSearch(query, 0);
+        while (next != null && !next.isEmpty() && client.isRunning()) {
+            System.out.print("\nEnter para ver mas resultados, 'volver' para regresar: ");
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("volver")) {
+                return true;
+            }
+            next = client.requestSearch(query, Integer.parseInt(next));
+        }
+        return true;
+    }
+    
+    @Override
+    public String getDescription() {
+        return "Buscar en mensajes";
+    }
+}
@@ -3,6 +3,8 @@ package com.mycompany.chat.commands;
 import com.mycompany.chat.ChatClient;
 import com.mycompany.chat.protocol.MessageBuilder;
 import com.mycompany.chat.util.Constants;
+import com.mycompany.chat.video.VideoStreamStats;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -48,7 +50,8 @@ public class VideoCommand implements Command {
         System.out.println("(Escribe 'volver' para regresar al menu o 'detener' para finalizar el video)\n");
         System.out.println("Comandos disponibles:");
         System.out.println("  - Escribe un mensaje para enviarlo a " + recipient);
-        System.out.println("  - Escribe '/detener' o '/stop' para finalizar la videollamada\n");
+        System.out.println("  - Escribe '/detener' o '/stop' para finalizar la videollamada");
+        System.out.println("  - Escribe '/stats' para ver frames, latencia, jitter y perdidas (locales y del servidor)\n");
 
         // Esperar comandos durante la videollamada
         while (client.isVideoActive() && client.isRunning()) {
@@ -60,6 +63,21 @@ public class VideoCommand implements Command {
                 client.stopVideoCall();
                 System.out.println("[VIDEO DETENIDO] Videollamada finalizada.\n");
                 break;
+            } else if (input.equalsIgnoreCase("/stats")) {
+                String sending = client.getVideoSendSummary();
+                if (sending != null) {
+                    System.out.println("[VIDEO] Transmision: " + sending);
+                }
+                List<VideoStreamStats> stats = client.getVideoStats();
+                if (stats.isEmpty()) {
+                    System.out.println("[VIDEO] Aun no se han recibido frames.\n");
+                }
+                for (VideoStreamStats s : stats) {
+                    System.out.println("[VIDEO] " + s);
+                }
+                // El servidor responde con su propia medición de cada flujo
+                client.sendMessage(MessageBuilder.buildVideoStats());
+                continue;
             } else if (!input.isEmpty()) {
                 System.out.println("[!] Comando no reconocido. Escribe 'volver' o 'detener'.\n");
             }
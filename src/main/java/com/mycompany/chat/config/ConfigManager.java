@@ -3,7 +3,11 @@ package com.mycompany.chat.config;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
+
+import com.mycompany.chat.util.Constants;
 
 /**
  * Gestiona la configuración de la aplicación, incluyendo credenciales de base de datos.
@@ -44,6 +48,7 @@ public class ConfigManager {
         properties.setProperty("db.user", DEFAULT_DB_USER);
         properties.setProperty("db.password", DEFAULT_DB_PASSWORD);
         properties.setProperty("db.url", DEFAULT_DB_URL);
+        properties.setProperty("admin.users", Constants.ADMIN_USERS);
         saveConfig();
     }
     
@@ -82,6 +87,400 @@ public class ConfigManager {
         return properties.getProperty("db.url", DEFAULT_DB_URL);
     }
     
+    /**
+     * Obtiene las conexiones a la base de datos que el pool mantiene abiertas aunque no se usen.
+     */
+    public static int getDbPoolMinIdle() {
+        return getIntProperty("db.pool.min", Constants.DB_POOL_MIN_IDLE, 0);
+    }
+    
+    /**
+     * Obtiene el máximo de conexiones a la base de datos en uso a la vez.
+     */
+    public static int getDbPoolMaxSize() {
+        return getIntProperty("db.pool.max", Constants.DB_POOL_MAX_SIZE, 1);
+    }
+    
+    /**
+     * Obtiene cuánto espera una consulta por una conexión libre antes de fallar (ms).
+     */
+    public static int getDbPoolBorrowTimeoutMs() {
+        return getIntProperty("db.pool.timeout.ms", Constants.DB_POOL_BORROW_TIMEOUT_MS, 0);
+    }
+    
+    /**
+     * Obtiene tras cuánta inactividad se cierra una conexión sobrante del pool (ms).
+     */
+    public static int getDbPoolIdleTimeoutMs() {
+        return getIntProperty("db.pool.idle.ms", Constants.DB_POOL_IDLE_TIMEOUT_MS, 1000);
+    }
+    
+    /**
+     * Obtiene dónde se guardan los usuarios: "mysql" (por defecto) o "file", un log
+     * local que no necesita ningún servicio externo.
+     */
+    public static String getUsersRepository() {
+        loadConfig();
+        return properties.getProperty("users.repository", Constants.USERS_REPOSITORY_MYSQL).trim().toLowerCase();
+    }
+    
+    /**
+     * Obtiene la ruta del log de usuarios cuando users.repository=file.
+     */
+    public static String getUsersFile() {
+        loadConfig();
+        return properties.getProperty("users.file", Constants.USERS_FILE).trim();
+    }
+    
+    /**
+     * Obtiene cada cuántos segundos se revisa si conviene compactar el log de usuarios.
+     */
+    public static int getUsersFileCompactSeconds() {
+        return getIntProperty("users.file.compact.seconds", Constants.USERS_FILE_COMPACT_SECONDS, 1);
+    }
+    
+    /**
+     * Indica si el servidor mantiene en memoria el directorio de usuarios (usuario y hash)
+     * para autenticar sin consultar MySQL en cada login.
+     */
+    public static boolean isUsersCacheEnabled() {
+        loadConfig();
+        return Boolean.parseBoolean(properties.getProperty("users.cache.enabled", "true").trim());
+    }
+    
+    /**
+     * Obtiene cada cuántos segundos se recarga desde la base el directorio de usuarios.
+     */
+    public static int getUsersCacheRefreshSeconds() {
+        return getIntProperty("users.cache.refresh.seconds", Constants.USERS_CACHE_REFRESH_SECONDS, 1);
+    }
+    
+    /**
+     * Obtiene los hilos que verifican contraseñas. Por defecto, uno por núcleo: BCrypt
+     * usa CPU de forma intensiva y más hilos solo competirían entre sí.
+     */
+    public static int getAuthThreads() {
+        return getIntProperty("auth.threads", Runtime.getRuntime().availableProcessors(), 1);
+    }
+    
+    /**
+     * Obtiene cuántos logins pueden esperar verificación antes de rechazar los nuevos.
+     */
+    public static int getAuthQueueCapacity() {
+        return getIntProperty("auth.queue", Constants.AUTH_QUEUE_CAPACITY, 1);
+    }
+    
+    /**
+     * Obtiene el costo BCrypt fijo para los hashes nuevos, o 0 (por defecto) para
+     * calibrarlo al iniciar el servidor.
+     */
+    public static int getBcryptCost() {
+        return getIntProperty("auth.bcrypt.cost", 0, 0);
+    }
+    
+    /**
+     * Obtiene el tiempo máximo por hash, en ms, con que se calibra el costo BCrypt.
+     */
+    public static int getBcryptBudgetMs() {
+        return getIntProperty("auth.bcrypt.budget.ms", Constants.BCRYPT_BUDGET_MS, 1);
+    }
+    
+    /**
+     * Obtiene el costo BCrypt mínimo, aunque en este CPU se pase del presupuesto.
+     */
+    public static int getBcryptMinCost() {
+        return getIntProperty("auth.bcrypt.min.cost", Constants.BCRYPT_MIN_COST, 4);
+    }
+    
+    /**
+     * Obtiene los minutos de validez de los tokens para reanudar sesión.
+     */
+    public static int getSessionTokenTtlMinutes() {
+        return getIntProperty("auth.token.ttl.minutes", Constants.SESSION_TOKEN_TTL_MINUTES, 1);
+    }
+    
+    // Lee un entero con un mínimo; si falta o no es válido usa el valor por defecto
+    private static int getIntProperty(String key, int defaultValue, int min) {
+        loadConfig();
+        try {
+            return Math.max(min, Integer.parseInt(properties.getProperty(key, String.valueOf(defaultValue)).trim()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Obtiene el tamaño del pool de hilos del servidor. Cada cliente ocupa un hilo,
+     * y uno más mientras transmite video.
+     */
+    public static int getServerThreadPoolSize() {
+        loadConfig();
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("server.threads",
+                    String.valueOf(Constants.SERVER_THREAD_POOL_SIZE)).trim()));
+        } catch (NumberFormatException e) {
+            return Constants.SERVER_THREAD_POOL_SIZE;
+        }
+    }
+    
+    /**
+     * Obtiene el modo de video preferido del cliente: "jpeg" (frames completos),
+     * "tiles" (solo los mosaicos que cambiaron) o "h264". El modo final de cada
+     * llamada se negocia con el servidor según lo que soporta el destinatario.
+     */
+    public static String getVideoMode() {
+        loadConfig();
+        return properties.getProperty("video.mode", Constants.VIDEO_MODE_JPEG).trim().toLowerCase();
+    }
+    
+    /**
+     * Obtiene la fuente de video del cliente: "camera", "camera:N", "file:ruta" o
+     * "synthetic:ANCHOxALTO@FPS" (ver FrameSources).
+     */
+    public static String getVideoSource() {
+        loadConfig();
+        return properties.getProperty("video.source", "camera").trim();
+    }
+    
+    /**
+     * Obtiene cuántas capas de simulcast publica el cliente (1 a 3): tamaño completo,
+     * mitad y cuarto. El servidor reenvía a cada receptor la que su conexión soporta.
+     */
+    public static int getVideoSimulcastLayers() {
+        loadConfig();
+        try {
+            return Math.max(1, Math.min(3, Integer.parseInt(properties.getProperty("video.simulcast.layers",
+                    String.valueOf(Constants.VIDEO_SIMULCAST_LAYERS)).trim())));
+        } catch (NumberFormatException e) {
+            return Constants.VIDEO_SIMULCAST_LAYERS;
+        }
+    }
+    
+    /**
+     * Indica si el servidor graba las videollamadas que reenvía.
+     */
+    public static boolean isVideoRecordingEnabled() {
+        loadConfig();
+        return Boolean.parseBoolean(properties.getProperty("video.recording.enabled", "false").trim());
+    }
+    
+    /**
+     * Obtiene el directorio donde el servidor guarda las grabaciones.
+     */
+    public static String getVideoRecordingDir() {
+        loadConfig();
+        return properties.getProperty("video.recording.dir", Constants.VIDEO_RECORDING_DIR).trim();
+    }
+    
+    /**
+     * Obtiene el tamaño en MB a partir del cual una grabación pasa a un segmento nuevo.
+     */
+    public static int getVideoRecordingSegmentMb() {
+        loadConfig();
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("video.recording.segment.mb",
+                    String.valueOf(Constants.VIDEO_RECORDING_SEGMENT_MB)).trim()));
+        } catch (NumberFormatException e) {
+            return Constants.VIDEO_RECORDING_SEGMENT_MB;
+        }
+    }
+    
+    /**
+     * Obtiene cuántos frames pueden esperar a ser grabados. Si el disco se atrasa más,
+     * se descartan frames de la grabación (nunca de la llamada).
+     */
+    public static int getVideoRecordingQueueFrames() {
+        loadConfig();
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("video.recording.queue",
+                    String.valueOf(Constants.VIDEO_RECORDING_QUEUE_FRAMES)).trim()));
+        } catch (NumberFormatException e) {
+            return Constants.VIDEO_RECORDING_QUEUE_FRAMES;
+        }
+    }
+    
+    /**
+     * Indica si el servidor guarda el historial de mensajes.
+     */
+    public static boolean isHistoryEnabled() {
+        loadConfig();
+        return Boolean.parseBoolean(properties.getProperty("history.enabled", "true").trim());
+    }
+    
+    /**
+     * Obtiene el directorio de los segmentos del historial.
+     */
+    public static String getHistoryDir() {
+        loadConfig();
+        return properties.getProperty("history.dir", Constants.HISTORY_DIR).trim();
+    }
+    
+    /**
+     * Obtiene el tamaño en MB de cada segmento del historial.
+     */
+    public static int getHistorySegmentMb() {
+        return getIntProperty("history.segment.mb", Constants.HISTORY_SEGMENT_MB, 1);
+    }
+    
+    /**
+     * Indica si el historial mantiene el índice para buscar texto.
+     */
+    public static boolean isHistorySearchEnabled() {
+        loadConfig();
+        return Boolean.parseBoolean(properties.getProperty("history.search.enabled", "true").trim());
+    }
+    
+    /**
+     * Indica si los eventos del servidor (logins, mensajes, archivos...) se muestran en
+     * la consola.
+     */
+    public static boolean isEventLogEnabled() {
+        loadConfig();
+        return Boolean.parseBoolean(properties.getProperty("events.log.enabled", "false").trim());
+    }
+    
+    /**
+     * Obtiene la memoria en MB para los últimos mensajes de las conversaciones activas
+     * (0 = HISTORY siempre lee del disco).
+     */
+    public static int getHistoryTailCacheMb() {
+        return getIntProperty("history.tail.cache.mb", Constants.HISTORY_TAIL_CACHE_MB, 0);
+    }
+    
+    /**
+     * Obtiene cuántos segmentos recientes del historial quedan sin comprimir.
+     */
+    public static int getHistoryHotSegments() {
+        return getIntProperty("history.hot.segments", Constants.HISTORY_HOT_SEGMENTS, 1);
+    }
+    
+    /**
+     * Obtiene los días tras los que vence un mensaje del historial (0 = nunca).
+     */
+    public static int getHistoryRetentionDays() {
+        return getIntProperty("history.retention.days", Constants.HISTORY_RETENTION_DAYS, 0);
+    }
+    
+    /**
+     * Obtiene cuántos mensajes recientes de cada conversación se conservan aunque venzan.
+     */
+    public static int getHistoryRetentionKeepLast() {
+        return getIntProperty("history.retention.keep.last", Constants.HISTORY_RETENTION_KEEP_LAST, 0);
+    }
+    
+    /**
+     * Obtiene cada cuántos minutos se compactan los segmentos fríos del historial.
+     */
+    public static int getHistoryCompactMinutes() {
+        return getIntProperty("history.compact.minutes", Constants.HISTORY_COMPACT_MINUTES, 1);
+    }
+    
+    /**
+     * Indica si los mensajes se copian también a la tabla messages de MySQL.
+     */
+    public static boolean isMessagesDbEnabled() {
+        loadConfig();
+        return Boolean.parseBoolean(properties.getProperty("messages.db.enabled", "false").trim());
+    }
+    
+    /**
+     * Obtiene cuántos mensajes pueden esperar en memoria a ser guardados en MySQL.
+     */
+    public static int getMessagesDbQueue() {
+        return getIntProperty("messages.db.queue", Constants.MESSAGES_DB_QUEUE, 1);
+    }
+    
+    /**
+     * Obtiene cuántas filas se insertan por lote en la tabla messages.
+     */
+    public static int getMessagesDbBatchSize() {
+        return getIntProperty("messages.db.batch.size", Constants.MESSAGES_DB_BATCH_SIZE, 1);
+    }
+    
+    /**
+     * Obtiene cuánto espera un mensaje como máximo antes de escribir un lote incompleto.
+     */
+    public static int getMessagesDbFlushMs() {
+        return getIntProperty("messages.db.flush.ms", Constants.MESSAGES_DB_FLUSH_MS, 1);
+    }
+    
+    /**
+     * Obtiene el plazo para guardar los mensajes pendientes al detener el servidor.
+     */
+    public static int getMessagesDbShutdownMs() {
+        return getIntProperty("messages.db.shutdown.ms", Constants.MESSAGES_DB_SHUTDOWN_MS, 0);
+    }
+    
+    /**
+     * Indica si los mensajes a usuarios desconectados se guardan para entregarlos al iniciar sesión.
+     */
+    public static boolean isOfflineQueueEnabled() {
+        loadConfig();
+        return Boolean.parseBoolean(properties.getProperty("offline.enabled", "true").trim());
+    }
+    
+    /**
+     * Obtiene el archivo de la bandeja de mensajes para usuarios desconectados.
+     */
+    public static String getOfflineQueueFile() {
+        loadConfig();
+        return properties.getProperty("offline.file", Constants.OFFLINE_QUEUE_FILE).trim();
+    }
+    
+    /**
+     * Obtiene el máximo de mensajes pendientes por usuario desconectado.
+     */
+    public static int getOfflineMaxPerUser() {
+        return getIntProperty("offline.max.per.user", Constants.OFFLINE_MAX_PER_USER, 1);
+    }
+    
+    /**
+     * Obtiene las horas que un mensaje espera a su destinatario antes de descartarse.
+     */
+    public static int getOfflineTtlHours() {
+        return getIntProperty("offline.ttl.hours", Constants.OFFLINE_TTL_HOURS, 1);
+    }
+    
+    /**
+     * Obtiene los usuarios que pueden consultar las métricas con STATS
+     * ({@code admin.users}, separados por coma). Por defecto no hay ninguno: las cuentas
+     * de ejemplo tienen contraseñas conocidas y no deben poder verlas.
+     */
+    public static Set<String> getAdminUsers() {
+        loadConfig();
+        Set<String> admins = new HashSet<>();
+        for (String user : properties.getProperty("admin.users", Constants.ADMIN_USERS).split(",")) {
+            if (!user.trim().isEmpty()) {
+                admins.add(user.trim());
+            }
+        }
+        return admins;
+    }
+    
+    /**
+     * Obtiene el archivo donde se exportan las métricas en formato Prometheus (vacío = no
+     * se exportan a archivo).
+     */
+    public static String getMetricsFile() {
+        loadConfig();
+        return properties.getProperty("metrics.file", "").trim();
+    }
+    
+    /**
+     * Obtiene cada cuántos segundos se reescribe el archivo de métricas.
+     */
+    public static int getMetricsFileSeconds() {
+        return getIntProperty("metrics.file.seconds", Constants.METRICS_FILE_SECONDS, 1);
+    }
+    
+    /**
+     * Obtiene el puerto local (127.0.0.1) donde se sirven las métricas en /metrics
+     * (0 = desactivado).
+     */
+    public static int getMetricsHttpPort() {
+        return getIntProperty("metrics.http.port", 0, 0);
+    }
+    
     /**
      * Establece el usuario de la base de datos.
      */
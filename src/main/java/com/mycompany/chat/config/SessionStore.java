@@ -0,0 +1,113 @@
+package com.mycompany.chat.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Guarda en el cliente el token de sesión que entrega el servidor, para reanudar la
+ * sesión tras un corte (o al volver a abrir el cliente) sin pedir la contraseña.
+ *
+ * El archivo recuerda a qué servidor pertenece el token y se borra al hacer logout o
+ * si el servidor lo rechaza. Quien tenga el archivo puede reanudar la sesión hasta
+ * que venza, así que se crea con permisos solo para el dueño cuando el sistema lo permite.
+ */
+public final class SessionStore {
+    private static final Path FILE = Paths.get(Constants.SESSION_TOKEN_FILE);
+
+    private SessionStore() {
+        throw new AssertionError("No se debe instanciar SessionStore");
+    }
+
+    /**
+     * Sesión guardada.
+     */
+    public static final class Session {
+        private final String username;
+        private final String token;
+
+        Session(String username, String token) {
+            this.username = username;
+            this.token = token;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getToken() {
+            return token;
+        }
+    }
+
+    /**
+     * @return la sesión guardada para ese servidor, o null si no hay o ya venció
+     */
+    public static Session load(String host, int port) {
+        if (!Files.exists(FILE)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(FILE)) {
+            props.load(in);
+        } catch (IOException e) {
+            return null;
+        }
+        String username = props.getProperty("username");
+        String token = props.getProperty("token");
+        if (username == null || token == null || !serverKey(host, port).equals(props.getProperty("server"))) {
+            return null;
+        }
+        try {
+            if (System.currentTimeMillis() >= Long.parseLong(props.getProperty("expires", "0"))) {
+                clear();
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new Session(username, token);
+    }
+
+    public static void save(String host, int port, String username, String token, long expiresAtMillis) {
+        Properties props = new Properties();
+        props.setProperty("server", serverKey(host, port));
+        props.setProperty("username", username);
+        props.setProperty("token", token);
+        props.setProperty("expires", String.valueOf(expiresAtMillis));
+        try {
+            if (!Files.exists(FILE)) {
+                Files.createFile(FILE);
+                try {
+                    Files.setPosixFilePermissions(FILE, PosixFilePermissions.fromString("rw-------"));
+                } catch (UnsupportedOperationException e) {
+                    // Sistema sin permisos POSIX (Windows): queda con los permisos por defecto
+                }
+            }
+            try (OutputStream out = Files.newOutputStream(FILE)) {
+                props.store(out, "Token para reanudar la sesion de chat");
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar la sesión: " + e.getMessage());
+        }
+    }
+
+    public static void clear() {
+        try {
+            Files.deleteIfExists(FILE);
+        } catch (IOException e) {
+            System.err.println("No se pudo borrar la sesión guardada: " + e.getMessage());
+        }
+    }
+
+    private static String serverKey(String host, int port) {
+        return host + ":" + port;
+    }
+}
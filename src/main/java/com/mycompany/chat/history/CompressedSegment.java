@@ -0,0 +1,406 @@
+package com.mycompany.chat.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Segmento frío del historial, comprimido por bloques ({@code 0000000000.clog}).
+ *
+ * Los registros conservan el formato y el offset que tenían en el {@code .log}: los ids
+ * de los mensajes y la cadena "anterior" de cada conversación siguen valiendo. Se
+ * agrupan en bloques de unos {@value #BLOCK_RAW_BYTES} bytes que se comprimen por
+ * separado con deflate, así leer un mensaje descomprime un solo bloque.
+ * <pre>
+ * [magia "CHLZ":int][versión:short][número:int]
+ * bloque*: deflate de ([offset original:int][registro])*
+ * índice disperso, una entrada por bloque:
+ *   [offset del primer registro:int][posición:long][comprimido:int][original:int][crc:int]
+ * [posición del índice:long][bloques:int][magia:int]
+ * </pre>
+ * El CRC32 de cada entrada cubre el bloque descomprimido. El archivo se escribe aparte
+ * y se renombra al terminar: un segmento comprimido está completo o no existe.
+ */
+final class CompressedSegment {
+    static final int MAGIC = 0x43484C5A; // "CHLZ"
+    static final short FORMAT_VERSION = 1;
+    static final int BLOCK_RAW_BYTES = 16 * 1024;
+    private static final int HEADER_BYTES = 10;
+    private static final int ENTRY_BYTES = 4 + 8 + 4 + 4 + 4;
+    private static final int TRAILER_BYTES = 8 + 4 + 4;
+    // Identifica cada segmento abierto en la caché: al reescribirlo cambian sus bloques
+    private static final AtomicInteger OPENED = new AtomicInteger();
+
+    private final int index;
+    private final int cacheId = OPENED.incrementAndGet();
+    private final MappedByteBuffer map;
+    private final int[] firstOffsets;
+    private final long[] positions;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final int[] crcs;
+    private final BlockCache cache;
+
+    /**
+     * Recorrido de los registros de un segmento.
+     */
+    interface RecordVisitor {
+        /**
+         * @param offset offset original del registro (parte baja del id)
+         * @param block bloque descomprimido
+         * @param position dónde empieza el registro dentro del bloque
+         */
+        void visit(int offset, ByteBuffer block, int position) throws IOException;
+    }
+
+    /**
+     * Bloques descomprimidos usados hace poco, compartidos por todos los segmentos:
+     * paginar una conversación lee muchos mensajes seguidos del mismo bloque.
+     */
+    static final class BlockCache {
+        private final Map<Long, ByteBuffer> blocks;
+        private long hits;
+        private long misses;
+
+        BlockCache(int capacity) {
+            this.blocks = new LinkedHashMap<Long, ByteBuffer>(capacity * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized ByteBuffer get(long key) {
+            ByteBuffer block = blocks.get(key);
+            if (block != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return block;
+        }
+
+        synchronized void put(long key, ByteBuffer block) {
+            blocks.put(key, block);
+        }
+
+        synchronized String describe() {
+            long total = hits + misses;
+            return String.format("%d bloques en caché, %.0f%% aciertos", blocks.size(),
+                    total > 0 ? 100.0 * hits / total : 0);
+        }
+    }
+
+    private CompressedSegment(int index, MappedByteBuffer map, int blocks, BlockCache cache) {
+        this.index = index;
+        this.map = map;
+        this.cache = cache;
+        this.firstOffsets = new int[blocks];
+        this.positions = new long[blocks];
+        this.compressedLengths = new int[blocks];
+        this.rawLengths = new int[blocks];
+        this.crcs = new int[blocks];
+    }
+
+    static String fileName(int index) {
+        return String.format("%010d.clog", index);
+    }
+
+    /**
+     * Abre un segmento comprimido y carga su índice disperso.
+     *
+     * @throws IOException si el archivo no es un segmento comprimido válido
+     */
+    static CompressedSegment open(Path file, int index, BlockCache cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("tamaño inválido");
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int trailer = (int) size - TRAILER_BYTES;
+            if (map.getInt(0) != MAGIC || map.getShort(4) != FORMAT_VERSION || map.getInt(6) != index
+                    || map.getInt(trailer + 12) != MAGIC) {
+                throw new IOException("formato desconocido");
+            }
+            long indexPosition = map.getLong(trailer);
+            int blocks = map.getInt(trailer + 8);
+            if (blocks < 0 || indexPosition < HEADER_BYTES || indexPosition + (long) blocks * ENTRY_BYTES != trailer) {
+                throw new IOException("índice dañado");
+            }
+            CompressedSegment segment = new CompressedSegment(index, map, blocks, cache);
+            int position = (int) indexPosition;
+            for (int b = 0; b < blocks; b++, position += ENTRY_BYTES) {
+                segment.firstOffsets[b] = map.getInt(position);
+                segment.positions[b] = map.getLong(position + 4);
+                segment.compressedLengths[b] = map.getInt(position + 12);
+                segment.rawLengths[b] = map.getInt(position + 16);
+                segment.crcs[b] = map.getInt(position + 20);
+                if (segment.positions[b] < HEADER_BYTES
+                        || segment.positions[b] + segment.compressedLengths[b] > indexPosition) {
+                    throw new IOException("índice dañado");
+                }
+            }
+            return segment;
+        }
+    }
+
+    int getBlockCount() {
+        return firstOffsets.length;
+    }
+
+    long getFileBytes() {
+        return map.capacity();
+    }
+
+    /**
+     * Bloque descomprimido donde estaría el registro con ese offset original, o null
+     * si el bloque está dañado.
+     */
+    ByteBuffer blockFor(int offset) {
+        int low = 0;
+        int high = firstOffsets.length - 1;
+        int found = -1;
+        while (low <= high) { // Último bloque cuyo primer registro es <= offset
+            int mid = (low + high) >>> 1;
+            if (firstOffsets[mid] <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found < 0 ? null : block(found);
+    }
+
+    /**
+     * Posición dentro del bloque del registro con ese offset original, o -1.
+     */
+    static int positionOf(ByteBuffer block, int offset) {
+        int position = 0;
+        int end = block.limit();
+        while (position <= end - 8) {
+            int current = block.getInt(position);
+            if (current == offset) {
+                return position + 4;
+            }
+            if (current > offset) {
+                return -1;
+            }
+            position += 8 + block.getInt(position + 4);
+        }
+        return -1;
+    }
+
+    /**
+     * Recorre todos los registros en orden.
+     */
+    void forEach(RecordVisitor visitor) throws IOException {
+        for (int b = 0; b < firstOffsets.length; b++) {
+            ByteBuffer block = decompress(b);
+            if (block == null) {
+                continue;
+            }
+            int position = 0;
+            int end = block.limit();
+            while (position <= end - 8) {
+                int length = block.getInt(position + 4);
+                if (length < 0 || position + 8 + length > end) {
+                    break;
+                }
+                visitor.visit(block.getInt(position), block, position + 4);
+                position += 8 + length;
+            }
+        }
+    }
+
+    private ByteBuffer block(int b) {
+        long key = ((long) cacheId << 32) | b;
+        ByteBuffer block = cache.get(key);
+        if (block == null) {
+            block = decompress(b);
+            if (block != null) {
+                cache.put(key, block);
+            }
+        }
+        return block;
+    }
+
+    private ByteBuffer decompress(int b) {
+        byte[] compressed = new byte[compressedLengths[b]];
+        ByteBuffer source = map.duplicate();
+        source.position((int) positions[b]);
+        source.get(compressed);
+        byte[] raw = new byte[rawLengths[b]];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int read = inflater.inflate(raw, length, raw.length - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(raw, 0, length);
+            if (length != raw.length || (int) crc.getValue() != crcs[b]) {
+                System.err.println("[HISTORIAL] Bloque " + b + " dañado en " + fileName(index));
+                return null;
+            }
+        } catch (DataFormatException e) {
+            System.err.println("[HISTORIAL] Bloque " + b + " dañado en " + fileName(index) + ": " + e.getMessage());
+            return null;
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(raw).asReadOnlyBuffer();
+    }
+
+    /**
+     * Escribe un segmento comprimido en un archivo temporal; {@link #finish} lo deja
+     * en su lugar definitivo.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path temporary;
+        private final FileChannel channel;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer raw = ByteBuffer.allocate(BLOCK_RAW_BYTES);
+        private byte[] compressed = new byte[BLOCK_RAW_BYTES + 1024];
+        private ByteBuffer entries = ByteBuffer.allocate(ENTRY_BYTES * 64);
+        private int blocks;
+        private int blockFirstOffset = -1;
+        private long position = HEADER_BYTES;
+        private int records;
+        private long rawBytes;
+
+        Writer(Path temporary, int index) throws IOException {
+            this.temporary = temporary;
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putShort(FORMAT_VERSION).putInt(index).flip();
+            writeFully(header, 0);
+        }
+
+        /**
+         * Agrega un registro: los bytes de {@code source} entre position y position + length.
+         */
+        void add(int offset, ByteBuffer source, int position, int length) throws IOException {
+            if (raw.position() > 0 && raw.remaining() < 4 + length) {
+                flushBlock();
+            }
+            if (raw.capacity() < 4 + length) { // Registro más grande que un bloque: va solo
+                raw = ByteBuffer.allocate(4 + length);
+            }
+            if (blockFirstOffset < 0) {
+                blockFirstOffset = offset;
+            }
+            ByteBuffer record = source.duplicate();
+            record.limit(position + length).position(position);
+            raw.putInt(offset).put(record);
+            records++;
+            rawBytes += length;
+        }
+
+        int getRecords() {
+            return records;
+        }
+
+        long getRawBytes() {
+            return rawBytes;
+        }
+
+        private void flushBlock() throws IOException {
+            int rawLength = raw.position();
+            crc.reset();
+            crc.update(raw.array(), 0, rawLength);
+            deflater.reset();
+            deflater.setInput(raw.array(), 0, rawLength);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == compressed.length) {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+            writeFully(ByteBuffer.wrap(compressed, 0, length), position);
+
+            if (entries.remaining() < ENTRY_BYTES) {
+                ByteBuffer larger = ByteBuffer.allocate(entries.capacity() * 2);
+                entries.flip();
+                entries = larger.put(entries);
+            }
+            entries.putInt(blockFirstOffset).putLong(position).putInt(length).putInt(rawLength)
+                    .putInt((int) crc.getValue());
+            position += length;
+            blocks++;
+            blockFirstOffset = -1;
+            if (raw.capacity() > BLOCK_RAW_BYTES) {
+                raw = ByteBuffer.allocate(BLOCK_RAW_BYTES);
+            } else {
+                raw.clear();
+            }
+        }
+
+        /**
+         * Escribe el índice, sincroniza y reemplaza {@code target} con el segmento.
+         *
+         * @return tamaño del archivo
+         */
+        long finish(Path target) throws IOException {
+            if (raw.position() > 0) {
+                flushBlock();
+            }
+            long indexPosition = position;
+            entries.flip();
+            writeFully(entries, position);
+            position += entries.limit();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            trailer.putLong(indexPosition).putInt(blocks).putInt(MAGIC).flip();
+            writeFully(trailer, position);
+            position += TRAILER_BYTES;
+            channel.force(true);
+            channel.close();
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return position;
+        }
+
+        private void writeFully(ByteBuffer buffer, long at) throws IOException {
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+        }
+
+        /**
+         * Libera el escritor; si no se llamó a {@link #finish}, borra el temporal.
+         */
+        @Override
+        public void close() {
+            deflater.end();
+            try {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            } catch (IOException e) {
+                System.err.println("[HISTORIAL] No se pudo borrar " + temporary + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,955 @@
+package com.mycompany.chat.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Historial de mensajes del servidor: un log de solo agregado en segmentos.
+ *
+ * Escritura: {@link #append} solo encola el mensaje (microsegundos). Un hilo escritor
+ * propio vacía la cola por lotes, escribe el lote de forma secuencial al final del
+ * segmento activo y hace un único {@code force} por lote (group commit): con mucho
+ * tráfico, cientos de mensajes comparten el mismo fsync. El futuro de cada mensaje se
+ * completa, con su id, cuando el lote quedó en disco.
+ *
+ * Archivos en el directorio del historial, uno por segmento:
+ * <pre>
+ * 0000000000.log, 0000000001.log, ...
+ * </pre>
+ * Cada segmento empieza con {@code [magia "CHLG":int][versión:short][número:int]} y
+ * sigue con un registro por mensaje:
+ * {@code [longitud:int][crc:int][fecha ms:long][anterior:long][remitente:short+UTF-8]
+ * [destinatario:short+UTF-8][texto:int+UTF-8]}. El CRC32 cubre todo lo que sigue al
+ * campo crc, así un registro cortado por una caída se detecta y el log se recupera
+ * hasta el último registro completo.
+ *
+ * Índice por conversación: el id de un mensaje es su posición en el log
+ * ({@code número de segmento << 32 | offset}) y cada registro guarda el id del mensaje
+ * anterior de la misma conversación. En memoria solo se mantiene el último id de cada
+ * conversación; paginar hacia atrás es seguir esa cadena, sin recorrer el log. Al
+ * iniciar, el índice se reconstruye leyendo los segmentos.
+ *
+ * Lectura: los segmentos se leen mapeados en memoria ({@link MappedByteBuffer}); las
+ * páginas recientes salen del page cache sin llamadas al sistema. El segmento activo
+ * se mapea completo al crearlo, así no hay que volver a mapearlo a medida que crece.
+ *
+ * Búsqueda: si se habilita, el escritor mantiene además un {@link SearchIndex} con cada
+ * lote ya confirmado, y al iniciar se reconstruye junto con el índice de conversaciones.
+ *
+ * Retención y segmentos fríos: con {@link #startCompaction} un hilo propio deja sin
+ * comprimir y mapeados solo los segmentos más recientes y reescribe los demás como
+ * {@link CompressedSegment} ({@code .clog}), con los mismos ids. Al reescribirlos
+ * descarta los mensajes vencidos: los de más de cierta edad, salvo los últimos de cada
+ * conversación, que se conservan siempre. Las cadenas de conversación simplemente
+ * terminan donde empieza lo descartado. El índice de búsqueda sigue contando los
+ * mensajes descartados hasta el próximo arranque, pero ya no los devuelve.
+ */
+public class MessageHistory implements Runnable {
+    static final int SEGMENT_MAGIC = 0x43484C47; // "CHLG"
+    static final short FORMAT_VERSION = 1;
+    static final int SEGMENT_HEADER_BYTES = 10;
+    // Bytes fijos de un registro, sin contar los textos
+    static final int RECORD_FIXED_BYTES = 4 + 4 + 8 + 8 + 2 + 2 + 4;
+
+    /** Cursor que indica que no hay más mensajes */
+    public static final long NO_MESSAGE = -1;
+
+    private static final int MAX_BATCH = 256;
+    private static final int WRITE_BUFFER_BYTES = 1024 * 1024;
+    private static final int MIN_SEGMENT_BYTES = 1024 * 1024;
+    private static final int MAX_SEGMENT_BYTES = 1024 * 1024 * 1024;
+    private static final int INDEX_CHUNK = 4096;
+    private static final int BLOCK_CACHE_BLOCKS = 256; // 4 MB de bloques descomprimidos
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ArrayBlockingQueue<Pending> queue;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    // Conversación -> id del último mensaje confirmado
+    private final Map<String, Long> heads = new ConcurrentHashMap<>();
+    private final SearchIndex searchIndex; // null si la búsqueda está desactivada
+    private final CompressedSegment.BlockCache blockCache = new CompressedSegment.BlockCache(BLOCK_CACHE_BLOCKS);
+    private TailCache tailCache; // null si HISTORY siempre lee del disco
+
+    // Compactación (solo su hilo, una vez configurada)
+    private ScheduledExecutorService compactor; // null si no se comprime ni se aplica retención
+    private int hotSegments;
+    private long retentionMillis;
+    private int keepLast;
+
+    // Lado escritor (solo su hilo, salvo la recuperación en el constructor)
+    private int activeIndex = -1;
+    private FileChannel active;
+    private long activePosition;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private final Map<String, Long> batchHeads = new HashMap<>();
+    private final List<Pending> batch = new ArrayList<>(MAX_BATCH);
+    private final CRC32 writeCrc = new CRC32();
+
+    private volatile long messagesWritten;
+    private volatile long bytesWritten;
+    private volatile long batches;
+    private volatile long commitNanos;
+    private volatile long compactedSegments;
+    private volatile long compactedBytesBefore;
+    private volatile long compactedBytesAfter;
+    private volatile long expiredMessages;
+
+    private static final class Pending {
+        final String sender;
+        final String recipient;
+        final String body;
+        final long timestampMillis;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        long id;
+        long previous;
+
+        Pending(String sender, String recipient, String body, long timestampMillis) {
+            this.sender = sender;
+            this.recipient = recipient;
+            this.body = body;
+            this.timestampMillis = timestampMillis;
+        }
+    }
+
+    // Segmento reciente mapeado (limit son los bytes confirmados que se pueden leer) o
+    // segmento frío comprimido
+    private static final class Segment {
+        final MappedByteBuffer map; // null si está comprimido
+        final CompressedSegment compressed;
+        final long oldestMillis; // Mensaje más antiguo de un segmento comprimido
+        volatile int limit;
+
+        Segment(MappedByteBuffer map, int limit) {
+            this.map = map;
+            this.compressed = null;
+            this.oldestMillis = Long.MIN_VALUE;
+            this.limit = limit;
+        }
+
+        Segment(CompressedSegment compressed, long oldestMillis) {
+            this.map = null;
+            this.compressed = compressed;
+            this.oldestMillis = oldestMillis;
+        }
+    }
+
+    // Recorrido de los registros válidos de un segmento
+    private interface RecordConsumer {
+        void accept(Record record, ByteBuffer buffer, int position) throws IOException;
+    }
+
+    // Registro decodificado
+    private static final class Record {
+        final StoredMessage message;
+        final long previous;
+        final int length;
+
+        Record(StoredMessage message, long previous, int length) {
+            this.message = message;
+            this.previous = previous;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Página de una conversación.
+     */
+    public static final class Page {
+        private final List<StoredMessage> messages;
+        private final long nextCursor;
+
+        Page(List<StoredMessage> messages, long nextCursor) {
+            this.messages = Collections.unmodifiableList(messages);
+            this.nextCursor = nextCursor;
+        }
+
+        /** Mensajes de la página, del más antiguo al más reciente */
+        public List<StoredMessage> getMessages() {
+            return messages;
+        }
+
+        /** Cursor para pedir la página anterior, o {@link #NO_MESSAGE} si no hay más */
+        public long getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * Resultado de una búsqueda.
+     */
+    public static final class SearchResult {
+        private final List<StoredMessage> messages;
+        private final int total;
+        private final int nextOffset;
+
+        SearchResult(List<StoredMessage> messages, int total, int nextOffset) {
+            this.messages = Collections.unmodifiableList(messages);
+            this.total = total;
+            this.nextOffset = nextOffset;
+        }
+
+        /** Mensajes encontrados, del más relevante al menos */
+        public List<StoredMessage> getMessages() {
+            return messages;
+        }
+
+        /** Total de mensajes que coinciden */
+        public int getTotal() {
+            return total;
+        }
+
+        /** Desde dónde pedir la página siguiente, o -1 si no hay más */
+        public int getNextOffset() {
+            return nextOffset;
+        }
+    }
+
+    /**
+     * Abre el historial del directorio (lo crea si no existe) y reconstruye el índice.
+     *
+     * @param directory directorio de los segmentos
+     * @param segmentBytes tamaño a partir del cual se pasa a un segmento nuevo
+     * @param queueCapacity mensajes que pueden esperar al escritor; si se llena,
+     *        {@link #append} espera (nunca se pierde un mensaje del historial)
+     * @param searchable si se mantiene el índice de búsqueda de texto
+     */
+    public MessageHistory(Path directory, long segmentBytes, int queueCapacity, boolean searchable)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.searchIndex = searchable ? new SearchIndex() : null;
+        this.segmentBytes = (int) Math.max(MIN_SEGMENT_BYTES, Math.min(MAX_SEGMENT_BYTES, segmentBytes));
+        this.queue = new ArrayBlockingQueue<>(Math.max(MAX_BATCH, queueCapacity));
+        this.thread = new Thread(this, "historial-escritor");
+        this.thread.setDaemon(true);
+        recover();
+    }
+
+    /**
+     * Mantiene los últimos mensajes de las conversaciones activas en memoria para
+     * {@link #cachedPage}. Se configura antes de {@link #start}.
+     */
+    public void setTailCache(TailCache tailCache) {
+        this.tailCache = tailCache;
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Inicia la compactación periódica de los segmentos fríos.
+     *
+     * @param hotSegments segmentos más recientes que quedan sin comprimir (incluye el activo)
+     * @param retentionMillis edad a partir de la cual un mensaje vence, o 0 para no vencer
+     * @param keepLast mensajes más recientes de cada conversación que no vencen nunca
+     * @param intervalMillis cada cuánto se revisan los segmentos
+     */
+    public void startCompaction(int hotSegments, long retentionMillis, int keepLast, long intervalMillis) {
+        this.hotSegments = Math.max(1, hotSegments);
+        this.retentionMillis = Math.max(0, retentionMillis);
+        this.keepLast = Math.max(0, keepLast);
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread compaction = new Thread(r, "historial-compactacion");
+            compaction.setDaemon(true);
+            return compaction;
+        });
+        long interval = Math.max(1000, intervalMillis);
+        compactor.scheduleWithFixedDelay(this::compact, Math.min(interval, TimeUnit.MINUTES.toMillis(1)),
+                interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Clave de la conversación privada entre dos usuarios (no depende del orden).
+     */
+    public static String conversationKey(String userA, String userB) {
+        return userA.compareTo(userB) <= 0 ? userA + ":" + userB : userB + ":" + userA;
+    }
+
+    /**
+     * Encola un mensaje para guardarlo.
+     *
+     * @return futuro que se completa con el id del mensaje cuando está en disco
+     */
+    public CompletableFuture<Long> append(String sender, String recipient, String body) {
+        Pending pending = new Pending(sender, recipient, body, System.currentTimeMillis());
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("El historial está cerrado"));
+            return pending.future;
+        }
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(e);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Lee una página de la conversación entre dos usuarios, hacia atrás.
+     *
+     * @param before cursor devuelto por la página anterior, o {@link #NO_MESSAGE} para
+     *        empezar por el mensaje más reciente
+     * @param limit máximo de mensajes
+     * @throws IllegalArgumentException si el cursor no es un mensaje de esa conversación
+     */
+    public Page page(String userA, String userB, long before, int limit) {
+        String key = conversationKey(userA, userB);
+        long id = before != NO_MESSAGE ? before : heads.getOrDefault(key, NO_MESSAGE);
+        List<StoredMessage> messages = new ArrayList<>(Math.min(limit, 128));
+        while (id != NO_MESSAGE && messages.size() < limit) {
+            Record record = read(id);
+            if (record == null) {
+                id = NO_MESSAGE; // Mensaje vencido, segmento borrado o dañado: no hay más historial
+                break;
+            }
+            if (!key.equals(conversationKey(record.message.getSender(), record.message.getRecipient()))) {
+                if (messages.isEmpty() && before != NO_MESSAGE) {
+                    throw new IllegalArgumentException("Cursor de historial inválido");
+                }
+                id = NO_MESSAGE;
+                break;
+            }
+            messages.add(record.message);
+            id = record.previous;
+        }
+        Collections.reverse(messages);
+        if (tailCache != null) {
+            tailCache.fill(key, messages, id, before == NO_MESSAGE);
+        }
+        return new Page(messages, id);
+    }
+
+    /**
+     * Página de una conversación, ya codificada, si está completa en la caché de los
+     * últimos mensajes (ver {@link TailCache}).
+     *
+     * @return la página, o null si hay que leerla con {@link #page}
+     */
+    public TailCache.Page cachedPage(String userA, String userB, long before, int limit) {
+        return tailCache != null ? tailCache.page(conversationKey(userA, userB), before, limit) : null;
+    }
+
+    /**
+     * Busca texto en los mensajes que el usuario envió o recibió.
+     *
+     * @param offset resultados a saltear
+     * @param limit máximo de mensajes
+     * @throws IllegalStateException si la búsqueda está desactivada
+     * @throws IllegalArgumentException si la búsqueda no tiene palabras
+     */
+    public SearchResult search(String user, String query, int offset, int limit) {
+        if (searchIndex == null) {
+            throw new IllegalStateException("La búsqueda no está habilitada en el servidor");
+        }
+        SearchIndex.Hits hits = searchIndex.search(user, query, offset, limit);
+        List<StoredMessage> messages = new ArrayList<>(hits.getIds().size());
+        for (long id : hits.getIds()) {
+            Record record = read(id);
+            if (record != null) { // Segmento ya borrado
+                messages.add(record.message);
+            }
+        }
+        int next = offset + hits.getIds().size();
+        return new SearchResult(messages, hits.getTotal(), next < hits.getTotal() ? next : -1);
+    }
+
+    public boolean isSearchable() {
+        return searchIndex != null;
+    }
+
+    // Lee el registro con ese id, o null si no es un registro válido y confirmado
+    private Record read(long id) {
+        if (id < 0) {
+            return null;
+        }
+        Segment segment = segments.get((int) (id >>> 32));
+        if (segment == null) {
+            return null;
+        }
+        int offset = (int) id;
+        if (segment.compressed != null) {
+            ByteBuffer block = segment.compressed.blockFor(offset);
+            int position = block != null ? CompressedSegment.positionOf(block, offset) : -1;
+            return position < 0 ? null : decode(block, position, block.limit(), id, new CRC32());
+        }
+        if (offset < SEGMENT_HEADER_BYTES) {
+            return null;
+        }
+        return decode(segment.map.duplicate(), offset, segment.limit, id, new CRC32());
+    }
+
+    private static Record decode(ByteBuffer buffer, int offset, int limit, long id, CRC32 crc) {
+        if (offset < 0 || offset > limit - RECORD_FIXED_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length < RECORD_FIXED_BYTES - 4 || length > limit - offset - 4) {
+            return null;
+        }
+        int end = offset + 4 + length;
+        ByteBuffer body = buffer.duplicate();
+        body.limit(end).position(offset + 8);
+        crc.reset();
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+
+        int position = offset + 8;
+        long timestamp = buffer.getLong(position);
+        long previous = buffer.getLong(position + 8);
+        position += 16;
+        int senderLength = buffer.getShort(position) & 0xFFFF;
+        String sender = string(buffer, position + 2, senderLength);
+        position += 2 + senderLength;
+        int recipientLength = buffer.getShort(position) & 0xFFFF;
+        String recipient = string(buffer, position + 2, recipientLength);
+        position += 2 + recipientLength;
+        int textLength = buffer.getInt(position);
+        if (textLength < 0 || position + 4 + textLength != end) {
+            return null;
+        }
+        String text = string(buffer, position + 4, textLength);
+        return new Record(new StoredMessage(id, timestamp, sender, recipient, text), previous, 4 + length);
+    }
+
+    private static String string(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void run() {
+        while (running || !queue.isEmpty()) {
+            Pending first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                continue; // close() espera a que se vacíe la cola
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH - 1);
+            writeBatch();
+            batch.clear();
+        }
+        closeActive();
+    }
+
+    private void writeBatch() {
+        try {
+            for (Pending pending : batch) {
+                encode(pending);
+            }
+            flush();
+            long start = System.nanoTime();
+            active.force(false);
+            commitNanos += System.nanoTime() - start;
+        } catch (IOException e) {
+            System.err.println("[HISTORIAL] Error escribiendo el lote: " + e.getMessage());
+            // Volver al fin de lo confirmado en el segmento activo, que puede ser uno nuevo si
+            // el lote rotó (lo escrito antes de rotar ya quedó publicado)
+            activePosition = segments.get(activeIndex).limit;
+            writeBuffer.clear();
+            batchHeads.clear();
+            for (Pending pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+        // Publicar: desde acá los lectores ven el lote
+        segments.get(activeIndex).limit = (int) activePosition;
+        heads.putAll(batchHeads);
+        batchHeads.clear();
+        batches++;
+        messagesWritten += batch.size();
+        for (Pending pending : batch) {
+            pending.future.complete(pending.id);
+        }
+        if (searchIndex == null && tailCache == null) {
+            return;
+        }
+        List<StoredMessage> committed = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            StoredMessage message = new StoredMessage(pending.id, pending.timestampMillis, pending.sender,
+                    pending.recipient, pending.body);
+            committed.add(message);
+            if (tailCache != null) {
+                tailCache.append(conversationKey(pending.sender, pending.recipient), message, pending.previous);
+            }
+        }
+        if (searchIndex != null) {
+            searchIndex.add(committed);
+        }
+    }
+
+    private void encode(Pending pending) throws IOException {
+        byte[] sender = pending.sender.getBytes(StandardCharsets.UTF_8);
+        byte[] recipient = pending.recipient.getBytes(StandardCharsets.UTF_8);
+        byte[] text = pending.body.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_FIXED_BYTES - 4 + sender.length + recipient.length + text.length;
+        int total = 4 + length;
+        if (total > segmentBytes - SEGMENT_HEADER_BYTES || total > WRITE_BUFFER_BYTES) {
+            throw new IOException("Mensaje demasiado grande para el historial: " + total + " bytes");
+        }
+        if (activePosition + writeBuffer.position() + total > segmentBytes) {
+            flush();
+            rotate();
+        }
+        if (writeBuffer.remaining() < total) {
+            flush();
+        }
+
+        String key = conversationKey(pending.sender, pending.recipient);
+        long id = ((long) activeIndex << 32) | (activePosition + writeBuffer.position());
+        Long previous = batchHeads.get(key);
+        if (previous == null) {
+            previous = heads.getOrDefault(key, NO_MESSAGE);
+        }
+        int start = writeBuffer.position();
+        writeBuffer.putInt(length).putInt(0)
+                .putLong(pending.timestampMillis).putLong(previous)
+                .putShort((short) sender.length).put(sender)
+                .putShort((short) recipient.length).put(recipient)
+                .putInt(text.length).put(text);
+        ByteBuffer covered = writeBuffer.duplicate();
+        covered.limit(start + total).position(start + 8);
+        writeCrc.reset();
+        writeCrc.update(covered);
+        writeBuffer.putInt(start + 4, (int) writeCrc.getValue());
+
+        pending.id = id;
+        pending.previous = previous;
+        batchHeads.put(key, id);
+    }
+
+    // Escritura secuencial de lo acumulado al final del segmento activo
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            int written = active.write(writeBuffer, activePosition);
+            activePosition += written;
+            bytesWritten += written;
+        }
+        writeBuffer.clear();
+    }
+
+    // Cierra el segmento activo (ya escrito) y abre el siguiente
+    private void rotate() throws IOException {
+        active.force(false);
+        Segment closed = segments.get(activeIndex);
+        closed.limit = (int) activePosition;
+        heads.putAll(batchHeads); // Los registros del segmento cerrado ya están en disco
+        batchHeads.clear();
+        active.truncate(activePosition);
+        active.close();
+        createSegment(activeIndex + 1);
+    }
+
+    private void createSegment(int index) throws IOException {
+        Path file = directory.resolve(segmentName(index));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+        header.putInt(SEGMENT_MAGIC).putShort(FORMAT_VERSION).putInt(index).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+        // Mapear el tamaño completo extiende el archivo (disperso): el segmento activo no
+        // se vuelve a mapear a medida que crece
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, segmentBytes);
+        segments.put(index, new Segment(map, SEGMENT_HEADER_BYTES));
+        active = channel;
+        activeIndex = index;
+        activePosition = SEGMENT_HEADER_BYTES;
+    }
+
+    static String segmentName(int index) {
+        return String.format("%010d.log", index);
+    }
+
+    // Mapea los segmentos existentes, reconstruye el índice y deja abierto el último
+    private void recover() throws IOException {
+        TreeMap<Integer, Path> logs = new TreeMap<>();
+        TreeMap<Integer, Path> compressed = new TreeMap<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) list::iterator) {
+                String name = path.getFileName().toString();
+                if (name.matches("\\d{10}\\.log")) {
+                    logs.put(Integer.parseInt(name.substring(0, 10)), path);
+                } else if (name.matches("\\d{10}\\.clog")) {
+                    compressed.put(Integer.parseInt(name.substring(0, 10)), path);
+                } else if (name.matches("\\d{10}\\.clog\\.tmp")) {
+                    Files.delete(path); // Compactación interrumpida: el .log sigue completo
+                }
+            }
+        }
+        TreeSet<Integer> indexes = new TreeSet<>(logs.keySet());
+        indexes.addAll(compressed.keySet());
+        long start = System.nanoTime();
+        int[] count = new int[1];
+        for (int index : indexes) {
+            Path compressedFile = compressed.get(index);
+            Path file = logs.get(index);
+            if (compressedFile != null && openCompressed(compressedFile, index, count)) {
+                if (file != null) {
+                    Files.delete(file); // Se comprimió pero no se llegó a borrar el original
+                }
+                continue;
+            }
+            if (file != null) {
+                openLog(file, index, index == indexes.last(), count);
+            }
+        }
+        if (active == null) {
+            createSegment(indexes.isEmpty() ? 0 : indexes.last() + 1);
+        }
+        System.out.printf("[HISTORIAL] %d mensajes en %d conversaciones (%d segmentos) cargados en %.1f ms%n",
+                count[0], heads.size(), segments.size(), (System.nanoTime() - start) / 1e6);
+        if (searchIndex != null) {
+            System.out.println("[BUSQUEDA] Índice: " + searchIndex.describe());
+        }
+    }
+
+    private void openLog(Path file, int index, boolean last, int[] count) throws IOException {
+        FileChannel channel = last
+                ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < SEGMENT_HEADER_BYTES || size > MAX_SEGMENT_BYTES) {
+                System.err.println("[HISTORIAL] Segmento ignorado (tamaño inválido): " + file);
+                channel.close();
+                return;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != SEGMENT_MAGIC || map.getShort(4) != FORMAT_VERSION) {
+                System.err.println("[HISTORIAL] Segmento ignorado (formato desconocido): " + file);
+                channel.close();
+                return;
+            }
+            int end = scan(map, index, (int) size, count);
+            if (!last) {
+                if (end < size) {
+                    System.err.println("[HISTORIAL] " + (size - end) + " bytes dañados al final de " + file);
+                }
+                segments.put(index, new Segment(map, end));
+                channel.close();
+                return;
+            }
+            // Último segmento: sigue siendo el activo. Se descarta lo que haya después
+            // del último registro válido (una escritura cortada o el espacio reservado)
+            channel.truncate(end);
+            int mapped = Math.max(segmentBytes, end);
+            segments.put(index, new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, mapped), end));
+            active = channel;
+            activeIndex = index;
+            activePosition = end;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Abre un segmento comprimido y reconstruye el índice con sus mensajes; false si no
+    // se puede leer
+    private boolean openCompressed(Path file, int index, int[] count) {
+        try {
+            CompressedSegment compressed = CompressedSegment.open(file, index, blockCache);
+            List<StoredMessage> toIndex = new ArrayList<>(searchIndex != null ? INDEX_CHUNK : 0);
+            long[] oldest = {Long.MAX_VALUE};
+            forEachRecord(index, new Segment(compressed, Long.MIN_VALUE), (record, buffer, position) -> {
+                indexRecovered(record, toIndex);
+                oldest[0] = Math.min(oldest[0], record.message.getTimestampMillis());
+                count[0]++;
+            });
+            flushIndex(toIndex);
+            segments.put(index, new Segment(compressed, oldest[0]));
+            return true;
+        } catch (IOException e) {
+            System.err.println("[HISTORIAL] Segmento comprimido ignorado (" + e.getMessage() + "): " + file);
+            return false;
+        }
+    }
+
+    // Recorre los registros válidos de un segmento actualizando el índice; devuelve
+    // dónde termina el último
+    private int scan(ByteBuffer map, int index, int size, int[] count) {
+        CRC32 crc = new CRC32();
+        List<StoredMessage> toIndex = new ArrayList<>(searchIndex != null ? INDEX_CHUNK : 0);
+        int offset = SEGMENT_HEADER_BYTES;
+        Record record;
+        while ((record = decode(map, offset, size, ((long) index << 32) | offset, crc)) != null) {
+            indexRecovered(record, toIndex);
+            count[0]++;
+            offset += record.length;
+        }
+        flushIndex(toIndex);
+        return offset;
+    }
+
+    private void indexRecovered(Record record, List<StoredMessage> toIndex) {
+        heads.put(conversationKey(record.message.getSender(), record.message.getRecipient()), record.message.getId());
+        if (searchIndex != null) {
+            toIndex.add(record.message);
+            if (toIndex.size() == INDEX_CHUNK) {
+                flushIndex(toIndex);
+            }
+        }
+    }
+
+    private void flushIndex(List<StoredMessage> toIndex) {
+        if (searchIndex != null && !toIndex.isEmpty()) {
+            searchIndex.add(toIndex);
+            toIndex.clear();
+        }
+    }
+
+    private void forEachRecord(int index, Segment segment, RecordConsumer consumer) throws IOException {
+        CRC32 crc = new CRC32();
+        if (segment.compressed != null) {
+            segment.compressed.forEach((offset, block, position) -> {
+                Record record = decode(block, position, block.limit(), ((long) index << 32) | offset, crc);
+                if (record != null) {
+                    consumer.accept(record, block, position);
+                }
+            });
+            return;
+        }
+        ByteBuffer map = segment.map.duplicate();
+        int limit = segment.limit;
+        int offset = SEGMENT_HEADER_BYTES;
+        Record record;
+        while ((record = decode(map, offset, limit, ((long) index << 32) | offset, crc)) != null) {
+            consumer.accept(record, map, offset);
+            offset += record.length;
+        }
+    }
+
+    // Comprime los segmentos fríos y aplica la retención
+    private void compact() {
+        List<Integer> indexes = new ArrayList<>(segments.keySet());
+        if (indexes.isEmpty()) {
+            return;
+        }
+        Collections.sort(indexes);
+        // El activo es siempre el de número más alto: nunca entra en la compactación
+        int newestCold = indexes.get(indexes.size() - 1) - hotSegments;
+        long expiredBefore = retentionMillis > 0 ? System.currentTimeMillis() - retentionMillis : Long.MIN_VALUE;
+        Map<String, Long> keepFrom = new HashMap<>(); // Conversación -> id del más antiguo que se conserva
+        for (int index : indexes) {
+            if (index > newestCold || !running) {
+                break;
+            }
+            Segment segment = segments.get(index);
+            if (segment == null || (segment.compressed != null && segment.oldestMillis >= expiredBefore)) {
+                continue; // Ya comprimido y sin nada que pueda vencer
+            }
+            try {
+                rewrite(index, segment, expiredBefore, keepFrom);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[HISTORIAL] No se pudo compactar el segmento " + index + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Reescribe un segmento como comprimido, sin los mensajes vencidos
+    private void rewrite(int index, Segment segment, long expiredBefore, Map<String, Long> keepFrom)
+            throws IOException {
+        long start = System.nanoTime();
+        Path target = directory.resolve(CompressedSegment.fileName(index));
+        Path original = directory.resolve(segment.compressed != null ? CompressedSegment.fileName(index)
+                : segmentName(index));
+        long before = Files.size(original);
+        long[] oldest = {Long.MAX_VALUE};
+        int[] expired = new int[1];
+        try (CompressedSegment.Writer writer = new CompressedSegment.Writer(
+                directory.resolve(CompressedSegment.fileName(index) + ".tmp"), index)) {
+            forEachRecord(index, segment, (record, buffer, position) -> {
+                StoredMessage message = record.message;
+                if (message.getTimestampMillis() < expiredBefore) {
+                    String key = conversationKey(message.getSender(), message.getRecipient());
+                    if (message.getId() < keepFrom.computeIfAbsent(key, this::retainedFrom)) {
+                        heads.remove(key, message.getId()); // La conversación vence completa
+                        if (tailCache != null) {
+                            tailCache.remove(key);
+                        }
+                        expired[0]++;
+                        return;
+                    }
+                }
+                oldest[0] = Math.min(oldest[0], message.getTimestampMillis());
+                writer.add((int) message.getId(), buffer, position, record.length);
+            });
+            if (segment.compressed != null && expired[0] == 0) {
+                return; // Lo vencido está protegido por los últimos de su conversación
+            }
+            long after = 0;
+            if (writer.getRecords() == 0) {
+                segments.remove(index); // Todo venció
+                Files.deleteIfExists(target);
+            } else {
+                after = writer.finish(target);
+                segments.put(index, new Segment(CompressedSegment.open(target, index, blockCache), oldest[0]));
+            }
+            if (segment.compressed == null) {
+                deleteOriginal(directory.resolve(segmentName(index)));
+            }
+            compactedSegments++;
+            compactedBytesBefore += before;
+            compactedBytesAfter += after;
+            expiredMessages += expired[0];
+            System.out.printf("[HISTORIAL] Segmento %d compactado: %.1f MB -> %.1f MB, %d mensajes vencidos (%.0f ms)%n",
+                    index, before / (1024.0 * 1024.0), after / (1024.0 * 1024.0), expired[0],
+                    (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    // Id del mensaje más antiguo que la retención conserva en una conversación: el
+    // keepLast-ésimo desde el último (si tiene menos, se conservan todos)
+    private long retainedFrom(String key) {
+        if (keepLast == 0) {
+            return Long.MAX_VALUE;
+        }
+        long id = heads.getOrDefault(key, NO_MESSAGE);
+        for (int i = 1; i < keepLast && id != NO_MESSAGE; i++) {
+            Record record = read(id);
+            id = record != null ? record.previous : NO_MESSAGE;
+        }
+        return id;
+    }
+
+    private static void deleteOriginal(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Sigue mapeado en algún sistema: al reiniciar se prefiere el comprimido y se borra
+            System.err.println("[HISTORIAL] No se pudo borrar " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void closeActive() {
+        if (active == null) {
+            return;
+        }
+        try {
+            active.force(false);
+            active.truncate(activePosition); // Quitar el espacio reservado por el mapeo
+            active.close();
+        } catch (IOException e) {
+            System.err.println("[HISTORIAL] Error cerrando el segmento activo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Termina de escribir lo encolado y cierra el segmento activo.
+     */
+    public void close() {
+        running = false;
+        if (compactor != null) {
+            compactor.shutdown(); // La compactación termina el segmento en curso
+            try {
+                compactor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (thread.isAlive()) {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } else {
+                closeActive();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("El historial está cerrado"));
+        }
+    }
+
+    /**
+     * @return resumen del índice de búsqueda, o null si está desactivado
+     */
+    public String describeSearchIndex() {
+        return searchIndex != null ? searchIndex.describe() : null;
+    }
+
+    /**
+     * @return resumen de la caché de últimos mensajes, o null si está desactivada
+     */
+    public String describeTailCache() {
+        return tailCache != null ? tailCache.describe() : null;
+    }
+
+    /**
+     * @return cantidad de conversaciones con historial
+     */
+    public int getConversationCount() {
+        return heads.size();
+    }
+
+    /**
+     * @return mensajes aceptados que todavía no se escribieron
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Resumen para el log del servidor: volumen y costo del group commit.
+     */
+    public String describe() {
+        long done = batches;
+        int compressed = 0;
+        for (Segment segment : segments.values()) {
+            if (segment.compressed != null) {
+                compressed++;
+            }
+        }
+        String summary = String.format("%d mensajes en %d lotes (%.1f por lote), commit medio %.0f us, %.1f MB, "
+                        + "%d segmentos (%d comprimidos), %d conversaciones, %d en cola",
+                messagesWritten, done, done > 0 ? (double) messagesWritten / done : 0,
+                done > 0 ? commitNanos / 1e3 / done : 0, bytesWritten / (1024.0 * 1024.0),
+                segments.size(), compressed, heads.size(), queue.size());
+        if (compactedSegments == 0) {
+            return summary;
+        }
+        return summary + String.format("; compactación: %d segmentos, %.1f MB -> %.1f MB, %d mensajes vencidos, %s",
+                compactedSegments, compactedBytesBefore / (1024.0 * 1024.0), compactedBytesAfter / (1024.0 * 1024.0),
+                expiredMessages, blockCache.describe());
+    }
+}
@@ -0,0 +1,422 @@
+package com.mycompany.chat.history;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Bandeja de mensajes para usuarios desconectados, persistida en disco.
+ *
+ * Cuando el destinatario de un MSG no está conectado, el mensaje se guarda aquí y se
+ * le entrega al iniciar sesión, todos juntos en una sola escritura al socket.
+ *
+ * - Archivo: un journal de solo agregado con dos tipos de registro, protegidos con CRC32:
+ *   {@code Q} (mensaje encolado: secuencia, fecha, destinatario, remitente, texto) y
+ *   {@code D} (entregados los mensajes del usuario hasta una secuencia). Cada registro
+ *   se baja a disco antes de confirmar, así un reinicio no pierde ni reentrega mensajes.
+ *   Al abrir se reproduce el journal; si lo entregado supera a lo pendiente, se compacta.
+ * - Límites: cada usuario tiene un máximo de mensajes pendientes (los nuevos se
+ *   rechazan y el remitente recibe un error) y cada mensaje vence a las horas
+ *   configuradas; los vencidos se descartan al entregar y al compactar.
+ * - Entrega: {@link #take} retira los pendientes de un usuario y marca una entrega en
+ *   curso (una por usuario, sin duplicados). {@link #finish} registra la entrega o, si el
+ *   envío falló, los devuelve a la bandeja.
+ */
+public class OfflineQueue {
+    private static final byte TYPE_QUEUED = 'Q';
+    private static final byte TYPE_DELIVERED = 'D';
+    // [longitud:int][crc:int][tipo:byte]
+    private static final int RECORD_HEADER_BYTES = 9;
+    private static final int MIN_GARBAGE_TO_COMPACT = 1000;
+
+    private final Path file;
+    private final int maxPerUser;
+    private final long ttlMillis;
+    private final ScheduledExecutorService compactor;
+
+    // Protegidos por this
+    private final Map<String, Deque<OfflineMessage>> queues = new HashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private FileChannel log;
+    private long nextSeq = 1;
+    private long records;
+    private long pendingCount;
+
+    private long queued;
+    private long delivered;
+    private long expired;
+    private long rejected;
+    private long bursts;
+    private int largestBurst;
+
+    /**
+     * Mensaje pendiente de entrega.
+     */
+    public static final class OfflineMessage {
+        private final long seq;
+        private final long timestampMillis;
+        private final String recipient;
+        private final String sender;
+        private final String body;
+
+        OfflineMessage(long seq, long timestampMillis, String recipient, String sender, String body) {
+            this.seq = seq;
+            this.timestampMillis = timestampMillis;
+            this.recipient = recipient;
+            this.sender = sender;
+            this.body = body;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Abre la bandeja del archivo (lo crea si no existe) y recupera los pendientes.
+     *
+     * @param file journal de la bandeja
+     * @param maxPerUser máximo de mensajes pendientes por usuario
+     * @param ttlMillis tiempo tras el cual un mensaje pendiente se descarta
+     */
+    public OfflineQueue(Path file, int maxPerUser, long ttlMillis) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.maxPerUser = Math.max(1, maxPerUser);
+        this.ttlMillis = ttlMillis;
+        Path dir = this.file.getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        recover();
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "bandeja-compactacion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::maintenance, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Guarda un mensaje para un usuario desconectado.
+     *
+     * @return false si la bandeja del usuario está llena
+     * @throws IOException si no se pudo guardar en disco
+     */
+    public synchronized boolean enqueue(String recipient, String sender, String body) throws IOException {
+        Deque<OfflineMessage> queue = queues.computeIfAbsent(recipient, user -> new ArrayDeque<>());
+        dropExpired(queue, System.currentTimeMillis());
+        if (queue.size() >= maxPerUser) {
+            rejected++;
+            return false;
+        }
+        OfflineMessage message = new OfflineMessage(nextSeq, System.currentTimeMillis(), recipient, sender, body);
+        append(encodeQueued(message));
+        nextSeq++;
+        queue.addLast(message);
+        pendingCount++;
+        queued++;
+        return true;
+    }
+
+    /**
+     * Retira los mensajes pendientes de un usuario para entregarlos.
+     *
+     * @return los mensajes en orden de llegada; vacío si no hay o si ya hay una entrega
+     *         en curso para ese usuario (esa entrega se lleva también los nuevos)
+     */
+    public synchronized List<OfflineMessage> take(String user) {
+        Deque<OfflineMessage> queue = queues.get(user);
+        if (queue == null || inFlight.contains(user)) {
+            return Collections.emptyList();
+        }
+        dropExpired(queue, System.currentTimeMillis());
+        if (queue.isEmpty()) {
+            queues.remove(user);
+            return Collections.emptyList();
+        }
+        List<OfflineMessage> batch = new ArrayList<>(queue);
+        queue.clear();
+        inFlight.add(user);
+        return batch;
+    }
+
+    /**
+     * Termina una entrega iniciada con {@link #take}.
+     *
+     * @param sent true si los mensajes llegaron al socket del usuario; si no, vuelven
+     *        al principio de la bandeja
+     */
+    public synchronized void finish(String user, List<OfflineMessage> batch, boolean sent) {
+        finish(user, batch, sent ? batch.size() : 0);
+    }
+
+    /**
+     * Termina una entrega en la que solo los primeros mensajes del lote quedaron
+     * entregados; el resto vuelve al principio de la bandeja.
+     *
+     * @param count cuántos mensajes, desde el principio del lote, se entregaron
+     */
+    public synchronized void finish(String user, List<OfflineMessage> batch, int count) {
+        inFlight.remove(user);
+        if (batch.isEmpty()) {
+            return;
+        }
+        Deque<OfflineMessage> queue = queues.computeIfAbsent(user, u -> new ArrayDeque<>());
+        if (count > 0) {
+            try {
+                append(encodeDelivered(user, batch.get(count - 1).seq));
+            } catch (IOException e) {
+                // Ya se entregaron: en el peor caso se reentregan tras un reinicio
+                System.err.println("[BANDEJA] No se pudo registrar la entrega a " + user + ": " + e.getMessage());
+            }
+            pendingCount -= count;
+            delivered += count;
+            bursts++;
+            largestBurst = Math.max(largestBurst, count);
+        }
+        for (int i = batch.size() - 1; i >= count; i--) {
+            queue.addFirst(batch.get(i));
+        }
+        if (queue.isEmpty()) {
+            queues.remove(user);
+        }
+    }
+
+    public synchronized int pendingFor(String user) {
+        Deque<OfflineMessage> queue = queues.get(user);
+        return queue != null ? queue.size() : 0;
+    }
+
+    // Los mensajes están en orden de llegada: los vencidos están al principio
+    private void dropExpired(Deque<OfflineMessage> queue, long now) {
+        while (!queue.isEmpty() && now - queue.peekFirst().timestampMillis > ttlMillis) {
+            queue.pollFirst();
+            pendingCount--;
+            expired++;
+        }
+    }
+
+    private void append(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        log.force(false);
+        records++;
+    }
+
+    private static byte[] encodeQueued(OfflineMessage message) {
+        byte[] recipient = message.recipient.getBytes(StandardCharsets.UTF_8);
+        byte[] sender = message.sender.getBytes(StandardCharsets.UTF_8);
+        byte[] body = message.body.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + 16 + 2 + recipient.length + 2
+                + sender.length + 4 + body.length);
+        buffer.position(RECORD_HEADER_BYTES);
+        buffer.putLong(message.seq).putLong(message.timestampMillis)
+                .putShort((short) recipient.length).put(recipient)
+                .putShort((short) sender.length).put(sender)
+                .putInt(body.length).put(body);
+        return seal(buffer, TYPE_QUEUED);
+    }
+
+    private static byte[] encodeDelivered(String user, long upToSeq) {
+        byte[] recipient = user.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + 2 + recipient.length + 8);
+        buffer.position(RECORD_HEADER_BYTES);
+        buffer.putShort((short) recipient.length).put(recipient).putLong(upToSeq);
+        return seal(buffer, TYPE_DELIVERED);
+    }
+
+    // Completa longitud, tipo y CRC (que cubre tipo y contenido)
+    private static byte[] seal(ByteBuffer buffer, byte type) {
+        byte[] bytes = buffer.array();
+        buffer.put(8, type);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 8, bytes.length - 8);
+        buffer.putInt(0, bytes.length - 4).putInt(4, (int) crc.getValue());
+        return bytes;
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Reproduce el journal y deja el archivo abierto para agregar
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        long validBytes = 0;
+        if (Files.exists(file)) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+            CRC32 crc = new CRC32();
+            while (data.remaining() >= RECORD_HEADER_BYTES) {
+                int offset = data.position();
+                int length = data.getInt();
+                if (length < RECORD_HEADER_BYTES - 4 || length > data.remaining()) {
+                    break;
+                }
+                int expected = data.getInt();
+                crc.reset();
+                crc.update(data.array(), offset + 8, length - 4);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(data.array(), offset + 9, length - 5);
+                try {
+                    replay(data.get(), record);
+                } catch (RuntimeException e) {
+                    break; // Contenido inconsistente con su longitud
+                }
+                data.position(offset + 4 + length);
+                validBytes = data.position();
+                records++;
+            }
+        }
+        log = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (log.size() > validBytes) {
+            System.err.println("[BANDEJA] Descartados " + (log.size() - validBytes)
+                    + " bytes incompletos al final de " + file);
+            log.truncate(validBytes);
+            log.force(false);
+        }
+        log.position(validBytes);
+
+        long now = System.currentTimeMillis();
+        for (Deque<OfflineMessage> queue : queues.values()) {
+            dropExpired(queue, now);
+        }
+        queues.values().removeIf(Deque::isEmpty);
+        System.out.printf("[BANDEJA] %d mensajes pendientes para %d usuarios, cargados en %.1f ms%n",
+                pendingCount, queues.size(), (System.nanoTime() - start) / 1e6);
+        if (records - pendingCount >= MIN_GARBAGE_TO_COMPACT && records - pendingCount > pendingCount) {
+            compact();
+        }
+    }
+
+    private void replay(byte type, ByteBuffer record) {
+        if (type == TYPE_QUEUED) {
+            long seq = record.getLong();
+            long timestamp = record.getLong();
+            String recipient = string(record);
+            String sender = string(record);
+            byte[] body = new byte[record.getInt()];
+            record.get(body);
+            queues.computeIfAbsent(recipient, user -> new ArrayDeque<>())
+                    .addLast(new OfflineMessage(seq, timestamp, recipient, sender,
+                            new String(body, StandardCharsets.UTF_8)));
+            pendingCount++;
+            nextSeq = Math.max(nextSeq, seq + 1);
+        } else if (type == TYPE_DELIVERED) {
+            String recipient = string(record);
+            long upToSeq = record.getLong();
+            Deque<OfflineMessage> queue = queues.get(recipient);
+            while (queue != null && !queue.isEmpty() && queue.peekFirst().seq <= upToSeq) {
+                queue.pollFirst();
+                pendingCount--;
+            }
+        } else {
+            throw new IllegalStateException("Tipo de registro desconocido: " + type);
+        }
+    }
+
+    private void maintenance() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Map.Entry<String, Deque<OfflineMessage>>> it = queues.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Deque<OfflineMessage>> entry = it.next();
+                dropExpired(entry.getValue(), now);
+                if (entry.getValue().isEmpty() && !inFlight.contains(entry.getKey())) {
+                    it.remove();
+                }
+            }
+            long garbage = records - pendingCount;
+            if (log != null && garbage >= MIN_GARBAGE_TO_COMPACT && garbage > pendingCount) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("[BANDEJA] No se pudo compactar: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Reescribe el journal con solo los pendientes y reemplaza el archivo de forma atómica
+    private void compact() throws IOException {
+        if (!inFlight.isEmpty()) {
+            return; // Los retirados en curso no están en las colas; se compacta en la próxima pasada
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        long before = records;
+        long written = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Deque<OfflineMessage> queue : queues.values()) {
+                for (OfflineMessage message : queue) {
+                    ByteBuffer buffer = ByteBuffer.wrap(encodeQueued(message));
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    written++;
+                }
+            }
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.close();
+        log = FileChannel.open(file, StandardOpenOption.WRITE);
+        log.position(log.size());
+        records = written;
+        System.out.println("[BANDEJA] Journal compactado: " + before + " -> " + records + " registros");
+    }
+
+    public synchronized void close() {
+        compactor.shutdownNow();
+        try {
+            if (log != null) {
+                log.close();
+            }
+        } catch (IOException e) {
+            System.err.println("[BANDEJA] Error cerrando " + file + ": " + e.getMessage());
+        } finally {
+            log = null;
+        }
+    }
+
+    /**
+     * Resumen para el log del servidor.
+     */
+    public synchronized String describe() {
+        return String.format("%d pendientes para %d usuarios; encolados %d, entregados %d en %d ráfagas "
+                        + "(máx %d), vencidos %d, rechazados por bandeja llena %d",
+                pendingCount, queues.size(), queued, delivered, bursts, largestBurst, expired, rejected);
+    }
+}
@@ -0,0 +1,355 @@
+package com.mycompany.chat.history;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice invertido en memoria para buscar texto en el historial.
+ *
+ * - Términos: el texto se pasa a minúsculas, se le quitan los acentos ("canción" y
+ *   "cancion" son el mismo término) y se corta en secuencias de letras y dígitos.
+ * - Listas de apariciones: por término, los mensajes que lo contienen en orden de
+ *   llegada, comprimidas como {@code [diferencia con el anterior:varint][frecuencia:varint]}
+ *   (uno o dos bytes por aparición en la práctica). Cada {@value #SKIP_INTERVAL}
+ *   apariciones se guarda un punto de salto, para avanzar por una lista larga sin
+ *   decodificarla entera.
+ * - Visibilidad: cada usuario tiene además la lista de los mensajes que envió o recibió.
+ *   Una búsqueda es la intersección de esa lista con las de cada término, empezando por
+ *   la más corta: el costo depende de los mensajes del usuario y de lo raro del término,
+ *   no del tamaño del historial.
+ * - Orden: BM25 sobre los mensajes que contienen todos los términos; a igual puntaje,
+ *   el más reciente primero.
+ *
+ * Los mensajes se numeran en el orden en que se agregan, que es el orden del log. El
+ * índice lo mantiene el escritor del historial y se reconstruye al iniciar leyendo los
+ * segmentos (unos segundos por millón de mensajes; con {@code history.search.enabled=false}
+ * no se construye). Las búsquedas comparten un lock de lectura; el escritor toma el de
+ * escritura una vez por lote.
+ */
+public class SearchIndex {
+    static final int SKIP_INTERVAL = 64;
+    private static final int MAX_TERM_LENGTH = 40;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final Map<String, Postings> users = new HashMap<>();
+    // Por número de mensaje en el índice
+    private long[] ids = new long[1024];
+    private int[] lengths = new int[1024];
+    private int documents;
+    private long totalTokens;
+
+    /**
+     * Resultado de una búsqueda: ids de los mensajes, del más relevante al menos.
+     */
+    public static final class Hits {
+        private final List<Long> ids;
+        private final int total;
+
+        Hits(List<Long> ids, int total) {
+            this.ids = Collections.unmodifiableList(ids);
+            this.total = total;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        /** Mensajes visibles que contienen todos los términos */
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    // Lista de apariciones comprimida de un término o de un usuario
+    private static final class Postings {
+        byte[] data = new byte[8];
+        int size;
+        int count;
+        int lastDoc = -1;
+        // El salto k lleva al bloque que empieza en la aparición (k + 1) * SKIP_INTERVAL:
+        // skipDocs[k] es el último mensaje antes del bloque y skipOffsets[k] dónde empieza
+        int[] skipDocs = new int[0];
+        int[] skipOffsets = new int[0];
+        int skips;
+
+        void add(int doc, int frequency) {
+            if (doc == lastDoc) {
+                return;
+            }
+            if (count > 0 && count % SKIP_INTERVAL == 0) {
+                if (skips == skipDocs.length) {
+                    skipDocs = Arrays.copyOf(skipDocs, Math.max(4, skips * 2));
+                    skipOffsets = Arrays.copyOf(skipOffsets, skipDocs.length);
+                }
+                skipDocs[skips] = lastDoc;
+                skipOffsets[skips] = size;
+                skips++;
+            }
+            if (data.length - size < 10) {
+                data = Arrays.copyOf(data, data.length + Math.max(16, data.length / 2));
+            }
+            writeVarint(doc - lastDoc);
+            writeVarint(frequency);
+            lastDoc = doc;
+            count++;
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+    }
+
+    // Recorrido de una lista de apariciones
+    private static final class Cursor {
+        final Postings postings;
+        final double idf;
+        int position;
+        int doc = -1;
+        int frequency;
+        int nextSkip;
+
+        Cursor(Postings postings, double idf) {
+            this.postings = postings;
+            this.idf = idf;
+        }
+
+        boolean next() {
+            if (position >= postings.size) {
+                return false;
+            }
+            doc += readVarint();
+            frequency = readVarint();
+            return true;
+        }
+
+        // Avanza hasta el primer mensaje >= target; false si la lista se terminó
+        boolean advance(int target) {
+            while (nextSkip < postings.skips && postings.skipDocs[nextSkip] < target) {
+                if (postings.skipOffsets[nextSkip] > position) {
+                    position = postings.skipOffsets[nextSkip];
+                    doc = postings.skipDocs[nextSkip];
+                }
+                nextSkip++;
+            }
+            while (doc < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int readVarint() {
+            byte[] data = postings.data;
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    // Candidato a resultado
+    private static final class Hit {
+        final int doc;
+        final double score;
+
+        Hit(int doc, double score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+
+    private static final Comparator<Hit> WORST_FIRST =
+            Comparator.<Hit>comparingDouble(hit -> hit.score).thenComparingInt(hit -> hit.doc);
+
+    /**
+     * Agrega mensajes al índice, en el orden del log.
+     */
+    public void add(List<StoredMessage> messages) {
+        lock.writeLock().lock();
+        try {
+            for (StoredMessage message : messages) {
+                index(message);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(StoredMessage message) {
+        if (documents == ids.length) {
+            ids = Arrays.copyOf(ids, documents * 2);
+            lengths = Arrays.copyOf(lengths, documents * 2);
+        }
+        int doc = documents++;
+        List<String> tokens = tokenize(message.getBody());
+        ids[doc] = message.getId();
+        lengths[doc] = tokens.size();
+        totalTokens += tokens.size();
+
+        // Ordenados, las repeticiones de un término quedan juntas: la frecuencia es el largo de cada tramo
+        Collections.sort(tokens);
+        for (int i = 0; i < tokens.size(); ) {
+            String token = tokens.get(i);
+            int end = i + 1;
+            while (end < tokens.size() && tokens.get(end).equals(token)) {
+                end++;
+            }
+            Postings postings = terms.get(token);
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(token, postings);
+            }
+            postings.add(doc, end - i);
+            i = end;
+        }
+        users.computeIfAbsent(message.getSender(), u -> new Postings()).add(doc, 1);
+        users.computeIfAbsent(message.getRecipient(), u -> new Postings()).add(doc, 1);
+    }
+
+    /**
+     * Busca los mensajes visibles para un usuario que contienen todas las palabras.
+     *
+     * @param offset resultados a saltear (paginación)
+     * @param limit máximo de resultados
+     * @throws IllegalArgumentException si la búsqueda no tiene palabras
+     */
+    public Hits search(String user, String query, int offset, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        if (queryTerms.isEmpty()) {
+            throw new IllegalArgumentException("La búsqueda no tiene palabras");
+        }
+        int wanted = offset + limit;
+        PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(wanted, 1024), WORST_FIRST);
+        int total = 0;
+
+        lock.readLock().lock();
+        try {
+            Postings visible = users.get(user);
+            if (visible == null) {
+                return new Hits(Collections.emptyList(), 0);
+            }
+            List<Cursor> cursors = new ArrayList<>(queryTerms.size() + 1);
+            cursors.add(new Cursor(visible, 0));
+            for (String term : queryTerms) {
+                Postings postings = terms.get(term);
+                if (postings == null) {
+                    return new Hits(Collections.emptyList(), 0);
+                }
+                double idf = Math.log(1 + (documents - postings.count + 0.5) / (postings.count + 0.5));
+                cursors.add(new Cursor(postings, idf));
+            }
+            cursors.sort(Comparator.comparingInt(cursor -> cursor.postings.count));
+            double averageLength = documents > 0 ? Math.max(1.0, (double) totalTokens / documents) : 1.0;
+
+            // Intersección: la lista más corta propone y las demás saltan hasta alcanzarla
+            Cursor driver = cursors.get(0);
+            int doc = -1;
+            search:
+            while (driver.advance(doc + 1)) {
+                doc = driver.doc;
+                for (int i = 1; i < cursors.size(); i++) {
+                    Cursor cursor = cursors.get(i);
+                    if (!cursor.advance(doc)) {
+                        break search;
+                    }
+                    if (cursor.doc != doc) {
+                        doc = cursor.doc - 1;
+                        continue search;
+                    }
+                }
+                total++;
+                double norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                double score = 0;
+                for (Cursor cursor : cursors) {
+                    score += cursor.idf * cursor.frequency * (K1 + 1) / (cursor.frequency + norm);
+                }
+                if (best.size() < wanted) {
+                    best.add(new Hit(doc, score));
+                } else if (WORST_FIRST.compare(best.peek(), new Hit(doc, score)) < 0) {
+                    best.poll();
+                    best.add(new Hit(doc, score));
+                }
+            }
+
+            List<Hit> ranked = new ArrayList<>(best);
+            ranked.sort(WORST_FIRST.reversed());
+            List<Long> result = new ArrayList<>(Math.max(0, Math.min(limit, ranked.size() - offset)));
+            for (int i = offset; i < ranked.size(); i++) {
+                result.add(ids[ranked.get(i).doc]);
+            }
+            return new Hits(result, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Términos de un texto: minúsculas, sin acentos, secuencias de letras y dígitos.
+     */
+    static List<String> tokenize(String text) {
+        String plain = text;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                plain = Normalizer.normalize(text, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= plain.length(); i++) {
+            char c = i < plain.length() ? plain.charAt(i) : ' ';
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue; // Acento separado por la normalización
+            }
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                if (current.length() <= MAX_TERM_LENGTH) {
+                    tokens.add(current.toString());
+                }
+                current.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Resumen para el log del servidor.
+     */
+    public String describe() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (Postings postings : terms.values()) {
+                bytes += postings.size;
+            }
+            return String.format("%d mensajes, %d términos, %.1f MB de listas de apariciones",
+                    documents, terms.size(), bytes / (1024.0 * 1024.0));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.mycompany.chat.history;
+
+/**
+ * Mensaje leído del historial.
+ */
+public final class StoredMessage {
+    private final long id;
+    private final long timestampMillis;
+    private final String sender;
+    private final String recipient;
+    private final String body;
+
+    StoredMessage(long id, long timestampMillis, String sender, String recipient, String body) {
+        this.id = id;
+        this.timestampMillis = timestampMillis;
+        this.sender = sender;
+        this.recipient = recipient;
+        this.body = body;
+    }
+
+    /**
+     * @return posición del mensaje en el log; sirve de cursor para paginar
+     */
+    public long getId() {
+        return id;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,253 @@
+package com.mycompany.chat.history;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Últimos mensajes de las conversaciones activas, ya codificados como líneas del
+ * protocolo, para responder HISTORY sin leer el disco.
+ *
+ * - Por conversación se guarda un tramo final de la cadena de mensajes (a lo sumo
+ *   {@code perConversation}), cada uno con su id, el id del anterior y la línea lista
+ *   para enviar. El tramo es siempre contiguo: si llega algo que no encaja, se descarta
+ *   lo guardado y se empieza de nuevo.
+ * - Lo actualiza el escritor del historial con cada mensaje confirmado, y
+ *   {@link MessageHistory#page} lo completa hacia atrás con las páginas leídas del disco.
+ * - Las conversaciones se expulsan por LRU cuando el total supera el presupuesto de
+ *   memoria (estimado a partir del largo de las líneas).
+ *
+ * Una página se responde desde acá solo si está completa: si pide más mensajes de los
+ * que hay guardados y la conversación sigue hacia atrás, se lee del disco.
+ */
+public class TailCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 64; // Objeto, referencias y String
+
+    private final long budgetBytes;
+    private final int perConversation;
+    private final Function<StoredMessage, String> encoder;
+    private final LinkedHashMap<String, Tail> tails = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    // Métricas (bajo el lock del objeto)
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static final class Entry {
+        final long id;
+        final long previous;
+        final String line;
+
+        Entry(long id, long previous, String line) {
+            this.id = id;
+            this.previous = previous;
+            this.line = line;
+        }
+
+        int bytes() {
+            return ENTRY_OVERHEAD_BYTES + 2 * line.length();
+        }
+    }
+
+    private static final class Tail {
+        final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        long bytes;
+    }
+
+    /**
+     * Página servida desde la caché.
+     */
+    public static final class Page {
+        private final List<String> lines;
+        private final long nextCursor;
+
+        Page(List<String> lines, long nextCursor) {
+            this.lines = lines;
+            this.nextCursor = nextCursor;
+        }
+
+        /** Líneas del protocolo, del mensaje más antiguo al más reciente; se pueden modificar */
+        public List<String> getLines() {
+            return lines;
+        }
+
+        /** Cursor para pedir la página anterior, o {@link MessageHistory#NO_MESSAGE} */
+        public long getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * @param budgetBytes memoria aproximada para todas las conversaciones
+     * @param perConversation mensajes que se guardan de cada conversación
+     * @param encoder convierte un mensaje en su línea del protocolo
+     */
+    public TailCache(long budgetBytes, int perConversation, Function<StoredMessage, String> encoder) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+        this.perConversation = Math.max(1, perConversation);
+        this.encoder = encoder;
+    }
+
+    /**
+     * Agrega un mensaje recién confirmado al final de su conversación.
+     *
+     * @param previous id del mensaje anterior de la conversación
+     */
+    synchronized void append(String key, StoredMessage message, long previous) {
+        Entry entry = new Entry(message.getId(), previous, encoder.apply(message));
+        Tail tail = tails.get(key);
+        if (tail == null) {
+            tail = new Tail();
+            tails.put(key, tail);
+        } else if (!tail.entries.isEmpty() && tail.entries.peekLast().id != previous) {
+            clear(tail); // No encaja con lo guardado
+        }
+        tail.entries.addLast(entry);
+        tail.bytes += entry.bytes();
+        bytes += entry.bytes();
+        while (tail.entries.size() > perConversation) {
+            Entry removed = tail.entries.pollFirst();
+            tail.bytes -= removed.bytes();
+            bytes -= removed.bytes();
+        }
+        evict();
+    }
+
+    /**
+     * Completa hacia atrás una conversación con una página leída del disco.
+     *
+     * @param messages mensajes de la página, del más antiguo al más reciente
+     * @param before id del mensaje anterior al primero de la página
+     * @param newest si la página termina en el mensaje más reciente de la conversación
+     */
+    synchronized void fill(String key, List<StoredMessage> messages, long before, boolean newest) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Tail tail = tails.get(key);
+        int end; // Último mensaje de la página que falta en la caché (exclusivo)
+        if (tail == null || tail.entries.isEmpty()) {
+            if (!newest) {
+                return; // Un tramo del medio no sirve para empezar
+            }
+            if (tail == null) {
+                tail = new Tail();
+                tails.put(key, tail);
+            }
+            end = messages.size();
+        } else {
+            long wanted = tail.entries.peekFirst().previous;
+            end = -1;
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if (messages.get(i).getId() == wanted) {
+                    end = i + 1;
+                    break;
+                }
+            }
+            if (end < 0) {
+                return; // La página no llega a tocar lo guardado
+            }
+        }
+        for (int i = end - 1; i >= 0 && tail.entries.size() < perConversation; i--) {
+            StoredMessage message = messages.get(i);
+            long previous = i > 0 ? messages.get(i - 1).getId() : before;
+            Entry entry = new Entry(message.getId(), previous, encoder.apply(message));
+            tail.entries.addFirst(entry);
+            tail.bytes += entry.bytes();
+            bytes += entry.bytes();
+        }
+        evict();
+    }
+
+    /**
+     * Responde una página desde la caché.
+     *
+     * @param before cursor, o {@link MessageHistory#NO_MESSAGE} para los más recientes
+     * @return la página, o null si no está completa en la caché
+     */
+    synchronized Page page(String key, long before, int limit) {
+        Tail tail = tails.get(key);
+        if (tail == null || tail.entries.isEmpty()) {
+            misses++;
+            return null;
+        }
+        Iterator<Entry> newestFirst = tail.entries.descendingIterator();
+        Entry entry = null;
+        if (before == MessageHistory.NO_MESSAGE) {
+            entry = newestFirst.next();
+        } else {
+            while (newestFirst.hasNext()) {
+                Entry candidate = newestFirst.next();
+                if (candidate.id == before) {
+                    entry = candidate;
+                    break;
+                }
+                if (candidate.id < before) {
+                    break;
+                }
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+        }
+        List<String> lines = new ArrayList<>(limit + 1);
+        long next;
+        while (true) {
+            lines.add(entry.line);
+            next = entry.previous;
+            if (lines.size() == limit || next == MessageHistory.NO_MESSAGE) {
+                break;
+            }
+            if (!newestFirst.hasNext()) {
+                misses++; // Faltan mensajes anteriores que no están guardados
+                return null;
+            }
+            entry = newestFirst.next();
+        }
+        hits++;
+        Collections.reverse(lines);
+        return new Page(lines, next);
+    }
+
+    /**
+     * Olvida una conversación (por ejemplo, porque vencieron mensajes suyos).
+     */
+    synchronized void remove(String key) {
+        Tail tail = tails.remove(key);
+        if (tail != null) {
+            bytes -= tail.bytes;
+        }
+    }
+
+    private void clear(Tail tail) {
+        bytes -= tail.bytes;
+        tail.bytes = 0;
+        tail.entries.clear();
+    }
+
+    private void evict() {
+        Iterator<Tail> leastRecent = tails.values().iterator();
+        while (bytes > budgetBytes && leastRecent.hasNext()) {
+            Tail tail = leastRecent.next();
+            bytes -= tail.bytes;
+            leastRecent.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Resumen para el log del servidor.
+     */
+    public synchronized String describe() {
+        long total = hits + misses;
+        return String.format("%d conversaciones, %.1f MB de %.1f MB, %.0f%% aciertos (%d páginas), %d expulsadas",
+                tails.size(), bytes / (1024.0 * 1024.0), budgetBytes / (1024.0 * 1024.0),
+                total > 0 ? 100.0 * hits / total : 0, total, evictions);
+    }
+}
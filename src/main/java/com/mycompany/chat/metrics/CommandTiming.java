@@ -0,0 +1,39 @@
+package com.mycompany.chat.metrics;
+
+/**
+ * Tiempos de despacho de un comando del protocolo: un histograma desde que arrancó el
+ * servidor (el que se exporta a Prometheus) y otro de los últimos minutos para ver
+ * percentiles y comandos por segundo recientes.
+ */
+public class CommandTiming {
+    private final String command;
+    private final LatencyHistogram total;
+    private final RollingHistogram recent;
+
+    CommandTiming(String command, LatencyHistogram total, RollingHistogram recent) {
+        this.command = command;
+        this.total = total;
+        this.recent = recent;
+    }
+
+    /**
+     * Registra un despacho que empezó en {@code startNanos} ({@link System#nanoTime()}).
+     */
+    public void recordSince(long startNanos) {
+        long now = System.nanoTime();
+        total.record(now - startNanos);
+        recent.record(now - startNanos, now);
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public LatencyHistogram.Snapshot total() {
+        return total.snapshot();
+    }
+
+    public RollingHistogram.Window window(long windowMillis) {
+        return recent.window(windowMillis);
+    }
+}
@@ -0,0 +1,24 @@
+package com.mycompany.chat.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contador que solo crece. Internamente está repartido en celdas ({@link LongAdder}),
+ * así que muchos hilos pueden incrementarlo a la vez sin pelear por la misma variable;
+ * leerlo suma las celdas.
+ */
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
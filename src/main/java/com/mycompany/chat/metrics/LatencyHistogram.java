@@ -0,0 +1,188 @@
+package com.mycompany.chat.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin locks, con cubetas logarítmico-lineales (al estilo HDR).
+ *
+ * - Los valores (nanosegundos) menores a {@value #SUB_BUCKETS} van a una cubeta propia;
+ *   cada potencia de 2 por encima se divide en {@value #HALF} cubetas iguales, así que el
+ *   error relativo de un percentil es a lo sumo 1/{@value #HALF} (~3%).
+ * - Registrar es calcular el índice con un par de operaciones de bits y un incremento
+ *   atómico: no hay locks ni se crean objetos.
+ * - Los valores mayores a ~18 minutos se cuentan en la última cubeta (el máximo se
+ *   guarda exacto).
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS; // 64
+    private static final int HALF = SUB_BUCKETS >> 1; // 32 por potencia de 2
+    private static final int MAX_BITS = 40; // 2^40 ns ~ 18 minutos
+    private static final long MAX_TRACKABLE = (1L << MAX_BITS) - 1;
+    static final int BUCKETS = index(MAX_TRACKABLE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder(); // Repartida: la tocan todos los registros
+    private final AtomicLong max = new AtomicLong();
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return (shift << (SUB_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    // Mayor valor que cae en la cubeta
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >> (SUB_BITS - 1)) - 1;
+        long sub = index - ((long) shift << (SUB_BITS - 1));
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Registra una duración.
+     *
+     * @param nanos duración en nanosegundos (los negativos cuentan como 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(Math.min(value, MAX_TRACKABLE)));
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Registra el tiempo transcurrido desde {@code startNanos} ({@link System#nanoTime()}).
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Vuelve a cero. Lo que se registre a la vez puede perderse o quedar a medias: sirve
+     * para reciclar un intervalo ya cerrado (ver {@link RollingHistogram}).
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts.get(i) != 0) {
+                counts.set(i, 0);
+            }
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Copia el estado actual para calcular percentiles sin frenar a quienes registran.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    /**
+     * Estado de un histograma en un momento dado.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] counts, long count, long sumNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSumNanos() {
+            return sumNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @param quantile entre 0 y 1 (por ejemplo 0.99)
+         * @return el valor por debajo del cual queda esa fracción de las muestras, en
+         *         nanosegundos (0 si no hay muestras)
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * @return un estado con las muestras de este y del otro
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged, count + other.count, sumNanos + other.sumNanos,
+                    Math.max(maxNanos, other.maxNanos));
+        }
+
+        /**
+         * @return promedio en nanosegundos
+         */
+        public double mean() {
+            return count > 0 ? (double) sumNanos / count : 0;
+        }
+
+        /**
+         * Resumen legible: cantidad, p50, p99, p999 y máximo.
+         */
+        @Override
+        public String toString() {
+            return String.format("n=%d p50=%s p99=%s p999=%s máx=%s", count, format(percentile(0.5)),
+                    format(percentile(0.99)), format(percentile(0.999)), format(maxNanos));
+        }
+
+        // Con la unidad que deja pocas cifras: de nanosegundos a segundos
+        private static String format(long nanos) {
+            if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+                return nanos + " ns";
+            }
+            if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+                return String.format("%.1f us", nanos / 1e3);
+            }
+            if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+                return String.format("%.1f ms", nanos / 1e6);
+            }
+            return String.format("%.2f s", nanos / 1e9);
+        }
+    }
+}
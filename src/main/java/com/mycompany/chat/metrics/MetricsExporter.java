@@ -0,0 +1,168 @@
+package com.mycompany.chat.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exporta las métricas en formato de texto de Prometheus, a un archivo local que se
+ * reescribe cada tanto y/o por HTTP en {@code http://127.0.0.1:<puerto>/metrics}.
+ *
+ * - El archivo se escribe completo en un temporal y se mueve encima del anterior, así
+ *   quien lo lea (por ejemplo el textfile collector de node_exporter) nunca ve uno a medias.
+ * - El servidor HTTP escucha solo en la interfaz local y atiende de a una consulta en
+ *   un único hilo: es para un Prometheus o un curl en la misma máquina.
+ */
+public class MetricsExporter {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final Path file; // null si no se exporta a archivo
+    private final long intervalMillis;
+    private final int httpPort; // 0 si no se exporta por HTTP
+    private Thread writer;
+    private HttpServer http;
+    private ExecutorService httpThread;
+    private volatile boolean running = true;
+
+    // Métricas
+    private final AtomicLong fileWrites = new AtomicLong();
+    private final AtomicLong fileErrors = new AtomicLong();
+    private final AtomicLong httpRequests = new AtomicLong();
+
+    /**
+     * @param file archivo a reescribir, o null
+     * @param intervalMillis cada cuánto se reescribe el archivo
+     * @param httpPort puerto local para /metrics, o 0
+     */
+    public MetricsExporter(MetricsRegistry registry, Path file, long intervalMillis, int httpPort) {
+        this.registry = registry;
+        this.file = file;
+        this.intervalMillis = Math.max(1000, intervalMillis);
+        this.httpPort = httpPort;
+    }
+
+    /**
+     * Arranca la escritura del archivo y el servidor HTTP que estén configurados.
+     *
+     * @throws IOException si no se pudo abrir el puerto HTTP
+     */
+    public void start() throws IOException {
+        if (file != null) {
+            writer = new Thread(this::writeLoop, "metricas-archivo");
+            writer.setDaemon(true);
+            writer.start();
+        }
+        if (httpPort > 0) {
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+            http.createContext("/metrics", this::serve);
+            httpThread = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metricas-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+            http.setExecutor(httpThread);
+            http.start();
+        }
+    }
+
+    /**
+     * @return las métricas en formato de texto de Prometheus
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        registry.writePrometheus(out);
+        return out.toString();
+    }
+
+    private void writeLoop() {
+        while (running) {
+            writeFile();
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void writeFile() {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(tmp, render().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileWrites.incrementAndGet();
+        } catch (IOException e) {
+            if (fileErrors.getAndIncrement() == 0) {
+                System.err.println("[METRICAS] No se pudo escribir " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            httpRequests.incrementAndGet();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Detiene la exportación; el archivo queda con los valores finales.
+     */
+    public void close() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeFile();
+        }
+        if (http != null) {
+            http.stop(0);
+            httpThread.shutdownNow();
+        }
+    }
+
+    /**
+     * Resumen para el log del servidor.
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        if (file != null) {
+            lines.add(String.format("archivo %s cada %d s: %d escrituras, %d errores", file,
+                    TimeUnit.MILLISECONDS.toSeconds(intervalMillis), fileWrites.get(), fileErrors.get()));
+        }
+        if (http != null) {
+            lines.add(String.format("http://127.0.0.1:%d/metrics: %d consultas", httpPort, httpRequests.get()));
+        }
+        return lines;
+    }
+}
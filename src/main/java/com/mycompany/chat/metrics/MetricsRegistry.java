@@ -0,0 +1,216 @@
+package com.mycompany.chat.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registro de las métricas del servidor, por nombre y etiquetas.
+ *
+ * - Contadores ({@link Counter}) y histogramas ({@link LatencyHistogram}) se crean al
+ *   registrarlos y quien los actualiza se guarda la referencia: registrar una métrica que
+ *   ya existe devuelve la misma, y actualizarla nunca pasa por el registro.
+ * - Los indicadores (gauges) no guardan nada: se calculan al leerlos, con la función que
+ *   se registró (sesiones abiertas, colas, uso de pools...).
+ * - {@link #writePrometheus} produce el formato de texto de Prometheus y
+ *   {@link #describe()} una línea legible por métrica para el comando STATS.
+ *
+ * Los nombres siguen la convención de Prometheus ({@code chat_mensajes_total}); las
+ * etiquetas se pasan como pares nombre, valor.
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+        final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    // Métricas con el mismo nombre y distintas etiquetas
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        final Map<String, Object> series = new LinkedHashMap<>(); // Etiquetas -> métrica
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * Registra un contador, o devuelve el que ya existe con ese nombre y etiquetas.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, Type.COUNTER, labels, new Counter(), false);
+    }
+
+    /**
+     * Registra un histograma de latencias, o devuelve el que ya existe.
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) register(name, help, Type.SUMMARY, labels, new LatencyHistogram(), false);
+    }
+
+    /**
+     * Registra (o reemplaza) un indicador que se calcula al leerlo.
+     *
+     * @param value función que se llama al exportar; debe ser rápida y no bloquear
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        register(name, help, Type.GAUGE, labels, value, true);
+    }
+
+    private synchronized Object register(String name, String help, Type type, String[] labels,
+                                         Object metric, boolean replace) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if (family.type != type) {
+            throw new IllegalArgumentException("La métrica " + name + " ya está registrada como " + family.type.text);
+        }
+        String key = labels(labels);
+        Object existing = family.series.get(key);
+        if (existing != null && !replace) {
+            return existing;
+        }
+        family.series.put(key, metric);
+        return metric;
+    }
+
+    private static String labels(String[] pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Las etiquetas van de a pares nombre, valor");
+        }
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(pairs[i]).append("=\"");
+            String value = pairs[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    key.append('\\').append(c);
+                } else if (c == '\n') {
+                    key.append("\\n");
+                } else {
+                    key.append(c);
+                }
+            }
+            key.append('"');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Escribe todas las métricas en el formato de texto de Prometheus. Los histogramas se
+     * exportan como summary (p50, p99, p999, suma y cantidad, en segundos) más un
+     * indicador {@code <nombre>_max}.
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (Family family : copyFamilies()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.text).append('\n');
+            List<Map.Entry<String, Object>> series = copySeries(family);
+            for (Map.Entry<String, Object> entry : series) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if (family.type == Type.COUNTER) {
+                    sample(out, family.name, labels, ((Counter) metric).get());
+                } else if (family.type == Type.GAUGE) {
+                    sample(out, family.name, labels, read((DoubleSupplier) metric));
+                } else {
+                    LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) metric).snapshot();
+                    for (double quantile : QUANTILES) {
+                        String withQuantile = (labels.isEmpty() ? "" : labels + ",")
+                                + "quantile=\"" + quantile + "\"";
+                        sample(out, family.name, withQuantile, seconds(snapshot.percentile(quantile)));
+                    }
+                    sample(out, family.name + "_sum", labels, seconds(snapshot.getSumNanos()));
+                    sample(out, family.name + "_count", labels, snapshot.getCount());
+                }
+            }
+            if (family.type == Type.SUMMARY) {
+                out.append("# TYPE ").append(family.name).append("_max gauge\n");
+                for (Map.Entry<String, Object> entry : series) {
+                    sample(out, family.name + "_max", entry.getKey(),
+                            seconds(((LatencyHistogram) entry.getValue()).snapshot().getMaxNanos()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Una línea legible por métrica: valor de contadores e indicadores, y cantidad,
+     * percentiles y máximo de los histogramas.
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Family family : copyFamilies()) {
+            for (Map.Entry<String, Object> entry : copySeries(family)) {
+                String name = entry.getKey().isEmpty() ? family.name : family.name + "{" + entry.getKey() + "}";
+                Object metric = entry.getValue();
+                if (family.type == Type.COUNTER) {
+                    lines.add(name + " " + ((Counter) metric).get());
+                } else if (family.type == Type.GAUGE) {
+                    lines.add(name + " " + format(read((DoubleSupplier) metric)));
+                } else {
+                    lines.add(name + " " + ((LatencyHistogram) metric).snapshot());
+                }
+            }
+        }
+        return lines;
+    }
+
+    private synchronized List<Family> copyFamilies() {
+        return new ArrayList<>(families.values());
+    }
+
+    private synchronized List<Map.Entry<String, Object>> copySeries(Family family) {
+        return new ArrayList<>(new LinkedHashMap<>(family.series).entrySet());
+    }
+
+    private static double read(DoubleSupplier gauge) {
+        try {
+            return gauge.getAsDouble();
+        } catch (RuntimeException e) {
+            return Double.NaN; // Un indicador que falla no arruina la exportación
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,106 @@
+package com.mycompany.chat.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias de los últimos minutos, sin locks.
+ *
+ * El tiempo se divide en intervalos fijos y cada uno tiene su {@link LatencyHistogram}
+ * en un anillo. Registrar cae en el intervalo actual; el primero que registra en un
+ * intervalo nuevo recicla la ranura más vieja (un CAS sobre el número de intervalo y
+ * ponerla en cero). Una ventana se arma sumando los intervalos que cubre, el actual
+ * incluido aunque esté a medias.
+ *
+ * Las muestras que caen justo mientras se recicla una ranura pueden perderse: el
+ * resultado es aproximado en el borde de cada intervalo, a cambio de no bloquear nunca.
+ */
+public class RollingHistogram {
+    private final long sliceNanos;
+    private final LatencyHistogram[] slices;
+    private final AtomicLongArray sliceNumbers; // Intervalo que contiene cada ranura (-1 = ninguno)
+    private final long origin = System.nanoTime();
+
+    /**
+     * @param sliceMillis duración de cada intervalo
+     * @param windowMillis ventana más larga que se va a pedir
+     */
+    public RollingHistogram(long sliceMillis, long windowMillis) {
+        this.sliceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, sliceMillis));
+        int count = (int) ((windowMillis + sliceMillis - 1) / Math.max(1, sliceMillis)) + 1; // + el que se recicla
+        this.slices = new LatencyHistogram[count];
+        this.sliceNumbers = new AtomicLongArray(count);
+        for (int i = 0; i < count; i++) {
+            slices[i] = new LatencyHistogram();
+            sliceNumbers.set(i, -1);
+        }
+    }
+
+    /**
+     * Registra una duración que terminó en {@code nowNanos} ({@link System#nanoTime()}).
+     */
+    public void record(long nanos, long nowNanos) {
+        long number = (nowNanos - origin) / sliceNanos;
+        int slot = (int) (number % slices.length);
+        long held = sliceNumbers.get(slot);
+        if (held < number && sliceNumbers.compareAndSet(slot, held, number)) {
+            slices[slot].reset();
+        }
+        // Si otro hilo la está reciclando, la muestra igual cuenta para el intervalo nuevo
+        slices[slot].record(nanos);
+    }
+
+    /**
+     * Muestras de la ventana que termina ahora.
+     */
+    public Window window(long windowMillis) {
+        long now = System.nanoTime();
+        long current = (now - origin) / sliceNanos;
+        int wanted = (int) Math.min(slices.length - 1,
+                Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMillis) / sliceNanos));
+        long first = Math.max(0, current - wanted + 1);
+        LatencyHistogram.Snapshot merged = null;
+        for (long number = first; number <= current; number++) {
+            int slot = (int) (number % slices.length);
+            if (sliceNumbers.get(slot) != number) {
+                continue; // Nadie registró en ese intervalo
+            }
+            LatencyHistogram.Snapshot snapshot = slices[slot].snapshot();
+            merged = merged == null ? snapshot : merged.merge(snapshot);
+        }
+        if (merged == null) {
+            merged = new LatencyHistogram().snapshot();
+        }
+        long covered = now - origin - first * sliceNanos; // Intervalos completos y lo que va del actual
+        return new Window(merged, covered);
+    }
+
+    /**
+     * Muestras de una ventana y el tiempo que cubre.
+     */
+    public static final class Window {
+        private final LatencyHistogram.Snapshot snapshot;
+        private final long coveredNanos;
+
+        Window(LatencyHistogram.Snapshot snapshot, long coveredNanos) {
+            this.snapshot = snapshot;
+            this.coveredNanos = Math.max(1, coveredNanos);
+        }
+
+        public LatencyHistogram.Snapshot getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * @return muestras por segundo en la ventana
+         */
+        public double getRatePerSecond() {
+            return snapshot.getCount() * 1e9 / coveredNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f/s %s", getRatePerSecond(), snapshot);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.mycompany.chat.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Métricas propias del servidor de chat, registradas en un {@link MetricsRegistry}.
+ *
+ * Los handlers avisan lo que pasó con los métodos de esta clase ({@link #messageSent},
+ * {@link #loginSucceeded}...), que solo incrementan contadores repartidos o registran en
+ * un histograma: no bloquean ni crean objetos. Los indicadores de colas, sesiones y pools
+ * los registra {@code ChatServer} sobre el mismo registro.
+ *
+ * Los tiempos de despacho por comando ({@link #commandTiming}) se comparten entre todos
+ * los clientes: cada registro de handlers pide el suyo al registrar un comando.
+ */
+public class ServerMetrics {
+    private final MetricsRegistry registry;
+    private final Counter messages;
+    private final Counter messageBytes;
+    private final Counter files;
+    private final Counter fileBytes;
+    private final Counter videoFrames;
+    private final Counter videoBytes;
+    private final Counter loginsOk;
+    private final Counter loginsFailed;
+    private final Counter loginsResumed;
+    private final Counter loginsBusy;
+    private final LatencyHistogram loginLatency;
+    private final LatencyHistogram historyLatency;
+    private final ConcurrentHashMap<String, CommandTiming> commands = new ConcurrentHashMap<>();
+
+    public ServerMetrics() {
+        this(new MetricsRegistry());
+    }
+
+    public ServerMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+        this.messages = registry.counter("chat_mensajes_total", "Mensajes privados aceptados");
+        this.files = registry.counter("chat_archivos_total", "Archivos entregados");
+        this.videoFrames = registry.counter("chat_frames_video_total", "Frames de video reenviados");
+        String bytesHelp = "Bytes de contenido entregados o aceptados, por tipo";
+        this.messageBytes = registry.counter("chat_bytes_total", bytesHelp, "tipo", "mensajes");
+        this.fileBytes = registry.counter("chat_bytes_total", bytesHelp, "tipo", "archivos");
+        this.videoBytes = registry.counter("chat_bytes_total", bytesHelp, "tipo", "video");
+        String loginsHelp = "Inicios de sesión, por resultado";
+        this.loginsOk = registry.counter("chat_logins_total", loginsHelp, "resultado", "ok");
+        this.loginsFailed = registry.counter("chat_logins_total", loginsHelp, "resultado", "fallido");
+        this.loginsResumed = registry.counter("chat_logins_total", loginsHelp, "resultado", "reanudado");
+        this.loginsBusy = registry.counter("chat_logins_total", loginsHelp, "resultado", "ocupado");
+        this.loginLatency = registry.histogram("chat_login_segundos",
+                "Desde que llega LOGIN hasta la respuesta (cola y verificación BCrypt)");
+        this.historyLatency = registry.histogram("chat_historial_segundos", "Tiempo en responder una página de HISTORY");
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    public void messageSent(String body) {
+        messages.increment();
+        messageBytes.add(utf8Length(body));
+    }
+
+    public void fileSent(long bytes) {
+        files.increment();
+        fileBytes.add(bytes);
+    }
+
+    public void videoFrameRelayed(int bytes) {
+        videoFrames.increment();
+        videoBytes.add(bytes);
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} al recibir el LOGIN
+     */
+    public void loginSucceeded(long startNanos) {
+        loginsOk.increment();
+        loginLatency.recordSince(startNanos);
+    }
+
+    public void loginFailed(long startNanos) {
+        loginsFailed.increment();
+        loginLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Login rechazado o vencido porque el servidor estaba saturado de verificaciones.
+     */
+    public void loginRejected(long startNanos) {
+        loginsBusy.increment();
+        loginLatency.recordSince(startNanos);
+    }
+
+    public void sessionResumed() {
+        loginsResumed.increment();
+    }
+
+    public void historyPageServed(long startNanos) {
+        historyLatency.recordSince(startNanos);
+    }
+
+    /**
+     * Tiempos de despacho de un comando; se crean la primera vez que se piden.
+     */
+    public CommandTiming commandTiming(String command) {
+        return commands.computeIfAbsent(command, name -> new CommandTiming(name,
+                registry.histogram("chat_comando_segundos", "Tiempo de despacho de cada comando en el hilo del cliente",
+                        "comando", name),
+                new RollingHistogram(TimeUnit.SECONDS.toMillis(Constants.COMMAND_TIMING_SLICE_SECONDS),
+                        TimeUnit.SECONDS.toMillis(Constants.COMMAND_TIMING_LONG_WINDOW_SECONDS))));
+    }
+
+    /**
+     * Una línea por comando usado: comandos por segundo y percentiles en la ventana corta
+     * y en la larga.
+     */
+    public List<String> describeCommands() {
+        long shortWindow = TimeUnit.SECONDS.toMillis(Constants.COMMAND_TIMING_SHORT_WINDOW_SECONDS);
+        long longWindow = TimeUnit.SECONDS.toMillis(Constants.COMMAND_TIMING_LONG_WINDOW_SECONDS);
+        List<String> lines = new ArrayList<>();
+        for (CommandTiming timing : new TreeMap<>(commands).values()) {
+            long total = timing.total().getCount();
+            if (total == 0) {
+                continue;
+            }
+            lines.add(String.format("%s (%d en total) | %d s: %s | %d s: %s", timing.getCommand(), total,
+                    Constants.COMMAND_TIMING_SHORT_WINDOW_SECONDS, timing.window(shortWindow),
+                    Constants.COMMAND_TIMING_LONG_WINDOW_SECONDS, timing.window(longWindow)));
+        }
+        return lines;
+    }
+
+    // Largo en UTF-8 sin codificar el texto
+    private static long utf8Length(String text) {
+        long bytes = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                bytes += Character.isSurrogate(c) ? 1 : 2; // Un par suma 4 entre los dos
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+}
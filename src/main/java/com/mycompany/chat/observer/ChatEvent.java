@@ -25,10 +25,17 @@ public class ChatEvent {
     private final LocalDateTime timestamp;
     
     public ChatEvent(EventType type, String username, String message) {
+        this(type, username, message, LocalDateTime.now());
+    }
+    
+    /**
+     * Evento con la fecha en que ocurrió (por ejemplo, al leerlo del anillo del publisher).
+     */
+    public ChatEvent(EventType type, String username, String message, LocalDateTime timestamp) {
         this.type = type;
         this.username = username;
         this.message = message;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = timestamp;
     }
     
     public EventType getType() {
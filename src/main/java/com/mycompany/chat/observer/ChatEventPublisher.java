@@ -1,72 +1,329 @@
 package com.mycompany.chat.observer;
 
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.mycompany.chat.util.Constants;
 
 /**
- * Publisher de eventos usando Observer Pattern.
- * 
- * Permite registrar observadores y notificarles cuando ocurren eventos.
- * Thread-safe usando CopyOnWriteArrayList.
+ * Publisher de eventos usando Observer Pattern, asíncrono sobre un anillo prealocado.
+ *
+ * Publicar ({@link #publishEvent}) no bloquea ni crea objetos: toma el siguiente número
+ * de secuencia con un incremento atómico y copia tipo, usuario, texto y fecha en la
+ * ranura correspondiente de un arreglo fijo. Cada observador tiene su propio hilo y su
+ * propia posición en el anillo: lee por tandas todo lo publicado desde la última vez y
+ * recién ahí crea los {@link ChatEvent}; al final de cada tanda se llama a
+ * {@link ChatObserver#onBatchEnd()}.
+ *
+ * - Un observador lento no frena a nadie: los que publican nunca lo esperan. Si se
+ *   atrasa más que la capacidad del anillo, pierde los eventos que se sobrescribieron
+ *   (solo él) y salta a los más viejos que siguen disponibles.
+ * - El atraso de cada observador (eventos publicados que todavía no procesó), el máximo
+ *   visto y los perdidos se ven en {@link #describe()}.
+ * - Cada ranura guarda el número de secuencia que contiene, y se escribe como un
+ *   seqlock: el lector verifica después de copiar los campos que la ranura no cambió.
+ * - Si al publicar la ranura está ocupada por otro que publica (una vuelta completa de
+ *   diferencia), el evento se descarta y su secuencia queda anotada como lápida en la
+ *   ranura: los lectores la saltan en lugar de esperarla.
  */
 public class ChatEventPublisher {
-    private final List<ChatObserver> observers = new CopyOnWriteArrayList<>();
-    
+    private static final long WRITING = Long.MIN_VALUE; // Ranura a medio escribir
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final ChatEvent.EventType[] TYPES = ChatEvent.EventType.values();
+
+    private final int mask;
+    private final AtomicLongArray sequences; // Secuencia publicada en cada ranura
+    private final AtomicLongArray skipped; // Última secuencia descartada en cada ranura (lápida)
+    private final int[] types;
+    private final String[] usernames;
+    private final String[] messages;
+    private final long[] timestamps;
+    private final AtomicLong cursor = new AtomicLong(); // Próxima secuencia a publicar
+    private final AtomicLong collisions = new AtomicLong(); // Vueltas completas mientras se escribía
+    private volatile Consumer[] consumers = new Consumer[0]; // Copia al modificar: publicar no crea iteradores
+
+    // Lector de un observador, con su hilo y su posición en el anillo
+    private final class Consumer implements Runnable {
+        final ChatObserver observer;
+        final Thread thread;
+        volatile long next; // Próxima secuencia a leer
+        volatile boolean sleeping;
+        volatile boolean running = true;
+        volatile long processed;
+        volatile long lost;
+        volatile long maxLag;
+        volatile long batches;
+
+        Consumer(ChatObserver observer, long start) {
+            this.observer = observer;
+            this.next = start;
+            this.thread = new Thread(this, "eventos-" + name(observer));
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<ChatEvent> batch = new ArrayList<>(64);
+            int idle = 0;
+            while (running || next < cursor.get()) {
+                long published = cursor.get();
+                if (next >= published || !readBatch(published, batch)) {
+                    if (!running) {
+                        break; // Lo que falta quedó a medio publicar
+                    }
+                    if (++idle < SPINS_BEFORE_PARK) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    sleeping = true;
+                    if (next >= cursor.get() || !isPublished(next)) {
+                        LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                    }
+                    sleeping = false;
+                    continue;
+                }
+                idle = 0;
+                maxLag = Math.max(maxLag, published - next + batch.size());
+                for (ChatEvent event : batch) {
+                    try {
+                        observer.onEvent(event);
+                    } catch (Exception e) {
+                        // No permitir que un evento con errores detenga al observador
+                        System.err.println("Error notificando a observador: " + e.getMessage());
+                    }
+                }
+                try {
+                    observer.onBatchEnd();
+                } catch (Exception e) {
+                    System.err.println("Error notificando a observador: " + e.getMessage());
+                }
+                processed += batch.size();
+                batches++;
+                batch.clear();
+            }
+        }
+
+        // Copia a la tanda los eventos publicados de forma contigua desde next
+        private boolean readBatch(long published, List<ChatEvent> batch) {
+            long sequence = next;
+            while (sequence < published) {
+                int slot = (int) sequence & mask;
+                long stored = sequences.get(slot);
+                if (stored != sequence) {
+                    long tombstone = skipped.get(slot);
+                    if (tombstone == sequence) {
+                        sequence++; // Se descartó al publicar: no hay evento que leer
+                        continue;
+                    }
+                    if (stored < sequence && tombstone < sequence) {
+                        break; // Todavía se está escribiendo
+                    }
+                    // Se sobrescribió: saltar a lo más viejo que sigue en el anillo
+                    long oldest = Math.max(sequence + 1, cursor.get() - (mask + 1));
+                    lost += oldest - sequence;
+                    sequence = oldest;
+                    continue;
+                }
+                int type = types[slot];
+                String username = usernames[slot];
+                String message = messages[slot];
+                long timestamp = timestamps[slot];
+                VarHandle.acquireFence();
+                if (sequences.get(slot) != sequence) {
+                    continue; // Se sobrescribió mientras se copiaba: se reintenta
+                }
+                batch.add(new ChatEvent(TYPES[type], username, message,
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault())));
+                sequence++;
+            }
+            next = sequence;
+            return !batch.isEmpty();
+        }
+
+        private boolean isPublished(long sequence) {
+            int slot = (int) sequence & mask;
+            return sequences.get(slot) >= sequence || skipped.get(slot) >= sequence;
+        }
+    }
+
+    public ChatEventPublisher() {
+        this(Constants.EVENT_RING_SIZE);
+    }
+
+    /**
+     * @param capacity eventos que caben en el anillo (se redondea a potencia de 2)
+     */
+    public ChatEventPublisher(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.skipped = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, -1); // Ninguna ranura contiene todavía un evento
+            skipped.set(i, -1);
+        }
+        this.types = new int[size];
+        this.usernames = new String[size];
+        this.messages = new String[size];
+        this.timestamps = new long[size];
+    }
+
     /**
-     * Registra un nuevo observador.
-     * 
+     * Registra un nuevo observador; recibe los eventos publicados desde ahora.
+     *
      * @param observer El observador a registrar
      */
-    public void subscribe(ChatObserver observer) {
-        if (observer != null && !observers.contains(observer)) {
-            observers.add(observer);
+    public synchronized void subscribe(ChatObserver observer) {
+        if (observer == null || findConsumer(observer) != null) {
+            return;
         }
+        Consumer consumer = new Consumer(observer, cursor.get());
+        Consumer[] updated = Arrays.copyOf(consumers, consumers.length + 1);
+        updated[updated.length - 1] = consumer;
+        consumers = updated;
+        consumer.thread.start();
     }
-    
+
     /**
-     * Elimina un observador.
-     * 
+     * Elimina un observador; termina de procesar lo que ya se publicó.
+     *
      * @param observer El observador a eliminar
      */
-    public void unsubscribe(ChatObserver observer) {
-        observers.remove(observer);
+    public synchronized void unsubscribe(ChatObserver observer) {
+        Consumer consumer = findConsumer(observer);
+        if (consumer != null) {
+            List<Consumer> remaining = new ArrayList<>(Arrays.asList(consumers));
+            remaining.remove(consumer);
+            consumers = remaining.toArray(new Consumer[0]);
+            consumer.running = false;
+            LockSupport.unpark(consumer.thread);
+        }
     }
-    
+
+    private Consumer findConsumer(ChatObserver observer) {
+        for (Consumer consumer : consumers) {
+            if (consumer.observer == observer) {
+                return consumer;
+            }
+        }
+        return null;
+    }
+
     /**
-     * Notifica a todos los observadores sobre un evento.
-     * 
+     * Publica un evento ya creado (se copian sus datos al anillo).
+     *
      * @param event El evento a notificar
      */
     public void notifyObservers(ChatEvent event) {
-        for (ChatObserver observer : observers) {
-            try {
-                observer.onEvent(event);
-            } catch (Exception e) {
-                // No permitir que un observador con errores afecte a los demás
-                System.err.println("Error notificando a observador: " + e.getMessage());
-            }
-        }
+        publishEvent(event.getType(), event.getUsername(), event.getMessage());
     }
-    
+
     /**
-     * Notifica un evento creándolo automáticamente.
-     * 
+     * Publica un evento sin bloquear ni crear objetos.
+     *
      * @param type Tipo del evento
      * @param username Nombre de usuario relacionado (puede ser null)
      * @param message Mensaje del evento
      */
     public void publishEvent(ChatEvent.EventType type, String username, String message) {
-        ChatEvent event = new ChatEvent(type, username, message);
-        notifyObservers(event);
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) sequence & mask;
+        long previous = sequences.get(slot);
+        // Otro publicador de una vuelta anterior o posterior sigue en esta ranura: se
+        // descarta el evento y se deja la lápida, para que los lectores no lo esperen
+        if (previous >= sequence || previous == WRITING || !sequences.compareAndSet(slot, previous, WRITING)) {
+            skipped.accumulateAndGet(slot, sequence, Math::max);
+            collisions.incrementAndGet();
+            wakeConsumers();
+            return;
+        }
+        types[slot] = type.ordinal();
+        usernames[slot] = username;
+        messages[slot] = message;
+        timestamps[slot] = System.currentTimeMillis();
+        sequences.set(slot, sequence); // Publica (escritura volátil)
+        wakeConsumers();
+    }
+
+    private void wakeConsumers() {
+        for (Consumer consumer : consumers) {
+            if (consumer.sleeping) {
+                consumer.sleeping = false; // Un solo unpark por cada vez que se duerme
+                LockSupport.unpark(consumer.thread);
+            }
+        }
     }
-    
+
+    private static String name(ChatObserver observer) {
+        String name = observer.getClass().getSimpleName();
+        return name.isEmpty() ? observer.getClass().getName() : name;
+    }
+
     /**
      * Obtiene el número de observadores registrados.
-     * 
+     *
      * @return Número de observadores
      */
     public int getObserverCount() {
-        return observers.size();
+        return consumers.length;
+    }
+
+    /**
+     * @return eventos publicados que el observador más atrasado todavía no procesó
+     */
+    public long getBacklog() {
+        long published = cursor.get();
+        long backlog = 0;
+        for (Consumer consumer : consumers) {
+            backlog = Math.max(backlog, published - consumer.next);
+        }
+        return backlog;
     }
-}
 
+    /**
+     * Espera hasta el plazo a que los observadores procesen lo publicado y los detiene.
+     */
+    public void close(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Consumer consumer : consumers) {
+            consumer.running = false;
+            LockSupport.unpark(consumer.thread);
+        }
+        for (Consumer consumer : consumers) {
+            try {
+                consumer.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Resumen para el log del servidor: una línea por observador con su atraso.
+     */
+    public List<String> describe() {
+        long published = cursor.get();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%d eventos publicados en un anillo de %d, %d descartados por colisión",
+                published, mask + 1, collisions.get()));
+        for (Consumer consumer : consumers) {
+            long done = consumer.batches;
+            lines.add(String.format("%s: %d procesados en %d tandas (%.1f por tanda), atraso %d (máx %d), %d perdidos",
+                    name(consumer.observer), consumer.processed, done,
+                    done > 0 ? (double) consumer.processed / done : 0,
+                    Math.max(0, published - consumer.next), consumer.maxLag, consumer.lost));
+        }
+        return lines;
+    }
+}
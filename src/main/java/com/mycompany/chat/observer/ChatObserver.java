@@ -16,5 +16,12 @@ public interface ChatObserver {
      * @param event El evento que ocurrió
      */
     void onEvent(ChatEvent event);
+    
+    /**
+     * Se llama después de cada tanda de eventos (ver ChatEventPublisher), para que el
+     * observador pueda escribir o enviar lo acumulado de una sola vez.
+     */
+    default void onBatchEnd() {
+    }
 }
 
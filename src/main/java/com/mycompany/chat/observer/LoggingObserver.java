@@ -6,12 +6,20 @@ package com.mycompany.chat.observer;
  * Ejemplo de implementación del patrón Observer para logging.
  */
 public class LoggingObserver implements ChatObserver {
+    private final StringBuilder pending = new StringBuilder(); // Solo lo usa el hilo del observador
     
     @Override
     public void onEvent(ChatEvent event) {
         // En una implementación real, esto podría usar un framework de logging
         // como SLF4J o Log4j
-        System.out.println("[EVENTO] " + event.toString());
+        pending.append("[EVENTO] ").append(event).append(System.lineSeparator());
+    }
+    
+    @Override
+    public void onBatchEnd() {
+        // Una sola escritura (y un solo lock de System.out) por tanda
+        System.out.print(pending);
+        pending.setLength(0);
     }
 }
 
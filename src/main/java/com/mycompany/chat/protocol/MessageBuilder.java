@@ -96,6 +96,86 @@ public class MessageBuilder {
             .build();
     }
     
+    /**
+     * Construye un comando de login que anuncia capacidades opcionales del cliente
+     * (por ejemplo {@link Constants#CAPABILITY_ACKS}).
+     */
+    public static String buildLogin(String username, String password, String capability) {
+        return create()
+            .withType(Constants.CMD_LOGIN)
+            .withParams(username, password, capability)
+            .build();
+    }
+    
+    /**
+     * Construye un comando para reanudar una sesión con un token.
+     *
+     * @param token token recibido en el último login
+     */
+    public static String buildResume(String token) {
+        return create()
+            .withType(Constants.CMD_RESUME)
+            .withParam(token)
+            .build();
+    }
+    
+    /**
+     * Construye un comando para reanudar una sesión anunciando capacidades del cliente.
+     */
+    public static String buildResume(String token, String capability) {
+        return create()
+            .withType(Constants.CMD_RESUME)
+            .withParams(token, capability)
+            .build();
+    }
+    
+    /**
+     * Construye un mensaje privado numerado, para clientes que confirman la entrega.
+     *
+     * @param seq número del mensaje en la conversación del remitente con el destinatario
+     */
+    public static String buildSequencedMessage(String sender, String message, long seq) {
+        return create()
+            .withType(Constants.CMD_MSG)
+            .withParams(sender, message, String.valueOf(seq))
+            .build();
+    }
+    
+    /**
+     * Construye la confirmación acumulativa: recibidos todos los mensajes del remitente
+     * hasta ese número.
+     */
+    public static String buildAck(String sender, long seq) {
+        return create()
+            .withType(Constants.CMD_ACK)
+            .withParams(sender, String.valueOf(seq))
+            .build();
+    }
+    
+    /**
+     * Construye el aviso al remitente de que el destinatario confirmó sus mensajes.
+     */
+    public static String buildDelivered(String recipient, long seq) {
+        return create()
+            .withType(Constants.RESP_DELIVERED)
+            .withParams(recipient, String.valueOf(seq))
+            .build();
+    }
+    
+    /**
+     * Construye el mensaje con el token de sesión que el servidor entrega tras autenticar.
+     *
+     * @param username usuario de la sesión
+     * @param token token firmado
+     * @param expiresAtMillis vencimiento del token (epoch ms)
+     */
+    public static String buildSessionToken(String username, String token, long expiresAtMillis) {
+        return create()
+            .withType(Constants.CMD_SESSION)
+            .withParams(username, token, String.valueOf(expiresAtMillis))
+            .build();
+    }
+    
     /**
      * Construye un mensaje de texto.
      * 
@@ -110,6 +190,58 @@ public class MessageBuilder {
             .build();
     }
     
+    /**
+     * Construye el pedido de una página del historial con otro usuario.
+     *
+     * @param withUser el otro usuario de la conversación
+     * @param limit máximo de mensajes
+     * @param before cursor de la página anterior, o null para empezar por los más recientes
+     */
+    public static String buildHistoryRequest(String withUser, int limit, String before) {
+        MessageBuilder builder = create()
+            .withType(Constants.CMD_HISTORY)
+            .withParams(withUser, String.valueOf(limit));
+        if (before != null && !before.isEmpty()) {
+            builder.withParam(before);
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Construye un mensaje del historial enviado al cliente.
+     */
+    public static String buildHistoryEntry(long id, long timestampMillis, String sender, String message) {
+        return create()
+            .withType(Constants.CMD_HISTORY)
+            .withParams(String.valueOf(id), String.valueOf(timestampMillis), sender, message)
+            .build();
+    }
+    
+    /**
+     * Construye el pedido de una página de resultados de búsqueda.
+     *
+     * @param query palabras a buscar
+     * @param limit máximo de resultados
+     * @param offset resultados a saltear
+     */
+    public static String buildSearchRequest(String query, int limit, int offset) {
+        return create()
+            .withType(Constants.CMD_SEARCH)
+            .withParams(query, String.valueOf(limit), String.valueOf(offset))
+            .build();
+    }
+    
+    /**
+     * Construye un resultado de búsqueda enviado al cliente.
+     */
+    public static String buildSearchHit(long id, long timestampMillis, String sender, String recipient,
+            String message) {
+        return create()
+            .withType(Constants.CMD_SEARCH)
+            .withParams(String.valueOf(id), String.valueOf(timestampMillis), sender, recipient, message)
+            .build();
+    }
+    
     /**
      * Construye una respuesta OK.
      * 
@@ -182,6 +314,40 @@ public class MessageBuilder {
             .build();
     }
 
+    /**
+     * Construye un comando para iniciar videollamada ofreciendo los códecs del emisor.
+     *
+     * @param codecs modos de video separados por coma, en orden de preferencia
+     */
+    public static String buildVideoStart(String recipient, String codecs) {
+        return create()
+            .withType(Constants.CMD_VIDEO)
+            .withParams("START", recipient, codecs)
+            .build();
+    }
+
+    /**
+     * Construye un comando para anunciar los códecs de video que el cliente sabe decodificar.
+     *
+     * @param codecs modos de video separados por coma
+     */
+    public static String buildVideoCodecs(String codecs) {
+        return create()
+            .withType(Constants.CMD_VIDEO)
+            .withParams("CODECS", codecs)
+            .build();
+    }
+
+    /**
+     * Construye un comando para pedir al servidor la telemetría de las videollamadas.
+     */
+    public static String buildVideoStats() {
+        return create()
+            .withType(Constants.CMD_VIDEO)
+            .withParam("STATS")
+            .build();
+    }
+
     /**
      * Construye un comando para detener la videollamada.
      */
@@ -1,9 +1,17 @@
 package com.mycompany.chat.protocol;
 
+import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.metrics.CommandTiming;
+import com.mycompany.chat.metrics.ServerMetrics;
+import com.mycompany.chat.protocol.handlers.AckHandler;
 import com.mycompany.chat.protocol.handlers.FileCommandHandler;
+import com.mycompany.chat.protocol.handlers.HistoryHandler;
 import com.mycompany.chat.protocol.handlers.LoginHandler;
 import com.mycompany.chat.protocol.handlers.LogoutHandler;
 import com.mycompany.chat.protocol.handlers.MessageCommandHandler;
+import com.mycompany.chat.protocol.handlers.ResumeHandler;
+import com.mycompany.chat.protocol.handlers.SearchHandler;
+import com.mycompany.chat.protocol.handlers.StatsHandler;
 import com.mycompany.chat.protocol.handlers.UsersCommandHandler;
 import com.mycompany.chat.protocol.handlers.VideoCommandHandler;
 import com.mycompany.chat.service.DatabaseService;
@@ -18,15 +26,37 @@ import java.util.Map;
  * - Registrar nuevos handlers fácilmente
  * - Buscar handlers por nombre de comando
  * - Extensibilidad sin modificar código existente
+ *
+ * Con métricas, {@link #dispatch} mide cuánto tarda cada handler en el hilo del cliente
+ * y lo registra en el {@link CommandTiming} del comando, que se busca junto con el
+ * handler al registrarlo: medir cuesta dos lecturas de reloj y unos incrementos
+ * atómicos por comando.
  */
 public class MessageHandlerRegistry {
-    private final Map<String, MessageHandler> handlers = new HashMap<>();
+    private final Map<String, Registration> handlers = new HashMap<>();
+    private final ServerMetrics metrics; // null si no se miden los comandos
+
+    // Handler de un comando y dónde se registran sus tiempos
+    private static final class Registration {
+        final MessageHandler handler;
+        final CommandTiming timing;
+
+        Registration(MessageHandler handler, CommandTiming timing) {
+            this.handler = handler;
+            this.timing = timing;
+        }
+    }
     
     public MessageHandlerRegistry() {
         this(new DatabaseService());
     }
 
     public MessageHandlerRegistry(DatabaseService databaseService) {
+        this(databaseService, null);
+    }
+
+    public MessageHandlerRegistry(DatabaseService databaseService, ServerMetrics metrics) {
+        this.metrics = metrics;
         registerDefaultHandlers(databaseService);
     }
     
@@ -35,11 +65,16 @@ public class MessageHandlerRegistry {
      */
     private void registerDefaultHandlers(DatabaseService databaseService) {
         registerHandler(new LoginHandler(databaseService));
-        registerHandler(new MessageCommandHandler());
+        registerHandler(new ResumeHandler());
+        registerHandler(new MessageCommandHandler(databaseService));
+        registerHandler(new AckHandler());
+        registerHandler(new HistoryHandler());
+        registerHandler(new SearchHandler());
         registerHandler(new UsersCommandHandler());
         registerHandler(new LogoutHandler());
         registerHandler(new FileCommandHandler());
         registerHandler(new VideoCommandHandler());
+        registerHandler(new StatsHandler());
     }
     
     /**
@@ -48,7 +83,36 @@ public class MessageHandlerRegistry {
      * @param handler El handler a registrar
      */
     public void registerHandler(MessageHandler handler) {
-        handlers.put(handler.getCommandName(), handler);
+        String command = handler.getCommandName();
+        handlers.put(command, new Registration(handler, metrics != null ? metrics.commandTiming(command) : null));
+    }
+    
+    /**
+     * Procesa un mensaje con el handler de su comando, verificando antes la autenticación,
+     * y registra cuánto tardó.
+     * 
+     * @param parts Mensaje parseado; parts[0] es el comando
+     * @param client El ClientHandler que recibió el mensaje
+     * @return false si no hay handler para el comando
+     */
+    public boolean dispatch(String[] parts, ClientHandler client) {
+        Registration registration = handlers.get(parts[0]);
+        if (registration == null) {
+            return false;
+        }
+        if (registration.handler.requiresAuthentication() && !client.isAuthenticated()) {
+            client.sendError("Debes iniciar sesión primero");
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            registration.handler.handle(parts, client);
+        } finally {
+            if (registration.timing != null) {
+                registration.timing.recordSince(start);
+            }
+        }
+        return true;
     }
     
     /**
@@ -58,7 +122,8 @@ public class MessageHandlerRegistry {
      * @return El handler correspondiente, o null si no existe
      */
     public MessageHandler getHandler(String commandName) {
-        return handlers.get(commandName);
+        Registration registration = handlers.get(commandName);
+        return registration != null ? registration.handler : null;
     }
     
     /**
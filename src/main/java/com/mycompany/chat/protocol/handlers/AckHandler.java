@@ -0,0 +1,41 @@
+package com.mycompany.chat.protocol.handlers;
+
+import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.protocol.MessageHandler;
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Handler para el comando ACK usando Strategy Pattern.
+ *
+ * {@code ACK|remitente|número}: el cliente recibió todos los mensajes del remitente
+ * hasta ese número (ver DeliveryService). No tiene respuesta.
+ */
+public class AckHandler implements MessageHandler {
+
+    @Override
+    public boolean handle(String[] parts, ClientHandler handler) {
+        if (parts.length < 3) {
+            handler.sendError("Formato incorrecto. Usa: ACK|remitente|numero");
+            return false;
+        }
+        long seq;
+        try {
+            seq = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            handler.sendError("Número de confirmación inválido");
+            return false;
+        }
+        handler.getServer().getDeliveryService().ack(handler, parts[1], seq);
+        return true;
+    }
+
+    @Override
+    public String getCommandName() {
+        return Constants.CMD_ACK;
+    }
+
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+}
@@ -1,6 +1,7 @@
 package com.mycompany.chat.protocol.handlers;
 
 import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.observer.ChatEvent;
 import com.mycompany.chat.protocol.MessageHandler;
 import com.mycompany.chat.util.Constants;
 import java.io.IOException;
@@ -40,6 +41,9 @@ public class FileCommandHandler implements MessageHandler {
             boolean sent = handler.getServer().sendPrivateFile(fileName, fileData, recipient, handler);
             if (sent) {
                 handler.sendServerMessage("Archivo " + fileName + " enviado correctamente a " + recipient);
+                handler.getServer().getEventPublisher().publishEvent(ChatEvent.EventType.FILE_SENT,
+                        handler.getUsername(), recipient);
+                handler.getServer().getMetrics().fileSent(fileSize);
                 return true;
             }
             handler.sendError("Usuario '" + recipient + "' no encontrado o no está conectado");
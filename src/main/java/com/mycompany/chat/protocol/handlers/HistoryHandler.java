@@ -0,0 +1,101 @@
+package com.mycompany.chat.protocol.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.history.MessageHistory;
+import com.mycompany.chat.history.StoredMessage;
+import com.mycompany.chat.history.TailCache;
+import com.mycompany.chat.protocol.MessageBuilder;
+import com.mycompany.chat.protocol.MessageHandler;
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Handler para el comando HISTORY usando Strategy Pattern.
+ *
+ * {@code HISTORY|usuario[|cantidad[|cursor]]} devuelve una página de la conversación
+ * con ese usuario, hacia atrás desde el cursor (o desde el mensaje más reciente):
+ * un {@code HISTORY|id|fecha ms|remitente|mensaje} por mensaje, del más antiguo al más
+ * reciente, y al final {@code OK|HISTORY|cantidad|cursor}. El cursor vacío indica que
+ * no hay mensajes anteriores. Las páginas recientes de las conversaciones activas salen
+ * ya codificadas de la caché del historial; la respuesta se envía en una sola escritura.
+ */
+public class HistoryHandler implements MessageHandler {
+
+    @Override
+    public boolean handle(String[] parts, ClientHandler handler) {
+        MessageHistory history = handler.getServer().getMessageHistory();
+        if (history == null) {
+            handler.sendError("El historial no está habilitado en el servidor");
+            return false;
+        }
+        if (parts.length < 2 || parts[1].isEmpty()) {
+            handler.sendError("Formato incorrecto. Usa: HISTORY|usuario[|cantidad[|cursor]]");
+            return false;
+        }
+
+        int limit = Constants.HISTORY_PAGE_SIZE;
+        long before = MessageHistory.NO_MESSAGE;
+        try {
+            if (parts.length > 2 && !parts[2].isEmpty()) {
+                limit = Math.max(1, Math.min(Constants.HISTORY_MAX_PAGE_SIZE, Integer.parseInt(parts[2])));
+            }
+            if (parts.length > 3 && !parts[3].isEmpty()) {
+                before = Long.parseLong(parts[3]);
+            }
+        } catch (NumberFormatException e) {
+            handler.sendError("Cantidad o cursor de historial inválido");
+            return false;
+        }
+
+        long start = System.nanoTime();
+        List<String> lines;
+        long next;
+        TailCache.Page cached = history.cachedPage(handler.getUsername(), parts[1], before, limit);
+        if (cached != null) {
+            lines = cached.getLines();
+            next = cached.getNextCursor();
+        } else {
+            MessageHistory.Page page;
+            try {
+                page = history.page(handler.getUsername(), parts[1], before, limit);
+            } catch (IllegalArgumentException e) {
+                handler.sendError(e.getMessage());
+                return false;
+            }
+            lines = new ArrayList<>(page.getMessages().size() + 1);
+            for (StoredMessage message : page.getMessages()) {
+                lines.add(encode(message));
+            }
+            next = page.getNextCursor();
+        }
+        int count = lines.size();
+        lines.add(MessageBuilder.create()
+                .withType(Constants.RESP_OK)
+                .withParams(Constants.CMD_HISTORY, String.valueOf(count),
+                        next == MessageHistory.NO_MESSAGE ? "" : String.valueOf(next))
+                .build());
+        handler.sendMessages(lines);
+        handler.getServer().getMetrics().historyPageServed(start);
+        return true;
+    }
+
+    /**
+     * Línea del protocolo de un mensaje del historial (también la usa la caché).
+     */
+    public static String encode(StoredMessage message) {
+        return MessageBuilder.buildHistoryEntry(message.getId(), message.getTimestampMillis(),
+                message.getSender(), message.getBody());
+    }
+
+    @Override
+    public String getCommandName() {
+        return Constants.CMD_HISTORY;
+    }
+
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+}
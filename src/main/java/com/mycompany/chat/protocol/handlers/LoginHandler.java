@@ -1,12 +1,21 @@
 package com.mycompany.chat.protocol.handlers;
 
+import java.util.concurrent.RejectedExecutionException;
+
 import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.observer.ChatEvent;
 import com.mycompany.chat.protocol.MessageHandler;
+import com.mycompany.chat.service.AuthenticationService;
 import com.mycompany.chat.service.DatabaseService;
 import com.mycompany.chat.util.Constants;
 
 /**
  * Handler para el comando LOGIN usando Strategy Pattern.
+ *
+ * La verificación de la contraseña (BCrypt) no se hace en el hilo del cliente: se
+ * encola en el {@link AuthenticationService} del servidor y la respuesta se envía
+ * cuando termina. Mientras tanto el hilo del cliente sigue libre, y si el servidor
+ * está saturado de logins se rechaza el intento al momento.
  */
 public class LoginHandler implements MessageHandler {
     private final DatabaseService databaseService;
@@ -14,51 +23,103 @@ public class LoginHandler implements MessageHandler {
     public LoginHandler(DatabaseService databaseService) {
         this.databaseService = databaseService;
     }
-    
+
     @Override
     public boolean handle(String[] parts, ClientHandler handler) {
+        long start = System.nanoTime();
         if (handler.isAuthenticated()) {
             handler.sendError("Ya estás autenticado como " + handler.getUsername());
             return true;
         }
 
         if (parts.length < 3) {
-            handler.sendError("Formato incorrecto. Usa: LOGIN|username|password");
+            handler.sendError("Formato incorrecto. Usa: LOGIN|username|password[|acks]");
             return true;
         }
 
         String user = parts[1];
         String pass = parts[2];
+        boolean acks = parts.length > 3 && Constants.CAPABILITY_ACKS.equals(parts[3]);
 
+        AuthenticationService auth = handler.getServer().getAuthenticationService();
+        if (!handler.beginLogin()) {
+            handler.sendError("Ya hay un inicio de sesión en curso");
+            return true;
+        }
         try {
-            if (databaseService.autenticarUsuario(user, pass)) {
+            auth.verificar(() -> databaseService.autenticarUsuario(user, pass)).whenComplete((resultado, error) -> {
+                try {
+                    if (error != null) {
+                        handler.sendError("Error inesperado durante autenticacion");
+                        System.err.println("Error autenticando a " + user + ": " + error.getMessage());
+                    } else {
+                        completeLogin(handler, user, acks, resultado, start);
+                    }
+                } finally {
+                    handler.endLogin();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            handler.endLogin();
+            handler.getServer().getMetrics().loginRejected(start);
+            handler.sendError("Servidor ocupado, intenta iniciar sesión en unos segundos");
+            return false;
+        }
+        return true;
+    }
+
+    private void completeLogin(ClientHandler handler, String user, boolean acks,
+                               AuthenticationService.Resultado resultado, long start) {
+        if (!handler.isRunning()) {
+            return; // El cliente se desconectó mientras se verificaba
+        }
+        if (handler.isAuthenticated()) {
+            handler.sendError("Ya estás autenticado como " + handler.getUsername());
+            return;
+        }
+        switch (resultado) {
+            case VALIDO:
                 handler.setUsername(user);
+                handler.setAcksEnabled(acks);
                 handler.setAuthenticated(true);
                 handler.getServer().addClient(handler);
+                if (!handler.isRunning()) {
+                    // Se cerró justo ahora: close() ya lo quitó antes de que se agregara
+                    handler.getServer().removeClient(handler);
+                    return;
+                }
                 handler.sendOk(Constants.CMD_LOGIN, "Bienvenido " + user + "!");
+                handler.getServer().getMetrics().loginSucceeded(start);
+                handler.getServer().getEventPublisher().publishEvent(ChatEvent.EventType.LOGIN_SUCCESS, user, "login");
+                handler.sendSessionToken();
+                if (acks) {
+                    handler.getServer().getDeliveryService().attach(handler);
+                }
                 handler.getServer().broadcast(Constants.RESP_SYSTEM + Constants.PROTOCOL_SEPARATOR +
                             user + " se ha conectado", handler);
-                return true;
-            } else {
+                handler.getServer().deliverOfflineMessages(handler);
+                break;
+            case VENCIDO:
+                handler.sendError("Servidor ocupado, intenta iniciar sesión en unos segundos");
+                handler.getServer().getMetrics().loginRejected(start);
+                break;
+            default:
                 handler.sendError("Credenciales inválidas");
+                handler.getServer().getMetrics().loginFailed(start);
                 System.out.println("Intento de login fallido: " + user);
-                return false;
-            }
-        } catch (Exception e) {
-            handler.sendError("Error inesperado durante autenticacion");
-            System.err.println("Error autenticando a " + user + ": " + e.getMessage());
-            return false;
+                handler.getServer().getEventPublisher().publishEvent(ChatEvent.EventType.LOGIN_FAILED, user,
+                        "credenciales inválidas");
+                break;
         }
     }
-    
+
     @Override
     public String getCommandName() {
         return Constants.CMD_LOGIN;
     }
-    
+
     @Override
     public boolean requiresAuthentication() {
         return false; // Login no requiere autenticación previa
     }
 }
-
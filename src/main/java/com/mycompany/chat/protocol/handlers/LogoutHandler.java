@@ -6,11 +6,14 @@ import com.mycompany.chat.util.Constants;
 
 /**
  * Handler para el comando LOGOUT usando Strategy Pattern.
+ * Revoca el token de sesión de esta conexión: tras salir, no se puede reanudar. Las
+ * sesiones del usuario en otros dispositivos siguen valiendo.
  */
 public class LogoutHandler implements MessageHandler {
     
     @Override
     public boolean handle(String[] parts, ClientHandler handler) {
+        handler.getServer().getSessionTokens().revokeToken(handler.getSessionToken());
         handler.sendServerMessage("Cerrando sesión...");
         handler.setRunning(false);
         return true;
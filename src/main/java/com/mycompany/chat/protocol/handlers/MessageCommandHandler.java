@@ -1,14 +1,27 @@
 package com.mycompany.chat.protocol.handlers;
 
+import java.io.IOException;
+
 import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.history.MessageHistory;
+import com.mycompany.chat.history.OfflineQueue;
+import com.mycompany.chat.observer.ChatEvent;
 import com.mycompany.chat.protocol.MessageBuilder;
 import com.mycompany.chat.protocol.MessageHandler;
+import com.mycompany.chat.service.DatabaseService;
+import com.mycompany.chat.service.DeliveryService;
+import com.mycompany.chat.service.MessagePersister;
 import com.mycompany.chat.util.Constants;
 
 /**
  * Handler para el comando MSG usando Strategy Pattern.
  */
 public class MessageCommandHandler implements MessageHandler {
+    private final DatabaseService databaseService;
+    
+    public MessageCommandHandler(DatabaseService databaseService) {
+        this.databaseService = databaseService;
+    }
     
     @Override
     public boolean handle(String[] parts, ClientHandler handler) {
@@ -28,6 +41,22 @@ public class MessageCommandHandler implements MessageHandler {
         
         System.out.println("[" + handler.getUsername() + " -> " + recipient + "]: " + msg);
         
+        // Destinatario que confirma la entrega: mensaje numerado con reenvío
+        ClientHandler target = handler.getServer().getClientByUsername(recipient);
+        if (target != null && target.isAcksEnabled()) {
+            long seq = handler.getServer().getDeliveryService().send(target, handler.getUsername(), msg);
+            if (seq == DeliveryService.BACKLOG_FULL) {
+                handler.sendError(recipient + " tiene demasiados mensajes sin confirmar, intenta más tarde");
+                return false;
+            }
+            if (seq != DeliveryService.NOT_CONNECTED) {
+                archive(handler, recipient, msg);
+                handler.sendOk(Constants.CMD_MSG, "Mensaje enviado a " + recipient + " (#" + seq + ")");
+                return true;
+            }
+            return leaveForOffline(handler, recipient, msg); // Se desconectó recién
+        }
+        
         // Enviar mensaje privado
         String messageToSend = MessageBuilder.create()
                 .withType(Constants.CMD_MSG)
@@ -35,14 +64,59 @@ public class MessageCommandHandler implements MessageHandler {
                 .build();
         boolean sent = handler.getServer().sendPrivateMessage(messageToSend, recipient, handler);
         if (!sent) {
-            handler.sendError("Usuario '" + recipient + "' no encontrado o no está conectado");
-            return false;
+            return leaveForOffline(handler, recipient, msg);
         } else {
+            archive(handler, recipient, msg);
             handler.sendOk(Constants.CMD_MSG, "Mensaje enviado a " + recipient);
             return true;
         }
     }
     
+    // El destinatario no está conectado: si existe, el mensaje espera en su bandeja
+    private boolean leaveForOffline(ClientHandler handler, String recipient, String msg) {
+        OfflineQueue offline = handler.getServer().getOfflineQueue();
+        if (offline == null || !databaseService.usuarioExiste(recipient)) {
+            handler.sendError("Usuario '" + recipient + "' no encontrado o no está conectado");
+            return false;
+        }
+        // Lo que quedó sin confirmar de su última conexión va antes que este mensaje
+        handler.getServer().getDeliveryService().spill(recipient);
+        try {
+            if (!offline.enqueue(recipient, handler.getUsername(), msg)) {
+                handler.sendError("La bandeja de " + recipient + " está llena, intenta más tarde");
+                return false;
+            }
+        } catch (IOException e) {
+            System.err.println("[BANDEJA] No se pudo guardar el mensaje para " + recipient + ": " + e.getMessage());
+            handler.sendError("No se pudo guardar el mensaje para " + recipient);
+            return false;
+        }
+        archive(handler, recipient, msg);
+        // Pudo conectarse entre el envío fallido y el encolado
+        ClientHandler target = handler.getServer().getClientByUsername(recipient);
+        if (target != null) {
+            handler.getServer().deliverOfflineMessages(target);
+        }
+        handler.sendOk(Constants.CMD_MSG, recipient + " no está conectado, recibirá el mensaje al iniciar sesión");
+        return true;
+    }
+    
+    // Solo se encolan (o se cuentan): el historial, la copia en MySQL y los observadores
+    // trabajan en sus propios hilos
+    private static void archive(ClientHandler handler, String recipient, String msg) {
+        handler.getServer().getMetrics().messageSent(msg);
+        handler.getServer().getEventPublisher().publishEvent(ChatEvent.EventType.MESSAGE_SENT,
+                handler.getUsername(), recipient);
+        MessageHistory history = handler.getServer().getMessageHistory();
+        if (history != null) {
+            history.append(handler.getUsername(), recipient, msg);
+        }
+        MessagePersister persister = handler.getServer().getMessagePersister();
+        if (persister != null) {
+            persister.offer(handler.getUsername(), recipient, msg);
+        }
+    }
+    
     @Override
     public String getCommandName() {
         return Constants.CMD_MSG;
@@ -0,0 +1,85 @@
+package com.mycompany.chat.protocol.handlers;
+
+import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.observer.ChatEvent;
+import com.mycompany.chat.protocol.MessageHandler;
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Handler para el comando RESUME usando Strategy Pattern.
+ *
+ * Reanuda una sesión con el token que el servidor entregó en el último login, sin
+ * consultar la base de datos ni ejecutar BCrypt. Si la conexión que recibió ese token
+ * todavía figura conectada (se cortó y el servidor aún no lo notó), se cierra y la
+ * sesión pasa a la nueva.
+ */
+public class ResumeHandler implements MessageHandler {
+
+    @Override
+    public boolean handle(String[] parts, ClientHandler handler) {
+        if (handler.isAuthenticated()) {
+            handler.sendError("Ya estás autenticado como " + handler.getUsername());
+            return true;
+        }
+
+        // Mismo candado que LOGIN: no se reanuda mientras se verifica una contraseña
+        if (!handler.beginLogin()) {
+            handler.sendError("Ya hay un inicio de sesión en curso");
+            return true;
+        }
+        try {
+            return resume(parts, handler);
+        } finally {
+            handler.endLogin();
+        }
+    }
+
+    private boolean resume(String[] parts, ClientHandler handler) {
+        if (parts.length < 2) {
+            handler.sendError("Formato incorrecto. Usa: RESUME|token[|acks]");
+            return false;
+        }
+
+        // El token se consume (se reemplaza por uno nuevo): si dos RESUME lo usan a la
+        // vez, solo uno lo revoca y obtiene la sesión
+        String user = handler.getServer().getSessionTokens().validate(parts[1]);
+        if (user == null || !handler.getServer().getSessionTokens().revokeToken(parts[1])) {
+            handler.sendError("Sesión vencida o inválida, inicia sesión de nuevo");
+            return false;
+        }
+
+        // Solo se cierra la conexión anterior de este mismo dispositivo (la que recibió
+        // el token); las de otros dispositivos del usuario siguen
+        ClientHandler previous = handler.getServer().getClientBySessionToken(parts[1]);
+        if (previous != null && previous != handler) {
+            previous.close();
+        }
+
+        boolean acks = parts.length > 2 && Constants.CAPABILITY_ACKS.equals(parts[2]);
+        handler.setUsername(user);
+        handler.setAcksEnabled(acks);
+        handler.setAuthenticated(true);
+        handler.getServer().addClient(handler);
+        handler.sendOk(Constants.CMD_RESUME, "Sesión reanudada como " + user);
+        handler.getServer().getEventPublisher().publishEvent(ChatEvent.EventType.LOGIN_SUCCESS, user, "reanudación");
+        handler.getServer().getMetrics().sessionResumed();
+        handler.sendSessionToken(); // Token nuevo: la validez se renueva con cada reanudación
+        if (acks) {
+            handler.getServer().getDeliveryService().attach(handler); // Reenvía lo no confirmado
+        }
+        handler.getServer().broadcast(Constants.RESP_SYSTEM + Constants.PROTOCOL_SEPARATOR +
+                    user + " se ha reconectado", handler);
+        handler.getServer().deliverOfflineMessages(handler);
+        return true;
+    }
+
+    @Override
+    public String getCommandName() {
+        return Constants.CMD_RESUME;
+    }
+
+    @Override
+    public boolean requiresAuthentication() {
+        return false;
+    }
+}
@@ -0,0 +1,87 @@
+package com.mycompany.chat.protocol.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.history.MessageHistory;
+import com.mycompany.chat.history.StoredMessage;
+import com.mycompany.chat.protocol.MessageBuilder;
+import com.mycompany.chat.protocol.MessageHandler;
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Handler para el comando SEARCH usando Strategy Pattern.
+ *
+ * {@code SEARCH|palabras[|cantidad[|desde]]} busca en los mensajes que el usuario envió
+ * o recibió los que contienen todas las palabras, ordenados por relevancia: un
+ * {@code SEARCH|id|fecha ms|remitente|destinatario|mensaje} por resultado y al final
+ * {@code OK|SEARCH|total|desde}, donde "desde" es lo que hay que pedir para la página
+ * siguiente (vacío si no hay más).
+ */
+public class SearchHandler implements MessageHandler {
+
+    @Override
+    public boolean handle(String[] parts, ClientHandler handler) {
+        MessageHistory history = handler.getServer().getMessageHistory();
+        if (history == null || !history.isSearchable()) {
+            handler.sendError("La búsqueda no está habilitada en el servidor");
+            return false;
+        }
+        if (parts.length < 2 || parts[1].trim().isEmpty()) {
+            handler.sendError("Formato incorrecto. Usa: SEARCH|palabras[|cantidad[|desde]]");
+            return false;
+        }
+
+        int limit = Constants.HISTORY_PAGE_SIZE;
+        int offset = 0;
+        try {
+            if (parts.length > 2 && !parts[2].isEmpty()) {
+                limit = Math.max(1, Math.min(Constants.HISTORY_MAX_PAGE_SIZE, Integer.parseInt(parts[2])));
+            }
+            if (parts.length > 3 && !parts[3].isEmpty()) {
+                offset = Integer.parseInt(parts[3]);
+            }
+        } catch (NumberFormatException e) {
+            handler.sendError("Cantidad o posición de búsqueda inválida");
+            return false;
+        }
+        if (offset < 0 || offset > Constants.SEARCH_MAX_OFFSET) {
+            handler.sendError("Solo se pueden ver los primeros " + Constants.SEARCH_MAX_OFFSET
+                    + " resultados, agrega palabras a la búsqueda");
+            return false;
+        }
+
+        MessageHistory.SearchResult result;
+        try {
+            result = history.search(handler.getUsername(), parts[1], offset, limit);
+        } catch (IllegalArgumentException e) {
+            handler.sendError(e.getMessage());
+            return false;
+        }
+        // La página completa sale en una sola escritura
+        List<String> page = new ArrayList<>(result.getMessages().size() + 1);
+        for (StoredMessage message : result.getMessages()) {
+            page.add(MessageBuilder.buildSearchHit(message.getId(), message.getTimestampMillis(),
+                    message.getSender(), message.getRecipient(), message.getBody()));
+        }
+        int next = result.getNextOffset();
+        page.add(MessageBuilder.create()
+                .withType(Constants.RESP_OK)
+                .withParams(Constants.CMD_SEARCH, String.valueOf(result.getTotal()),
+                        next < 0 || next > Constants.SEARCH_MAX_OFFSET ? "" : String.valueOf(next))
+                .build());
+        handler.sendMessages(page);
+        return true;
+    }
+
+    @Override
+    public String getCommandName() {
+        return Constants.CMD_SEARCH;
+    }
+
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+}
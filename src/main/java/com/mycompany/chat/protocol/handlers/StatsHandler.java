@@ -0,0 +1,55 @@
+package com.mycompany.chat.protocol.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.metrics.ServerMetrics;
+import com.mycompany.chat.protocol.MessageBuilder;
+import com.mycompany.chat.protocol.MessageHandler;
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Handler para el comando STATS usando Strategy Pattern.
+ *
+ * Solo para administradores (admin.users): responde un {@code STATS|línea} por métrica
+ * del servidor (contadores, colas, pools y percentiles de latencia), una más por comando
+ * con sus tiempos de despacho recientes, y al final {@code OK|STATS|cantidad}, todo en
+ * una sola escritura.
+ */
+public class StatsHandler implements MessageHandler {
+
+    @Override
+    public boolean handle(String[] parts, ClientHandler handler) {
+        if (!handler.getServer().isAdmin(handler.getUsername())) {
+            handler.sendError("STATS solo está disponible para administradores");
+            return false;
+        }
+        ServerMetrics serverMetrics = handler.getServer().getMetrics();
+        List<String> metrics = serverMetrics.getRegistry().describe();
+        metrics.addAll(serverMetrics.describeCommands());
+        List<String> lines = new ArrayList<>(metrics.size() + 1);
+        for (String metric : metrics) {
+            lines.add(MessageBuilder.create()
+                    .withType(Constants.CMD_STATS)
+                    .withParam(metric)
+                    .build());
+        }
+        lines.add(MessageBuilder.create()
+                .withType(Constants.RESP_OK)
+                .withParams(Constants.CMD_STATS, String.valueOf(metrics.size()))
+                .build());
+        handler.sendMessages(lines);
+        return true;
+    }
+
+    @Override
+    public String getCommandName() {
+        return Constants.CMD_STATS;
+    }
+
+    @Override
+    public boolean requiresAuthentication() {
+        return true;
+    }
+}
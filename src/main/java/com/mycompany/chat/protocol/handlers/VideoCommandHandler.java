@@ -1,8 +1,13 @@
 package com.mycompany.chat.protocol.handlers;
 
 import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.observer.ChatEvent;
 import com.mycompany.chat.protocol.MessageHandler;
 import com.mycompany.chat.util.Constants;
+import com.mycompany.chat.video.StreamTelemetry;
+import com.mycompany.chat.video.VideoCodecs;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Handler para el comando VIDEO usando Strategy Pattern.
@@ -12,7 +17,7 @@ public class VideoCommandHandler implements MessageHandler {
     @Override
     public boolean handle(String[] parts, ClientHandler handler) {
         if (parts.length < 2) {
-            handler.sendError("Formato incorrecto. Usa: VIDEO|START|destinatario o VIDEO|STOP");
+            handler.sendError("Formato incorrecto. Usa: VIDEO|START|destinatario, VIDEO|STOP o VIDEO|STATS");
             return false;
         }
 
@@ -22,6 +27,10 @@ public class VideoCommandHandler implements MessageHandler {
                 return handleStart(parts, handler);
             case "STOP":
                 return handleStop(handler);
+            case "STATS":
+                return handleStats(handler);
+            case "CODECS":
+                return handleCodecs(parts, handler);
             default:
                 handler.sendError("Acción de video desconocida: " + action);
                 return false;
@@ -35,7 +44,8 @@ public class VideoCommandHandler implements MessageHandler {
         }
 
         String recipient = parts[2];
-        if (handler.getServer().getClientByUsername(recipient) == null) {
+        ClientHandler target = handler.getServer().getClientByUsername(recipient);
+        if (target == null) {
             handler.sendError("Usuario '" + recipient + "' no encontrado o no está conectado");
             return false;
         }
@@ -45,9 +55,18 @@ public class VideoCommandHandler implements MessageHandler {
             return false;
         }
 
+        // Clientes antiguos no envían oferta: solo saben enviar JPEG
+        List<String> offered = parts.length > 3
+                ? VideoCodecs.parse(parts[3])
+                : Collections.singletonList(Constants.VIDEO_MODE_JPEG);
+        String codec = VideoCodecs.negotiate(offered, target.getVideoCodecs());
+
         try {
             handler.startVideoStream(recipient);
-            handler.sendServerMessage("Videollamada iniciada con " + recipient);
+            handler.sendOk(Constants.CMD_VIDEO, codec);
+            handler.sendServerMessage("Videollamada iniciada con " + recipient + " (" + codec + ")");
+            handler.getServer().getEventPublisher().publishEvent(ChatEvent.EventType.VIDEO_STARTED,
+                    handler.getUsername(), recipient);
             return true;
         } catch (IllegalStateException e) {
             handler.sendError(e.getMessage());
@@ -65,6 +84,39 @@ public class VideoCommandHandler implements MessageHandler {
         }
         handler.stopVideoStream();
         handler.sendServerMessage("Videollamada detenida.");
+        handler.getServer().getEventPublisher().publishEvent(ChatEvent.EventType.VIDEO_STOPPED,
+                handler.getUsername(), "detenida");
+        return true;
+    }
+
+    // El cliente anuncia qué modos de video sabe decodificar; no requiere respuesta
+    private boolean handleCodecs(String[] parts, ClientHandler handler) {
+        if (parts.length < 3) {
+            handler.sendError("Formato incorrecto. Usa: VIDEO|CODECS|modo1,modo2");
+            return false;
+        }
+        List<String> codecs = VideoCodecs.parse(parts[2]);
+        if (!codecs.contains(Constants.VIDEO_MODE_JPEG)) {
+            codecs.add(Constants.VIDEO_MODE_JPEG);
+        }
+        handler.setVideoCodecs(codecs);
+        return true;
+    }
+
+    private boolean handleStats(ClientHandler handler) {
+        List<StreamTelemetry.Snapshot> stats = handler.getServer().getVideoStreamStats(handler.getUsername());
+        List<String> incoming = handler.describeIncomingVideo();
+        if (stats.isEmpty() && incoming.isEmpty()) {
+            handler.sendServerMessage("No hay flujos de video activos.");
+            return true;
+        }
+        for (StreamTelemetry.Snapshot snapshot : stats) {
+            handler.sendServerMessage("[VIDEO] " + snapshot);
+        }
+        // Capa de simulcast que el servidor elige para cada remitente que te envía video
+        for (String line : incoming) {
+            handler.sendServerMessage("[VIDEO] " + line);
+        }
         return true;
     }
 
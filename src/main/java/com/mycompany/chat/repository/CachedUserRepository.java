@@ -0,0 +1,247 @@
+package com.mycompany.chat.repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.mycompany.chat.security.PasswordHasher;
+
+/**
+ * Decorador de {@link DatabaseUserRepository} con un directorio de usuarios en memoria.
+ *
+ * El directorio (usuario -> hash BCrypt) se carga completo de la tabla users al
+ * verificar la conexión al iniciar el servidor, y se recarga periódicamente. Con eso:
+ * - {@link #authenticate} y {@link #userExists} se resuelven sin ir a MySQL; un login
+ *   cuesta solo la verificación BCrypt.
+ * - {@link #registerUser} escribe primero en la base (write-through) y, si la
+ *   inserción tuvo éxito, agrega el usuario al directorio.
+ * - Un usuario que no está en memoria (por ejemplo, creado desde otro proceso) se busca
+ *   en la base y se agrega; si la base no responde, se responde con lo que hay en
+ *   memoria, así un corte breve de MySQL no impide autenticar a los usuarios conocidos.
+ *
+ * {@link #refresh} e {@link #invalidate} permiten recargar todo o un usuario (por
+ * ejemplo, tras cambiar una contraseña fuera del servidor). Cuando el hash de un
+ * usuario cambia o se borra se avisa al {@link #setPasswordChangeListener listener},
+ * que revoca sus sesiones.
+ */
+public class CachedUserRepository implements UserRepository {
+    private final DatabaseUserRepository database;
+    private final long refreshMillis;
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private final AtomicBoolean refresherStarted = new AtomicBoolean();
+    private final ScheduledExecutorService refresher;
+    private volatile Consumer<String> passwordChangeListener = username -> { };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong databaseErrors = new AtomicLong();
+
+    /**
+     * @param database repositorio real
+     * @param refreshMillis cada cuánto recargar el directorio completo
+     */
+    public CachedUserRepository(DatabaseUserRepository database, long refreshMillis) {
+        this.database = database;
+        this.refreshMillis = refreshMillis;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "usuarios-recarga");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param listener recibe el usuario cada vez que su contraseña cambia o se borra
+     */
+    @Override
+    public void setPasswordChangeListener(Consumer<String> listener) {
+        this.passwordChangeListener = listener;
+    }
+
+    /**
+     * Recarga el directorio completo desde la base.
+     *
+     * @return true si se pudo recargar
+     */
+    public boolean refresh() {
+        try {
+            Map<String, String> fresh = database.loadPasswordHashes();
+            for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                if (!entry.getValue().equals(fresh.get(entry.getKey()))) {
+                    passwordChangeListener.accept(entry.getKey()); // Cambiada o borrada en la base
+                }
+            }
+            hashes.putAll(fresh);
+            hashes.keySet().retainAll(fresh.keySet()); // Quitar los borrados en la base
+            if (!loaded) {
+                loaded = true;
+                System.out.println("[USUARIOS] Directorio en memoria cargado: " + fresh.size() + " usuarios");
+            }
+            return true;
+        } catch (SQLException e) {
+            databaseErrors.incrementAndGet();
+            System.err.println("[USUARIOS] No se pudo recargar el directorio: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Vuelve a leer un usuario de la base (o lo quita si ya no existe) y revoca sus
+     * sesiones, ya que se llama cuando su contraseña pudo cambiar.
+     */
+    public void invalidate(String username) {
+        if (username == null) {
+            return;
+        }
+        hashes.remove(username);
+        passwordChangeListener.accept(username);
+        try {
+            String hash = database.findPasswordHash(username);
+            if (hash != null) {
+                hashes.put(username, hash);
+            }
+        } catch (SQLException e) {
+            databaseErrors.incrementAndGet(); // Se volverá a buscar en el próximo acceso
+        }
+    }
+
+    // Hash del usuario: de memoria, o de la base si no está (y se agrega)
+    private String lookup(String username) throws SQLException {
+        String hash = hashes.get(username);
+        if (hash != null) {
+            hits.incrementAndGet();
+            return hash;
+        }
+        misses.incrementAndGet();
+        try {
+            hash = database.findPasswordHash(username);
+        } catch (SQLException e) {
+            databaseErrors.incrementAndGet();
+            if (!loaded) {
+                throw e; // Sin directorio no hay con qué responder
+            }
+            return null; // Base caída: solo se conoce lo que hay en memoria
+        }
+        if (hash != null) {
+            hashes.put(username, hash);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean authenticate(String username, String password) throws SQLException {
+        if (username == null || password == null || username.isEmpty() || password.isEmpty()) {
+            return false;
+        }
+        String hash = lookup(username);
+        return hash != null && PasswordHasher.verifyPassword(password, hash);
+    }
+
+    @Override
+    public boolean registerUser(String username, String password) throws SQLException {
+        if (username == null || password == null || username.isEmpty() || password.isEmpty()) {
+            return false;
+        }
+        String hash = PasswordHasher.hashPassword(password);
+        boolean inserted = database.insertUser(username, hash); // Lanza si falla: no se toca la memoria
+        if (inserted) {
+            hashes.put(username, hash);
+        }
+        return inserted;
+    }
+
+    @Override
+    public String findPasswordHash(String username) throws SQLException {
+        return lookup(username);
+    }
+
+    @Override
+    public boolean updatePasswordHash(String username, String hashedPassword) throws SQLException {
+        boolean updated = rehashPassword(username, hashedPassword);
+        if (updated) {
+            passwordChangeListener.accept(username);
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean rehashPassword(String username, String hashedPassword) throws SQLException {
+        boolean updated = database.rehashPassword(username, hashedPassword);
+        if (updated) {
+            hashes.put(username, hashedPassword);
+        }
+        return updated;
+    }
+
+    @Override
+    public Map<String, String> insertUsers(Map<String, String> hashesByUser) throws SQLException {
+        Map<String, String> failures = database.insertUsers(hashesByUser);
+        for (Map.Entry<String, String> entry : hashesByUser.entrySet()) {
+            if (!failures.containsKey(entry.getKey())) {
+                hashes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public boolean userExists(String username) throws SQLException {
+        if (username == null || username.isEmpty()) {
+            return false;
+        }
+        return lookup(username) != null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return database.getConnection();
+    }
+
+    /**
+     * Verifica la conexión y, la primera vez que hay base, carga el directorio y arranca
+     * la recarga periódica (el servidor llama a esto al iniciar).
+     */
+    @Override
+    public boolean testConnection() {
+        boolean ok = database.testConnection();
+        if (ok && !loaded) {
+            refresh();
+        }
+        if (ok && refresherStarted.compareAndSet(false, true)) {
+            refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+        return ok;
+    }
+
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * @return el pool de la base que respalda al directorio
+     */
+    public ConnectionPool getConnectionPool() {
+        return database.getConnectionPool();
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+        System.out.println("[USUARIOS] Directorio: " + this);
+        database.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d usuarios en memoria, aciertos %d, fallos %d, errores de base %d",
+                hashes.size(), hits.get(), misses.get(), databaseErrors.get());
+    }
+}
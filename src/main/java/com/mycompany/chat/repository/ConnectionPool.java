@@ -0,0 +1,342 @@
+package com.mycompany.chat.repository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de conexiones JDBC.
+ *
+ * - Máximo: un semáforo limita las conexiones prestadas; si no hay ninguna libre se
+ *   espera hasta el timeout configurado y luego se lanza {@link SQLTransientConnectionException}.
+ * - Mínimo: un hilo de mantenimiento repone conexiones inactivas hasta el mínimo.
+ * - Validación al prestar: una conexión inactiva más de {@link #VALIDATION_GRACE_MILLIS}
+ *   se comprueba con {@link Connection#isValid}; si falla se descarta y se prueba otra.
+ *   Las recién devueltas se prestan sin validar, igual que hacen los pools conocidos,
+ *   para no pagar un viaje a la base de datos en cada préstamo.
+ * - Expulsión por inactividad: las inactivas más del tiempo configurado se cierran,
+ *   respetando el mínimo.
+ *
+ * Las conexiones se prestan envueltas en un proxy: {@code close()} las devuelve al pool
+ * en lugar de cerrarlas, así el código existente con try-with-resources no cambia.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final long VALIDATION_GRACE_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    /**
+     * Crea conexiones físicas nuevas.
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int minIdle;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final Semaphore permits;
+    // LIFO: se reutilizan las más recientes y las demás envejecen hasta ser expulsadas
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final ScheduledExecutorService maintenance;
+    private final AtomicBoolean maintenanceStarted = new AtomicBoolean();
+    private volatile boolean closed;
+
+    // Métricas
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong waitNanosTotal = new AtomicLong();
+    private final AtomicLong waitNanosMax = new AtomicLong();
+    private final AtomicLong createNanosTotal = new AtomicLong();
+
+    private static final class PooledConnection {
+        final Connection physical;
+        long lastReturned = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    /**
+     * @param factory crea conexiones físicas
+     * @param minIdle conexiones que se mantienen abiertas aunque no se usen
+     * @param maxSize máximo de conexiones prestadas a la vez
+     * @param borrowTimeoutMillis espera máxima por una conexión libre
+     * @param idleTimeoutMillis inactividad tras la cual se cierra una conexión sobrante
+     */
+    public ConnectionPool(ConnectionFactory factory, int minIdle, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxSize));
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(this.maxSize, true);
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-pool-mantenimiento");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // El mantenimiento arranca con el primer préstamo: los procesos que crean el
+    // repositorio pero nunca consultan (el cliente, el menú) no abren conexiones
+    private void startMaintenance() {
+        if (maintenanceStarted.compareAndSet(false, true)) {
+            long period = Math.max(1000, idleTimeoutMillis / 2);
+            maintenance.scheduleWithFixedDelay(this::maintain, 0, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Presta una conexión. Hay que cerrarla (con try-with-resources) para devolverla.
+     *
+     * @throws SQLTransientConnectionException si no se liberó ninguna a tiempo
+     * @throws SQLException si no se pudo abrir una conexión nueva
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+        startMaintenance();
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTransientConnectionException("No hay conexiones libres tras "
+                        + borrowTimeoutMillis + " ms (máximo " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null) {
+                pooled = createConnection();
+            }
+            borrows.incrementAndGet();
+            return wrap(pooled);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pooled.lastReturned < VALIDATION_GRACE_MILLIS || isValid(pooled)) {
+                return pooled;
+            }
+            validationFailures.incrementAndGet();
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private static boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection physical = factory.create();
+        createNanosTotal.addAndGet(System.nanoTime() - start);
+        created.incrementAndGet();
+        open.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pooled, boolean broken) {
+        try {
+            if (broken || closed) {
+                discard(pooled);
+                return;
+            }
+            try {
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback(); // No dejar transacciones a medias al siguiente
+                    pooled.physical.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                discard(pooled);
+                return;
+            }
+            pooled.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        open.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {}
+    }
+
+    // Expulsa las inactivas de más y repone hasta el mínimo
+    private void maintain() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator(); // Las más viejas primero
+        while (it.hasNext() && open.get() > minIdle) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastReturned >= idleTimeoutMillis && idle.removeFirstOccurrence(pooled)) {
+                evicted.incrementAndGet();
+                discard(pooled);
+            }
+        }
+        // Cada conexión nueva toma un permiso mientras se abre, así el relleno y los
+        // préstamos concurrentes nunca superan el máximo entre los dos
+        while (!closed && open.get() < minIdle && permits.tryAcquire()) {
+            try {
+                idle.offerLast(createConnection());
+            } catch (SQLException e) {
+                return; // Sin base de datos no se puede rellenar; se reintenta en la próxima pasada
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waitNanosTotal.addAndGet(nanos);
+        long max;
+        while (nanos > (max = waitNanosMax.get()) && !waitNanosMax.compareAndSet(max, nanos)) {
+            // Reintentar hasta fijar el máximo
+        }
+    }
+
+    private Connection wrap(PooledConnection pooled) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean returned;
+            private boolean broken;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("close".equals(name)) {
+                    if (!returned) {
+                        returned = true;
+                        release(pooled, broken);
+                    }
+                    return null;
+                }
+                if ("isClosed".equals(name)) {
+                    return returned || pooled.physical.isClosed();
+                }
+                if (returned) {
+                    throw new SQLException("La conexión ya fue devuelta al pool");
+                }
+                try {
+                    return method.invoke(pooled.physical, args);
+                } catch (InvocationTargetException e) {
+                    Throwable cause = e.getCause();
+                    // SQLState 08xxx: error de conexión, no se reutiliza
+                    if (cause instanceof SQLException) {
+                        String state = ((SQLException) cause).getSQLState();
+                        if (state != null && state.startsWith("08")) {
+                            broken = true;
+                        }
+                    }
+                    throw cause;
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, handler);
+    }
+
+    /**
+     * Cierra las conexiones inactivas. Las prestadas se cierran al devolverse.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getActiveConnections() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return espera media por una conexión libre, en milisegundos
+     */
+    public double getAverageWaitMillis() {
+        long count = borrows.get() + timeouts.get();
+        return count > 0 ? waitNanosTotal.get() / 1e6 / count : 0;
+    }
+
+    public double getMaxWaitMillis() {
+        return waitNanosMax.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        long made = created.get();
+        return String.format("abiertas %d (activas %d, inactivas %d, min %d, max %d), préstamos %d, creadas %d "
+                        + "(%.1f ms c/u), espera media %.2f ms / máx %.1f ms, timeouts %d, inválidas %d, expulsadas %d",
+                open.get(), getActiveConnections(), idle.size(), minIdle, maxSize, borrows.get(), made,
+                made > 0 ? createNanosTotal.get() / 1e6 / made : 0, getAverageWaitMillis(), getMaxWaitMillis(),
+                timeouts.get(), validationFailures.get(), evicted.get());
+    }
+}
@@ -0,0 +1,123 @@
+package com.mycompany.chat.repository;
+
+import com.mycompany.chat.config.ConfigManager;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Tabla {@code messages} de MySQL para guardar los mensajes del chat.
+ *
+ * Se escribe por lotes con un INSERT de varias filas ({@code VALUES (...),(...),...}):
+ * un solo viaje a la base de datos y un solo commit por lote, sin depender de que la
+ * URL tenga {@code rewriteBatchedStatements}. Usa su propio pool de una conexión: la
+ * escribe un único hilo y no compite con los logins por las conexiones de usuarios.
+ */
+public class DatabaseMessageRepository implements AutoCloseable {
+    private static final String INSERT_PREFIX =
+            "INSERT INTO messages (sender, recipient, body, sent_at) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?)";
+
+    static {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            System.err.println("Error: No se encontró el driver de MySQL");
+        }
+    }
+
+    /**
+     * Mensaje a guardar.
+     */
+    public static final class Row {
+        private final String sender;
+        private final String recipient;
+        private final String body;
+        private final long sentAtMillis;
+
+        public Row(String sender, String recipient, String body, long sentAtMillis) {
+            this.sender = sender;
+            this.recipient = recipient;
+            this.body = body;
+            this.sentAtMillis = sentAtMillis;
+        }
+
+        public String getSender() {
+            return sender;
+        }
+
+        public String getRecipient() {
+            return recipient;
+        }
+
+        public long getSentAtMillis() {
+            return sentAtMillis;
+        }
+    }
+
+    private final ConnectionPool pool = new ConnectionPool(
+            () -> DriverManager.getConnection(ConfigManager.getDbUrl(), ConfigManager.getDbUser(),
+                    ConfigManager.getDbPassword()),
+            0, 1, ConfigManager.getDbPoolBorrowTimeoutMs(), ConfigManager.getDbPoolIdleTimeoutMs());
+
+    /**
+     * Crea la tabla si la base se configuró antes de que existiera.
+     */
+    public void createTableIfMissing() throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS messages ("
+                + "id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "sender VARCHAR(100) NOT NULL, "
+                + "recipient VARCHAR(100) NOT NULL, "
+                + "body TEXT NOT NULL, "
+                + "sent_at TIMESTAMP(3) NOT NULL, "
+                + "INDEX idx_messages_conversation (sender, recipient, sent_at))";
+        try (Connection conn = pool.getConnection();
+             Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    /**
+     * Inserta los mensajes con un único INSERT de varias filas, en una transacción.
+     */
+    public void insertMessages(List<Row> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows.size() * (ROW_PLACEHOLDERS.length() + 1));
+        sql.append(INSERT_PREFIX);
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "" : ",").append(ROW_PLACEHOLDERS);
+        }
+
+        try (Connection conn = pool.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (Row row : rows) {
+                    ps.setString(index++, row.sender);
+                    ps.setString(index++, row.recipient);
+                    ps.setString(index++, row.body);
+                    ps.setTimestamp(index++, new Timestamp(row.sentAtMillis));
+                }
+                ps.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
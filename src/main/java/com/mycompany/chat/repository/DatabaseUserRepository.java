@@ -3,6 +3,16 @@ package com.mycompany.chat.repository;
 import com.mycompany.chat.config.ConfigManager;
 import com.mycompany.chat.security.PasswordHasher;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
 /**
  * Implementación concreta del Repository usando base de datos MySQL.
@@ -11,6 +21,9 @@ import java.sql.*;
  * - Encapsula toda la lógica de acceso a datos
  * - Maneja conexiones y transacciones
  * - Proporciona una interfaz limpia para operaciones de usuarios
+ * 
+ * Las conexiones salen de un {@link ConnectionPool}, así cada login no paga el
+ * handshake TCP y de autenticación de MySQL.
  */
 public class DatabaseUserRepository implements UserRepository {
     
@@ -35,9 +48,31 @@ public class DatabaseUserRepository implements UserRepository {
         return ConfigManager.getDbPassword();
     }
     
+    private volatile Consumer<String> passwordChangeListener = username -> { };
+    private final ConnectionPool pool = new ConnectionPool(
+            () -> DriverManager.getConnection(getUrl(), getUser(), getPassword()),
+            ConfigManager.getDbPoolMinIdle(), ConfigManager.getDbPoolMaxSize(),
+            ConfigManager.getDbPoolBorrowTimeoutMs(), ConfigManager.getDbPoolIdleTimeoutMs());
+    
+    /**
+     * Presta una conexión del pool; al cerrarla vuelve al pool.
+     */
     @Override
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(getUrl(), getUser(), getPassword());
+        return pool.getConnection();
+    }
+    
+    /**
+     * @return el pool de conexiones (para consultar sus métricas)
+     */
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+    
+    @Override
+    public void close() {
+        System.out.println("[DB] Pool de conexiones: " + pool);
+        pool.close();
     }
     
     @Override
@@ -57,6 +92,23 @@ public class DatabaseUserRepository implements UserRepository {
             return false;
         }
 
+        String storedPasswordHash = findPasswordHash(username);
+        if (storedPasswordHash == null) {
+            return false; // usuario no existe
+        }
+        // Verificar contraseña usando BCrypt
+        return PasswordHasher.verifyPassword(password, storedPasswordHash);
+    }
+    
+    /**
+     * Obtiene el hash BCrypt almacenado de un usuario.
+     * 
+     * @param username Nombre de usuario
+     * @return el hash, o null si el usuario no existe
+     * @throws SQLException Si hay un error de base de datos
+     */
+    @Override
+    public String findPasswordHash(String username) throws SQLException {
         String sql = "SELECT password FROM users WHERE username = ?";
 
         try (Connection conn = getConnection();
@@ -65,15 +117,30 @@ public class DatabaseUserRepository implements UserRepository {
             ps.setString(1, username);
 
             try (ResultSet rs = ps.executeQuery()) {
-                if (!rs.next()) {
-                    return false; // usuario no existe
-                }
+                return rs.next() ? rs.getString("password") : null;
+            }
+        }
+    }
+    
+    /**
+     * Lee todos los usuarios con su hash BCrypt (para cargar un directorio en memoria).
+     * 
+     * @return mapa usuario -> hash
+     * @throws SQLException Si hay un error de base de datos
+     */
+    public Map<String, String> loadPasswordHashes() throws SQLException {
+        String sql = "SELECT username, password FROM users";
+        Map<String, String> hashes = new HashMap<>();
 
-                String storedPasswordHash = rs.getString("password");
-                // Verificar contraseña usando BCrypt
-                return PasswordHasher.verifyPassword(password, storedPasswordHash);
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+
+            while (rs.next()) {
+                hashes.put(rs.getString("username"), rs.getString("password"));
             }
         }
+        return hashes;
     }
     
     @Override
@@ -84,8 +151,18 @@ public class DatabaseUserRepository implements UserRepository {
         }
 
         // Hashear la contraseña antes de almacenarla
-        String hashedPassword = PasswordHasher.hashPassword(password);
-
+        return insertUser(username, PasswordHasher.hashPassword(password));
+    }
+    
+    /**
+     * Inserta un usuario con la contraseña ya hasheada.
+     * 
+     * @param username Nombre de usuario
+     * @param hashedPassword hash BCrypt de la contraseña
+     * @return true si el registro fue exitoso
+     * @throws SQLException Si hay un error de base de datos (por ejemplo, usuario duplicado)
+     */
+    public boolean insertUser(String username, String hashedPassword) throws SQLException {
         String sql = "INSERT INTO users (username, password) VALUES (?, ?)";
 
         try (Connection conn = getConnection();
@@ -99,6 +176,122 @@ public class DatabaseUserRepository implements UserRepository {
         }
     }
     
+    @Override
+    public void setPasswordChangeListener(Consumer<String> listener) {
+        this.passwordChangeListener = listener;
+    }
+    
+    @Override
+    public boolean updatePasswordHash(String username, String hashedPassword) throws SQLException {
+        boolean updated = rehashPassword(username, hashedPassword);
+        if (updated) {
+            passwordChangeListener.accept(username);
+        }
+        return updated;
+    }
+    
+    @Override
+    public boolean rehashPassword(String username, String hashedPassword) throws SQLException {
+        String sql = "UPDATE users SET password = ? WHERE username = ?";
+
+        try (Connection conn = getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+
+            ps.setString(1, hashedPassword);
+            ps.setString(2, username);
+            return ps.executeUpdate() > 0;
+        }
+    }
+    
+    /**
+     * Inserta el lote con un único executeBatch en una transacción, en vez de una
+     * conexión y un commit por usuario. Los que ya existen se descartan antes (un
+     * duplicado haría fallar el lote entero); si aun así el lote falla, por ejemplo por
+     * un alta concurrente, se reintenta fila por fila para saber cuál fue.
+     */
+    @Override
+    public Map<String, String> insertUsers(Map<String, String> hashesByUser) throws SQLException {
+        Map<String, String> failures = new LinkedHashMap<>();
+        if (hashesByUser.isEmpty()) {
+            return failures;
+        }
+        String sql = "INSERT INTO users (username, password) VALUES (?, ?)";
+
+        try (Connection conn = getConnection()) {
+            Set<String> existing = findExistingUsernames(conn, hashesByUser.keySet());
+            List<Map.Entry<String, String>> pending = new ArrayList<>();
+            for (Map.Entry<String, String> entry : hashesByUser.entrySet()) {
+                if (existing.contains(entry.getKey())) {
+                    failures.put(entry.getKey(), "El usuario ya existe");
+                } else {
+                    pending.add(entry);
+                }
+            }
+            if (pending.isEmpty()) {
+                return failures;
+            }
+
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (Map.Entry<String, String> entry : pending) {
+                    ps.setString(1, entry.getKey());
+                    ps.setString(2, entry.getValue());
+                    ps.addBatch();
+                }
+                try {
+                    ps.executeBatch();
+                    conn.commit();
+                } catch (BatchUpdateException e) {
+                    conn.rollback();
+                    ps.clearBatch();
+                    insertOneByOne(conn, ps, pending, failures);
+                }
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        return failures;
+    }
+    
+    private void insertOneByOne(Connection conn, PreparedStatement ps, List<Map.Entry<String, String>> rows,
+                                Map<String, String> failures) throws SQLException {
+        for (Map.Entry<String, String> entry : rows) {
+            try {
+                ps.setString(1, entry.getKey());
+                ps.setString(2, entry.getValue());
+                ps.executeUpdate();
+                conn.commit();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                conn.rollback();
+                failures.put(entry.getKey(), "El usuario ya existe");
+            } catch (SQLException e) {
+                conn.rollback();
+                failures.put(entry.getKey(), e.getMessage());
+            }
+        }
+    }
+    
+    // La columna username usa la collation por defecto, que no distingue mayúsculas
+    private Set<String> findExistingUsernames(Connection conn, Collection<String> usernames) throws SQLException {
+        Set<String> existing = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        String placeholders = String.join(", ", Collections.nCopies(usernames.size(), "?"));
+        String sql = "SELECT username FROM users WHERE username IN (" + placeholders + ")";
+
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (String username : usernames) {
+                ps.setString(index++, username);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString(1));
+                }
+            }
+        }
+        return existing;
+    }
+    
     @Override
     public boolean userExists(String username) throws SQLException {
         if (username == null || username.isEmpty()) {
@@ -0,0 +1,479 @@
+package com.mycompany.chat.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.mycompany.chat.security.PasswordHasher;
+
+/**
+ * Implementación del Repository sobre un archivo local, sin MySQL.
+ *
+ * Pensada para despliegues pequeños, pruebas y benchmarks: arranca en milisegundos y
+ * no necesita ningún servicio externo.
+ *
+ * - El archivo es un log de solo agregado, una línea por cambio:
+ *   {@code U<TAB>usuario<TAB>hash<TAB>crc} (alta o cambio de contraseña) y
+ *   {@code D<TAB>usuario<TAB>crc} (baja). El CRC32 cubre la línea, así una escritura
+ *   cortada (por ejemplo, al caerse la máquina) se detecta al cargar y se descarta.
+ * - Al abrir se reproduce el log en un índice en memoria usuario -> hash; las
+ *   consultas no tocan el disco y cada alta es un append con fsync.
+ * - Los cambios y bajas dejan líneas obsoletas. Periódicamente, si las obsoletas superan
+ *   a las vigentes, el log se compacta: se escriben solo las vigentes en un archivo
+ *   temporal que luego reemplaza al original de forma atómica.
+ *
+ * Hay una sola instancia por archivo en cada proceso ({@link #open}), y un archivo
+ * {@code .lock} impide que otro proceso escriba el mismo log a la vez.
+ */
+public class FileUserRepository implements UserRepository {
+    private static final Map<Path, FileUserRepository> OPEN = new ConcurrentHashMap<>();
+    // Mínimo de líneas obsoletas para que valga la pena compactar
+    private static final int MIN_GARBAGE_TO_COMPACT = 1000;
+    private static final String SQLSTATE_IO_ERROR = "58030";
+
+    private final Path file;
+    private final Path lockFile;
+    private final long compactMillis;
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+    private volatile Consumer<String> passwordChangeListener = username -> { };
+
+    // Protegidos por this; log es volatile para que las lecturas no tomen el lock
+    private volatile FileChannel log;
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private long records;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Devuelve el repositorio del archivo, compartido por todo el proceso (el menú del
+     * servidor y el servidor usan el mismo índice).
+     *
+     * @param file archivo del log
+     * @param compactMillis cada cuánto revisar si conviene compactar
+     */
+    public static FileUserRepository open(Path file, long compactMillis) {
+        return OPEN.computeIfAbsent(file.toAbsolutePath().normalize(),
+                path -> new FileUserRepository(path, compactMillis));
+    }
+
+    private FileUserRepository(Path file, long compactMillis) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        this.compactMillis = compactMillis;
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (log == null) {
+            openLog();
+        }
+    }
+
+    // Abre el log y reconstruye el índice si todavía no está abierto
+    private synchronized void openLog() throws SQLException {
+        if (log != null) {
+            return;
+        }
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = lockChannel.tryLock();
+            if (lock == null) {
+                lockChannel.close();
+                lockChannel = null;
+                throw new SQLException("El archivo de usuarios " + file + " está en uso por otro proceso",
+                        SQLSTATE_IO_ERROR);
+            }
+            long start = System.nanoTime();
+            long validBytes = replay();
+            log = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (log.size() > validBytes) {
+                // Cola cortada por una escritura incompleta: se descarta para seguir agregando
+                System.err.println("[USUARIOS] Descartados " + (log.size() - validBytes)
+                        + " bytes incompletos al final de " + file);
+                log.truncate(validBytes);
+                log.force(false);
+            }
+            log.position(validBytes);
+            System.out.printf("[USUARIOS] Archivo %s: %d usuarios (%d registros) cargados en %.1f ms%n",
+                    file, hashes.size(), records, (System.nanoTime() - start) / 1e6);
+        } catch (IOException e) {
+            closeQuietly();
+            throw new SQLException("No se pudo abrir el archivo de usuarios " + file + ": " + e.getMessage(),
+                    SQLSTATE_IO_ERROR, e);
+        }
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "usuarios-compactacion");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactIfWorthIt, 0, compactMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Reproduce el log en el índice; devuelve hasta qué byte es válido. La compactación
+    // mantiene el archivo del orden del directorio, así que se lee de una vez.
+    private long replay() throws IOException {
+        hashes.clear();
+        records = 0;
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        byte[] data = Files.readAllBytes(file);
+        CRC32 crc = new CRC32();
+        int lineStart = 0;
+        int corrupted = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (apply(data, lineStart, i, crc)) {
+                records++;
+            } else {
+                corrupted++;
+            }
+            lineStart = i + 1;
+        }
+        if (corrupted > 0) {
+            System.err.println("[USUARIOS] " + corrupted + " registros dañados ignorados en " + file);
+        }
+        return lineStart;
+    }
+
+    // Aplica la línea data[start, end) al índice; false si está dañada
+    private boolean apply(byte[] data, int start, int end, CRC32 crc) {
+        int lastTab = end - 1;
+        while (lastTab >= start && data[lastTab] != '\t') {
+            lastTab--;
+        }
+        if (lastTab <= start) {
+            return false;
+        }
+        crc.reset();
+        crc.update(data, start, lastTab - start);
+        long expected;
+        try {
+            expected = Long.parseLong(new String(data, lastTab + 1, end - lastTab - 1, StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (crc.getValue() != expected || start + 2 > lastTab || data[start + 1] != '\t') {
+            return false;
+        }
+        int nameStart = start + 2;
+        int nameEnd = nameStart;
+        while (nameEnd < lastTab && data[nameEnd] != '\t') {
+            nameEnd++;
+        }
+        String username = new String(data, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8);
+        if (data[start] == 'U' && nameEnd < lastTab) {
+            hashes.put(username, new String(data, nameEnd + 1, lastTab - nameEnd - 1, StandardCharsets.UTF_8));
+            return true;
+        }
+        if (data[start] == 'D' && nameEnd == lastTab) {
+            hashes.remove(username);
+            return true;
+        }
+        return false;
+    }
+
+    private static String checksum(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static byte[] record(String body) {
+        return (body + "\t" + checksum(body) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Agrega un registro al log y lo baja a disco antes de confirmar el cambio
+    private void append(String body) throws SQLException {
+        write(ByteBuffer.wrap(record(body)), 1);
+    }
+
+    private void write(ByteBuffer buffer, int count) throws SQLException {
+        try {
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            log.force(false);
+            records += count;
+        } catch (IOException e) {
+            throw new SQLException("Error escribiendo " + file + ": " + e.getMessage(), SQLSTATE_IO_ERROR, e);
+        }
+    }
+
+    @Override
+    public boolean authenticate(String username, String password) throws SQLException {
+        if (username == null || password == null || username.isEmpty() || password.isEmpty()) {
+            return false;
+        }
+        String hash = findPasswordHash(username);
+        return hash != null && PasswordHasher.verifyPassword(password, hash);
+    }
+
+    /**
+     * Obtiene el hash BCrypt de un usuario.
+     *
+     * @return el hash, o null si el usuario no existe
+     */
+    @Override
+    public String findPasswordHash(String username) throws SQLException {
+        ensureOpen();
+        return hashes.get(username);
+    }
+
+    @Override
+    public boolean registerUser(String username, String password) throws SQLException {
+        if (username == null || password == null || username.isEmpty() || password.isEmpty()) {
+            return false;
+        }
+        return insertUser(username, PasswordHasher.hashPassword(password));
+    }
+
+    /**
+     * Agrega un usuario con la contraseña ya hasheada.
+     *
+     * @throws SQLIntegrityConstraintViolationException si el usuario ya existe (como
+     *         la clave única de MySQL)
+     */
+    public synchronized boolean insertUser(String username, String hashedPassword) throws SQLException {
+        ensureOpen();
+        if (hashes.containsKey(username)) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + username + "'", "23000");
+        }
+        append("U\t" + username + "\t" + hashedPassword);
+        hashes.put(username, hashedPassword);
+        return true;
+    }
+
+    /**
+     * Agrega el lote con una sola escritura y un solo fsync.
+     */
+    @Override
+    public synchronized Map<String, String> insertUsers(Map<String, String> hashesByUser) throws SQLException {
+        ensureOpen();
+        Map<String, String> failures = new LinkedHashMap<>();
+        Map<String, String> accepted = new LinkedHashMap<>();
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(hashesByUser.size() * 96);
+        for (Map.Entry<String, String> entry : hashesByUser.entrySet()) {
+            if (hashes.containsKey(entry.getKey())) {
+                failures.put(entry.getKey(), "El usuario ya existe");
+                continue;
+            }
+            byte[] bytes = record("U\t" + entry.getKey() + "\t" + entry.getValue());
+            batch.write(bytes, 0, bytes.length);
+            accepted.put(entry.getKey(), entry.getValue());
+        }
+        if (!accepted.isEmpty()) {
+            write(ByteBuffer.wrap(batch.toByteArray()), accepted.size());
+            hashes.putAll(accepted);
+        }
+        return failures;
+    }
+
+    @Override
+    public void setPasswordChangeListener(Consumer<String> listener) {
+        this.passwordChangeListener = listener;
+    }
+
+    /**
+     * Reemplaza el hash de un usuario existente y avisa que cambió su contraseña.
+     *
+     * @return false si el usuario no existe
+     */
+    @Override
+    public boolean updatePasswordHash(String username, String hashedPassword) throws SQLException {
+        boolean updated = rehashPassword(username, hashedPassword);
+        if (updated) {
+            passwordChangeListener.accept(username);
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized boolean rehashPassword(String username, String hashedPassword) throws SQLException {
+        ensureOpen();
+        if (!hashes.containsKey(username)) {
+            return false;
+        }
+        append("U\t" + username + "\t" + hashedPassword);
+        hashes.put(username, hashedPassword);
+        return true;
+    }
+
+    /**
+     * Da de baja un usuario.
+     *
+     * @return false si el usuario no existía
+     */
+    public synchronized boolean deleteUser(String username) throws SQLException {
+        ensureOpen();
+        if (!hashes.containsKey(username)) {
+            return false;
+        }
+        append("D\t" + username);
+        hashes.remove(username);
+        passwordChangeListener.accept(username);
+        return true;
+    }
+
+    @Override
+    public boolean userExists(String username) throws SQLException {
+        if (username == null || username.isEmpty()) {
+            return false;
+        }
+        return findPasswordHash(username) != null;
+    }
+
+    /**
+     * Este repositorio no usa JDBC.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        throw new SQLFeatureNotSupportedException("El repositorio de archivo no tiene conexión JDBC");
+    }
+
+    @Override
+    public boolean testConnection() {
+        try {
+            ensureOpen();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error al abrir el repositorio de usuarios: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void compactIfWorthIt() {
+        try {
+            synchronized (this) {
+                long garbage = records - hashes.size();
+                if (log != null && garbage >= MIN_GARBAGE_TO_COMPACT && garbage > hashes.size()) {
+                    compact();
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("[USUARIOS] " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reescribe el log con solo los usuarios vigentes y reemplaza el archivo de forma
+     * atómica. Si algo falla, el log original queda intacto.
+     */
+    public synchronized void compact() throws SQLException {
+        ensureOpen();
+        long before = records;
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        Map<String, String> snapshot = new HashMap<>(hashes);
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+                    byte[] bytes = record("U\t" + entry.getKey() + "\t" + entry.getValue());
+                    if (buffer.remaining() < bytes.length) {
+                        drain(buffer, out);
+                    }
+                    if (bytes.length > buffer.capacity()) {
+                        out.write(ByteBuffer.wrap(bytes));
+                    } else {
+                        buffer.put(bytes);
+                    }
+                }
+                drain(buffer, out);
+                out.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.close();
+            log = FileChannel.open(file, StandardOpenOption.WRITE);
+            log.position(log.size());
+            records = snapshot.size();
+            System.out.println("[USUARIOS] Log compactado: " + before + " -> " + records + " registros");
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // Se sobrescribe en la próxima compactación
+            }
+            throw new SQLException("No se pudo compactar " + file + ": " + e.getMessage(), SQLSTATE_IO_ERROR, e);
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * Cierra el archivo y libera el lock; el índice se vuelve a cargar si se usa de nuevo.
+     */
+    @Override
+    public synchronized void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+            compactor = null;
+        }
+        if (log != null) {
+            System.out.println("[USUARIOS] Archivo " + file + ": " + this);
+        }
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        try {
+            if (log != null) {
+                log.close();
+            }
+            if (lock != null) {
+                lock.release();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error cerrando " + file + ": " + e.getMessage());
+        } finally {
+            log = null;
+            lock = null;
+            lockChannel = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d usuarios, %d registros en el log", hashes.size(), records);
+    }
+}
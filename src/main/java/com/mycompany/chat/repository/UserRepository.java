@@ -2,6 +2,8 @@ package com.mycompany.chat.repository;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Interfaz Repository para el acceso a datos de usuarios.
@@ -34,6 +36,53 @@ public interface UserRepository {
      */
     boolean registerUser(String username, String password) throws SQLException;
     
+    /**
+     * Obtiene el hash BCrypt almacenado de un usuario.
+     * 
+     * @param username Nombre de usuario
+     * @return el hash, o null si el usuario no existe
+     * @throws SQLException Si hay un error de base de datos
+     */
+    String findPasswordHash(String username) throws SQLException;
+    
+    /**
+     * Reemplaza el hash de un usuario existente porque cambió su contraseña; se avisa al
+     * listener de {@link #setPasswordChangeListener}.
+     * 
+     * @param username Nombre de usuario
+     * @param hashedPassword nuevo hash BCrypt
+     * @return false si el usuario no existe
+     * @throws SQLException Si hay un error de base de datos
+     */
+    boolean updatePasswordHash(String username, String hashedPassword) throws SQLException;
+    
+    /**
+     * Reemplaza el hash por otro de la misma contraseña (rehash con otro costo). No es
+     * un cambio de contraseña: no se avisa al listener.
+     * 
+     * @return false si el usuario no existe
+     * @throws SQLException Si hay un error de base de datos
+     */
+    default boolean rehashPassword(String username, String hashedPassword) throws SQLException {
+        return updatePasswordHash(username, hashedPassword);
+    }
+    
+    /**
+     * Registra quién recibe el usuario cada vez que su contraseña cambia o se da de baja
+     * (el servidor revoca sus sesiones). Por defecto no se avisa a nadie.
+     */
+    default void setPasswordChangeListener(Consumer<String> listener) {
+    }
+    
+    /**
+     * Inserta en lote usuarios con la contraseña ya hasheada (importación masiva).
+     * 
+     * @param hashesByUser usuario -> hash BCrypt, en el orden en que se insertan
+     * @return los usuarios que no se insertaron, con el motivo (vacío si entraron todos)
+     * @throws SQLException Si falla el acceso a los datos para todo el lote
+     */
+    Map<String, String> insertUsers(Map<String, String> hashesByUser) throws SQLException;
+    
     /**
      * Verifica si un usuario existe en la base de datos.
      * 
@@ -57,5 +106,11 @@ public interface UserRepository {
      * @return true si la conexión es exitosa
      */
     boolean testConnection();
+    
+    /**
+     * Libera los recursos del repositorio (por ejemplo, el pool de conexiones).
+     */
+    default void close() {
+    }
 }
 
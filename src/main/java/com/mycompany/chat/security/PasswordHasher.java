@@ -5,11 +5,117 @@ import org.mindrot.jbcrypt.BCrypt;
 /**
  * Utilidad para hashear y verificar contraseñas usando BCrypt.
  * BCrypt es un algoritmo de hash seguro que incluye sal automática.
+ *
+ * El costo no es fijo: al iniciar, el servidor llama a {@link #calibrate} para usar el
+ * más alto que este CPU calcula dentro de un presupuesto de tiempo por hash. Los hashes
+ * guardados con un costo menor se rehashean al siguiente login correcto ({@link #needsRehash});
+ * nunca se bajan, aunque una calibración posterior elija un costo menor.
  */
 public class PasswordHasher {
     
-    // Cost factor para BCrypt (10 es un buen balance entre seguridad y rendimiento)
+    // Cost factor por defecto hasta calibrar (10 es un buen balance entre seguridad y rendimiento)
     private static final int BCRYPT_ROUNDS = 10;
+    // Rango que acepta jBCrypt; por encima de 20 un hash tarda minutos
+    private static final int MIN_ROUNDS = 4;
+    private static final int MAX_ROUNDS = 20;
+    
+    private static volatile int rounds = BCRYPT_ROUNDS;
+    
+    /**
+     * Elige el costo más alto cuyo hash tarda a lo sumo {@code budgetMillis} en este CPU,
+     * sin bajar de {@code minRounds}, y lo usa para los hashes nuevos.
+     * 
+     * Se mide el costo mínimo y se extrapola (cada punto de costo duplica el tiempo);
+     * luego se mide el elegido y, si se pasa del presupuesto, se baja uno.
+     * 
+     * @param budgetMillis tiempo máximo por hash
+     * @param minRounds costo mínimo aceptable aunque se pase del presupuesto
+     * @return nanosegundos medidos por hash con el costo elegido
+     */
+    public static long calibrate(long budgetMillis, int minRounds) {
+        int floor = Math.max(MIN_ROUNDS, Math.min(MAX_ROUNDS, minRounds));
+        long budgetNanos = budgetMillis * 1_000_000L;
+        warmUp();
+        
+        int cost = floor;
+        long estimate = Math.min(measure(floor), measure(floor));
+        while (cost < MAX_ROUNDS && estimate * 2 <= budgetNanos) {
+            cost++;
+            estimate *= 2;
+        }
+        long measured = measure(cost);
+        if (measured > budgetNanos && cost > floor) {
+            cost--;
+            measured = measure(cost);
+        }
+        rounds = cost;
+        return measured;
+    }
+    
+    /**
+     * Mide cuánto tarda un hash con el costo actual (para planificar capacidad cuando el
+     * costo se fija por configuración).
+     * 
+     * @return nanosegundos por hash
+     */
+    public static long benchmark() {
+        warmUp();
+        return measure(rounds);
+    }
+    
+    // Calentar el JIT para no medir el intérprete
+    private static void warmUp() {
+        for (int i = 0; i < 3; i++) {
+            measure(MIN_ROUNDS);
+        }
+    }
+    
+    private static long measure(int cost) {
+        long start = System.nanoTime();
+        BCrypt.hashpw("calibracion", BCrypt.gensalt(cost));
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * @return el costo con que se generan los hashes nuevos
+     */
+    public static int getRounds() {
+        return rounds;
+    }
+    
+    /**
+     * Fija el costo de los hashes nuevos (sin calibrar).
+     */
+    public static void setRounds(int cost) {
+        rounds = Math.max(MIN_ROUNDS, Math.min(MAX_ROUNDS, cost));
+    }
+    
+    /**
+     * Obtiene el costo con que se generó un hash.
+     * 
+     * @return el costo, o -1 si no es un hash BCrypt válido
+     */
+    public static int getCost(String hash) {
+        if (!isValidHash(hash) || hash.length() < 7 || hash.charAt(6) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Indica si un hash válido se generó con un costo menor que el actual y conviene
+     * reemplazarlo (tras verificar la contraseña, que es cuando se la conoce). Uno de
+     * costo mayor se conserva: la calibración depende del tiempo medido y puede variar
+     * entre arranques, y bajarlo debilitaría el hash.
+     */
+    public static boolean needsRehash(String hash) {
+        int cost = getCost(hash);
+        return cost > 0 && cost < rounds;
+    }
     
     /**
      * Hashea una contraseña en texto plano usando BCrypt.
@@ -21,7 +127,7 @@ public class PasswordHasher {
         if (plainPassword == null || plainPassword.isEmpty()) {
             throw new IllegalArgumentException("La contraseña no puede ser nula o vacía");
         }
-        return BCrypt.hashpw(plainPassword, BCrypt.gensalt(BCRYPT_ROUNDS));
+        return BCrypt.hashpw(plainPassword, BCrypt.gensalt(rounds));
     }
     
     /**
@@ -0,0 +1,176 @@
+package com.mycompany.chat.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tokens firmados para reanudar una sesión sin repetir LOGIN.
+ *
+ * Tras un login correcto el servidor entrega un token; si la conexión se corta, el
+ * cliente se reconecta con RESUME y el token. Validarlo es recalcular un HMAC-SHA256
+ * (microsegundos), sin consultar la base de datos ni ejecutar BCrypt.
+ *
+ * Formato: {@code base64url(usuario:generación:expira) + "." + base64url(hmac)}. No
+ * contiene '|' ni ':' fuera del payload codificado, así que viaja tal cual en el protocolo.
+ *
+ * - La clave se genera al azar al iniciar el servidor: un reinicio invalida todos los
+ *   tokens, y los clientes vuelven a hacer LOGIN.
+ * - Revocación: cada usuario tiene un número de generación (0 si nunca se revocó).
+ *   {@link #revoke} lo incrementa y todos los tokens emitidos antes dejan de valer; se
+ *   llama cuando cambia la contraseña. {@link #revokeToken} invalida uno solo, hasta
+ *   que vence: el de la conexión que hace LOGOUT, o el que se usó en un RESUME (se
+ *   reemplaza por uno nuevo). Los demás dispositivos del usuario siguen conectados.
+ */
+public class SessionTokens {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>(); // Token -> vencimiento
+    // Mac no es thread-safe y crearlo cuesta más que usarlo
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * Token emitido con su vencimiento.
+     */
+    public static final class Token {
+        private final String value;
+        private final long expiresAtMillis;
+
+        Token(String value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+    }
+
+    /**
+     * @param ttlMillis validez de cada token desde que se emite
+     */
+    public SessionTokens(long ttlMillis) {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HMAC-SHA256 no disponible", e);
+            }
+        });
+    }
+
+    /**
+     * Emite un token para un usuario recién autenticado.
+     */
+    public Token issue(String username) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        String payload = username + ":" + generation(username) + ":" + expiresAt;
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        String value = ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(payloadBytes));
+        return new Token(value, expiresAt);
+    }
+
+    /**
+     * Valida un token.
+     *
+     * @return el usuario del token, o null si es inválido, venció o fue revocado
+     */
+    public String validate(String token) {
+        String[] fields = verify(token);
+        return fields != null && !revokedTokens.containsKey(token) ? fields[0] : null;
+    }
+
+    // Usuario, generación y vencimiento de un token firmado, vigente y no revocado por
+    // usuario; null si no lo es
+    private String[] verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot == token.length() - 1) {
+            return null;
+        }
+        byte[] payloadBytes;
+        byte[] signature;
+        try {
+            payloadBytes = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // Comparación en tiempo constante: no revelar cuántos bytes coinciden
+        if (!MessageDigest.isEqual(sign(payloadBytes), signature)) {
+            return null;
+        }
+
+        String[] fields = new String(payloadBytes, StandardCharsets.UTF_8).split(":");
+        if (fields.length != 3) {
+            return null;
+        }
+        try {
+            long tokenGeneration = Long.parseLong(fields[1]);
+            long expiresAt = Long.parseLong(fields[2]);
+            if (System.currentTimeMillis() >= expiresAt || tokenGeneration != generation(fields[0])) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return fields;
+    }
+
+    /**
+     * Invalida todos los tokens emitidos hasta ahora para el usuario.
+     */
+    public void revoke(String username) {
+        if (username != null) {
+            generations.merge(username, 1L, Long::sum);
+        }
+    }
+
+    /**
+     * Invalida un solo token; los demás del usuario siguen valiendo.
+     *
+     * @return true si esta llamada lo revocó; false si ya no valía o otra llamada lo
+     *         revocó antes (dos RESUME con el mismo token: solo uno lo consume)
+     */
+    public boolean revokeToken(String token) {
+        String[] fields = verify(token);
+        if (fields == null) {
+            return false; // Ya no vale
+        }
+        long now = System.currentTimeMillis();
+        revokedTokens.values().removeIf(expiresAt -> expiresAt <= now); // Los vencidos ya no validan
+        return revokedTokens.putIfAbsent(token, Long.parseLong(fields[2])) == null;
+    }
+
+    private long generation(String username) {
+        return generations.getOrDefault(username, 0L);
+    }
+
+    private byte[] sign(byte[] payload) {
+        return macs.get().doFinal(payload);
+    }
+}
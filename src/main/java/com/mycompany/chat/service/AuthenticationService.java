@@ -0,0 +1,164 @@
+package com.mycompany.chat.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Verifica credenciales en un pool de hilos propio, del tamaño de la CPU.
+ *
+ * BCrypt es caro a propósito (decenas de ms por intento). Si se verificara en el hilo
+ * de cada cliente, una ola de reconexiones ocuparía todos los hilos del servidor
+ * hasheando y no se movería ningún mensaje. Aquí:
+ * - Hay tantos hilos como núcleos: más hilos no verifican más rápido, solo compiten.
+ * - La cola es acotada y, si está llena, {@link #verificar} rechaza de inmediato
+ *   ({@link RejectedExecutionException}) en vez de acumular esperas. También rechaza si,
+ *   al ritmo de verificación medido, el intento no saldría de la cola a tiempo.
+ * - Un intento que pasó en cola más que {@code maxQueueWaitMillis} ya no se verifica:
+ *   el cliente dejó de esperar la respuesta y el hash sería trabajo perdido.
+ *
+ * Se mide por separado el tiempo en cola y el de verificación (consulta a la base más
+ * BCrypt; con el pool de conexiones la consulta es una fracción de milisegundo).
+ */
+public class AuthenticationService {
+    private final ThreadPoolExecutor executor;
+    private final long maxQueueWaitNanos;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong queueNanosTotal = new AtomicLong();
+    private final AtomicLong queueNanosMax = new AtomicLong();
+    private final AtomicLong verifyNanosTotal = new AtomicLong();
+    private final AtomicLong verifyNanosMax = new AtomicLong();
+
+    /**
+     * Resultado de un intento de login.
+     */
+    public enum Resultado {
+        VALIDO,
+        INVALIDO,
+        /** Esperó en cola más de lo que el cliente espera la respuesta */
+        VENCIDO
+    }
+
+    /**
+     * @param threads hilos de verificación
+     * @param queueCapacity intentos que pueden esperar un hilo libre
+     * @param maxQueueWaitMillis espera en cola tras la cual un intento se descarta
+     */
+    public AuthenticationService(int threads, int queueCapacity, long maxQueueWaitMillis) {
+        this.maxQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMillis);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), r -> {
+                    Thread thread = new Thread(r, "auth-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Encola la verificación de unas credenciales.
+     *
+     * @param verificacion comprobación a ejecutar (por ejemplo,
+     *        {@link DatabaseService#autenticarUsuario}); true si son válidas
+     * @return futuro que se completa en un hilo de autenticación
+     * @throws RejectedExecutionException si la cola está llena (servidor saturado)
+     */
+    public CompletableFuture<Resultado> verificar(BooleanSupplier verificacion) {
+        long enqueuedAt = System.nanoTime();
+        CompletableFuture<Resultado> result = new CompletableFuture<>();
+        if (estimatedQueueNanos() > maxQueueWaitNanos) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Cola de autenticación saturada");
+        }
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                long waited = start - enqueuedAt;
+                queueNanosTotal.addAndGet(waited);
+                updateMax(queueNanosMax, waited);
+                if (waited > maxQueueWaitNanos) {
+                    expired.incrementAndGet();
+                    result.complete(Resultado.VENCIDO);
+                    return;
+                }
+                try {
+                    boolean valid = verificacion.getAsBoolean();
+                    long took = System.nanoTime() - start;
+                    verifyNanosTotal.addAndGet(took);
+                    updateMax(verifyNanosMax, took);
+                    completed.incrementAndGet();
+                    result.complete(valid ? Resultado.VALIDO : Resultado.INVALIDO);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+        return result;
+    }
+
+    // Espera estimada para un intento nuevo: los que ya esperan por el tiempo medio de
+    // verificación, repartidos entre los hilos
+    private long estimatedQueueNanos() {
+        long done = completed.get();
+        if (done == 0) {
+            return 0;
+        }
+        double averageNanos = (double) verifyNanosTotal.get() / done;
+        return (long) ((executor.getQueue().size() + 1) * averageNanos / executor.getMaximumPoolSize());
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Reintentar hasta fijar el máximo
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return espera media en cola por intento, en milisegundos
+     */
+    public double getAverageQueueMillis() {
+        long started = completed.get() + expired.get();
+        return started > 0 ? queueNanosTotal.get() / 1e6 / started : 0;
+    }
+
+    /**
+     * @return tiempo medio de verificación (consulta y BCrypt), en milisegundos
+     */
+    public double getAverageVerifyMillis() {
+        long done = completed.get();
+        return done > 0 ? verifyNanosTotal.get() / 1e6 / done : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hilos %d, en cola %d, verificados %d, rechazados %d, vencidos %d, "
+                        + "cola media %.1f ms / máx %.1f ms, verificación media %.1f ms / máx %.1f ms",
+                executor.getMaximumPoolSize(), getQueuedCount(), completed.get(), rejected.get(), expired.get(),
+                getAverageQueueMillis(), queueNanosMax.get() / 1e6,
+                getAverageVerifyMillis(), verifyNanosMax.get() / 1e6);
+    }
+}
@@ -1,10 +1,20 @@
 package com.mycompany.chat.service;
 
 import com.mycompany.chat.EjecutorSql;
+import com.mycompany.chat.config.ConfigManager;
+import com.mycompany.chat.repository.CachedUserRepository;
+import com.mycompany.chat.repository.ConnectionPool;
 import com.mycompany.chat.repository.DatabaseUserRepository;
+import com.mycompany.chat.repository.FileUserRepository;
 import com.mycompany.chat.repository.UserRepository;
 import com.mycompany.chat.security.InputValidator;
+import com.mycompany.chat.security.PasswordHasher;
+import com.mycompany.chat.util.Constants;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.function.Consumer;
 
 /**
  * Servicio para operaciones relacionadas con la base de datos.
@@ -14,7 +24,21 @@ public class DatabaseService {
     private final UserRepository userRepository;
 
     public DatabaseService() {
-        this(new DatabaseUserRepository());
+        this(createUserRepository());
+    }
+
+    // Repositorio según users.repository: el log local, o MySQL con el directorio en
+    // memoria si está habilitado
+    private static UserRepository createUserRepository() {
+        if (Constants.USERS_REPOSITORY_FILE.equals(ConfigManager.getUsersRepository())) {
+            return FileUserRepository.open(Paths.get(ConfigManager.getUsersFile()),
+                    ConfigManager.getUsersFileCompactSeconds() * 1000L);
+        }
+        DatabaseUserRepository database = new DatabaseUserRepository();
+        if (!ConfigManager.isUsersCacheEnabled()) {
+            return database;
+        }
+        return new CachedUserRepository(database, ConfigManager.getUsersCacheRefreshSeconds() * 1000L);
     }
 
     public DatabaseService(UserRepository userRepository) {
@@ -52,6 +76,35 @@ public class DatabaseService {
         return userRepository.testConnection();
     }
     
+    /**
+     * @return el pool de conexiones a MySQL de los usuarios, o null si se guardan en el log local
+     */
+    public ConnectionPool getConnectionPool() {
+        if (userRepository instanceof DatabaseUserRepository) {
+            return ((DatabaseUserRepository) userRepository).getConnectionPool();
+        }
+        if (userRepository instanceof CachedUserRepository) {
+            return ((CachedUserRepository) userRepository).getConnectionPool();
+        }
+        return null;
+    }
+    
+    /**
+     * Avisa al listener cada vez que cambia o se borra la contraseña de un usuario, con
+     * cualquier repositorio. El rehash transparente al iniciar sesión no avisa: la
+     * contraseña es la misma.
+     */
+    public void setPasswordChangeListener(Consumer<String> listener) {
+        userRepository.setPasswordChangeListener(listener);
+    }
+    
+    /**
+     * Libera las conexiones a la base de datos.
+     */
+    public void cerrar() {
+        userRepository.close();
+    }
+    
     /**
      * Registra un nuevo usuario en la base de datos.
      * 
@@ -81,20 +134,61 @@ public class DatabaseService {
         }
     }
 
+    /**
+     * Importa usuarios desde un CSV usuario,contraseña, hasheando en paralelo con todos
+     * los núcleos e insertando por lotes.
+     *
+     * @param csv archivo a importar
+     * @return el reporte con filas por segundo y los errores por línea
+     * @throws IOException si no se puede leer el archivo
+     */
+    public UserImportService.Reporte importarUsuarios(Path csv) throws IOException {
+        UserImportService importer = new UserImportService(userRepository,
+                Runtime.getRuntime().availableProcessors(), Constants.USERS_IMPORT_BATCH_SIZE);
+        return importer.importar(csv);
+    }
+
     /**
      * Autentica a un usuario en la base de datos.
      *
+     * Si la contraseña es correcta pero el hash se generó con un costo BCrypt distinto
+     * del calibrado, se rehashea y se guarda: ese login paga un hash más, los
+     * siguientes ya usan el costo actual.
+     *
      * @param username nombre de usuario
      * @param password contraseña
      * @return true si las credenciales son válidas
      */
     public boolean autenticarUsuario(String username, String password) {
+        if (username == null || password == null || username.isEmpty() || password.isEmpty()) {
+            return false;
+        }
+        String hash;
         try {
-            return userRepository.authenticate(username, password);
+            hash = userRepository.findPasswordHash(username);
         } catch (SQLException e) {
             System.err.println("Error autenticando usuario: " + e.getMessage());
             return false;
         }
+        if (hash == null || !PasswordHasher.verifyPassword(password, hash)) {
+            return false;
+        }
+        if (PasswordHasher.needsRehash(hash)) {
+            rehashear(username, password, hash);
+        }
+        return true;
+    }
+
+    // Un error al guardar el hash nuevo no impide el login: se reintenta el próximo
+    private void rehashear(String username, String password, String hash) {
+        try {
+            if (userRepository.rehashPassword(username, PasswordHasher.hashPassword(password))) {
+                System.out.println("[AUTH] Hash de " + username + " actualizado de costo "
+                        + PasswordHasher.getCost(hash) + " a " + PasswordHasher.getRounds());
+            }
+        } catch (SQLException e) {
+            System.err.println("No se pudo actualizar el hash de " + username + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -0,0 +1,484 @@
+package com.mycompany.chat.service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.mycompany.chat.ClientHandler;
+import com.mycompany.chat.history.OfflineQueue;
+import com.mycompany.chat.protocol.MessageBuilder;
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Entrega confirmada de mensajes privados, para los clientes que la anuncian al
+ * iniciar sesión ({@link Constants#CAPABILITY_ACKS}).
+ *
+ * - Numeración: cada conversación (remitente -> destinatario) numera sus mensajes
+ *   1, 2, 3... y se envían como {@code MSG|remitente|mensaje|número}.
+ * - Confirmación acumulativa: el cliente responde cada tanto
+ *   {@code ACK|remitente|número} = "recibí todo hasta ese número"; no hay una ida y
+ *   vuelta por mensaje. El remitente recibe {@code DELIVERED|destinatario|número}.
+ * - Ventana deslizante: a lo sumo {@code window} mensajes sin confirmar por
+ *   conversación; los siguientes esperan (hasta {@code backlog}) y salen a medida que
+ *   llegan confirmaciones. Con la espera llena, el envío se rechaza.
+ * - Reenvío: si lo más antiguo en vuelo no se confirma a tiempo, se reenvía todo lo que
+ *   está en vuelo (go-back-N) y el plazo se duplica, hasta un máximo. Al reconectar se
+ *   reenvía lo pendiente con los mismos números. El cliente muestra solo los números
+ *   mayores al último que vio de ese remitente y descarta el resto como repetidos.
+ * - Desconexión: lo pendiente se guarda en memoria para la reconexión; si llega un
+ *   mensaje nuevo mientras el destinatario sigue desconectado, si no vuelve en
+ *   {@code holdMillis} o si el servidor se detiene, pasa a la bandeja de desconectados
+ *   (en orden, antes que lo nuevo).
+ *
+ * Al iniciar sesión el servidor envía {@code ACKS|época}: la época cambia con cada
+ * arranque del servidor, y también cuando se descartó el estado de ese destinatario
+ * (se desconectó sin nada pendiente), y le indica al cliente que la numeración empezó
+ * de nuevo.
+ *
+ * Ninguna escritura al socket se hace con el lock de un destinatario tomado: las líneas
+ * se encolan en orden y las escribe un solo hilo a la vez por destinatario. Los
+ * reenvíos del temporizador se escriben en otros hilos, para que un destinatario lento
+ * no frene a los demás.
+ */
+public class DeliveryService {
+    /** El destinatario tiene la ventana y la espera llenas */
+    public static final long BACKLOG_FULL = -1;
+    /** El destinatario ya no está conectado con entrega confirmada */
+    public static final long NOT_CONNECTED = -2;
+
+    private final Function<String, ClientHandler> clients;
+    private final OfflineQueue offlineQueue; // null si está desactivada
+    private final int window;
+    private final int backlog;
+    private final long retransmitNanos;
+    private final long maxRetransmitNanos;
+    private final long holdMillis;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong generations = new AtomicLong();
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService writers;
+
+    // Métricas
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong retransmitted = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private static final class Pending {
+        final long seq;
+        final String body;
+        final String line;
+
+        Pending(long seq, String sender, String body) {
+            this.seq = seq;
+            this.body = body;
+            this.line = MessageBuilder.buildSequencedMessage(sender, body, seq);
+        }
+    }
+
+    // Mensajes de un remitente a un destinatario
+    private static final class Conversation {
+        final String sender;
+        final ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+        final ArrayDeque<Pending> waiting = new ArrayDeque<>();
+        long lastSeq;
+        long ackedSeq;
+        long inFlightSinceNanos;
+        long timeoutNanos;
+
+        Conversation(String sender, long timeoutNanos) {
+            this.sender = sender;
+            this.timeoutNanos = timeoutNanos;
+        }
+    }
+
+    // Estado de un destinatario; se sincroniza sobre el propio objeto. Se conserva
+    // mientras esté conectado o le quede algo pendiente, para que la numeración siga donde
+    // el cliente la dejó; uno nuevo tiene otra época
+    private static final class Outbox {
+        final String recipient;
+        final String epoch;
+        final Map<String, Conversation> conversations = new HashMap<>();
+        ClientHandler connection;
+        long detachedAtMillis;
+        List<String> outgoing = new ArrayList<>(); // Por escribir, en orden
+        boolean draining; // Un hilo está escribiendo outgoing
+        boolean removed; // Ya no está en outboxes
+
+        Outbox(String recipient, String epoch) {
+            this.recipient = recipient;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * @param clients busca la conexión autenticada de un usuario (para avisar al remitente)
+     * @param offlineQueue bandeja donde queda lo no confirmado de quien no vuelve, o null
+     */
+    public DeliveryService(Function<String, ClientHandler> clients, OfflineQueue offlineQueue, int window,
+                           int backlog, long retransmitMillis, long maxRetransmitMillis, long holdMillis) {
+        this.clients = clients;
+        this.offlineQueue = offlineQueue;
+        this.window = Math.max(1, window);
+        this.backlog = Math.max(0, backlog);
+        this.retransmitNanos = TimeUnit.MILLISECONDS.toNanos(retransmitMillis);
+        this.maxRetransmitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(retransmitMillis, maxRetransmitMillis));
+        this.holdMillis = holdMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "entrega-reenvios");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, retransmitMillis / 4);
+        timer.scheduleWithFixedDelay(this::tick, period, period, TimeUnit.MILLISECONDS);
+        this.writers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "entrega-escritura");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private Outbox newOutbox(String recipient) {
+        return new Outbox(recipient, epoch + "." + generations.incrementAndGet());
+    }
+
+    /**
+     * Registra la conexión de un cliente con entrega confirmada: le envía la época y le
+     * reenvía, en una sola escritura, lo que quedó sin confirmar.
+     */
+    public void attach(ClientHandler client) {
+        while (true) {
+            Outbox outbox = outboxes.computeIfAbsent(client.getUsername(), this::newOutbox);
+            boolean write;
+            synchronized (outbox) {
+                if (outbox.removed) {
+                    continue; // Se descartó recién: se crea otro
+                }
+                write = attachLocked(outbox, client);
+            }
+            if (write) {
+                drain(outbox);
+            }
+            return;
+        }
+    }
+
+    // Con el lock tomado: devuelve true si quien llama tiene que escribir con drain()
+    private boolean attachLocked(Outbox outbox, ClientHandler client) {
+        outbox.connection = client;
+        outbox.outgoing.clear(); // Era para la conexión anterior; abajo va todo lo en vuelo
+        List<String> burst = new ArrayList<>();
+        burst.add(MessageBuilder.create().withType(Constants.RESP_ACKS).withParam(outbox.epoch).build());
+        long now = System.nanoTime();
+        for (Conversation conversation : outbox.conversations.values()) {
+            for (Pending pending : conversation.inFlight) {
+                burst.add(pending.line);
+            }
+            retransmitted.addAndGet(conversation.inFlight.size());
+            conversation.inFlightSinceNanos = now;
+            conversation.timeoutNanos = retransmitNanos;
+        }
+        return enqueueLocked(outbox, burst);
+    }
+
+    /**
+     * La conexión se cerró: lo pendiente se conserva para cuando vuelva.
+     */
+    public void detach(ClientHandler client) {
+        Outbox outbox = outboxes.get(client.getUsername());
+        if (outbox == null) {
+            return;
+        }
+        synchronized (outbox) {
+            if (outbox.connection == client) {
+                outbox.connection = null;
+                outbox.detachedAtMillis = System.currentTimeMillis();
+                removeIfIdleLocked(outbox);
+            }
+        }
+    }
+
+    /**
+     * Envía un mensaje numerado, o lo deja esperando si la ventana está llena.
+     *
+     * @return el número del mensaje, {@link #BACKLOG_FULL} o {@link #NOT_CONNECTED}
+     */
+    public long send(ClientHandler target, String sender, String body) {
+        return send(target, sender, body, true);
+    }
+
+    /**
+     * Como {@link #send}, pero sin límite de espera: para los mensajes que ya estaban en
+     * la bandeja de desconectados (acotada por su propio máximo por usuario), que así
+     * quedan numerados y se reenvían hasta que el cliente los confirme.
+     *
+     * @return el número del mensaje o {@link #NOT_CONNECTED}
+     */
+    public long sendStored(ClientHandler target, String sender, String body) {
+        return send(target, sender, body, false);
+    }
+
+    private long send(ClientHandler target, String sender, String body, boolean limited) {
+        Outbox outbox = outboxes.get(target.getUsername());
+        if (outbox == null) {
+            return NOT_CONNECTED;
+        }
+        Pending pending;
+        boolean write = false;
+        synchronized (outbox) {
+            if (outbox.connection != target) {
+                return NOT_CONNECTED;
+            }
+            Conversation conversation = outbox.conversations.computeIfAbsent(sender,
+                    s -> new Conversation(s, retransmitNanos));
+            if (limited && conversation.inFlight.size() + conversation.waiting.size() >= window + backlog) {
+                rejected.incrementAndGet();
+                return BACKLOG_FULL;
+            }
+            pending = new Pending(++conversation.lastSeq, sender, body);
+            if (conversation.inFlight.size() < window) {
+                if (conversation.inFlight.isEmpty()) {
+                    conversation.inFlightSinceNanos = System.nanoTime();
+                }
+                conversation.inFlight.addLast(pending);
+                write = enqueueLocked(outbox, Collections.singletonList(pending.line));
+                sent.incrementAndGet();
+            } else {
+                conversation.waiting.addLast(pending);
+            }
+        }
+        if (write) {
+            drain(outbox);
+        }
+        return pending.seq;
+    }
+
+    /**
+     * Confirmación acumulativa del destinatario: recibió todo lo del remitente hasta seq.
+     */
+    public void ack(ClientHandler client, String sender, long seq) {
+        Outbox outbox = outboxes.get(client.getUsername());
+        if (outbox == null) {
+            return;
+        }
+        long confirmed;
+        boolean write = false;
+        synchronized (outbox) {
+            Conversation conversation = outbox.conversations.get(sender);
+            if (conversation == null || seq <= conversation.ackedSeq || conversation.inFlight.isEmpty()) {
+                return;
+            }
+            // No se puede confirmar lo que todavía no se envió
+            confirmed = Math.min(seq, conversation.inFlight.peekLast().seq);
+            while (!conversation.inFlight.isEmpty() && conversation.inFlight.peekFirst().seq <= confirmed) {
+                conversation.inFlight.pollFirst();
+                acked.incrementAndGet();
+            }
+            conversation.ackedSeq = confirmed;
+            conversation.inFlightSinceNanos = System.nanoTime();
+            conversation.timeoutNanos = retransmitNanos;
+
+            // La ventana avanzó: salen los que esperaban
+            List<String> burst = new ArrayList<>();
+            while (conversation.inFlight.size() < window && !conversation.waiting.isEmpty()) {
+                Pending pending = conversation.waiting.pollFirst();
+                conversation.inFlight.addLast(pending);
+                burst.add(pending.line);
+            }
+            if (!burst.isEmpty() && outbox.connection != null) {
+                write = enqueueLocked(outbox, burst);
+                sent.addAndGet(burst.size());
+            }
+        }
+        if (write) {
+            drain(outbox);
+        }
+        ClientHandler senderConnection = clients.apply(sender);
+        if (senderConnection != null) {
+            senderConnection.sendMessage(MessageBuilder.buildDelivered(client.getUsername(), confirmed));
+        }
+    }
+
+    /**
+     * Pasa a la bandeja de desconectados lo que un destinatario desconectado dejó sin
+     * confirmar, en orden. Se llama antes de encolar un mensaje nuevo para él.
+     */
+    public void spill(String recipient) {
+        Outbox outbox = outboxes.get(recipient);
+        if (outbox == null || offlineQueue == null) {
+            return;
+        }
+        synchronized (outbox) {
+            if (outbox.connection == null) {
+                spillLocked(outbox);
+            }
+        }
+    }
+
+    private void spillLocked(Outbox outbox) {
+        for (Conversation conversation : outbox.conversations.values()) {
+            List<Pending> pending = new ArrayList<>(conversation.inFlight);
+            pending.addAll(conversation.waiting);
+            int moved = 0;
+            try {
+                for (Pending message : pending) {
+                    if (!offlineQueue.enqueue(outbox.recipient, conversation.sender, message.body)) {
+                        System.err.println("[ENTREGA] Bandeja llena: se perdió un mensaje de "
+                                + conversation.sender + " para " + outbox.recipient);
+                    }
+                    moved++;
+                }
+            } catch (IOException e) {
+                System.err.println("[ENTREGA] No se pudo pasar a la bandeja lo pendiente para "
+                        + outbox.recipient + ": " + e.getMessage());
+                return; // Lo que falta sigue en memoria
+            } finally {
+                for (int i = 0; i < moved; i++) {
+                    if (conversation.inFlight.pollFirst() == null) {
+                        conversation.waiting.pollFirst();
+                    }
+                }
+                if (conversation.inFlight.isEmpty() && conversation.waiting.isEmpty()) {
+                    // La numeración sigue: el cliente acepta cualquier número mayor al último
+                    // que vio, y lo pasado a la bandeja le llega por ahí
+                    conversation.ackedSeq = conversation.lastSeq;
+                }
+                spilled.addAndGet(moved);
+            }
+        }
+        removeIfIdleLocked(outbox);
+    }
+
+    // Con el lock tomado: descarta el estado de un destinatario desconectado sin nada
+    // pendiente. Si vuelve se le crea otro, con otra época
+    private void removeIfIdleLocked(Outbox outbox) {
+        if (outbox.connection != null || outbox.removed) {
+            return;
+        }
+        for (Conversation conversation : outbox.conversations.values()) {
+            if (!conversation.inFlight.isEmpty() || !conversation.waiting.isEmpty()) {
+                return;
+            }
+        }
+        outbox.removed = true;
+        outboxes.remove(outbox.recipient, outbox);
+    }
+
+    // Con el lock tomado: encola líneas para el destinatario. Devuelve true si no hay
+    // nadie escribiendo y quien llama tiene que hacerlo con drain(), ya sin el lock
+    private static boolean enqueueLocked(Outbox outbox, List<String> lines) {
+        outbox.outgoing.addAll(lines);
+        if (outbox.draining) {
+            return false; // Quien está escribiendo las toma al terminar lo suyo
+        }
+        outbox.draining = true;
+        return true;
+    }
+
+    // Escribe lo encolado, en orden y sin el lock del Outbox, hasta que no quede nada
+    private void drain(Outbox outbox) {
+        boolean done = false;
+        try {
+            while (true) {
+                List<String> batch;
+                ClientHandler connection;
+                synchronized (outbox) {
+                    if (outbox.outgoing.isEmpty() || outbox.connection == null) {
+                        outbox.outgoing.clear(); // Sin conexión: lo en vuelo se reenvía al volver
+                        outbox.draining = false;
+                        done = true;
+                        return;
+                    }
+                    batch = outbox.outgoing;
+                    outbox.outgoing = new ArrayList<>();
+                    connection = outbox.connection;
+                }
+                connection.sendMessages(batch);
+            }
+        } finally {
+            if (!done) {
+                synchronized (outbox) {
+                    outbox.draining = false;
+                }
+            }
+        }
+    }
+
+    // Reenvíos por tiempo y traspaso a la bandeja de quien no volvió
+    private void tick() {
+        long now = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        List<Outbox> toWrite = new ArrayList<>();
+        for (Outbox outbox : outboxes.values()) {
+            synchronized (outbox) {
+                if (outbox.connection == null) {
+                    if (offlineQueue != null && nowMillis - outbox.detachedAtMillis > holdMillis) {
+                        spillLocked(outbox);
+                    }
+                    continue;
+                }
+                List<String> burst = null;
+                for (Conversation conversation : outbox.conversations.values()) {
+                    if (conversation.inFlight.isEmpty()
+                            || now - conversation.inFlightSinceNanos < conversation.timeoutNanos) {
+                        continue;
+                    }
+                    if (burst == null) {
+                        burst = new ArrayList<>();
+                    }
+                    for (Pending pending : conversation.inFlight) {
+                        burst.add(pending.line);
+                    }
+                    retransmitted.addAndGet(conversation.inFlight.size());
+                    conversation.inFlightSinceNanos = now;
+                    conversation.timeoutNanos = Math.min(maxRetransmitNanos, conversation.timeoutNanos * 2);
+                }
+                if (burst != null && enqueueLocked(outbox, burst)) {
+                    toWrite.add(outbox);
+                }
+            }
+        }
+        // Cada destinatario en su hilo: uno lento no demora los reenvíos de los demás
+        for (Outbox outbox : toWrite) {
+            writers.execute(() -> drain(outbox));
+        }
+    }
+
+    /**
+     * Detiene los reenvíos y guarda en la bandeja todo lo que sigue sin confirmar.
+     */
+    public void close() {
+        timer.shutdownNow();
+        writers.shutdownNow();
+        if (offlineQueue == null) {
+            return;
+        }
+        for (Outbox outbox : outboxes.values()) {
+            synchronized (outbox) {
+                spillLocked(outbox);
+            }
+        }
+    }
+
+    /**
+     * Resumen para el log del servidor.
+     */
+    public String describe() {
+        return String.format("%d mensajes numerados enviados, %d confirmados, %d reenviados, "
+                        + "%d pasados a la bandeja, %d rechazados por ventana llena",
+                sent.get(), acked.get(), retransmitted.get(), spilled.get(), rejected.get());
+    }
+}
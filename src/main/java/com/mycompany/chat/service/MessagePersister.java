@@ -0,0 +1,301 @@
+package com.mycompany.chat.service;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mycompany.chat.repository.DatabaseMessageRepository;
+
+/**
+ * Guarda los mensajes del chat en MySQL en segundo plano (write-behind).
+ *
+ * {@link #offer} solo agrega el mensaje a una cola en memoria y vuelve enseguida: el
+ * envío de un mensaje no espera a la base de datos. Un hilo propio vacía la cola por
+ * lotes y los inserta con un INSERT de varias filas. Un lote se escribe cuando junta
+ * {@code batchSize} mensajes o cuando el más antiguo lleva {@code flushMillis}
+ * esperando, lo que ocurra primero.
+ *
+ * - Si la base no responde (errores transitorios o de conexión), el lote se reintenta
+ *   con espera creciente (hasta {@value #MAX_RETRY_DELAY_MS} ms) sin perderlo; mientras
+ *   tanto la cola se llena.
+ * - Si la base rechaza el lote (datos inválidos, restricciones...), reintentarlo no
+ *   sirve: se parte en mitades hasta aislar las filas rechazadas, que se descartan y se
+ *   cuentan, y se guarda el resto.
+ * - Con la cola llena los mensajes nuevos se descartan y se cuentan: la latencia del
+ *   chat no depende nunca de la base de datos.
+ * - Al cerrar se escribe lo que quede en la cola con un plazo máximo; lo que no entra
+ *   en ese plazo se informa como perdido.
+ */
+public class MessagePersister implements Runnable {
+    private static final long MIN_RETRY_DELAY_MS = 250;
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private final DatabaseMessageRepository repository;
+    private final ArrayBlockingQueue<DatabaseMessageRepository.Row> queue;
+    private final int batchSize;
+    private final long flushNanos;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long drainDeadlineNanos; // Vale una vez que running es false
+    private boolean tableChecked;
+
+    // Métricas
+    private volatile long persisted;
+    private volatile long batches;
+    private volatile long flushNanosTotal;
+    private volatile long failures;
+    private volatile long rejected;
+    private final AtomicLong dropped = new AtomicLong(); // Lo incrementan los hilos de los clientes
+    private volatile long abandoned;
+    private volatile long maxLagMillis;
+
+    /**
+     * @param repository tabla de mensajes
+     * @param queueCapacity mensajes que pueden esperar en memoria
+     * @param batchSize filas por INSERT
+     * @param flushMillis espera máxima de un mensaje antes de escribir un lote incompleto
+     */
+    public MessagePersister(DatabaseMessageRepository repository, int queueCapacity, int batchSize, long flushMillis) {
+        this.repository = repository;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMillis));
+        this.thread = new Thread(this, "mensajes-db-escritor");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Encola un mensaje para guardarlo; nunca bloquea.
+     *
+     * @return false si la cola está llena (o cerrada) y el mensaje se descartó
+     */
+    public boolean offer(String sender, String recipient, String body) {
+        if (running && queue.offer(new DatabaseMessageRepository.Row(sender, recipient, body,
+                System.currentTimeMillis()))) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    @Override
+    public void run() {
+        List<DatabaseMessageRepository.Row> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            if (drainExpired()) {
+                break;
+            }
+            try {
+                if (!collect(batch)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                continue; // close() pide vaciar la cola con el plazo fijado
+            }
+            long handled = persisted + rejected;
+            if (!write(batch)) {
+                // Venció el plazo de cierre; partes del lote pudieron guardarse ya
+                abandoned += batch.size() - (persisted + rejected - handled);
+                batch.clear();
+                break;
+            }
+            batch.clear();
+        }
+        abandoned += batch.size() + queue.size();
+        queue.clear();
+    }
+
+    // Junta un lote hasta llenarlo o hasta que el primero cumpla su espera máxima
+    private boolean collect(List<DatabaseMessageRepository.Row> batch) throws InterruptedException {
+        DatabaseMessageRepository.Row first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return false;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + flushNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long wait = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || wait <= 0 || !running) {
+                break;
+            }
+            DatabaseMessageRepository.Row next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return true;
+    }
+
+    // Escribe el lote; false si venció el plazo de cierre
+    private boolean write(List<DatabaseMessageRepository.Row> batch) {
+        try {
+            return insert(batch);
+        } catch (SQLException e) {
+            return writeApart(batch, e);
+        }
+    }
+
+    // Un INSERT, reintentando mientras falle por la conexión; false si venció el plazo de
+    // cierre. Los errores que no se arreglan reintentando se lanzan
+    private boolean insert(List<DatabaseMessageRepository.Row> batch) throws SQLException {
+        long delay = MIN_RETRY_DELAY_MS;
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                checkTable();
+                repository.insertMessages(batch);
+                flushNanosTotal += System.nanoTime() - start;
+                persisted += batch.size();
+                batches++;
+                maxLagMillis = Math.max(maxLagMillis, System.currentTimeMillis() - batch.get(0).getSentAtMillis());
+                return true;
+            } catch (SQLException e) {
+                failures++;
+                if (!isTransient(e)) {
+                    throw e;
+                }
+                System.err.println("[MENSAJES-DB] No se pudo guardar un lote de " + batch.size()
+                        + " mensajes, se reintenta en " + delay + " ms: " + e.getMessage());
+            }
+            if (drainExpired()) {
+                return false;
+            }
+            long sleep = running ? delay
+                    : Math.min(delay, TimeUnit.NANOSECONDS.toMillis(drainDeadlineNanos - System.nanoTime()) + 1);
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                // close(): se sigue intentando hasta el plazo
+            }
+            delay = Math.min(MAX_RETRY_DELAY_MS, delay * 2);
+        }
+    }
+
+    // La base rechazó el lote: se escribe en dos mitades para que solo se pierdan las
+    // filas que ella rechaza. Si las dos mitades fallan igual, el error es de todo el
+    // lote (permisos, tabla...) y seguir partiendo no aísla nada
+    private boolean writeApart(List<DatabaseMessageRepository.Row> batch, SQLException e) {
+        if (batch.size() == 1) {
+            DatabaseMessageRepository.Row row = batch.get(0);
+            rejected++;
+            System.err.println("[MENSAJES-DB] La base rechazó un mensaje de " + row.getSender() + " para "
+                    + row.getRecipient() + ", se descarta: " + e.getMessage());
+            return true;
+        }
+        int half = batch.size() / 2;
+        List<DatabaseMessageRepository.Row> first = batch.subList(0, half);
+        List<DatabaseMessageRepository.Row> second = batch.subList(half, batch.size());
+        SQLException firstError = null;
+        SQLException secondError = null;
+        try {
+            if (!insert(first)) {
+                return false;
+            }
+        } catch (SQLException error) {
+            firstError = error;
+        }
+        try {
+            if (!insert(second)) {
+                return false;
+            }
+        } catch (SQLException error) {
+            secondError = error;
+        }
+        if (firstError != null && secondError != null && sameError(firstError, secondError)) {
+            rejected += batch.size();
+            System.err.println("[MENSAJES-DB] La base rechazó un lote de " + batch.size()
+                    + " mensajes, se descarta: " + firstError.getMessage());
+            return true;
+        }
+        return (firstError == null || writeApart(first, firstError))
+                && (secondError == null || writeApart(second, secondError));
+    }
+
+    // Mismo error (no solo el mismo tipo): un duplicado, por ejemplo, nombra el valor
+    private static boolean sameError(SQLException a, SQLException b) {
+        return a.getErrorCode() == b.getErrorCode()
+                && Objects.equals(a.getSQLState(), b.getSQLState())
+                && Objects.equals(a.getMessage(), b.getMessage());
+    }
+
+    private void checkTable() throws SQLException {
+        if (tableChecked) {
+            return;
+        }
+        try {
+            repository.createTableIfMissing();
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            // Por ejemplo sin permiso para crear tablas: se usa la que ya exista
+            System.err.println("[MENSAJES-DB] No se pudo verificar la tabla de mensajes: " + e.getMessage());
+        }
+        tableChecked = true;
+    }
+
+    // Errores que pueden resolverse solos: conexión caída (SQLState clase 08), bloqueos,
+    // esperas vencidas, o la espera de una conexión interrumpida por close()
+    private static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+                || (state != null && state.startsWith("08")) || e.getCause() instanceof InterruptedException;
+    }
+
+    private boolean drainExpired() {
+        return !running && System.nanoTime() - drainDeadlineNanos >= 0;
+    }
+
+    /**
+     * Deja de aceptar mensajes y escribe lo pendiente, esperando como máximo el plazo.
+     *
+     * @param timeoutMillis plazo para vaciar la cola
+     */
+    public void close(long timeoutMillis) {
+        drainDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(timeoutMillis + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            // Un INSERT colgado: el hilo es daemon y no impide que el proceso termine
+            System.err.println("[MENSAJES-DB] El escritor no terminó a tiempo");
+        }
+        repository.close();
+    }
+
+    /**
+     * @return mensajes que esperan ser guardados en MySQL
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Resumen para el log del servidor.
+     */
+    public String describe() {
+        long done = batches;
+        return String.format("%d mensajes guardados en %d lotes (%.1f por lote), escritura media %.1f ms, "
+                        + "demora máx %d ms, %d errores, %d rechazados por la base, %d descartados por cola llena, "
+                        + "%d sin guardar al cerrar",
+                persisted, done, done > 0 ? (double) persisted / done : 0,
+                done > 0 ? flushNanosTotal / 1e6 / done : 0, maxLagMillis, failures, rejected, dropped.get(),
+                abandoned);
+    }
+}
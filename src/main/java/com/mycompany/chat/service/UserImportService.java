@@ -0,0 +1,235 @@
+package com.mycompany.chat.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mycompany.chat.repository.UserRepository;
+import com.mycompany.chat.security.InputValidator;
+import com.mycompany.chat.security.PasswordHasher;
+
+/**
+ * Importación masiva de usuarios desde un CSV {@code usuario,contraseña}.
+ *
+ * Registrar miles de usuarios uno por uno es lento por dos motivos: BCrypt (decenas de
+ * ms por hash, en un solo núcleo) y una conexión y un commit por usuario. Aquí:
+ * - Los hashes se calculan en paralelo, un hilo por núcleo.
+ * - Las filas se insertan por lotes con {@link UserRepository#insertUsers}; mientras se
+ *   inserta un lote ya se están hasheando los dos siguientes.
+ * - Cada fila que no entra (formato, validación, repetida, ya existente) se informa con
+ *   su número de línea, sin detener el resto.
+ *
+ * Se ignoran las líneas vacías, las que empiezan con '#' y una cabecera
+ * {@code username,password}. La contraseña es todo lo que sigue a la primera coma.
+ */
+public class UserImportService {
+    private final UserRepository repository;
+    private final int threads;
+    private final int batchSize;
+
+    /**
+     * Resultado de una importación.
+     */
+    public static final class Reporte {
+        private final int filas;
+        private final int importadas;
+        private final Map<Integer, String> fallos;
+        private final long millis;
+
+        Reporte(int filas, int importadas, Map<Integer, String> fallos, long millis) {
+            this.filas = filas;
+            this.importadas = importadas;
+            this.fallos = Collections.unmodifiableMap(fallos);
+            this.millis = millis;
+        }
+
+        /** Filas de datos leídas del archivo */
+        public int getFilas() {
+            return filas;
+        }
+
+        public int getImportadas() {
+            return importadas;
+        }
+
+        /** Número de línea -> motivo, en orden */
+        public Map<Integer, String> getFallos() {
+            return fallos;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public double getFilasPorSegundo() {
+            return millis > 0 ? filas * 1000.0 / millis : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d de %d filas importadas en %.1f s (%.0f filas/s), %d con error",
+                    importadas, filas, millis / 1000.0, getFilasPorSegundo(), fallos.size());
+        }
+    }
+
+    // Fila válida pendiente de hashear e insertar
+    private static final class Fila {
+        final int linea;
+        final String username;
+        final String password;
+
+        Fila(int linea, String username, String password) {
+            this.linea = linea;
+            this.username = username;
+            this.password = password;
+        }
+    }
+
+    /**
+     * @param repository repositorio donde se insertan los usuarios
+     * @param threads hilos para calcular hashes
+     * @param batchSize filas por lote de inserción
+     */
+    public UserImportService(UserRepository repository, int threads, int batchSize) {
+        this.repository = repository;
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Importa los usuarios del archivo.
+     *
+     * @throws IOException si no se puede leer el archivo
+     */
+    public Reporte importar(Path csv) throws IOException {
+        long start = System.nanoTime();
+        Map<Integer, String> fallos = new TreeMap<>();
+        List<Fila> filas = new ArrayList<>();
+        int leidas = leer(csv, filas, fallos);
+
+        int importadas = 0;
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService hashers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "import-hash-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Hasta dos lotes hasheándose por delante del que se inserta
+            Deque<List<Future<String>>> enCurso = new ArrayDeque<>();
+            int siguiente = 0;
+            for (int lote = 0; lote * batchSize < filas.size(); lote++) {
+                while (enCurso.size() < 3 && siguiente < filas.size()) {
+                    enCurso.add(hashear(hashers, filas.subList(siguiente, Math.min(filas.size(), siguiente + batchSize))));
+                    siguiente += batchSize;
+                }
+                int desde = lote * batchSize;
+                List<Fila> filasLote = filas.subList(desde, Math.min(filas.size(), desde + batchSize));
+                try {
+                    importadas += insertar(filasLote, enCurso.poll(), fallos);
+                } catch (SQLException e) {
+                    // Falla el acceso a los datos: no tiene sentido seguir hasheando
+                    for (Fila fila : filas.subList(desde, filas.size())) {
+                        fallos.put(fila.linea, "Importación interrumpida: " + e.getMessage());
+                    }
+                    break;
+                }
+                System.out.printf("[IMPORT] %d/%d filas procesadas%n", Math.min(filas.size(), desde + batchSize),
+                        filas.size());
+            }
+        } finally {
+            hashers.shutdownNow();
+        }
+        return new Reporte(leidas, importadas, fallos, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Lee y valida el archivo; devuelve cuántas filas de datos tenía
+    private int leer(Path csv, List<Fila> filas, Map<Integer, String> fallos) throws IOException {
+        Map<String, Integer> vistos = new HashMap<>();
+        int leidas = 0;
+        int numero = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                numero++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")
+                        || (numero == 1 && trimmed.equalsIgnoreCase("username,password"))) {
+                    continue;
+                }
+                leidas++;
+                int comma = trimmed.indexOf(',');
+                if (comma < 0) {
+                    fallos.put(numero, "Formato incorrecto, se espera usuario,contraseña");
+                    continue;
+                }
+                String username = trimmed.substring(0, comma).trim();
+                String password = trimmed.substring(comma + 1).trim();
+                String error = InputValidator.validateUsername(username);
+                if (error == null) {
+                    error = InputValidator.validatePassword(password);
+                }
+                if (error != null) {
+                    fallos.put(numero, error);
+                    continue;
+                }
+                Integer anterior = vistos.putIfAbsent(username, numero);
+                if (anterior != null) {
+                    fallos.put(numero, "Usuario repetido (línea " + anterior + ")");
+                    continue;
+                }
+                filas.add(new Fila(numero, username, password));
+            }
+        }
+        return leidas;
+    }
+
+    private static List<Future<String>> hashear(ExecutorService hashers, List<Fila> lote) {
+        List<Future<String>> hashes = new ArrayList<>(lote.size());
+        for (Fila fila : lote) {
+            hashes.add(hashers.submit(() -> PasswordHasher.hashPassword(fila.password)));
+        }
+        return hashes;
+    }
+
+    // Espera los hashes del lote y lo inserta; devuelve cuántas filas entraron
+    private int insertar(List<Fila> lote, List<Future<String>> hashes, Map<Integer, String> fallos)
+            throws SQLException {
+        Map<String, String> hashesByUser = new LinkedHashMap<>();
+        Map<String, Integer> lineas = new HashMap<>();
+        for (int i = 0; i < lote.size(); i++) {
+            Fila fila = lote.get(i);
+            try {
+                hashesByUser.put(fila.username, hashes.get(i).get());
+                lineas.put(fila.username, fila.linea);
+            } catch (ExecutionException e) {
+                fallos.put(fila.linea, "Error calculando el hash: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Importación cancelada", e);
+            }
+        }
+        Map<String, String> rechazados = repository.insertUsers(hashesByUser);
+        for (Map.Entry<String, String> entry : rechazados.entrySet()) {
+            fallos.put(lineas.get(entry.getKey()), entry.getValue());
+        }
+        return hashesByUser.size() - rechazados.size();
+    }
+}
@@ -6,6 +6,12 @@ import com.mycompany.chat.security.InputValidator;
 import com.mycompany.chat.service.ClientService;
 import com.mycompany.chat.service.DatabaseService;
 import com.mycompany.chat.service.ServerService;
+import com.mycompany.chat.service.UserImportService;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -76,9 +82,12 @@ public class MenuController {
                     registrarUsuario();
                     break;
                 case "4":
+                    importarUsuarios();
+                    break;
+                case "5":
                     iniciarServidor();
                     return;
-                case "5":
+                case "6":
                     return; // Volver al menú principal
                 default:
                     System.out.println("\nOpcion invalida. Intenta de nuevo.\n");
@@ -93,8 +102,9 @@ public class MenuController {
         System.out.println("[1] Configurar base de datos MySQL");
         System.out.println("[2] Verificar conexion a base de datos");
         System.out.println("[3] Registrar nuevo usuario");
-        System.out.println("[4] Iniciar servidor");
-        System.out.println("[5] Volver al menu principal");
+        System.out.println("[4] Importar usuarios desde CSV");
+        System.out.println("[5] Iniciar servidor");
+        System.out.println("[6] Volver al menu principal");
         System.out.println("\n-----------------------------------------------------");
         System.out.print("Selecciona una opcion: ");
     }
@@ -247,6 +257,38 @@ public class MenuController {
         pausar();
     }
     
+    private void importarUsuarios() {
+        System.out.println("\nImportar usuarios desde CSV");
+        System.out.println("-----------------------------------------------------");
+        System.out.println("Formato: una linea por usuario, username,password");
+        System.out.print("Ruta del archivo: ");
+        String ruta = scanner.nextLine().trim();
+
+        Path csv = Paths.get(ruta);
+        if (ruta.isEmpty() || !Files.isRegularFile(csv)) {
+            System.out.println("Error: No se encontro el archivo " + ruta);
+            pausar();
+            return;
+        }
+
+        try {
+            UserImportService.Reporte reporte = databaseService.importarUsuarios(csv);
+            System.out.println("\n" + reporte);
+            int mostrados = 0;
+            for (Map.Entry<Integer, String> fallo : reporte.getFallos().entrySet()) {
+                if (mostrados++ == 20) {
+                    System.out.println("  ... y " + (reporte.getFallos().size() - 20) + " errores mas");
+                    break;
+                }
+                System.out.println("  Linea " + fallo.getKey() + ": " + fallo.getValue());
+            }
+        } catch (IOException e) {
+            System.out.println("Error leyendo el archivo: " + e.getMessage());
+        }
+
+        pausar();
+    }
+    
     private void pausar() {
         System.out.println("\nPresiona Enter para continuar...");
         scanner.nextLine();
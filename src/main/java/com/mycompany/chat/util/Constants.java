@@ -17,8 +17,105 @@ public class Constants {
     public static final int MAX_MESSAGE_LENGTH = 10240; // 10KB
     
     // Configuración de video
-    public static final int VIDEO_FPS_DELAY_MS = 50; // ~20 FPS
+    public static final int VIDEO_TARGET_FPS = 20;
+    public static final int VIDEO_SYNTHETIC_WIDTH = 640;
+    public static final int VIDEO_SYNTHETIC_HEIGHT = 480;
     public static final int VIDEO_CAMERA_INDEX = 0;
+    public static final int VIDEO_JPEG_QUALITY = 80;
+    public static final String VIDEO_MODE_JPEG = "jpeg";
+    public static final String VIDEO_MODE_TILES = "tiles";
+    public static final String VIDEO_MODE_H264 = "h264";
+    public static final int VIDEO_CODEC_NEGOTIATION_TIMEOUT_MS = 3000;
+    
+    // Codificación diferencial por mosaicos (modo "tiles")
+    public static final int VIDEO_TILE_SIZE = 32; // Múltiplo de 16 (bloques JPEG)
+    public static final int VIDEO_KEYFRAME_INTERVAL = 40; // ~2 s a 20 FPS
+    public static final int VIDEO_TILE_PIXEL_THRESHOLD = 20;
+    public static final int VIDEO_TILE_MIN_CHANGED_SAMPLES = 4;
+    
+    // Codificación H.264 (modo "h264", libx264 vía JavaCV)
+    public static final int VIDEO_H264_BITRATE = 800_000; // bits por segundo
+    public static final int VIDEO_H264_KEYFRAME_INTERVAL = 40; // ~2 s a 20 FPS
+    
+    // Simulcast: capas de resolución que publica el emisor (1 = sin simulcast)
+    public static final int VIDEO_SIMULCAST_LAYERS = 1;
+    
+    // Grabación de llamadas en el servidor (desactivada por defecto)
+    public static final String VIDEO_RECORDING_DIR = "recordings";
+    public static final int VIDEO_RECORDING_SEGMENT_MB = 64;
+    public static final int VIDEO_RECORDING_QUEUE_FRAMES = 512; // ~25 s de una llamada a 20 FPS
+    
+    // Historial de mensajes en el servidor (ver MessageHistory)
+    public static final String HISTORY_DIR = "history";
+    public static final int HISTORY_SEGMENT_MB = 64;
+    public static final int HISTORY_QUEUE_MESSAGES = 8192;
+    public static final int HISTORY_PAGE_SIZE = 20;
+    public static final int HISTORY_MAX_PAGE_SIZE = 100;
+    public static final int HISTORY_RESPONSE_TIMEOUT_MS = 5000;
+    public static final int SEARCH_MAX_OFFSET = 1000; // Más allá conviene afinar la búsqueda
+    public static final int HISTORY_HOT_SEGMENTS = 2; // Sin comprimir, incluido el activo
+    public static final int HISTORY_RETENTION_DAYS = 0; // 0 = los mensajes no vencen
+    public static final int HISTORY_RETENTION_KEEP_LAST = 100; // Por conversación, no vencen nunca
+    public static final int HISTORY_COMPACT_MINUTES = 60;
+    public static final int HISTORY_TAIL_CACHE_MB = 16; // Últimos mensajes de las conversaciones activas
+    
+    // Copia de los mensajes en la tabla messages de MySQL (ver MessagePersister)
+    public static final int MESSAGES_DB_QUEUE = 50_000;
+    public static final int MESSAGES_DB_BATCH_SIZE = 500;
+    public static final int MESSAGES_DB_FLUSH_MS = 200;
+    public static final int MESSAGES_DB_SHUTDOWN_MS = 5000;
+    
+    // Bandeja de mensajes para usuarios desconectados (ver OfflineQueue)
+    public static final String OFFLINE_QUEUE_FILE = "offline.log";
+    public static final int OFFLINE_MAX_PER_USER = 1000;
+    public static final int OFFLINE_TTL_HOURS = 168; // 7 días
+    
+    // Pool de conexiones a la base de datos
+    public static final int DB_POOL_MIN_IDLE = 2;
+    public static final int DB_POOL_MAX_SIZE = 10;
+    public static final int DB_POOL_BORROW_TIMEOUT_MS = 5000;
+    public static final int DB_POOL_IDLE_TIMEOUT_MS = 10 * 60 * 1000; // Menor que wait_timeout de MySQL (8 h)
+    
+    // Directorio de usuarios en memoria (ver CachedUserRepository)
+    public static final int USERS_CACHE_REFRESH_SECONDS = 300;
+    
+    // Repositorio de usuarios: "mysql" o "file" (log local, ver FileUserRepository)
+    public static final String USERS_REPOSITORY_MYSQL = "mysql";
+    public static final String USERS_REPOSITORY_FILE = "file";
+    public static final String USERS_FILE = "users.log";
+    public static final int USERS_FILE_COMPACT_SECONDS = 60;
+    
+    // Importación masiva de usuarios desde CSV (ver UserImportService)
+    public static final int USERS_IMPORT_BATCH_SIZE = 500;
+    
+    // Verificación de contraseñas (BCrypt) fuera de los hilos de los clientes
+    public static final int AUTH_QUEUE_CAPACITY = 256;
+    public static final int BCRYPT_BUDGET_MS = 100; // Tiempo objetivo por hash al calibrar el costo
+    public static final int BCRYPT_MIN_COST = 10;
+    
+    // Reanudación de sesión con token firmado
+    public static final int SESSION_TOKEN_TTL_MINUTES = 60;
+    public static final String SESSION_TOKEN_FILE = "session.token";
+    
+    // Entrega confirmada de mensajes (ver DeliveryService)
+    public static final String CAPABILITY_ACKS = "acks";
+    public static final int DELIVERY_WINDOW = 64; // Mensajes sin confirmar en vuelo por conversación
+    public static final int DELIVERY_BACKLOG = 1000; // Esperando lugar en la ventana, por conversación
+    public static final int DELIVERY_RETRANSMIT_MS = 3000;
+    public static final int DELIVERY_MAX_RETRANSMIT_MS = 30_000;
+    public static final int DELIVERY_HOLD_SECONDS = 120; // Sin reconectar, lo pendiente pasa a la bandeja
+    public static final int ACK_DELAY_MS = 200;
+    
+    // Bus de eventos del servidor (ver ChatEventPublisher)
+    public static final int EVENT_RING_SIZE = 8192; // Potencia de 2
+    public static final int EVENT_SHUTDOWN_MS = 2000;
+    
+    // Métricas del servidor (ver MetricsRegistry) y comando STATS
+    public static final String ADMIN_USERS = ""; // Separados por coma; sin ninguno, STATS se rechaza
+    public static final int METRICS_FILE_SECONDS = 15;
+    public static final int COMMAND_TIMING_SLICE_SECONDS = 15; // Intervalos de las ventanas por comando
+    public static final int COMMAND_TIMING_SHORT_WINDOW_SECONDS = 60;
+    public static final int COMMAND_TIMING_LONG_WINDOW_SECONDS = 300;
     
     // Timeouts y delays
     public static final int LOGIN_TIMEOUT_MS = 5000; // 5 segundos
@@ -44,6 +141,14 @@ public class Constants {
     public static final String CMD_FILE = "FILE";
     public static final String CMD_VIDEO = "VIDEO";
     public static final String CMD_USERS = "USERS";
+    public static final String CMD_RESUME = "RESUME";
+    public static final String CMD_SESSION = "SESSION";
+    public static final String CMD_HISTORY = "HISTORY";
+    public static final String CMD_SEARCH = "SEARCH";
+    public static final String CMD_ACK = "ACK";
+    public static final String CMD_STATS = "STATS";
+    public static final String RESP_ACKS = "ACKS";
+    public static final String RESP_DELIVERED = "DELIVERED";
     public static final String RESP_OK = "OK";
     public static final String RESP_ERROR = "ERROR";
     public static final String RESP_SERVER = "SERVER";
@@ -0,0 +1,202 @@
+package com.mycompany.chat.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mycompany.chat.video.FrameSource;
+import com.mycompany.chat.video.FrameSources;
+import com.mycompany.chat.video.H264Support;
+import com.mycompany.chat.video.MultiFormatVideoDecoder;
+import com.mycompany.chat.video.VideoCodecs;
+import com.mycompany.chat.video.VideoDecoder;
+import com.mycompany.chat.video.VideoEncoder;
+import com.mycompany.chat.video.VideoEncoders;
+import com.mycompany.chat.video.VideoImages;
+import com.mycompany.chat.video.VideoPayload;
+
+/**
+ * Compara los modos de video (JPEG, mosaicos y H.264) sobre la misma fuente:
+ * bytes por segundo, CPU por frame al codificar y decodificar, y calidad (PSNR
+ * del frame decodificado frente al original).
+ *
+ * La CPU se mide como tiempo de CPU del proceso, así que incluye los hilos internos
+ * de libx264. La captura de la fuente queda fuera de la medición.
+ *
+ * Uso: java VideoCodecBenchmark [fuente] [frames] [modos]
+ * Ejemplo: java VideoCodecBenchmark synthetic:640x480@20 300 jpeg,tiles,h264
+ */
+public class VideoCodecBenchmark {
+    private static final int WARMUP_FRAMES = 30;
+
+    private final String sourceSpec;
+    private final int frames;
+
+    public VideoCodecBenchmark(String sourceSpec, int frames) {
+        this.sourceSpec = sourceSpec;
+        this.frames = frames;
+    }
+
+    /**
+     * Resultado de un modo de video.
+     */
+    static class Result {
+        final String mode;
+        long frames;
+        long bytes;
+        long keyframes;
+        long encodeCpuNanos;
+        long decodeCpuNanos;
+        double psnrSum;
+        int psnrFrames;
+        double frameRate;
+
+        Result(String mode) {
+            this.mode = mode;
+        }
+
+        double bytesPerSecond() {
+            return frames > 0 ? (double) bytes / frames * frameRate : 0;
+        }
+
+        double encodeMillisPerFrame() {
+            return frames > 0 ? encodeCpuNanos / 1e6 / frames : 0;
+        }
+
+        double decodeMillisPerFrame() {
+            return frames > 0 ? decodeCpuNanos / 1e6 / frames : 0;
+        }
+
+        double averagePsnr() {
+            return psnrFrames > 0 ? psnrSum / psnrFrames : 0;
+        }
+    }
+
+    public Result run(String mode) throws IOException {
+        warmUp(mode);
+
+        Result result = new Result(mode);
+        FrameSource source = FrameSources.create(sourceSpec);
+        VideoEncoder encoder = VideoEncoders.create(mode);
+        VideoDecoder decoder = new MultiFormatVideoDecoder();
+        BufferedImage original = null;
+        try {
+            source.open();
+            result.frameRate = source.getFrameRate() > 0 ? source.getFrameRate() : Constants.VIDEO_TARGET_FPS;
+            for (int i = 0; i < frames; i++) {
+                BufferedImage frame = source.read();
+                if (frame == null) {
+                    continue;
+                }
+                // La fuente puede reutilizar la imagen; se guarda una copia para medir la calidad
+                original = VideoImages.toBgr(frame, original);
+                if (original == frame) {
+                    original = VideoImages.copy(frame);
+                }
+
+                long start = processCpuTime();
+                byte[] payload = encoder.encode(original);
+                result.encodeCpuNanos += processCpuTime() - start;
+                result.frames++;
+                result.bytes += payload.length;
+                if (VideoPayload.isKeyframe(payload)) {
+                    result.keyframes++;
+                }
+
+                start = processCpuTime();
+                boolean changed = decoder.decode(payload);
+                result.decodeCpuNanos += processCpuTime() - start;
+                BufferedImage decoded = decoder.currentImage();
+                if (changed && decoded != null) {
+                    result.psnrSum += psnr(original, VideoImages.toBgr(decoded, null));
+                    result.psnrFrames++;
+                }
+            }
+        } finally {
+            encoder.close();
+            source.close();
+        }
+        return result;
+    }
+
+    // Ejercita el modo unos frames para que el JIT y las librerías nativas no cuenten en la medición
+    private void warmUp(String mode) throws IOException {
+        FrameSource source = FrameSources.create(sourceSpec);
+        VideoEncoder encoder = VideoEncoders.create(mode);
+        VideoDecoder decoder = new MultiFormatVideoDecoder();
+        try {
+            source.open();
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                BufferedImage frame = source.read();
+                if (frame != null) {
+                    decoder.decode(encoder.encode(frame));
+                }
+            }
+        } finally {
+            encoder.close();
+            source.close();
+        }
+    }
+
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    }
+
+    // PSNR sobre los tres canales; imágenes idénticas se reportan como 99 dB
+    static double psnr(BufferedImage a, BufferedImage b) {
+        if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+            return 0;
+        }
+        byte[] pa = VideoImages.pixels(a);
+        byte[] pb = VideoImages.pixels(b);
+        double sum = 0;
+        for (int i = 0; i < pa.length; i++) {
+            int d = (pa[i] & 0xFF) - (pb[i] & 0xFF);
+            sum += d * d;
+        }
+        double mse = sum / pa.length;
+        return mse == 0 ? 99 : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String source = args.length > 0 ? args[0] : "synthetic";
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        List<String> modes = args.length > 2 ? VideoCodecs.parse(args[2]) : VideoCodecs.supported();
+
+        if (modes.contains(Constants.VIDEO_MODE_H264) && !H264Support.isAvailable()) {
+            System.out.println("H.264 no disponible en esta plataforma; se omite.");
+            modes.remove(Constants.VIDEO_MODE_H264);
+        }
+
+        VideoCodecBenchmark benchmark = new VideoCodecBenchmark(source, frames);
+        List<Result> results = new ArrayList<>();
+        for (String mode : modes) {
+            System.out.println("Midiendo " + mode + " (" + frames + " frames de " + source + ")...");
+            results.add(benchmark.run(mode));
+        }
+
+        double jpegBytes = 0;
+        for (Result r : results) {
+            if (Constants.VIDEO_MODE_JPEG.equals(r.mode)) {
+                jpegBytes = r.bytesPerSecond();
+            }
+        }
+
+        System.out.println("\n=================================================================================");
+        System.out.printf("%-6s %10s %10s %8s %11s %11s %9s %9s%n",
+                "modo", "bytes/frm", "KB/s", "vs jpeg", "cod ms/frm", "dec ms/frm", "PSNR dB", "keyframes");
+        for (Result r : results) {
+            System.out.printf("%-6s %10d %10.1f %7.1fx %11.2f %11.2f %9.1f %9d%n",
+                    r.mode, r.frames > 0 ? r.bytes / r.frames : 0, r.bytesPerSecond() / 1024,
+                    jpegBytes > 0 && r.bytesPerSecond() > 0 ? jpegBytes / r.bytesPerSecond() : 0,
+                    r.encodeMillisPerFrame(), r.decodeMillisPerFrame(), r.averagePsnr(), r.keyframes);
+        }
+        System.out.println("=================================================================================");
+    }
+}
@@ -0,0 +1,447 @@
+package com.mycompany.chat.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mycompany.chat.factory.DefaultSocketFactory;
+import com.mycompany.chat.factory.SocketFactory;
+import com.mycompany.chat.protocol.MessageBuilder;
+import com.mycompany.chat.video.FrameSource;
+import com.mycompany.chat.video.FrameSources;
+import com.mycompany.chat.video.StreamTelemetry;
+import com.mycompany.chat.video.VideoCodecs;
+import com.mycompany.chat.video.SimulcastEncoder;
+import com.mycompany.chat.video.VideoPacket;
+import com.mycompany.chat.video.VideoSender;
+
+/**
+ * Prueba de carga del relé de video de ChatServer sin cámara ni interfaz gráfica.
+ *
+ * Lanza N llamantes simulados, emparejados de dos en dos (0 con 1, 2 con 3, ...), que
+ * inician sesión, abren una videollamada con su pareja y transmiten frames de una
+ * {@link FrameSource} (por defecto el patrón sintético). Del video recibido solo se mide
+ * la telemetría (latencia extremo a extremo, jitter y pérdidas) y se resume al final.
+ * La latencia es exacta porque emisor y receptor comparten reloj.
+ *
+ * Para probar el simulcast, cada emisor puede publicar varias capas y los receptores
+ * impares pueden limitar cuánto leen por segundo (simulan una conexión lenta); el
+ * servidor debería reenviarles una capa menor.
+ *
+ * Los usuarios {@code <prefijo>0 .. <prefijo>N-1} deben existir con la misma contraseña.
+ * Cada llamante ocupa dos hilos del servidor, así que para cientos de llamantes hay que
+ * subir {@code server.threads} en config.properties.
+ *
+ * Uso: java VideoLoadTester [host] [puerto] [llamantes] [prefijo] [password] [fuente] [modo] [segundos]
+ *                           [capas] [límite KB/s de los receptores impares]
+ * Ejemplo: java VideoLoadTester localhost 9000 200 load load1234 synthetic:320x240@15 jpeg 60 3 100
+ */
+public class VideoLoadTester {
+    private static final Object CONNECT_LOCK = new Object();
+
+    private final String host;
+    private final int port;
+    private final String sourceSpec;
+    private final String videoMode;
+    private final int layers;
+    private final int slowViewerKBps;
+    private final SocketFactory socketFactory = new DefaultSocketFactory();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final ConcurrentLinkedQueue<VideoSender> senders = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<StreamTelemetry> telemetries = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public VideoLoadTester(String host, int port, String sourceSpec, String videoMode) {
+        this(host, port, sourceSpec, videoMode, 1, 0);
+    }
+
+    /**
+     * @param layers capas de simulcast que publica cada emisor
+     * @param slowViewerKBps límite de lectura de los receptores impares en KB/s (0 = sin límite)
+     */
+    public VideoLoadTester(String host, int port, String sourceSpec, String videoMode, int layers, int slowViewerKBps) {
+        this.host = host;
+        this.port = port;
+        this.sourceSpec = sourceSpec;
+        this.videoMode = videoMode;
+        this.layers = layers;
+        this.slowViewerKBps = slowViewerKBps;
+    }
+
+    /**
+     * Llamante simulado: un socket de datos y uno de video, como ChatClient.
+     */
+    private class SimulatedCaller {
+        final String username;
+        final boolean slowViewer;
+        String peer;
+        Socket socket;
+        Socket videoSocket;
+        DataOutputStream dataOut;
+        DataOutputStream videoOut;
+        final CountDownLatch loginLatch = new CountDownLatch(1);
+        final CompletableFuture<String> codec = new CompletableFuture<>();
+        volatile boolean loggedIn;
+
+        SimulatedCaller(String username, boolean slowViewer) {
+            this.username = username;
+            this.slowViewer = slowViewer;
+        }
+
+        void connect(String password) throws IOException {
+            // El servidor empareja el socket de datos con el siguiente socket de video que acepta,
+            // así que cada llamante abre los dos antes de que empiece el siguiente
+            synchronized (CONNECT_LOCK) {
+                socket = socketFactory.createClientSocket(host, port);
+                videoSocket = socketFactory.createVideoClientSocket(host, port, Constants.DEFAULT_VIDEO_PORT_OFFSET);
+            }
+            if (slowViewer) {
+                // Un enlace lento real no acumula megas en el kernel del receptor: sin esto el
+                // autoajuste de TCP en loopback esconde la congestión durante segundos
+                videoSocket.setReceiveBufferSize(32 * 1024);
+            }
+            dataOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            videoOut = new DataOutputStream(new BufferedOutputStream(videoSocket.getOutputStream(), 64 * 1024));
+            startThread("load-data-" + username, this::readMessages);
+            send(MessageBuilder.buildLogin(username, password));
+        }
+
+        synchronized void send(String message) throws IOException {
+            dataOut.writeUTF(message);
+            dataOut.flush();
+        }
+
+        void readMessages() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                while (running) {
+                    String message = in.readUTF();
+                    if (message.startsWith(Constants.RESP_OK + Constants.PROTOCOL_SEPARATOR + Constants.CMD_LOGIN)) {
+                        loggedIn = true;
+                        loginLatch.countDown();
+                    } else if (message.startsWith(Constants.RESP_OK + Constants.PROTOCOL_SEPARATOR + Constants.CMD_VIDEO
+                            + Constants.PROTOCOL_SEPARATOR)) {
+                        codec.complete(message.split("\\|")[2]);
+                    } else if (message.contains("[VIDEO]") && message.contains(" capa ")) {
+                        // Respuesta a VIDEO|STATS: capa que el servidor eligió para este receptor
+                        System.out.println("  " + message.substring(message.indexOf("[VIDEO]") + 8));
+                    } else if (message.startsWith(Constants.RESP_ERROR)) {
+                        if (loginLatch.getCount() > 0) {
+                            System.err.println("[" + username + "] " + message);
+                        }
+                        loginLatch.countDown();
+                    }
+                }
+            } catch (IOException e) {
+                loginLatch.countDown();
+            }
+        }
+
+        void advertiseCodecs() throws IOException {
+            send(MessageBuilder.buildVideoCodecs(VideoCodecs.join(VideoCodecs.supported())));
+        }
+
+        void startCall() throws IOException {
+            send(MessageBuilder.buildVideoStart(peer, VideoCodecs.join(VideoCodecs.offer(videoMode))));
+            startThread("load-video-in-" + username, this::receiveVideo);
+            startThread("load-video-out-" + username, this::sendVideo);
+        }
+
+        // Lee los frames que reenvía el servidor y registra su telemetría sin decodificarlos
+        void receiveVideo() {
+            StreamTelemetry telemetry = new StreamTelemetry(peer + " -> " + username + (slowViewer ? " (lento)" : ""));
+            telemetries.add(telemetry);
+            long start = System.nanoTime();
+            long total = 0;
+            try {
+                // El buffer de lectura del receptor lento queda delante del límite y se sumaría a la latencia
+                DataInputStream in = new DataInputStream(new BufferedInputStream(videoSocket.getInputStream(),
+                        slowViewer ? 4 * 1024 : 64 * 1024));
+                while (running) {
+                    VideoPacket packet = VideoPacket.readDownlink(in);
+                    int length = packet.getPayload().length;
+                    telemetry.record(packet.getSequence(), packet.getCaptureTimeMillis(), System.currentTimeMillis(), length);
+                    framesReceived.incrementAndGet();
+                    bytesReceived.addAndGet(length);
+                    if (slowViewer) {
+                        // Dejar de leer hasta que el total quede dentro del límite. El crédito
+                        // acumulado en ratos de poco tráfico se limita a 200 ms, como un enlace real
+                        total += length;
+                        long dueNanos = total * 1_000_000L / slowViewerKBps;
+                        long elapsedNanos = System.nanoTime() - start;
+                        if (elapsedNanos - dueNanos > 200_000_000L) {
+                            start += elapsedNanos - dueNanos - 200_000_000L;
+                        }
+                        long aheadMillis = (dueNanos - (System.nanoTime() - start)) / 1_000_000L;
+                        if (aheadMillis > 0) {
+                            Thread.sleep(aheadMillis);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("[" + username + "] Video de entrada cerrado: " + e.getMessage());
+                }
+            }
+        }
+
+        void sendVideo() {
+            String mode;
+            try {
+                mode = codec.get(Constants.VIDEO_CODEC_NEGOTIATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                mode = Constants.VIDEO_MODE_JPEG;
+            }
+            if (!mode.equals(videoMode)) {
+                System.err.println("[" + username + "] Codec negociado: " + mode + " (pedido: " + videoMode + ")");
+            }
+            FrameSource source = FrameSources.create(sourceSpec);
+            SimulcastEncoder encoder = new SimulcastEncoder(mode, layers);
+            try {
+                source.open();
+                VideoSender sender = new VideoSender(source, encoder, videoOut, () -> running, null);
+                senders.add(sender);
+                sender.run();
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("[" + username + "] Error enviando video: " + e.getMessage());
+                }
+            } finally {
+                encoder.close();
+                source.close();
+            }
+        }
+
+        void close() {
+            try {
+                send(MessageBuilder.buildVideoStop());
+                send(Constants.CMD_LOGOUT);
+            } catch (IOException e) {
+                // La conexión ya estaba cerrada
+            }
+            closeQuietly(videoSocket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Ejecuta la prueba.
+     *
+     * @param callers número de llamantes (se redondea a par)
+     * @param userPrefix prefijo de los usuarios de prueba
+     * @param password contraseña común de los usuarios
+     * @param seconds duración de la transmisión
+     */
+    public void run(int callers, String userPrefix, String password, int seconds) throws InterruptedException {
+        callers = Math.max(2, callers - callers % 2);
+        List<SimulatedCaller> all = new ArrayList<>();
+        System.out.println("Conectando " + callers + " llamantes a " + host + ":" + port + "...");
+
+        for (int i = 0; i < callers; i++) {
+            SimulatedCaller caller = new SimulatedCaller(userPrefix + i, slowViewerKBps > 0 && (i & 1) == 1);
+            caller.peer = userPrefix + (i ^ 1);
+            try {
+                caller.connect(password);
+                all.add(caller);
+            } catch (IOException e) {
+                System.err.println("No se pudo conectar " + caller.username + ": " + e.getMessage());
+            }
+        }
+
+        int loggedIn = 0;
+        for (SimulatedCaller caller : all) {
+            caller.loginLatch.await(Constants.LOGIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (caller.loggedIn) {
+                loggedIn++;
+            }
+        }
+        System.out.println("Sesiones iniciadas: " + loggedIn + "/" + callers);
+        for (SimulatedCaller caller : all) {
+            if (caller.loggedIn) {
+                try {
+                    caller.advertiseCodecs();
+                } catch (IOException e) {
+                    System.err.println("[" + caller.username + "] " + e.getMessage());
+                }
+            }
+        }
+
+        int calls = 0;
+        for (SimulatedCaller caller : all) {
+            if (caller.loggedIn && isLoggedIn(all, caller.peer)) {
+                try {
+                    caller.startCall();
+                    calls++;
+                } catch (IOException e) {
+                    System.err.println("No se pudo iniciar el video de " + caller.username + ": " + e.getMessage());
+                }
+            }
+        }
+        System.out.println("Transmitiendo: " + calls + " flujos de video (" + sourceSpec + ", modo " + videoMode
+                + ") durante " + seconds + " s\n");
+
+        long start = System.nanoTime();
+        long lastSent = 0;
+        long lastBytes = 0;
+        long lastReceived = 0;
+        for (int s = 1; s <= seconds; s++) {
+            Thread.sleep(1000);
+            long sent = totalFramesSent();
+            long bytes = totalBytesSent();
+            long received = framesReceived.get();
+            System.out.printf("[%3ds] enviados %6d fps, %7.2f MB/s | recibidos %6d fps%n",
+                    s, sent - lastSent, (bytes - lastBytes) / 1e6, received - lastReceived);
+            lastSent = sent;
+            lastBytes = bytes;
+            lastReceived = received;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long framesSent = totalFramesSent();
+        long bytesSent = totalBytesSent();
+
+        if (layers > 1 || slowViewerKBps > 0) {
+            System.out.println("\nCapas elegidas por el servidor:");
+            for (SimulatedCaller caller : all) {
+                if (caller.loggedIn) {
+                    try {
+                        caller.send(MessageBuilder.buildVideoStats());
+                    } catch (IOException e) {
+                        // Se informa lo que llegue
+                    }
+                }
+            }
+            Thread.sleep(500);
+        }
+
+        running = false;
+        for (SimulatedCaller caller : all) {
+            caller.close();
+        }
+
+        System.out.println("\n===========================================");
+        long skipped = 0;
+        double targetFps = 0;
+        for (VideoSender sender : senders) {
+            skipped += sender.getPacer().getFramesSkipped();
+            targetFps = sender.getPacer().getTargetFps();
+        }
+        System.out.printf("Frames enviados:  %d (%.1f fps por flujo, objetivo %.1f, %d plazos saltados, %d capas)%n",
+                framesSent, calls > 0 ? framesSent / elapsed / calls : 0, targetFps, skipped, layers);
+        System.out.printf("Frames recibidos: %d (%.1f%% de los enviados)%n",
+                framesReceived.get(), framesSent > 0 ? 100.0 * framesReceived.get() / framesSent : 0);
+        System.out.printf("Ancho de banda:   %.2f MB/s subida, %.2f MB/s bajada%n",
+                bytesSent / elapsed / 1e6, bytesReceived.get() / elapsed / 1e6);
+        printTelemetrySummary();
+        System.out.println("===========================================");
+    }
+
+    private long totalFramesSent() {
+        long total = 0;
+        for (VideoSender sender : senders) {
+            total += sender.getFramesSent();
+        }
+        return total;
+    }
+
+    private long totalBytesSent() {
+        long total = 0;
+        for (VideoSender sender : senders) {
+            total += sender.getBytesSent();
+        }
+        return total;
+    }
+
+    // Resume la telemetría de todos los flujos: mediana y peor caso de cada métrica
+    private void printTelemetrySummary() {
+        List<StreamTelemetry.Snapshot> snapshots = new ArrayList<>();
+        for (StreamTelemetry telemetry : telemetries) {
+            StreamTelemetry.Snapshot snapshot = telemetry.snapshot();
+            if (snapshot.getFrames() > 0) {
+                snapshots.add(snapshot);
+            }
+        }
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        long[] p50 = new long[snapshots.size()];
+        long[] p99 = new long[snapshots.size()];
+        long[] jitter = new long[snapshots.size()];
+        long lost = 0;
+        long late = 0;
+        StreamTelemetry.Snapshot worst = snapshots.get(0);
+        for (int i = 0; i < snapshots.size(); i++) {
+            StreamTelemetry.Snapshot s = snapshots.get(i);
+            p50[i] = s.getLatencyP50();
+            p99[i] = s.getLatencyP99();
+            jitter[i] = Math.round(s.getJitterMillis());
+            lost += s.getLost();
+            late += s.getLate();
+            if (s.getLatencyP99() > worst.getLatencyP99()) {
+                worst = s;
+            }
+        }
+        Arrays.sort(p50);
+        Arrays.sort(p99);
+        Arrays.sort(jitter);
+        int mid = snapshots.size() / 2;
+        System.out.printf("Latencia p50:     %d ms (mediana de flujos), %d ms (peor flujo)%n", p50[mid], p50[p50.length - 1]);
+        System.out.printf("Latencia p99:     %d ms (mediana de flujos), %d ms (peor flujo)%n", p99[mid], p99[p99.length - 1]);
+        System.out.printf("Jitter:           %d ms (mediana de flujos), %d ms (peor flujo)%n", jitter[mid], jitter[jitter.length - 1]);
+        System.out.printf("Perdidos:         %d frames, %d atrasados%n", lost, late);
+        System.out.println("Peor flujo:       " + worst);
+    }
+
+    private static boolean isLoggedIn(List<SimulatedCaller> all, String username) {
+        for (SimulatedCaller caller : all) {
+            if (caller.username.equals(username)) {
+                return caller.loggedIn;
+            }
+        }
+        return false;
+    }
+
+    private static void startThread(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignorar errores al cerrar
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : Constants.DEFAULT_HOST;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : Constants.DEFAULT_PORT;
+        int callers = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String prefix = args.length > 3 ? args[3] : "load";
+        String password = args.length > 4 ? args[4] : "load1234";
+        String source = args.length > 5 ? args[5] : "synthetic:320x240@15";
+        String mode = args.length > 6 ? args[6] : Constants.VIDEO_MODE_JPEG;
+        int seconds = args.length > 7 ? Integer.parseInt(args[7]) : 30;
+        int layers = args.length > 8 ? Integer.parseInt(args[8]) : 1;
+        int slowViewerKBps = args.length > 9 ? Integer.parseInt(args[9]) : 0;
+
+        new VideoLoadTester(host, port, source, mode, layers, slowViewerKBps).run(callers, prefix, password, seconds);
+    }
+}
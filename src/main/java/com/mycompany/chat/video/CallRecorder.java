@@ -0,0 +1,442 @@
+package com.mycompany.chat.video;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Graba en disco las videollamadas que reenvía el servidor, sin frenar el reenvío.
+ *
+ * El hilo que reenvía solo hace {@link #record}: un {@code offer} a una cola acotada.
+ * Si el disco no da abasto y la cola se llena, el frame no se graba (la llamada sigue
+ * igual) y la grabación de esa llamada espera el próximo keyframe, porque los frames
+ * diferenciales que vengan después no se podrían decodificar.
+ *
+ * Un hilo escritor propio vacía la cola por lotes y hace una sola escritura con
+ * {@link FileChannel} por llamada y lote. Cada llamada se graba en su directorio:
+ * <pre>
+ * AAAAMMDD-HHMMSS_remitente_destinatario/seg-00000.vrec   datos
+ *                                        seg-00000.idx    índice
+ * </pre>
+ * Un segmento (.vrec) empieza con {@code [magia "VREC":int][versión:short][número:int]}
+ * y sigue con un registro por frame: {@code [seq:int][captura ms:long][longitud:int][payload]}.
+ * El índice (.idx) tiene una entrada de {@value #INDEX_ENTRY_BYTES} bytes por frame:
+ * {@code [seq:int][captura ms:long][offset en el segmento:long][flags:byte]}, para buscar
+ * por tiempo sin recorrer los datos.
+ *
+ * Los segmentos rotan al superar el tamaño configurado, en un keyframe, así cada
+ * segmento se puede reproducir por separado. Solo se graba la capa 0 del simulcast.
+ */
+public class CallRecorder implements Runnable {
+    static final int SEGMENT_MAGIC = 0x56524543; // "VREC"
+    static final short FORMAT_VERSION = 1;
+    static final int SEGMENT_HEADER_BYTES = 10;
+    static final int FRAME_HEADER_BYTES = 16;
+    static final int INDEX_ENTRY_BYTES = 21;
+    static final int INDEX_FLAG_KEYFRAME = 0x01;
+
+    private static final int MAX_BATCH = 64;
+    private static final long IDLE_CLOSE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final ArrayBlockingQueue<Pending> queue;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Lado productor: llamadas que esperan un keyframe para seguir grabando.
+    // Cada llamada la alimenta un solo hilo (el lector de video del remitente).
+    private final Map<String, Boolean> waitingKeyframe = new ConcurrentHashMap<>();
+
+    // Lado escritor (solo su hilo)
+    private final Map<String, Recording> recordings = new HashMap<>();
+    private final Set<String> failed = new LinkedHashSet<>();
+
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private volatile long framesWritten;
+    private volatile long bytesWritten;
+    private volatile long batches;
+    private volatile long writeNanos;
+
+    private static class Pending {
+        final String key;
+        final String sender;
+        final String recipient;
+        final VideoPacket packet; // null = fin de la llamada
+        final boolean keyframe;
+
+        Pending(String key, String sender, String recipient, VideoPacket packet, boolean keyframe) {
+            this.key = key;
+            this.sender = sender;
+            this.recipient = recipient;
+            this.packet = packet;
+            this.keyframe = keyframe;
+        }
+    }
+
+    /**
+     * @param directory directorio raíz de las grabaciones (se crea si no existe)
+     * @param segmentBytes tamaño a partir del cual se rota de segmento
+     * @param queueFrames frames que pueden esperar al escritor antes de descartar
+     */
+    public CallRecorder(Path directory, long segmentBytes, int queueFrames) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = Math.max(1024 * 1024, segmentBytes);
+        this.queue = new ArrayBlockingQueue<>(Math.max(MAX_BATCH, queueFrames));
+        this.thread = new Thread(this, "video-recorder");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Encola un frame reenviado para grabarlo. Nunca bloquea.
+     *
+     * @return true si el frame quedó encolado
+     */
+    public boolean record(String sender, String recipient, VideoPacket packet) {
+        if (!running || packet.getLayer() != 0) {
+            return false;
+        }
+        String key = callKey(sender, recipient);
+        boolean keyframe = VideoPayload.isKeyframe(packet.getPayload());
+        Boolean waiting = waitingKeyframe.get(key);
+        if ((waiting == null || waiting) && !keyframe) {
+            // Sin el keyframe anterior este frame no se podría decodificar al reproducir
+            framesSkipped.incrementAndGet();
+            return false;
+        }
+        if (!queue.offer(new Pending(key, sender, recipient, packet, keyframe))) {
+            framesDropped.incrementAndGet();
+            waitingKeyframe.put(key, Boolean.TRUE);
+            return false;
+        }
+        if (waiting == null || waiting) {
+            waitingKeyframe.put(key, Boolean.FALSE);
+        }
+        return true;
+    }
+
+    /**
+     * Marca el fin de una llamada para cerrar sus archivos. Si la cola está llena, la
+     * grabación se cierra igual al cabo de unos segundos sin frames.
+     */
+    public void endCall(String sender, String recipient) {
+        String key = callKey(sender, recipient);
+        waitingKeyframe.remove(key);
+        queue.offer(new Pending(key, sender, recipient, null, false));
+    }
+
+    @Override
+    public void run() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        Set<Recording> touched = new LinkedHashSet<>();
+        try {
+            while (running || !queue.isEmpty()) {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                batch.clear();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+
+                long start = System.nanoTime();
+                touched.clear();
+                for (Pending pending : batch) {
+                    handle(pending, touched);
+                }
+                for (Recording recording : touched) {
+                    flush(recording);
+                }
+                if (!batch.isEmpty()) {
+                    batches++;
+                    writeNanos += System.nanoTime() - start;
+                }
+                closeIdle(System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Recording recording : recordings.values()) {
+                recording.close();
+            }
+            recordings.clear();
+        }
+    }
+
+    private void handle(Pending pending, Set<Recording> touched) {
+        Recording recording = recordings.get(pending.key);
+        if (pending.packet == null) {
+            failed.remove(pending.key);
+            if (recording != null) {
+                flush(recording);
+                finish(pending.key, recording);
+            }
+            return;
+        }
+        if (failed.contains(pending.key)) {
+            return;
+        }
+        // Secuencia reiniciada: es una llamada nueva aunque se haya perdido el aviso de fin
+        if (recording != null && pending.packet.getSequence() <= recording.lastSequence) {
+            flush(recording);
+            finish(pending.key, recording);
+            recording = null;
+        }
+        if (recording == null && !pending.keyframe) {
+            // Una grabación nueva (tras cerrarse por inactividad o reiniciarse la
+            // secuencia) empieza en un keyframe: antes no se podría decodificar nada.
+            // Se descarta aquí y no en record(): el productor no sabe que se cerró
+            framesSkipped.incrementAndGet();
+            return;
+        }
+        try {
+            if (recording == null) {
+                recording = new Recording(pending.key, callDirectory(pending.sender, pending.recipient));
+                recordings.put(pending.key, recording);
+            }
+            if (pending.keyframe && recording.shouldRotate()) {
+                flush(recording);
+                recording.rotate();
+            }
+            recording.stage(pending.packet, pending.keyframe);
+            touched.add(recording);
+            if (recording.stagedBytes >= segmentBytes / 4) {
+                flush(recording); // No acumular demasiado en memoria dentro de un lote
+            }
+        } catch (IOException e) {
+            fail(pending.key, recording, e);
+        }
+    }
+
+    private void flush(Recording recording) {
+        if (recording.closed) {
+            return;
+        }
+        try {
+            long written = recording.flush();
+            bytesWritten += written;
+        } catch (IOException e) {
+            fail(recording.key, recording, e);
+        }
+    }
+
+    private void fail(String key, Recording recording, IOException e) {
+        System.err.println("[GRABACION] Error escribiendo " + key + ": " + e.getMessage() + ". Se deja de grabar esta llamada.");
+        failed.add(key);
+        if (recording != null) {
+            recording.close();
+            recordings.remove(key);
+        }
+    }
+
+    private void finish(String key, Recording recording) {
+        recording.close();
+        recordings.remove(key);
+        System.out.println("[GRABACION] " + recording.directory.getFileName() + ": " + recording.frames
+                + " frames, " + (recording.totalBytes / 1024) + " KB en " + (recording.segmentNumber + 1) + " segmento(s)");
+    }
+
+    private void closeIdle(long now) {
+        Iterator<Map.Entry<String, Recording>> it = recordings.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Recording> entry = it.next();
+            Recording recording = entry.getValue();
+            if (now - recording.lastFrameAt >= IDLE_CLOSE_NANOS) {
+                flush(recording);
+                it.remove();
+                recording.close();
+            }
+        }
+    }
+
+    private Path callDirectory(String sender, String recipient) throws IOException {
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        Path dir = directory.resolve(stamp + "_" + safeName(sender) + "_" + safeName(recipient));
+        for (int i = 2; Files.exists(dir); i++) {
+            dir = directory.resolve(stamp + "_" + safeName(sender) + "_" + safeName(recipient) + "-" + i);
+        }
+        return Files.createDirectories(dir);
+    }
+
+    private static String safeName(String name) {
+        return name.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    private static String callKey(String sender, String recipient) {
+        return sender + "->" + recipient;
+    }
+
+    static String segmentName(int number) {
+        return String.format("seg-%05d.vrec", number);
+    }
+
+    static String indexName(int number) {
+        return String.format("seg-%05d.idx", number);
+    }
+
+    /**
+     * Detiene el escritor después de grabar lo que ya estaba encolado.
+     */
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return resumen de la grabación para los logs del servidor
+     */
+    public String describe() {
+        long b = batches;
+        return String.format("grabando %s, frames escritos %d (%d KB), descartados %d, sin keyframe %d, "
+                        + "lotes %d (%.1f frames/lote, %.2f ms/lote), en cola %d",
+                directory, framesWritten, bytesWritten / 1024, framesDropped.get(), framesSkipped.get(),
+                b, b > 0 ? (double) framesWritten / b : 0, b > 0 ? writeNanos / 1e6 / b : 0, queue.size());
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * Grabación de una llamada (solo la usa el hilo escritor). Los frames de un lote se
+     * acumulan como buffers y se escriben juntos con una escritura con gather.
+     */
+    private final class Recording {
+        final Path directory;
+        final String key;
+        final List<ByteBuffer> staged = new ArrayList<>();
+        final ByteBuffer indexStage = ByteBuffer.allocate(MAX_BATCH * INDEX_ENTRY_BYTES);
+        int segmentNumber = -1;
+        FileChannel data;
+        FileChannel index;
+        long position;
+        long stagedBytes;
+        long frames;
+        long totalBytes;
+        int lastSequence = Integer.MIN_VALUE;
+        long lastFrameAt = System.nanoTime();
+        boolean closed;
+
+        Recording(String key, Path directory) throws IOException {
+            this.key = key;
+            this.directory = directory;
+            rotate();
+        }
+
+        boolean shouldRotate() {
+            return position + stagedBytes >= segmentBytes;
+        }
+
+        void rotate() throws IOException {
+            closeFiles();
+            segmentNumber++;
+            data = FileChannel.open(directory.resolve(segmentName(segmentNumber)),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            index = FileChannel.open(directory.resolve(indexName(segmentNumber)),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_BYTES);
+            header.putInt(SEGMENT_MAGIC).putShort(FORMAT_VERSION).putInt(segmentNumber).flip();
+            staged.add(header);
+            stagedBytes = SEGMENT_HEADER_BYTES;
+            position = 0;
+        }
+
+        void stage(VideoPacket packet, boolean keyframe) throws IOException {
+            if (indexStage.remaining() < INDEX_ENTRY_BYTES) {
+                flush();
+            }
+            byte[] payload = packet.getPayload();
+            indexStage.putInt(packet.getSequence())
+                    .putLong(packet.getCaptureTimeMillis())
+                    .putLong(position + stagedBytes)
+                    .put((byte) (keyframe ? INDEX_FLAG_KEYFRAME : 0));
+
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+            header.putInt(packet.getSequence()).putLong(packet.getCaptureTimeMillis()).putInt(payload.length).flip();
+            staged.add(header);
+            staged.add(ByteBuffer.wrap(payload));
+            stagedBytes += FRAME_HEADER_BYTES + payload.length;
+            lastSequence = packet.getSequence();
+            lastFrameAt = System.nanoTime();
+            frames++;
+            framesWritten++;
+        }
+
+        /**
+         * Escribe los datos y luego el índice, así una entrada del índice nunca apunta
+         * a datos que todavía no están en el archivo.
+         *
+         * @return bytes de datos escritos
+         */
+        long flush() throws IOException {
+            if (staged.isEmpty()) {
+                return 0;
+            }
+            ByteBuffer[] buffers = staged.toArray(new ByteBuffer[0]);
+            long remaining = stagedBytes;
+            while (remaining > 0) {
+                remaining -= data.write(buffers);
+            }
+            indexStage.flip();
+            while (indexStage.hasRemaining()) {
+                index.write(indexStage);
+            }
+            indexStage.clear();
+
+            long written = stagedBytes;
+            position += written;
+            totalBytes += written;
+            staged.clear();
+            stagedBytes = 0;
+            return written;
+        }
+
+        private void closeFiles() {
+            for (FileChannel channel : new FileChannel[] { data, index }) {
+                if (channel != null) {
+                    try {
+                        channel.force(false);
+                        channel.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+            data = null;
+            index = null;
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                closeFiles();
+            }
+        }
+    }
+}
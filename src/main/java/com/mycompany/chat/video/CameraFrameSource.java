@@ -0,0 +1,101 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+
+/**
+ * Fuente de frames desde una cámara local usando OpenCV.
+ *
+ * En lugar de esperar un tiempo fijo a que la cámara se inicialice, {@link #open()}
+ * reintenta la lectura hasta obtener el primer frame o agotar el tiempo de espera.
+ */
+public class CameraFrameSource implements FrameSource {
+    private static final long WARMUP_TIMEOUT_MS = 3000;
+    private static final long WARMUP_RETRY_MS = 50;
+
+    private final int cameraIndex;
+    private VideoCapture cam;
+    private Mat frame;
+    private BufferedImage image;
+
+    public CameraFrameSource(int cameraIndex) {
+        this.cameraIndex = cameraIndex;
+    }
+
+    @Override
+    public void open() throws IOException {
+        cam = new VideoCapture(cameraIndex);
+        frame = new Mat();
+        if (!cam.isOpened()) {
+            close();
+            throw new IOException("No se pudo abrir la cámara " + cameraIndex);
+        }
+
+        // Algunas cámaras (especialmente en Windows) tardan en entregar el primer frame
+        long deadline = System.currentTimeMillis() + WARMUP_TIMEOUT_MS;
+        while (!cam.read(frame) || frame.empty()) {
+            if (System.currentTimeMillis() > deadline) {
+                close();
+                throw new IOException("La cámara " + cameraIndex + " no entregó frames");
+            }
+            try {
+                Thread.sleep(WARMUP_RETRY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IOException("Inicialización de la cámara interrumpida");
+            }
+        }
+    }
+
+    @Override
+    public BufferedImage read() throws IOException {
+        if (cam == null) {
+            throw new IOException("La cámara no está abierta");
+        }
+        if (!cam.read(frame) || frame.empty()) {
+            return null;
+        }
+        image = toImage(frame, image);
+        return image;
+    }
+
+    // Copia un frame BGR de OpenCV a una BufferedImage, reutilizando la anterior si coincide el tamaño
+    private static BufferedImage toImage(Mat mat, BufferedImage reuse) throws IOException {
+        if (mat.type() != CvType.CV_8UC3) {
+            throw new IOException("Formato de frame no soportado: " + CvType.typeToString(mat.type()));
+        }
+        BufferedImage img = reuse;
+        if (img == null || img.getWidth() != mat.cols() || img.getHeight() != mat.rows()) {
+            img = new BufferedImage(mat.cols(), mat.rows(), BufferedImage.TYPE_3BYTE_BGR);
+        }
+        mat.get(0, 0, VideoImages.pixels(img));
+        return img;
+    }
+
+    @Override
+    public double getFrameRate() {
+        return 0;
+    }
+
+    @Override
+    public String getDescription() {
+        return "cámara " + cameraIndex;
+    }
+
+    @Override
+    public void close() {
+        if (frame != null) {
+            frame.release();
+            frame = null;
+        }
+        if (cam != null) {
+            cam.release();
+            cam = null;
+        }
+    }
+}
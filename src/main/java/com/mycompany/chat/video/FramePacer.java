@@ -0,0 +1,117 @@
+package com.mycompany.chat.video;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Marca el ritmo de captura a una tasa fija con plazos absolutos.
+ *
+ * Los plazos están en una rejilla fija (inicio + n * periodo), así que el tiempo de
+ * captura, codificación y envío se descuenta de la espera en lugar de sumarse a ella:
+ * - Si el frame terminó antes del plazo siguiente, se espera solo lo que falta.
+ * - Si se pasó por menos de un periodo, el siguiente sale de inmediato y la rejilla
+ *   se mantiene (recupera el atraso sin perder el ritmo medio).
+ * - Si se atrasó uno o más periodos, esos plazos se omiten y se cuentan como frames
+ *   saltados, en vez de desplazar la rejilla y bajar los fps para siempre.
+ *
+ * Lo usa un solo hilo (el de transmisión); las lecturas de métricas desde otros
+ * hilos solo ven valores aproximados.
+ */
+public class FramePacer {
+    private static final long MEASURE_WINDOW_NANOS = 1_000_000_000L;
+
+    private final double targetFps;
+    private final long periodNanos;
+    private long nextDeadline;
+    private boolean started;
+
+    private volatile long framesPaced;
+    private volatile long framesSkipped;
+    private volatile double measuredFps;
+    private long windowStart;
+    private long windowFrames;
+
+    /**
+     * @param targetFps frames por segundo deseados (mayor que 0)
+     */
+    public FramePacer(double targetFps) {
+        if (targetFps <= 0) {
+            throw new IllegalArgumentException("FPS objetivo inválido: " + targetFps);
+        }
+        this.targetFps = targetFps;
+        this.periodNanos = Math.round(1e9 / targetFps);
+    }
+
+    /**
+     * Espera hasta el plazo del próximo frame. La primera llamada vuelve de inmediato.
+     *
+     * @return false si el hilo fue interrumpido mientras esperaba
+     */
+    public boolean awaitNextFrame() {
+        long now = System.nanoTime();
+        if (!started) {
+            started = true;
+            nextDeadline = now;
+            windowStart = now;
+        } else {
+            nextDeadline += periodNanos;
+            long late = now - nextDeadline;
+            if (late >= periodNanos) {
+                long missed = late / periodNanos;
+                framesSkipped += missed;
+                nextDeadline += missed * periodNanos;
+            }
+        }
+
+        long remaining;
+        while ((remaining = nextDeadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registra que el frame del plazo actual se envió; alimenta los fps medidos.
+     */
+    public void frameSent() {
+        framesPaced++;
+        windowFrames++;
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed >= MEASURE_WINDOW_NANOS) {
+            measuredFps = windowFrames * 1e9 / elapsed;
+            windowStart = now;
+            windowFrames = 0;
+        }
+    }
+
+    public double getTargetFps() {
+        return targetFps;
+    }
+
+    /**
+     * @return fps enviados en el último segundo completo (0 durante el primer segundo)
+     */
+    public double getMeasuredFps() {
+        return measuredFps;
+    }
+
+    public long getFramesSent() {
+        return framesPaced;
+    }
+
+    /**
+     * @return plazos omitidos porque el bucle iba atrasado
+     */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("objetivo %.1f fps, medido %.1f fps, enviados %d, saltados %d",
+                targetFps, measuredFps, framesPaced, framesSkipped);
+    }
+}
@@ -0,0 +1,42 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Fuente de frames para una videollamada (cámara, archivo de video o patrón sintético).
+ *
+ * Permite transmitir video sin cámara, por ejemplo para pruebas de carga del
+ * servidor en equipos sin hardware de video.
+ */
+public interface FrameSource extends AutoCloseable {
+
+    /**
+     * Abre la fuente. Debe llamarse antes de {@link #read()}.
+     *
+     * @throws IOException si la fuente no está disponible
+     */
+    void open() throws IOException;
+
+    /**
+     * Obtiene el siguiente frame. La implementación puede reutilizar la misma
+     * imagen entre llamadas, así que el llamador no debe conservarla.
+     *
+     * @return el frame, o null si esta vez no se pudo capturar (fallo temporal)
+     * @throws IOException si la fuente dejó de funcionar
+     */
+    BufferedImage read() throws IOException;
+
+    /**
+     * @return FPS propios de la fuente, o 0 si los marca el hardware (cámara)
+     */
+    double getFrameRate();
+
+    /**
+     * @return descripción legible de la fuente para los mensajes de consola
+     */
+    String getDescription();
+
+    @Override
+    void close();
+}
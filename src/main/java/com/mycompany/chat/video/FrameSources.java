@@ -0,0 +1,83 @@
+package com.mycompany.chat.video;
+
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Crea la {@link FrameSource} indicada por una especificación de texto:
+ * <ul>
+ *   <li>{@code camera} o {@code camera:N} - cámara local (índice N)</li>
+ *   <li>{@code file:ruta} - archivo de video, en bucle</li>
+ *   <li>{@code synthetic} o {@code synthetic:ANCHOxALTO@FPS} - patrón generado en memoria</li>
+ * </ul>
+ */
+public final class FrameSources {
+    public static final String DEFAULT_SPEC = "camera";
+
+    private FrameSources() {
+        throw new AssertionError("No se debe instanciar FrameSources");
+    }
+
+    /**
+     * @param spec especificación de la fuente (null o vacío equivale a la cámara por defecto)
+     * @return la fuente, sin abrir
+     * @throws IllegalArgumentException si la especificación es inválida
+     */
+    public static FrameSource create(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            spec = DEFAULT_SPEC;
+        }
+        spec = spec.trim();
+        int colon = spec.indexOf(':');
+        String type = (colon < 0 ? spec : spec.substring(0, colon)).toLowerCase();
+        String arg = colon < 0 ? "" : spec.substring(colon + 1).trim();
+
+        switch (type) {
+            case "camera":
+                return new CameraFrameSource(arg.isEmpty() ? Constants.VIDEO_CAMERA_INDEX : parseInt(arg, spec));
+            case "file":
+                if (arg.isEmpty()) {
+                    throw new IllegalArgumentException("Falta la ruta del video: " + spec);
+                }
+                return new VideoFileFrameSource(arg);
+            case "synthetic":
+                return createSynthetic(arg, spec);
+            default:
+                throw new IllegalArgumentException("Fuente de video desconocida: " + spec);
+        }
+    }
+
+    // Formato ANCHOxALTO@FPS, con partes opcionales (ej: "1280x720", "@30", "320x240@15")
+    private static FrameSource createSynthetic(String arg, String spec) {
+        int width = Constants.VIDEO_SYNTHETIC_WIDTH;
+        int height = Constants.VIDEO_SYNTHETIC_HEIGHT;
+        double fps = Constants.VIDEO_TARGET_FPS;
+
+        String size = arg;
+        int at = arg.indexOf('@');
+        if (at >= 0) {
+            size = arg.substring(0, at);
+            try {
+                fps = Double.parseDouble(arg.substring(at + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("FPS inválidos: " + spec);
+            }
+        }
+        if (!size.isEmpty()) {
+            String[] dims = size.toLowerCase().split("x");
+            if (dims.length != 2) {
+                throw new IllegalArgumentException("Resolución inválida: " + spec);
+            }
+            width = parseInt(dims[0], spec);
+            height = parseInt(dims[1], spec);
+        }
+        return new SyntheticFrameSource(width, height, fps);
+    }
+
+    private static int parseInt(String value, String spec) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Número inválido en la fuente de video: " + spec);
+        }
+    }
+}
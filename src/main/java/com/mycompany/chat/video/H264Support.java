@@ -0,0 +1,62 @@
+package com.mycompany.chat.video;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+
+/**
+ * Comprueba si las librerías nativas de FFmpeg tienen un codificador H.264 en esta
+ * plataforma. Si no lo tienen, el cliente no ofrece H.264 y la llamada usa JPEG.
+ *
+ * Se prefiere libx264; los artefactos ffmpeg-platform por defecto son la compilación
+ * LGPL, que no lo incluye y trae libopenh264 (perfil baseline, también sin B-frames).
+ */
+public final class H264Support {
+    static final String X264 = "libx264";
+    static final String OPENH264 = "libopenh264";
+
+    private static volatile Boolean available;
+    private static volatile String encoderName;
+
+    private H264Support() {
+        throw new AssertionError("No se debe instanciar H264Support");
+    }
+
+    /**
+     * @return true si se puede codificar y decodificar H.264
+     */
+    public static boolean isAvailable() {
+        Boolean result = available;
+        if (result == null) {
+            try {
+                quietLogs();
+                String name = null;
+                if (avcodec.avcodec_find_encoder_by_name(X264) != null) {
+                    name = X264;
+                } else if (avcodec.avcodec_find_encoder_by_name(OPENH264) != null) {
+                    name = OPENH264;
+                }
+                encoderName = name;
+                result = name != null && avcodec.avcodec_find_decoder(avcodec.AV_CODEC_ID_H264) != null;
+            } catch (Throwable e) {
+                // Sin nativos para esta plataforma (UnsatisfiedLinkError, NoClassDefFoundError...)
+                result = false;
+            }
+            available = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return nombre del codificador H.264 a usar ("libx264" o "libopenh264"), o null si no hay
+     */
+    public static String getEncoderName() {
+        return isAvailable() ? encoderName : null;
+    }
+
+    /**
+     * Limita el log de FFmpeg a errores (por defecto imprime cada stream que abre).
+     */
+    static void quietLogs() {
+        avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+    }
+}
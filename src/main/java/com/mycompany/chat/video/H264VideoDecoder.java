@@ -0,0 +1,155 @@
+package com.mycompany.chat.video;
+
+import static org.bytedeco.ffmpeg.global.avcodec.*;
+import static org.bytedeco.ffmpeg.global.avutil.*;
+import static org.bytedeco.ffmpeg.global.swscale.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.bytedeco.ffmpeg.avcodec.AVCodec;
+import org.bytedeco.ffmpeg.avcodec.AVCodecContext;
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avutil.AVDictionary;
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.bytedeco.ffmpeg.swscale.SwsContext;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.DoublePointer;
+import org.bytedeco.javacpp.IntPointer;
+import org.bytedeco.javacpp.PointerPointer;
+
+/**
+ * Decodificador de los payloads de {@link H264VideoEncoder}.
+ *
+ * Usa libavcodec directamente en lugar de FFmpegFrameGrabber: el grabber necesita un
+ * InputStream y analiza varios frames antes de entregar el primero, mientras que aquí
+ * cada payload se decodifica en cuanto llega. El decodificador corre en un solo hilo
+ * para no sumar los frames de retraso del multihilo por frames.
+ *
+ * Hasta recibir un keyframe los payloads se ignoran. La imagen se convierte a BGR con
+ * swscale sobre un buffer nativo reutilizado.
+ */
+public class H264VideoDecoder implements VideoDecoder {
+    private static final int HEADER_SIZE = 2;
+
+    private AVCodecContext context;
+    private AVPacket packet;
+    private AVFrame frame;
+    private SwsContext sws;
+    private BytePointer bgrBuffer;
+    private BufferedImage image;
+    private boolean waitingKeyframe = true;
+
+    @Override
+    public boolean decode(byte[] payload) throws IOException {
+        if (!VideoPayload.isH264(payload)) {
+            throw new IOException("Payload H.264 inválido");
+        }
+        if (waitingKeyframe) {
+            if (!VideoPayload.isKeyframe(payload)) {
+                return false;
+            }
+            waitingKeyframe = false;
+        }
+        if (context == null) {
+            open();
+        }
+
+        int length = payload.length - HEADER_SIZE;
+        if (av_new_packet(packet, length) < 0) {
+            throw new IOException("Sin memoria para el paquete H.264");
+        }
+        try {
+            packet.data().put(payload, HEADER_SIZE, length);
+            if (avcodec_send_packet(context, packet) < 0) {
+                waitingKeyframe = true;
+                throw new IOException("Paquete H.264 rechazado por el decodificador");
+            }
+        } finally {
+            av_packet_unref(packet);
+        }
+
+        boolean decoded = false;
+        while (avcodec_receive_frame(context, frame) == 0) {
+            convert();
+            av_frame_unref(frame);
+            decoded = true;
+        }
+        return decoded;
+    }
+
+    private void open() throws IOException {
+        H264Support.quietLogs();
+        AVCodec codec = avcodec_find_decoder(AV_CODEC_ID_H264);
+        if (codec == null) {
+            throw new IOException("Decodificador H.264 no disponible");
+        }
+        context = avcodec_alloc_context3(codec);
+        context.thread_count(1);
+        context.flags(context.flags() | AV_CODEC_FLAG_LOW_DELAY);
+        if (avcodec_open2(context, codec, (AVDictionary) null) < 0) {
+            release();
+            throw new IOException("No se pudo abrir el decodificador H.264");
+        }
+        packet = av_packet_alloc();
+        frame = av_frame_alloc();
+    }
+
+    private void convert() {
+        int width = frame.width();
+        int height = frame.height();
+        long size = (long) width * height * 3;
+        if (bgrBuffer == null || bgrBuffer.capacity() != size) {
+            if (bgrBuffer != null) {
+                bgrBuffer.close();
+            }
+            bgrBuffer = new BytePointer(size);
+        }
+        sws = sws_getCachedContext(sws, width, height, frame.format(), width, height, AV_PIX_FMT_BGR24,
+                SWS_FAST_BILINEAR, null, null, (DoublePointer) null);
+        // swscale lee siempre 4 planos de destino aunque BGR24 use solo el primero
+        try (PointerPointer<BytePointer> dst = new PointerPointer<>(bgrBuffer, null, null, null);
+             IntPointer stride = new IntPointer(width * 3, 0, 0, 0)) {
+            sws_scale(sws, frame.data(), frame.linesize(), 0, height, dst, stride);
+        }
+        // Se entrega una imagen nueva por frame: el EDT puede seguir pintando la anterior
+        BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        bgrBuffer.position(0).get(VideoImages.pixels(next));
+        image = next;
+    }
+
+    @Override
+    public BufferedImage currentImage() {
+        return waitingKeyframe ? null : image;
+    }
+
+    @Override
+    public void reset() {
+        release();
+        image = null;
+        waitingKeyframe = true;
+    }
+
+    private void release() {
+        if (context != null) {
+            avcodec_free_context(context);
+            context = null;
+        }
+        if (packet != null) {
+            av_packet_free(packet);
+            packet = null;
+        }
+        if (frame != null) {
+            av_frame_free(frame);
+            frame = null;
+        }
+        if (sws != null) {
+            sws_freeContext(sws);
+            sws = null;
+        }
+        if (bgrBuffer != null) {
+            bgrBuffer.close();
+            bgrBuffer = null;
+        }
+    }
+}
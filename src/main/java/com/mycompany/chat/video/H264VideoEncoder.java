@@ -0,0 +1,138 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameRecorder;
+
+/**
+ * Codifica el video en H.264 por software (vía FFmpegFrameRecorder de JavaCV), afinado
+ * para baja latencia, de modo que cada llamada a {@link #encode} produce exactamente el
+ * paquete de ese frame:
+ * - libx264: preset ultrafast y tune zerolatency (sin B-frames, lookahead ni frame threads).
+ * - libopenh264 (si no hay x264, ver {@link H264Support}): perfil baseline, sin saltar frames.
+ *
+ * El recorder escribe H.264 crudo (Annex B) en un buffer en memoria que se vacía en cada
+ * frame. Cada keyframe lleva SPS/PPS, por lo que un receptor puede unirse en cualquier
+ * keyframe. Formato del payload: ['H'][flags][Annex B], ver {@link VideoPayload}.
+ *
+ * El codificador se crea con el tamaño del primer frame y se reinicia si cambia.
+ */
+public class H264VideoEncoder implements VideoEncoder {
+    private static final int HEADER_SIZE = 2;
+
+    private final int frameRate;
+    private final int keyframeInterval;
+    private final int bitrate;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+    private FFmpegFrameRecorder recorder;
+    private BufferedImage bgrScratch;
+    private int width;
+    private int height;
+
+    /**
+     * @param frameRate fps nominales (el control de tasa de x264 los usa para repartir el bitrate)
+     * @param keyframeInterval frames entre keyframes
+     * @param bitrate bitrate objetivo en bits por segundo
+     */
+    public H264VideoEncoder(int frameRate, int keyframeInterval, int bitrate) {
+        this.frameRate = Math.max(1, frameRate);
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.bitrate = bitrate;
+    }
+
+    @Override
+    public byte[] encode(BufferedImage frame) throws IOException {
+        BufferedImage bgr = VideoImages.toBgr(frame, bgrScratch);
+        if (bgr != frame) {
+            bgrScratch = bgr; // No reusar como buffer la imagen de quien llama
+        }
+        if (recorder == null || bgr.getWidth() != width || bgr.getHeight() != height) {
+            start(bgr.getWidth(), bgr.getHeight());
+        }
+
+        buffer.reset();
+        buffer.write(VideoPayload.H264_MAGIC);
+        buffer.write(0);
+        try {
+            recorder.recordImage(width, height, Frame.DEPTH_UBYTE, 3, width * 3, avutil.AV_PIX_FMT_BGR24,
+                    ByteBuffer.wrap(VideoImages.pixels(bgr)));
+        } catch (FrameRecorder.Exception e) {
+            throw new IOException("Error codificando H.264: " + e.getMessage(), e);
+        }
+
+        byte[] payload = buffer.toByteArray();
+        if (isKeyframe(payload)) {
+            payload[1] = VideoPayload.FLAG_KEYFRAME;
+        }
+        return payload;
+    }
+
+    private void start(int width, int height) throws IOException {
+        close();
+        H264Support.quietLogs();
+        // x264 con yuv420p exige dimensiones pares
+        if ((width & 1) != 0 || (height & 1) != 0) {
+            throw new IOException("H.264 requiere dimensiones pares: " + width + "x" + height);
+        }
+        String encoderName = H264Support.getEncoderName();
+        if (encoderName == null) {
+            throw new IOException("No hay codificador H.264 disponible");
+        }
+        FFmpegFrameRecorder r = new FFmpegFrameRecorder(buffer, width, height);
+        r.setFormat("h264");
+        r.setVideoCodecName(encoderName);
+        r.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+        r.setFrameRate(frameRate);
+        r.setGopSize(keyframeInterval);
+        r.setVideoBitrate(bitrate);
+        if (H264Support.X264.equals(encoderName)) {
+            r.setVideoOption("preset", "ultrafast");
+            r.setVideoOption("tune", "zerolatency");
+        } else {
+            // Con el control de tasa por defecto openh264 descarta frames y el receptor se congela
+            r.setVideoOption("allow_skip_frames", "0");
+        }
+        // Sin esto el muxer acumula varios frames antes de escribir en el buffer
+        r.setOption("flush_packets", "1");
+        try {
+            r.start();
+        } catch (FrameRecorder.Exception e) {
+            throw new IOException("No se pudo iniciar el codificador H.264: " + e.getMessage(), e);
+        }
+        recorder = r;
+        this.width = width;
+        this.height = height;
+    }
+
+    // Un access unit es keyframe si contiene un slice IDR (NAL tipo 5)
+    private static boolean isKeyframe(byte[] payload) {
+        for (int i = HEADER_SIZE; i + 3 < payload.length; i++) {
+            if (payload[i] == 0 && payload[i + 1] == 0 && payload[i + 2] == 1) {
+                if ((payload[i + 3] & 0x1F) == 5) {
+                    return true;
+                }
+                i += 2;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (recorder != null) {
+            try {
+                recorder.stop();
+                recorder.release();
+            } catch (FrameRecorder.Exception e) {
+                // Ignorar errores al cerrar
+            }
+            recorder = null;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Codifica cada frame como un JPEG independiente. El writer se reutiliza entre frames.
+ */
+public class JpegVideoEncoder implements VideoEncoder {
+    private final ImageWriter writer;
+    private final ImageWriteParam param;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+    /**
+     * @param quality calidad JPEG entre 0 y 100
+     */
+    public JpegVideoEncoder(int quality) {
+        this.writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        this.param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(Math.max(0, Math.min(100, quality)) / 100f);
+    }
+
+    @Override
+    public byte[] encode(BufferedImage frame) throws IOException {
+        buffer.reset();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(buffer)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(frame, null, null), param);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        writer.dispose();
+    }
+}
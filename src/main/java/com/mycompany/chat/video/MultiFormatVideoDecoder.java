@@ -0,0 +1,59 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decodificador que detecta el formato de cada payload ({@link VideoPayload}) y lo
+ * delega al decodificador correspondiente. Así un remitente puede cambiar de modo
+ * de video en plena llamada sin que el receptor tenga que saberlo de antemano.
+ */
+public class MultiFormatVideoDecoder implements VideoDecoder {
+    private final TileDeltaDecoder tileDecoder = new TileDeltaDecoder();
+    private H264VideoDecoder h264Decoder; // Se crea al primer payload H.264 (carga los nativos de FFmpeg)
+    private VideoDecoder active;
+    private BufferedImage jpegImage;
+
+    @Override
+    public boolean decode(byte[] payload) throws IOException {
+        if (VideoPayload.isTileDelta(payload)) {
+            active = tileDecoder;
+            return tileDecoder.decode(payload);
+        }
+        if (VideoPayload.isH264(payload)) {
+            if (h264Decoder == null) {
+                h264Decoder = new H264VideoDecoder();
+            }
+            active = h264Decoder;
+            return h264Decoder.decode(payload);
+        }
+        if (VideoPayload.isJpeg(payload)) {
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(payload));
+            if (img == null) {
+                throw new IOException("JPEG inválido");
+            }
+            jpegImage = img;
+            active = null;
+            return true;
+        }
+        throw new IOException("Formato de video desconocido");
+    }
+
+    @Override
+    public BufferedImage currentImage() {
+        return active != null ? active.currentImage() : jpegImage;
+    }
+
+    @Override
+    public void reset() {
+        tileDecoder.reset();
+        if (h264Decoder != null) {
+            h264Decoder.reset();
+        }
+        jpegImage = null;
+        active = null;
+    }
+}
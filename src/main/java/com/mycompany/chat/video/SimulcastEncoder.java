@@ -0,0 +1,85 @@
+package com.mycompany.chat.video;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Codifica cada captura en varias capas de resolución (simulcast): la capa 0 a tamaño
+ * completo y cada capa siguiente a la mitad de ancho y alto que la anterior, con un
+ * codificador propio y menos calidad/bitrate ({@link VideoEncoders#create(String, int)}).
+ *
+ * El emisor envía todas las capas y el servidor elige cuál reenviar a cada receptor
+ * según lo que drena su conexión ({@link ViewerChannel}). Con una sola capa el
+ * comportamiento es el de siempre.
+ */
+public class SimulcastEncoder {
+    public static final int MAX_LAYERS = 3;
+    private static final int MIN_LAYER_WIDTH = 80;
+
+    private final VideoEncoder[] encoders;
+    private final BufferedImage[] scaled;
+
+    /**
+     * @param mode modo de video de todas las capas
+     * @param layers número de capas (se recorta entre 1 y {@link #MAX_LAYERS})
+     */
+    public SimulcastEncoder(String mode, int layers) {
+        int count = Math.max(1, Math.min(MAX_LAYERS, layers));
+        this.encoders = new VideoEncoder[count];
+        this.scaled = new BufferedImage[count];
+        for (int i = 0; i < count; i++) {
+            encoders[i] = VideoEncoders.create(mode, i);
+        }
+    }
+
+    public int getLayerCount() {
+        return encoders.length;
+    }
+
+    /**
+     * Indica si la capa tiene sentido para este tamaño de captura (las muy pequeñas se omiten).
+     */
+    public boolean isLayerUsable(int layer, int width) {
+        return layer == 0 || (width >> layer) >= MIN_LAYER_WIDTH;
+    }
+
+    /**
+     * Codifica una capa del frame.
+     *
+     * @param layer capa (0 = tamaño completo)
+     * @param frame captura a tamaño completo
+     */
+    public byte[] encode(int layer, BufferedImage frame) throws IOException {
+        if (layer == 0) {
+            return encoders[0].encode(frame);
+        }
+        return encoders[layer].encode(scale(layer, frame));
+    }
+
+    private BufferedImage scale(int layer, BufferedImage frame) {
+        // Dimensiones pares: las exige H.264 con submuestreo 4:2:0
+        int width = Math.max(2, (frame.getWidth() >> layer) & ~1);
+        int height = Math.max(2, (frame.getHeight() >> layer) & ~1);
+        BufferedImage target = scaled[layer];
+        if (target == null || target.getWidth() != width || target.getHeight() != height) {
+            target = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            scaled[layer] = target;
+        }
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(frame, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    public void close() {
+        for (VideoEncoder encoder : encoders) {
+            encoder.close();
+        }
+    }
+}
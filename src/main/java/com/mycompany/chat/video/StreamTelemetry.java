@@ -0,0 +1,188 @@
+package com.mycompany.chat.video;
+
+import java.util.Arrays;
+
+/**
+ * Métricas de calidad de un flujo de video, calculadas a partir del número de
+ * secuencia y la marca de captura de cada {@link VideoPacket}.
+ *
+ * - Latencia: llegada menos captura, con percentiles sobre las últimas
+ *   {@link #LATENCY_WINDOW} muestras. Compara relojes de dos equipos distintos, así
+ *   que solo es exacta si ambos están sincronizados (NTP); los valores negativos se
+ *   recortan a 0.
+ * - Jitter: estimador de RFC 3550 sobre la variación del tiempo de tránsito. No
+ *   depende del desfase entre relojes, solo de su variación.
+ * - Huecos y pérdidas: saltos en la secuencia. Los frames que llegan con una
+ *   secuencia menor a la esperada se cuentan como atrasados.
+ * - FPS y bitrate efectivos: sobre los frames de los últimos {@link #RATE_WINDOW_MS} ms.
+ *
+ * Los métodos están sincronizados: escribe un solo hilo (el lector del socket) y
+ * leen ocasionalmente los comandos de estadísticas.
+ */
+public class StreamTelemetry {
+    static final int LATENCY_WINDOW = 1024;
+    static final long RATE_WINDOW_MS = 2000;
+    private static final int RATE_SAMPLES = 256;
+
+    private final String name;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private final long[] arrivals = new long[RATE_SAMPLES];
+    private final int[] arrivalBytes = new int[RATE_SAMPLES];
+    private int latencyCount;
+    private int arrivalCount;
+
+    private long frames;
+    private long bytes;
+    private long gaps;
+    private long lost;
+    private long late;
+    private int expectedSequence;
+    private boolean started;
+    private long lastTransit;
+    private double jitter;
+
+    public StreamTelemetry(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Registra la llegada de un frame.
+     *
+     * @param sequence número de secuencia del emisor
+     * @param captureTimeMillis marca de captura del emisor
+     * @param arrivalTimeMillis reloj local al recibirlo
+     * @param size bytes del payload
+     */
+    public synchronized void record(int sequence, long captureTimeMillis, long arrivalTimeMillis, int size) {
+        frames++;
+        bytes += size;
+
+        if (!started || sequence == 0) {
+            // Primer frame, o el emisor reinició la llamada
+            started = true;
+        } else if (sequence > expectedSequence) {
+            gaps++;
+            lost += sequence - expectedSequence;
+        } else if (sequence < expectedSequence) {
+            late++;
+        }
+        if (sequence >= expectedSequence || sequence == 0) {
+            expectedSequence = sequence + 1;
+        }
+
+        long transit = arrivalTimeMillis - captureTimeMillis;
+        if (frames > 1) {
+            long d = Math.abs(transit - lastTransit);
+            jitter += (d - jitter) / 16.0;
+        }
+        lastTransit = transit;
+
+        latencies[latencyCount++ % LATENCY_WINDOW] = Math.max(0, transit);
+        int slot = arrivalCount++ % RATE_SAMPLES;
+        arrivals[slot] = arrivalTimeMillis;
+        arrivalBytes[slot] = size;
+    }
+
+    /**
+     * Calcula una foto de las métricas actuales.
+     */
+    public synchronized Snapshot snapshot() {
+        int n = Math.min(latencyCount, LATENCY_WINDOW);
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+
+        long now = System.currentTimeMillis();
+        int inWindow = 0;
+        long windowBytes = 0;
+        long oldest = now;
+        for (int i = 0, m = Math.min(arrivalCount, RATE_SAMPLES); i < m; i++) {
+            if (now - arrivals[i] <= RATE_WINDOW_MS) {
+                inWindow++;
+                windowBytes += arrivalBytes[i];
+                oldest = Math.min(oldest, arrivals[i]);
+            }
+        }
+        // Si todas las muestras guardadas caen en la ventana (flujo recién iniciado o muy rápido),
+        // se mide desde la más antigua en lugar de suponer la ventana completa
+        boolean allInWindow = inWindow == Math.min(arrivalCount, RATE_SAMPLES);
+        double seconds = Math.max(1, allInWindow ? now - oldest : RATE_WINDOW_MS) / 1000.0;
+
+        return new Snapshot(name, frames, bytes, gaps, lost, late,
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                jitter, inWindow / seconds, windowBytes * 8 / seconds / 1000);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Métricas de un flujo en un instante dado.
+     */
+    public static class Snapshot {
+        private final String name;
+        private final long frames;
+        private final long bytes;
+        private final long gaps;
+        private final long lost;
+        private final long late;
+        private final long latencyP50;
+        private final long latencyP95;
+        private final long latencyP99;
+        private final double jitterMillis;
+        private final double fps;
+        private final double kbps;
+
+        Snapshot(String name, long frames, long bytes, long gaps, long lost, long late,
+                 long latencyP50, long latencyP95, long latencyP99, double jitterMillis, double fps, double kbps) {
+            this.name = name;
+            this.frames = frames;
+            this.bytes = bytes;
+            this.gaps = gaps;
+            this.lost = lost;
+            this.late = late;
+            this.latencyP50 = latencyP50;
+            this.latencyP95 = latencyP95;
+            this.latencyP99 = latencyP99;
+            this.jitterMillis = jitterMillis;
+            this.fps = fps;
+            this.kbps = kbps;
+        }
+
+        public String getName() { return name; }
+        public long getFrames() { return frames; }
+        public long getBytes() { return bytes; }
+        public long getGaps() { return gaps; }
+        public long getLost() { return lost; }
+        public long getLate() { return late; }
+        public long getLatencyP50() { return latencyP50; }
+        public long getLatencyP95() { return latencyP95; }
+        public long getLatencyP99() { return latencyP99; }
+        public double getJitterMillis() { return jitterMillis; }
+        public double getFps() { return fps; }
+        public double getKbps() { return kbps; }
+
+        /**
+         * @return resumen de una línea para la ventana de video
+         */
+        public String toShortString() {
+            return String.format("%.1f fps | %d ms | jitter %.1f ms | perdidos %d", fps, latencyP50, jitterMillis, lost);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.1f fps, %.0f kbps, latencia p50/p95/p99 = %d/%d/%d ms, jitter %.1f ms, "
+                    + "frames %d, huecos %d, perdidos %d, atrasados %d",
+                    name, fps, kbps, latencyP50, latencyP95, latencyP99, jitterMillis, frames, gaps, lost, late);
+        }
+    }
+}
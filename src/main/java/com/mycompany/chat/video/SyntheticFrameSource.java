@@ -0,0 +1,98 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Fuente de frames generados en memoria, sin cámara ni bibliotecas nativas.
+ *
+ * El patrón imita una llamada típica: un fondo fijo con degradado y un bloque
+ * que se desplaza (la "cabeza"), más una franja que cambia en cada frame para
+ * que ningún frame sea idéntico al anterior. Generar un frame cuesta una copia
+ * de memoria, de modo que cientos de fuentes pueden correr en el mismo equipo.
+ */
+public class SyntheticFrameSource implements FrameSource {
+    private final int width;
+    private final int height;
+    private final double fps;
+    private byte[] background;
+    private BufferedImage image;
+    private long frameNumber;
+
+    public SyntheticFrameSource(int width, int height, double fps) {
+        if (width <= 0 || height <= 0 || fps <= 0) {
+            throw new IllegalArgumentException("Resolución y FPS deben ser positivos");
+        }
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+    }
+
+    @Override
+    public void open() {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        background = new byte[width * height * 3];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = (y * width + x) * 3;
+                background[i] = (byte) (x * 255 / width);      // B
+                background[i + 1] = (byte) (y * 255 / height); // G
+                background[i + 2] = (byte) 96;                 // R
+            }
+        }
+        frameNumber = 0;
+    }
+
+    @Override
+    public BufferedImage read() {
+        byte[] pixels = VideoImages.pixels(image);
+        System.arraycopy(background, 0, pixels, 0, pixels.length);
+
+        // Bloque que rebota horizontalmente
+        int box = Math.max(8, Math.min(width, height) / 4);
+        int range = Math.max(1, width - box);
+        int pos = (int) (frameNumber * 4 % (2L * range));
+        int x0 = pos < range ? pos : 2 * range - pos;
+        int y0 = (height - box) / 2;
+        fill(pixels, x0, y0, box, box, (byte) 230, (byte) 200, (byte) 180);
+
+        // Franja inferior que codifica el número de frame
+        int bar = Math.max(2, height / 60);
+        int cell = Math.max(1, width / 32);
+        for (int bit = 0; bit < 32; bit++) {
+            byte v = ((frameNumber >>> bit) & 1) != 0 ? (byte) 255 : 0;
+            fill(pixels, bit * cell, height - bar, cell, bar, v, v, v);
+        }
+
+        frameNumber++;
+        return image;
+    }
+
+    private void fill(byte[] pixels, int x0, int y0, int w, int h, byte b, byte g, byte r) {
+        int x1 = Math.min(width, x0 + w);
+        int y1 = Math.min(height, y0 + h);
+        for (int y = Math.max(0, y0); y < y1; y++) {
+            int i = (y * width + Math.max(0, x0)) * 3;
+            for (int x = Math.max(0, x0); x < x1; x++) {
+                pixels[i++] = b;
+                pixels[i++] = g;
+                pixels[i++] = r;
+            }
+        }
+    }
+
+    @Override
+    public double getFrameRate() {
+        return fps;
+    }
+
+    @Override
+    public String getDescription() {
+        return "patrón sintético " + width + "x" + height + "@" + fps;
+    }
+
+    @Override
+    public void close() {
+        image = null;
+        background = null;
+    }
+}
@@ -0,0 +1,124 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decodificador del formato de mosaicos de {@link TileDeltaEncoder}.
+ *
+ * Mantiene un lienzo con la última imagen y le aplica los mosaicos de cada delta.
+ * Mientras no haya recibido un keyframe (o si cambia el tamaño) ignora los deltas.
+ */
+public class TileDeltaDecoder implements VideoDecoder {
+    private static final int HEADER_SIZE = 10;
+
+    private BufferedImage canvas;
+    private BufferedImage snapshot;
+
+    @Override
+    public boolean decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (in.readByte() != VideoPayload.TILE_MAGIC) {
+            throw new IOException("Payload de mosaicos inválido");
+        }
+        boolean keyframe = (in.readUnsignedByte() & VideoPayload.FLAG_KEYFRAME) != 0;
+        int width = in.readUnsignedShort();
+        int height = in.readUnsignedShort();
+        int tileSize = in.readUnsignedShort();
+        int count = in.readUnsignedShort();
+        if (tileSize == 0) {
+            throw new IOException("Tamaño de mosaico inválido");
+        }
+
+        if (keyframe) {
+            BufferedImage img = readJpeg(payload, HEADER_SIZE);
+            if (img.getWidth() != width || img.getHeight() != height) {
+                throw new IOException("Keyframe con dimensiones inconsistentes");
+            }
+            canvas = VideoImages.copy(VideoImages.toBgr(img, null));
+            snapshot = null;
+            return true;
+        }
+
+        if (canvas == null || canvas.getWidth() != width || canvas.getHeight() != height) {
+            return false; // Esperando keyframe
+        }
+        if (count == 0) {
+            return false; // Nada cambió
+        }
+
+        int[] tiles = new int[count];
+        for (int i = 0; i < count; i++) {
+            tiles[i] = in.readUnsignedShort();
+        }
+        BufferedImage atlas = VideoImages.toBgr(readJpeg(payload, HEADER_SIZE + count * 2), null);
+        applyTiles(atlas, tiles, tileSize);
+        snapshot = null;
+        return true;
+    }
+
+    private void applyTiles(BufferedImage atlas, int[] tiles, int tileSize) throws IOException {
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        int cols = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+        int atlasCols = atlas.getWidth() / tileSize;
+        if (atlasCols == 0) {
+            throw new IOException("Atlas de mosaicos inválido");
+        }
+
+        byte[] dst = VideoImages.pixels(canvas);
+        byte[] src = VideoImages.pixels(atlas);
+        int stride = width * 3;
+        int atlasStride = atlas.getWidth() * 3;
+
+        for (int i = 0; i < tiles.length; i++) {
+            int tile = tiles[i];
+            if (tile >= cols * rows) {
+                throw new IOException("Índice de mosaico fuera de rango: " + tile);
+            }
+            int x0 = (tile % cols) * tileSize;
+            int y0 = (tile / cols) * tileSize;
+            int w = Math.min(tileSize, width - x0) * 3;
+            int h = Math.min(tileSize, height - y0);
+            int ax = (i % atlasCols) * tileSize * 3;
+            int ay = (i / atlasCols) * tileSize;
+            if (ay + h > atlas.getHeight()) {
+                throw new IOException("Atlas de mosaicos incompleto");
+            }
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(src, (ay + y) * atlasStride + ax, dst, (y0 + y) * stride + x0 * 3, w);
+            }
+        }
+    }
+
+    private static BufferedImage readJpeg(byte[] payload, int offset) throws IOException {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(payload, offset, payload.length - offset));
+        if (img == null) {
+            throw new IOException("JPEG inválido en payload de mosaicos");
+        }
+        return img;
+    }
+
+    @Override
+    public BufferedImage currentImage() {
+        if (canvas == null) {
+            return null;
+        }
+        // El lienzo se sigue modificando; se entrega una copia que el EDT puede pintar sin carreras
+        if (snapshot == null) {
+            snapshot = VideoImages.copy(canvas);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void reset() {
+        canvas = null;
+        snapshot = null;
+    }
+}
@@ -0,0 +1,186 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Codificador diferencial por mosaicos para contenido mayormente estático
+ * (cabezas parlantes, pantallas compartidas).
+ *
+ * El frame se divide en mosaicos de {@code tileSize} x {@code tileSize}. Cada mosaico se compara
+ * contra la última versión enviada de ese mosaico y solo se envían los que cambiaron,
+ * empaquetados en una única imagen JPEG ("atlas"). Cada {@code keyframeInterval} frames se
+ * envía el frame completo para que el receptor pueda engancharse y para corregir la deriva
+ * que deja la compresión con pérdida.
+ *
+ * Formato del payload (big-endian):
+ * <pre>
+ * 'T' | flags(1) | ancho(2) | alto(2) | tileSize(2) | n(2) | n x índice de mosaico(2) | JPEG
+ * </pre>
+ * En un keyframe n = 0 y el JPEG es el frame completo. En un delta sin cambios no hay JPEG.
+ */
+public class TileDeltaEncoder implements VideoEncoder {
+    private final int tileSize;
+    private final int keyframeInterval;
+    private final int pixelThreshold;
+    private final int minChangedSamples;
+    private final JpegVideoEncoder jpeg;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+
+    private byte[] reference;     // Última versión enviada de cada mosaico
+    private int width;
+    private int height;
+    private int framesSinceKeyframe;
+    private int[] changedTiles = new int[0];
+    private BufferedImage bgrScratch;
+    private BufferedImage atlas;
+
+    /**
+     * @param tileSize lado del mosaico en píxeles; debe ser múltiplo de 16 para que los bloques
+     *                 JPEG no mezclen mosaicos vecinos dentro del atlas
+     * @param keyframeInterval cada cuántos frames se envía uno completo
+     * @param pixelThreshold diferencia mínima (0-255) para considerar que un componente cambió
+     * @param minChangedSamples componentes cambiados necesarios para reenviar un mosaico
+     * @param jpegQuality calidad JPEG (0-100)
+     */
+    public TileDeltaEncoder(int tileSize, int keyframeInterval, int pixelThreshold,
+                            int minChangedSamples, int jpegQuality) {
+        if (tileSize <= 0 || tileSize % 16 != 0) {
+            throw new IllegalArgumentException("El tamaño de mosaico debe ser múltiplo de 16");
+        }
+        this.tileSize = tileSize;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.pixelThreshold = pixelThreshold;
+        this.minChangedSamples = Math.max(1, minChangedSamples);
+        this.jpeg = new JpegVideoEncoder(jpegQuality);
+    }
+
+    @Override
+    public byte[] encode(BufferedImage frame) throws IOException {
+        BufferedImage bgr = VideoImages.toBgr(frame, bgrScratch);
+        if (bgr != frame) {
+            bgrScratch = bgr;
+        }
+        byte[] pixels = VideoImages.pixels(bgr);
+
+        boolean keyframe = reference == null
+                || bgr.getWidth() != width || bgr.getHeight() != height
+                || ++framesSinceKeyframe >= keyframeInterval;
+
+        buffer.reset();
+        DataOutputStream out = new DataOutputStream(buffer);
+        if (keyframe) {
+            width = bgr.getWidth();
+            height = bgr.getHeight();
+            framesSinceKeyframe = 0;
+            if (reference == null || reference.length != pixels.length) {
+                reference = new byte[pixels.length];
+            }
+            System.arraycopy(pixels, 0, reference, 0, pixels.length);
+
+            writeHeader(out, VideoPayload.FLAG_KEYFRAME, 0);
+            out.write(jpeg.encode(bgr));
+            return buffer.toByteArray();
+        }
+
+        int count = findChangedTiles(pixels);
+        writeHeader(out, 0, count);
+        for (int i = 0; i < count; i++) {
+            out.writeShort(changedTiles[i]);
+        }
+        if (count > 0) {
+            out.write(jpeg.encode(buildAtlas(pixels, count)));
+        }
+        return buffer.toByteArray();
+    }
+
+    private void writeHeader(DataOutputStream out, int flags, int tileCount) throws IOException {
+        out.writeByte(VideoPayload.TILE_MAGIC);
+        out.writeByte(flags);
+        out.writeShort(width);
+        out.writeShort(height);
+        out.writeShort(tileSize);
+        out.writeShort(tileCount);
+    }
+
+    // Marca los mosaicos que difieren de la referencia y actualiza la referencia de esos mosaicos
+    private int findChangedTiles(byte[] pixels) {
+        int cols = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+        if (changedTiles.length < cols * rows) {
+            changedTiles = new int[cols * rows];
+        }
+        int stride = width * 3;
+        int count = 0;
+
+        for (int ty = 0; ty < rows; ty++) {
+            int y0 = ty * tileSize;
+            int y1 = Math.min(y0 + tileSize, height);
+            for (int tx = 0; tx < cols; tx++) {
+                int x0 = tx * tileSize * 3;
+                int x1 = Math.min((tx + 1) * tileSize, width) * 3;
+                if (tileChanged(pixels, stride, y0, y1, x0, x1)) {
+                    changedTiles[count++] = ty * cols + tx;
+                    for (int y = y0; y < y1; y++) {
+                        int off = y * stride + x0;
+                        System.arraycopy(pixels, off, reference, off, x1 - x0);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private boolean tileChanged(byte[] pixels, int stride, int y0, int y1, int x0, int x1) {
+        int changed = 0;
+        for (int y = y0; y < y1; y++) {
+            int off = y * stride;
+            for (int i = off + x0, end = off + x1; i < end; i++) {
+                int diff = (pixels[i] & 0xFF) - (reference[i] & 0xFF);
+                if (diff > pixelThreshold || -diff > pixelThreshold) {
+                    if (++changed >= minChangedSamples) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Copia los mosaicos cambiados a una cuadrícula compacta, en el orden de changedTiles
+    private BufferedImage buildAtlas(byte[] pixels, int count) {
+        int atlasCols = (int) Math.ceil(Math.sqrt(count));
+        int atlasRows = (count + atlasCols - 1) / atlasCols;
+        int atlasWidth = atlasCols * tileSize;
+        int atlasHeight = atlasRows * tileSize;
+        if (atlas == null || atlas.getWidth() != atlasWidth || atlas.getHeight() != atlasHeight) {
+            atlas = new BufferedImage(atlasWidth, atlasHeight, BufferedImage.TYPE_3BYTE_BGR);
+        }
+        byte[] atlasPixels = VideoImages.pixels(atlas);
+        int cols = (width + tileSize - 1) / tileSize;
+        int stride = width * 3;
+        int atlasStride = atlasWidth * 3;
+
+        for (int i = 0; i < count; i++) {
+            int tile = changedTiles[i];
+            int x0 = (tile % cols) * tileSize;
+            int y0 = (tile / cols) * tileSize;
+            int w = Math.min(tileSize, width - x0) * 3;
+            int h = Math.min(tileSize, height - y0);
+            int ax = (i % atlasCols) * tileSize * 3;
+            int ay = (i / atlasCols) * tileSize;
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(pixels, (y0 + y) * stride + x0 * 3,
+                                 atlasPixels, (ay + y) * atlasStride + ax, w);
+            }
+        }
+        return atlas;
+    }
+
+    @Override
+    public void close() {
+        jpeg.close();
+    }
+}
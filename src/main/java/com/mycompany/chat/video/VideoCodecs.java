@@ -0,0 +1,84 @@
+package com.mycompany.chat.video;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Negociación del códec de video de cada llamada.
+ *
+ * - Al iniciar sesión el cliente anuncia los modos que sabe decodificar
+ *   ({@code VIDEO|CODECS|h264,tiles,jpeg}). Un cliente que no lo anuncia solo recibe JPEG.
+ * - Al iniciar una llamada ofrece los modos que sabe codificar, en orden de preferencia
+ *   ({@code VIDEO|START|destinatario|h264,tiles,jpeg}).
+ * - El servidor elige el primero de la oferta que el destinatario decodifica y lo
+ *   responde con {@code OK|VIDEO|modo}. JPEG es siempre el último recurso.
+ */
+public final class VideoCodecs {
+    private static final String SEPARATOR = ",";
+
+    private VideoCodecs() {
+        throw new AssertionError("No se debe instanciar VideoCodecs");
+    }
+
+    /**
+     * @return modos que este proceso puede codificar y decodificar, del más eficiente al menos
+     */
+    public static List<String> supported() {
+        List<String> modes = new ArrayList<>();
+        if (H264Support.isAvailable()) {
+            modes.add(Constants.VIDEO_MODE_H264);
+        }
+        modes.add(Constants.VIDEO_MODE_TILES);
+        modes.add(Constants.VIDEO_MODE_JPEG);
+        return modes;
+    }
+
+    /**
+     * Oferta para una llamada: el modo configurado primero y luego el resto de los soportados.
+     *
+     * @param preferred modo configurado (video.mode)
+     */
+    public static List<String> offer(String preferred) {
+        List<String> modes = supported();
+        if (modes.remove(preferred)) {
+            modes.add(0, preferred);
+        }
+        return modes;
+    }
+
+    /**
+     * Elige el primer modo de la oferta que el receptor acepta.
+     *
+     * @param offered modos del emisor en orden de preferencia
+     * @param accepted modos que el receptor sabe decodificar
+     * @return el modo elegido, o JPEG si no hay ninguno en común
+     */
+    public static String negotiate(List<String> offered, Collection<String> accepted) {
+        for (String mode : offered) {
+            if (accepted.contains(mode)) {
+                return mode;
+            }
+        }
+        return Constants.VIDEO_MODE_JPEG;
+    }
+
+    public static String join(List<String> modes) {
+        return String.join(SEPARATOR, modes);
+    }
+
+    public static List<String> parse(String modes) {
+        List<String> result = new ArrayList<>();
+        if (modes != null) {
+            for (String mode : modes.split(SEPARATOR)) {
+                String trimmed = mode.trim().toLowerCase();
+                if (!trimmed.isEmpty()) {
+                    result.add(trimmed);
+                }
+            }
+        }
+        return result;
+    }
+}
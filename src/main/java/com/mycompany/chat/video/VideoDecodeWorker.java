@@ -0,0 +1,166 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Decodifica los frames de un remitente en un hilo propio y pinta siempre
+ * el último frame decodificado.
+ *
+ * - El hilo del socket solo encola el frame ({@link #submit}) y sigue leyendo.
+ * - El hilo de decodificación toma todo lo pendiente de una vez y empieza por el
+ *   último keyframe: lo anterior ya no influye en la imagen y se descarta. Los
+ *   deltas posteriores sí se aplican todos, en orden.
+ * - Si se acumulan más de {@link #MAX_PENDING_FRAMES} frames sin ningún keyframe,
+ *   se descartan y el decodificador espera al siguiente keyframe para ponerse al día.
+ * - En el EDT hay como máximo una tarea de pintado encolada por remitente;
+ *   si se decodifican varios frames antes de que se ejecute, solo se pinta
+ *   el más reciente.
+ */
+public class VideoDecodeWorker implements Runnable {
+    static final int MAX_PENDING_FRAMES = 60;
+
+    private final VideoStreamStats stats;
+    private final VideoDecoder decoder;
+    private final Consumer<BufferedImage> renderer;
+    private final ConcurrentLinkedQueue<byte[]> pendingFrames = new ConcurrentLinkedQueue<>();
+    private final List<byte[]> batch = new ArrayList<>();
+    private final AtomicReference<BufferedImage> latestImage = new AtomicReference<>();
+    private final AtomicBoolean renderScheduled = new AtomicBoolean(false);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param sender nombre del remitente (se usa para el nombre del hilo y las estadísticas)
+     * @param decoder decodificador con el estado de este flujo
+     * @param renderer acción que pinta la imagen; siempre se ejecuta en el EDT
+     */
+    public VideoDecodeWorker(String sender, VideoDecoder decoder, Consumer<BufferedImage> renderer) {
+        this.stats = new VideoStreamStats(sender);
+        this.decoder = decoder;
+        this.renderer = renderer;
+        this.thread = new Thread(this, "video-decode-" + sender);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Entrega un frame recibido por la red y registra su llegada en la telemetría.
+     * Nunca bloquea al hilo que lee el socket.
+     *
+     * @param packet frame con su número de secuencia y hora de captura
+     */
+    public void submit(VideoPacket packet) {
+        stats.getTelemetry().record(packet.getSequence(), packet.getCaptureTimeMillis(),
+                System.currentTimeMillis(), packet.getPayload().length);
+        submit(packet.getPayload());
+    }
+
+    /**
+     * Entrega un frame codificado. Nunca bloquea al hilo que lee el socket.
+     *
+     * @param frame bytes del frame tal como llegaron por la red
+     */
+    public void submit(byte[] frame) {
+        stats.recordReceived();
+        pendingFrames.offer(frame);
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            batch.clear();
+            byte[] frame;
+            while ((frame = pendingFrames.poll()) != null) {
+                batch.add(frame);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            if (decodeBatch()) {
+                publish(decoder.currentImage());
+            }
+        }
+        // Libera el estado del decodificador (en H.264, memoria nativa) desde su propio hilo
+        decoder.reset();
+    }
+
+    // Decodifica desde el último keyframe del lote; devuelve true si la imagen cambió
+    private boolean decodeBatch() {
+        int start = 0;
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (VideoPayload.isKeyframe(batch.get(i))) {
+                start = i;
+                break;
+            }
+        }
+        if (start == 0 && batch.size() > MAX_PENDING_FRAMES && !VideoPayload.isKeyframe(batch.get(0))) {
+            // Demasiado atrasado y sin keyframe: saltar al próximo
+            stats.recordDropped(batch.size());
+            decoder.reset();
+            return false;
+        }
+        stats.recordDropped(start);
+
+        boolean changed = false;
+        for (int i = start; i < batch.size(); i++) {
+            try {
+                changed |= decoder.decode(batch.get(i));
+                stats.recordDecoded();
+            } catch (IOException | RuntimeException e) {
+                stats.recordDecodeError();
+            }
+        }
+        return changed;
+    }
+
+    private void publish(BufferedImage img) {
+        if (img != null) {
+            if (latestImage.getAndSet(img) != null) {
+                // El EDT todavía no pintaba el anterior: se pierde
+                stats.recordDropped();
+            }
+            if (renderScheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(this::renderLatest);
+            }
+        }
+    }
+
+    // Se ejecuta en el EDT
+    private void renderLatest() {
+        // Liberar la marca antes de tomar la imagen para no perder un frame que llegue justo ahora
+        renderScheduled.set(false);
+        BufferedImage img = latestImage.getAndSet(null);
+        if (img != null && running) {
+            renderer.accept(img);
+            stats.recordRendered();
+        }
+    }
+
+    /**
+     * Detiene el hilo de decodificación. Los frames pendientes se descartan.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    public VideoStreamStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,35 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Decodificador con estado de un flujo de video (uno por remitente).
+ *
+ * Los codecs diferenciales necesitan aplicar todos los payloads en orden, por eso
+ * la decodificación y la obtención de la imagen a pintar son pasos separados.
+ */
+public interface VideoDecoder {
+
+    /**
+     * Aplica un payload al estado del decodificador.
+     *
+     * @param payload bytes recibidos
+     * @return true si la imagen actual cambió y hay algo nuevo que pintar
+     * @throws IOException si el payload está corrupto
+     */
+    boolean decode(byte[] payload) throws IOException;
+
+    /**
+     * Obtiene la imagen actual. El llamador puede conservarla: el decodificador
+     * no la modificará después.
+     *
+     * @return imagen actual, o null si todavía no hay ninguna
+     */
+    BufferedImage currentImage();
+
+    /**
+     * Descarta el estado; los payloads diferenciales se ignoran hasta el próximo keyframe.
+     */
+    void reset();
+}
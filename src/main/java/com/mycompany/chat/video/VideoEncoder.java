@@ -0,0 +1,28 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Estrategia de codificación de frames de video.
+ *
+ * Cada implementación produce un payload autodescriptivo (ver {@link VideoPayload}),
+ * de modo que el receptor puede decodificarlo sin negociación previa.
+ */
+public interface VideoEncoder {
+
+    /**
+     * Codifica un frame.
+     *
+     * @param frame imagen capturada
+     * @return payload listo para enviarse por el socket de video
+     * @throws IOException si el frame no se pudo codificar
+     */
+    byte[] encode(BufferedImage frame) throws IOException;
+
+    /**
+     * Libera los recursos del codificador. Por defecto no hace nada.
+     */
+    default void close() {
+    }
+}
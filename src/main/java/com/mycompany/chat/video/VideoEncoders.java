@@ -0,0 +1,45 @@
+package com.mycompany.chat.video;
+
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Crea el {@link VideoEncoder} correspondiente a un modo de video.
+ */
+public final class VideoEncoders {
+
+    private VideoEncoders() {
+        throw new AssertionError("No se debe instanciar VideoEncoders");
+    }
+
+    /**
+     * @param mode modo de video ({@link Constants#VIDEO_MODE_JPEG}, {@link Constants#VIDEO_MODE_TILES}
+     *             o {@link Constants#VIDEO_MODE_H264})
+     * @return codificador nuevo; los modos desconocidos, o H.264 sin las librerías nativas, usan JPEG
+     */
+    public static VideoEncoder create(String mode) {
+        return create(mode, 0);
+    }
+
+    /**
+     * Codificador para una capa de simulcast ({@link SimulcastEncoder}). Cada capa tiene
+     * un cuarto de los píxeles de la anterior, así que baja la calidad JPEG y el bitrate
+     * H.264 en proporción.
+     *
+     * @param mode modo de video
+     * @param layer capa (0 = tamaño completo, parámetros por defecto)
+     */
+    public static VideoEncoder create(String mode, int layer) {
+        int jpegQuality = Math.max(30, Constants.VIDEO_JPEG_QUALITY - 10 * layer);
+        // Un cuarto de los píxeles necesita algo más de un cuarto del bitrate: 800k, 400k, 100k
+        int bitrate = layer == 0 ? Constants.VIDEO_H264_BITRATE : Constants.VIDEO_H264_BITRATE * 2 / (1 << (2 * layer));
+        if (Constants.VIDEO_MODE_H264.equals(mode) && H264Support.isAvailable()) {
+            return new H264VideoEncoder(Constants.VIDEO_TARGET_FPS, Constants.VIDEO_H264_KEYFRAME_INTERVAL, bitrate);
+        }
+        if (Constants.VIDEO_MODE_TILES.equals(mode)) {
+            return new TileDeltaEncoder(Constants.VIDEO_TILE_SIZE, Constants.VIDEO_KEYFRAME_INTERVAL,
+                    Constants.VIDEO_TILE_PIXEL_THRESHOLD, Constants.VIDEO_TILE_MIN_CHANGED_SAMPLES,
+                    jpegQuality);
+        }
+        return new JpegVideoEncoder(jpegQuality);
+    }
+}
@@ -0,0 +1,77 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+/**
+ * Fuente de frames desde un archivo de video (cualquier formato que soporte FFmpeg).
+ * Al llegar al final vuelve a empezar, para poder sostener pruebas largas.
+ */
+public class VideoFileFrameSource implements FrameSource {
+    private final String path;
+    private FFmpegFrameGrabber grabber;
+    private final Java2DFrameConverter converter = new Java2DFrameConverter();
+
+    public VideoFileFrameSource(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public void open() throws IOException {
+        grabber = new FFmpegFrameGrabber(path);
+        try {
+            grabber.start();
+        } catch (FrameGrabber.Exception e) {
+            grabber = null;
+            throw new IOException("No se pudo abrir el video " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public BufferedImage read() throws IOException {
+        if (grabber == null) {
+            throw new IOException("El video no está abierto");
+        }
+        try {
+            Frame frame = grabber.grabImage();
+            if (frame == null) {
+                // Fin del archivo: volver al inicio
+                grabber.setTimestamp(0);
+                frame = grabber.grabImage();
+                if (frame == null) {
+                    throw new IOException("El video " + path + " no contiene frames");
+                }
+            }
+            return converter.convert(frame);
+        } catch (FrameGrabber.Exception e) {
+            throw new IOException("Error leyendo el video " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public double getFrameRate() {
+        return grabber != null ? grabber.getFrameRate() : 0;
+    }
+
+    @Override
+    public String getDescription() {
+        return "archivo " + path;
+    }
+
+    @Override
+    public void close() {
+        if (grabber != null) {
+            try {
+                grabber.release();
+            } catch (FrameGrabber.Exception e) {
+                // Ignorar errores al cerrar
+            }
+            grabber = null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.mycompany.chat.video;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Utilidades para manipular imágenes BGR de 8 bits (el formato de OpenCV y de los JPEG decodificados).
+ */
+public final class VideoImages {
+
+    private VideoImages() {
+        throw new AssertionError("No se debe instanciar VideoImages");
+    }
+
+    /**
+     * Devuelve la imagen en formato TYPE_3BYTE_BGR, reutilizando {@code reuse} si tiene el tamaño correcto.
+     *
+     * @param img imagen de entrada
+     * @param reuse imagen destino a reutilizar (puede ser null)
+     * @return la misma imagen si ya era BGR, o una copia convertida
+     */
+    public static BufferedImage toBgr(BufferedImage img, BufferedImage reuse) {
+        if (img.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            return img;
+        }
+        BufferedImage target = reuse;
+        if (target == null || target.getWidth() != img.getWidth() || target.getHeight() != img.getHeight()) {
+            target = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        }
+        Graphics2D g = target.createGraphics();
+        try {
+            g.drawImage(img, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Acceso directo a los bytes BGR de una imagen TYPE_3BYTE_BGR (fila a fila, sin relleno).
+     */
+    public static byte[] pixels(BufferedImage bgr) {
+        return ((DataBufferByte) bgr.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Copia una imagen BGR.
+     */
+    public static BufferedImage copy(BufferedImage bgr) {
+        BufferedImage copy = new BufferedImage(bgr.getWidth(), bgr.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        byte[] src = pixels(bgr);
+        System.arraycopy(src, 0, pixels(copy), 0, src.length);
+        return copy;
+    }
+}
@@ -0,0 +1,118 @@
+package com.mycompany.chat.video;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frame tal como viaja por el socket de video.
+ *
+ * Formato de subida (cliente a servidor), con la capa de simulcast delante:
+ * <pre>[capa:byte][seq:int][captura ms:long][longitud:int][payload]</pre>
+ * Formato de bajada (servidor a cliente), con el remitente delante. El receptor recibe
+ * una sola capa de cada remitente, así que la capa no viaja:
+ * <pre>[longitud nombre:int][nombre UTF-8][seq:int][captura ms:long][longitud:int][payload]</pre>
+ *
+ * El número de secuencia lo asigna el emisor por llamada (empieza en 0) y la marca de
+ * captura es su reloj de pared en el momento de capturar el frame. Todas las capas de
+ * una misma captura comparten secuencia y marca, así el receptor ve una secuencia
+ * continua aunque el servidor le cambie de capa.
+ */
+public class VideoPacket {
+    /** Límite defensivo para no reservar memoria arbitraria con una longitud corrupta. */
+    public static final int MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_NAME_BYTES = 1024;
+
+    private final String sender;
+    private final int layer;
+    private final int sequence;
+    private final long captureTimeMillis;
+    private final byte[] payload;
+
+    public VideoPacket(String sender, int layer, int sequence, long captureTimeMillis, byte[] payload) {
+        this.sender = sender;
+        this.layer = layer;
+        this.sequence = sequence;
+        this.captureTimeMillis = captureTimeMillis;
+        this.payload = payload;
+    }
+
+    /**
+     * @return remitente (solo en paquetes de bajada; null en los de subida)
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    /**
+     * @return capa de simulcast (0 = máxima calidad); en los paquetes de bajada siempre 0
+     */
+    public int getLayer() {
+        return layer;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public long getCaptureTimeMillis() {
+        return captureTimeMillis;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Escribe un paquete de subida. No hace flush.
+     */
+    public static void writeUplink(DataOutputStream out, int layer, int sequence, long captureTimeMillis,
+                                   byte[] payload) throws IOException {
+        out.writeByte(layer);
+        writeBody(out, sequence, captureTimeMillis, payload);
+    }
+
+    public static VideoPacket readUplink(DataInputStream in) throws IOException {
+        int layer = in.readUnsignedByte();
+        int sequence = in.readInt();
+        long captureTime = in.readLong();
+        return new VideoPacket(null, layer, sequence, captureTime, readBytes(in, MAX_PAYLOAD_BYTES));
+    }
+
+    private static void writeBody(DataOutputStream out, int sequence, long captureTimeMillis, byte[] payload)
+            throws IOException {
+        out.writeInt(sequence);
+        out.writeLong(captureTimeMillis);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * Escribe este paquete hacia el receptor anteponiendo el remitente. No hace flush.
+     *
+     * @param senderName nombre del remitente ya codificado en UTF-8
+     */
+    public void writeDownlink(DataOutputStream out, byte[] senderName) throws IOException {
+        out.writeInt(senderName.length);
+        out.write(senderName);
+        writeBody(out, sequence, captureTimeMillis, payload);
+    }
+
+    public static VideoPacket readDownlink(DataInputStream in) throws IOException {
+        String sender = new String(readBytes(in, MAX_NAME_BYTES), StandardCharsets.UTF_8);
+        int sequence = in.readInt();
+        long captureTime = in.readLong();
+        return new VideoPacket(sender, 0, sequence, captureTime, readBytes(in, MAX_PAYLOAD_BYTES));
+    }
+
+    private static byte[] readBytes(DataInputStream in, int max) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > max) {
+            throw new IOException("Longitud inválida en el flujo de video: " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+}
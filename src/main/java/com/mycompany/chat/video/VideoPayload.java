@@ -0,0 +1,42 @@
+package com.mycompany.chat.video;
+
+/**
+ * Formatos de payload que viajan por el socket de video.
+ *
+ * - JPEG: el frame completo tal cual (empieza con el marcador SOI 0xFF 0xD8).
+ * - Mosaico diferencial: cabecera propia que empieza con {@link #TILE_MAGIC}.
+ * - H.264: {@link #H264_MAGIC}, un byte de flags y el access unit en formato Annex B.
+ *
+ * El servidor reenvía los payloads sin interpretarlos.
+ */
+public final class VideoPayload {
+    public static final byte TILE_MAGIC = 'T';
+    public static final byte H264_MAGIC = 'H';
+    public static final int FLAG_KEYFRAME = 0x01;
+
+    private VideoPayload() {
+        throw new AssertionError("No se debe instanciar VideoPayload");
+    }
+
+    public static boolean isJpeg(byte[] payload) {
+        return payload.length >= 2 && (payload[0] & 0xFF) == 0xFF && (payload[1] & 0xFF) == 0xD8;
+    }
+
+    public static boolean isTileDelta(byte[] payload) {
+        return payload.length >= 2 && payload[0] == TILE_MAGIC;
+    }
+
+    public static boolean isH264(byte[] payload) {
+        return payload.length >= 2 && payload[0] == H264_MAGIC;
+    }
+
+    /**
+     * Indica si el payload se puede decodificar sin los anteriores.
+     */
+    public static boolean isKeyframe(byte[] payload) {
+        if (isTileDelta(payload) || isH264(payload)) {
+            return (payload[1] & FLAG_KEYFRAME) != 0;
+        }
+        return isJpeg(payload);
+    }
+}
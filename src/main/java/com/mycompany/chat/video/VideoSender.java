@@ -0,0 +1,123 @@
+package com.mycompany.chat.video;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import com.mycompany.chat.util.Constants;
+
+/**
+ * Bucle de transmisión de video: captura de una {@link FrameSource}, codifica cada capa
+ * de un {@link SimulcastEncoder} y escribe cada payload en el socket de video como
+ * {@link VideoPacket}, numerado y con la hora de captura (la misma para todas las capas).
+ *
+ * El ritmo lo marca un {@link FramePacer}: a los fps de la fuente si los declara, o a
+ * {@link Constants#VIDEO_TARGET_FPS} si la marca el hardware (cámara).
+ *
+ * Lo usan tanto {@code ChatClient} como el probador de carga sin interfaz gráfica.
+ */
+public class VideoSender {
+    private static final int MAX_CONSECUTIVE_FAILURES = 10; // Fallos de captura antes de detener
+
+    private final FrameSource source;
+    private final SimulcastEncoder encoder;
+    private final DataOutputStream out;
+    private final BooleanSupplier active;
+    private final Consumer<byte[]> preview;
+    private final FramePacer pacer;
+    private int sequence;
+    private volatile long framesSent; // Se leen desde otros hilos para informar
+    private volatile long bytesSent;
+
+    /**
+     * @param source fuente ya abierta
+     * @param encoder codificador de las capas a enviar
+     * @param out stream del socket de video
+     * @param active condición para seguir transmitiendo
+     * @param preview recibe el payload de la capa 0 de cada frame enviado (puede ser null)
+     */
+    public VideoSender(FrameSource source, SimulcastEncoder encoder, DataOutputStream out,
+                       BooleanSupplier active, Consumer<byte[]> preview) {
+        this.source = source;
+        this.encoder = encoder;
+        this.out = out;
+        this.active = active;
+        this.preview = preview;
+        this.pacer = new FramePacer(source.getFrameRate() > 0 ? source.getFrameRate() : Constants.VIDEO_TARGET_FPS);
+    }
+
+    /**
+     * Transmite hasta que {@code active} sea falso o la fuente deje de entregar frames.
+     *
+     * @throws IOException si falla la escritura en el socket de video
+     */
+    public void run() throws IOException {
+        int consecutiveFailures = 0;
+
+        while (active.getAsBoolean()) {
+            if (!pacer.awaitNextFrame()) {
+                return;
+            }
+            BufferedImage frame = source.read();
+            long captureTime = System.currentTimeMillis();
+            if (frame == null) {
+                if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                    System.err.println("\n[ERROR] No se pueden capturar más frames de " + source.getDescription() + ".");
+                    return;
+                }
+                continue; // Se reintenta en el siguiente plazo
+            }
+            consecutiveFailures = 0;
+
+            byte[] base = encodeLayer(0, frame);
+            if (base == null || base.length == 0) {
+                continue; // Frame vacío, saltar
+            }
+            VideoPacket.writeUplink(out, 0, sequence, captureTime, base);
+            bytesSent += base.length;
+            for (int layer = 1; layer < encoder.getLayerCount(); layer++) {
+                if (encoder.isLayerUsable(layer, frame.getWidth())) {
+                    byte[] bytes = encodeLayer(layer, frame);
+                    if (bytes != null && bytes.length > 0) {
+                        VideoPacket.writeUplink(out, layer, sequence, captureTime, bytes);
+                        bytesSent += bytes.length;
+                    }
+                }
+            }
+            out.flush();
+            sequence++;
+            framesSent++;
+            pacer.frameSent();
+
+            if (preview != null) {
+                preview.accept(base);
+            }
+        }
+    }
+
+    private byte[] encodeLayer(int layer, BufferedImage frame) {
+        try {
+            return encoder.encode(layer, frame);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[ERROR] Error procesando frame (capa " + layer + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return el marcapasos de la transmisión (fps objetivo y medidos)
+     */
+    public FramePacer getPacer() {
+        return pacer;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+}
@@ -0,0 +1,89 @@
+package com.mycompany.chat.video;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de frames de un flujo de video remoto (uno por remitente), junto con
+ * la telemetría de red del flujo ({@link StreamTelemetry}).
+ *
+ * Los contadores se actualizan desde el hilo del socket, el hilo de
+ * decodificación y el EDT, por eso usan LongAdder en lugar de campos simples.
+ */
+public class VideoStreamStats {
+    private final String sender;
+    private final LongAdder received = new LongAdder();
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rendered = new LongAdder();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final StreamTelemetry telemetry;
+
+    public VideoStreamStats(String sender) {
+        this.sender = sender;
+        this.telemetry = new StreamTelemetry(sender);
+    }
+
+    public void recordReceived() {
+        received.increment();
+    }
+
+    public void recordDecoded() {
+        decoded.increment();
+    }
+
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    public void recordDropped(int frames) {
+        if (frames > 0) {
+            dropped.add(frames);
+        }
+    }
+
+    public void recordRendered() {
+        rendered.increment();
+    }
+
+    public void recordDecodeError() {
+        decodeErrors.increment();
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    public long getDecoded() {
+        return decoded.sum();
+    }
+
+    /**
+     * Frames descartados, ya sea antes de decodificar (llegó uno más nuevo)
+     * o después (el EDT no alcanzó a pintarlo antes del siguiente).
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getRendered() {
+        return rendered.sum();
+    }
+
+    public long getDecodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    public StreamTelemetry getTelemetry() {
+        return telemetry;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: recibidos=%d, decodificados=%d, descartados=%d, pintados=%d, errores=%d%n    %s",
+            sender, getReceived(), getDecoded(), getDropped(), getRendered(), getDecodeErrors(), telemetry);
+    }
+}
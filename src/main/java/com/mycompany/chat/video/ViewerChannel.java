@@ -0,0 +1,370 @@
+package com.mycompany.chat.video;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Salida de video del servidor hacia un receptor (lado servidor).
+ *
+ * Los hilos que leen el video de cada remitente solo encolan ({@link #offer}); un hilo
+ * propio escribe en el socket del receptor. Así un receptor lento no frena la subida de
+ * quien le envía video, y el escritor puede medir lo que realmente drena la conexión:
+ * - Drenaje: bytes escritos por segundo.
+ * - Ocupación: fracción del tiempo que el escritor pasa bloqueado en write/flush. Si la
+ *   conexión va sobrada las escrituras caen en el buffer del kernel y es casi 0; si está
+ *   saturada se acerca a 1. La capacidad estimada es drenaje / ocupación.
+ * - Retardo de cola: tiempo entre encolar un frame y empezar a escribirlo.
+ *
+ * Con eso se elige, por remitente, qué capa de simulcast reenviar (0 = máxima calidad):
+ * - Si hay congestión (cola que retiene frames o escritor casi siempre bloqueado), se
+ *   baja a la mejor capa cuyo bitrate entra en la capacidad estimada, repartida entre
+ *   los remitentes activos.
+ * - Si no hay congestión durante un tiempo y la capa superior entra en la capacidad
+ *   estimada, se prueba. Si esa subida provoca congestión enseguida, la espera para
+ *   volver a probar se duplica.
+ * - La capacidad medida en la última congestión queda como techo (se relaja un 25% cada
+ *   30 s sin congestión): con el kernel vacío la ocupación cae a 0 y no sirve para decidir.
+ * - Los cambios de capa solo ocurren en un keyframe de la capa nueva, porque sus deltas
+ *   dependen de frames de esa misma capa. No hay transcodificación.
+ * - Si la cola se llena, el frame se descarta y ese remitente espera el próximo keyframe.
+ */
+public class ViewerChannel implements Runnable {
+    private static final int MAX_QUEUED_PACKETS = 120;
+    private static final long CONGESTION_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(150);
+    private static final long EVALUATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long LAYER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long UPGRADE_HOLD_NANOS = TimeUnit.SECONDS.toNanos(3);
+    private static final long MAX_UPGRADE_HOLD_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double HEADROOM = 0.85;
+    private static final double CONGESTED_BUSY_FRACTION = 0.8;
+    private static final double MIN_BUSY_FRACTION = 0.05; // Por debajo, la capacidad se considera ilimitada
+    private static final double CEILING_GROWTH = 1.25; // Cuánto se relaja el techo tras MAX_UPGRADE_HOLD sin congestión
+
+    private final String viewer;
+    private final DataOutputStream out;
+    private final ArrayBlockingQueue<Outgoing> queue = new ArrayBlockingQueue<>(MAX_QUEUED_PACKETS);
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Métricas del escritor (las escribe solo su hilo)
+    private volatile double drainBytesPerSecond;
+    private volatile double busyFraction;
+    private volatile long queueDelayNanos;
+    private long drainWindowStart;
+    private long drainWindowBytes;
+    private long drainWindowBusyNanos;
+
+    // Capacidad medida la última vez que el enlace estuvo saturado (0 = desconocida).
+    // Con los buffers del kernel vacíos las escrituras vuelven al instante y la ocupación
+    // no refleja el enlace; este techo evita subir de capa a algo que ya no cupo.
+    private volatile double capacityCeiling;
+    private volatile long ceilingUpdatedAt;
+
+    private static class Outgoing {
+        final byte[] senderName;
+        final VideoPacket packet;
+        final long enqueuedAt;
+
+        Outgoing(byte[] senderName, VideoPacket packet, long enqueuedAt) {
+            this.senderName = senderName;
+            this.packet = packet;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Estado de un remitente hacia este receptor. Lo modifica el hilo lector de ese
+     * remitente; las lecturas para estadísticas se sincronizan sobre el objeto.
+     */
+    private static class Subscription {
+        final String sender;
+        final long[] layerLastSeen = new long[SimulcastEncoder.MAX_LAYERS];
+        final long[] layerWindowBytes = new long[SimulcastEncoder.MAX_LAYERS];
+        final double[] layerBytesPerSecond = new double[SimulcastEncoder.MAX_LAYERS];
+        long layerWindowStart;
+        int currentLayer = -1; // Capa que se está reenviando (-1 = ninguna todavía)
+        int targetLayer;
+        boolean waitingKeyframe = true;
+        long lastEvaluation;
+        long lastChange;
+        long lastUpgrade;
+        long upgradeHold = UPGRADE_HOLD_NANOS;
+        long lastSeen;
+        long forwarded;
+        long skipped;
+        long dropped;
+        long switches;
+
+        Subscription(String sender, long now) {
+            this.sender = sender;
+            this.layerWindowStart = now;
+            this.lastChange = now;
+        }
+
+        void observe(int layer, int bytes, long now) {
+            lastSeen = now;
+            layerLastSeen[layer] = now;
+            layerWindowBytes[layer] += bytes;
+            long elapsed = now - layerWindowStart;
+            if (elapsed >= RATE_WINDOW_NANOS) {
+                for (int i = 0; i < layerWindowBytes.length; i++) {
+                    layerBytesPerSecond[i] = layerWindowBytes[i] * 1e9 / elapsed;
+                    layerWindowBytes[i] = 0;
+                }
+                layerWindowStart = now;
+            }
+        }
+
+        boolean isPublished(int layer, long now) {
+            return layerLastSeen[layer] != 0 && now - layerLastSeen[layer] <= LAYER_TIMEOUT_NANOS;
+        }
+    }
+
+    /**
+     * @param viewer nombre del receptor (para el hilo y las estadísticas)
+     * @param out stream del socket de video del receptor
+     */
+    public ViewerChannel(String viewer, DataOutputStream out) {
+        this.viewer = viewer;
+        this.out = out;
+        this.thread = new Thread(this, "video-out-" + viewer);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        drainWindowStart = System.nanoTime();
+        thread.start();
+    }
+
+    /**
+     * Ofrece un frame de un remitente. Nunca bloquea.
+     *
+     * @param sender nombre del remitente
+     * @param senderName nombre del remitente en UTF-8 (cabecera de bajada)
+     * @param packet frame de alguna de las capas del remitente
+     * @return false si el canal está cerrado o el frame se descartó por cola llena
+     */
+    public boolean offer(String sender, byte[] senderName, VideoPacket packet) {
+        if (!running) {
+            return false;
+        }
+        int layer = packet.getLayer();
+        if (layer >= SimulcastEncoder.MAX_LAYERS) {
+            return false;
+        }
+        long now = System.nanoTime();
+        Subscription sub = subscriptions.computeIfAbsent(sender, s -> new Subscription(s, now));
+        synchronized (sub) {
+            sub.observe(layer, packet.getPayload().length, now);
+            if (now - sub.lastEvaluation >= EVALUATE_INTERVAL_NANOS) {
+                sub.lastEvaluation = now;
+                chooseLayer(sub, now);
+            }
+
+            boolean keyframe = VideoPayload.isKeyframe(packet.getPayload());
+            if (layer == sub.targetLayer && layer != sub.currentLayer && keyframe) {
+                // La capa nueva arranca en un keyframe: se cambia sin romper la decodificación
+                if (sub.currentLayer >= 0) {
+                    sub.switches++;
+                }
+                sub.currentLayer = layer;
+                sub.waitingKeyframe = false;
+            }
+            if (layer != sub.currentLayer) {
+                sub.skipped++;
+                return true;
+            }
+            if (sub.waitingKeyframe) {
+                if (!keyframe) {
+                    sub.skipped++;
+                    return true;
+                }
+                sub.waitingKeyframe = false;
+            }
+            if (!queue.offer(new Outgoing(senderName, packet, now))) {
+                sub.dropped++;
+                sub.waitingKeyframe = true;
+                return false;
+            }
+            sub.forwarded++;
+            return true;
+        }
+    }
+
+    private void chooseLayer(Subscription sub, long now) {
+        int target = sub.targetLayer;
+        double busy = busyFraction;
+        boolean congested = queueDelayNanos > CONGESTION_DELAY_NANOS || queue.size() > MAX_QUEUED_PACKETS / 2
+                || busy > CONGESTED_BUSY_FRACTION;
+        double capacity = busy > MIN_BUSY_FRACTION ? drainBytesPerSecond / busy : Double.MAX_VALUE;
+        if (congested && busy > CONGESTED_BUSY_FRACTION) {
+            capacityCeiling = capacity;
+            ceilingUpdatedAt = now;
+        } else if (capacityCeiling > 0 && now - ceilingUpdatedAt >= MAX_UPGRADE_HOLD_NANOS) {
+            capacityCeiling *= CEILING_GROWTH; // Sin congestión hace rato: permitir volver a probar
+            ceilingUpdatedAt = now;
+        }
+        if (capacityCeiling > 0) {
+            capacity = Math.min(capacity, capacityCeiling);
+        }
+        double share = capacity * HEADROOM / Math.max(1, activeSenders(now));
+
+        if (congested) {
+            int chosen = lowestQualityPublished(sub, now);
+            for (int layer = 0; layer < SimulcastEncoder.MAX_LAYERS; layer++) {
+                if (sub.isPublished(layer, now) && sub.layerBytesPerSecond[layer] <= share) {
+                    chosen = layer;
+                    break;
+                }
+            }
+            if (chosen > target) {
+                if (now - sub.lastUpgrade < sub.upgradeHold) {
+                    // La última subida no se sostuvo: esperar más antes de volver a probar
+                    sub.upgradeHold = Math.min(sub.upgradeHold * 2, MAX_UPGRADE_HOLD_NANOS);
+                }
+                target = chosen;
+                sub.lastChange = now;
+            }
+        } else if (target > 0 && now - sub.lastChange >= sub.upgradeHold) {
+            for (int layer = target - 1; layer >= 0; layer--) {
+                if (sub.isPublished(layer, now) && sub.layerBytesPerSecond[layer] <= share) {
+                    target = layer;
+                    sub.lastChange = now;
+                    sub.lastUpgrade = now;
+                    break;
+                }
+            }
+        } else if (now - sub.lastChange >= MAX_UPGRADE_HOLD_NANOS) {
+            sub.upgradeHold = UPGRADE_HOLD_NANOS; // Estable hace rato: volver a la espera normal
+        }
+
+        // Si el remitente dejó de publicar la capa elegida, usar la siguiente disponible
+        if (!sub.isPublished(target, now)) {
+            int fallback = -1;
+            for (int layer = target + 1; layer < SimulcastEncoder.MAX_LAYERS && fallback < 0; layer++) {
+                if (sub.isPublished(layer, now)) {
+                    fallback = layer;
+                }
+            }
+            for (int layer = target - 1; layer >= 0 && fallback < 0; layer--) {
+                if (sub.isPublished(layer, now)) {
+                    fallback = layer;
+                }
+            }
+            if (fallback >= 0) {
+                target = fallback;
+            }
+        }
+        sub.targetLayer = target;
+    }
+
+    private static int lowestQualityPublished(Subscription sub, long now) {
+        for (int layer = SimulcastEncoder.MAX_LAYERS - 1; layer > 0; layer--) {
+            if (sub.isPublished(layer, now)) {
+                return layer;
+            }
+        }
+        return 0;
+    }
+
+    private int activeSenders(long now) {
+        int active = 0;
+        for (Subscription sub : subscriptions.values()) {
+            if (now - sub.lastSeen <= LAYER_TIMEOUT_NANOS) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                Outgoing next = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                long delay = start - next.enqueuedAt;
+                queueDelayNanos += (delay - queueDelayNanos) / 8;
+
+                next.packet.writeDownlink(out, next.senderName);
+                // Si hay más frames esperando se escriben juntos en un solo flush
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+                recordDrained(next.packet.getPayload().length, System.nanoTime() - start);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Salida de video cerrada para " + viewer + ": " + e.getMessage());
+        } finally {
+            running = false;
+            queue.clear();
+        }
+    }
+
+    private void recordDrained(int bytes, long writeNanos) {
+        drainWindowBytes += bytes;
+        drainWindowBusyNanos += writeNanos;
+        long now = System.nanoTime();
+        long elapsed = now - drainWindowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            drainBytesPerSecond = drainWindowBytes * 1e9 / elapsed;
+            busyFraction = Math.min(1.0, (double) drainWindowBusyNanos / elapsed);
+            drainWindowBytes = 0;
+            drainWindowBusyNanos = 0;
+            drainWindowStart = now;
+        }
+    }
+
+    /**
+     * Detiene el escritor; los frames pendientes se descartan.
+     */
+    public void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return una línea por remitente activo con la capa reenviada y el estado de la conexión
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Subscription sub : subscriptions.values()) {
+            synchronized (sub) {
+                if (now - sub.lastSeen > LAYER_TIMEOUT_NANOS) {
+                    continue;
+                }
+                StringBuilder rates = new StringBuilder();
+                for (int layer = 0; layer < SimulcastEncoder.MAX_LAYERS; layer++) {
+                    if (sub.isPublished(layer, now)) {
+                        rates.append(rates.length() > 0 ? "/" : "")
+                             .append(Math.round(sub.layerBytesPerSecond[layer] / 1024));
+                    }
+                }
+                lines.add(String.format("%s -> %s: capa %d (objetivo %d), capas KB/s %s, drenaje %.0f KB/s "
+                        + "(ocupacion %.0f%%), cola %d (%d ms), reenviados %d, omitidos %d, descartados %d, cambios %d",
+                        sub.sender, viewer, sub.currentLayer, sub.targetLayer, rates, drainBytesPerSecond / 1024,
+                        busyFraction * 100, queue.size(), TimeUnit.NANOSECONDS.toMillis(queueDelayNanos),
+                        sub.forwarded, sub.skipped, sub.dropped, sub.switches));
+            }
+        }
+        return lines;
+    }
+}
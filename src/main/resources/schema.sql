@@ -7,6 +7,14 @@ CREATE TABLE IF NOT EXISTS users (
     password VARCHAR(255) NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
+CREATE TABLE IF NOT EXISTS messages (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    sender VARCHAR(100) NOT NULL,
+    recipient VARCHAR(100) NOT NULL,
+    body TEXT NOT NULL,
+    sent_at TIMESTAMP(3) NOT NULL,
+    INDEX idx_messages_conversation (sender, recipient, sent_at)
+);
 -- Username: Franz, Password: franz123
 -- Username: Alexis, Password: alexis123  
 -- Username: Roy, Password: charlie123
@@ -0,0 +1,224 @@
+package com.mycompany.chat.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Pruebas del historial: recuperación tras un corte, validación de cursores y
+ * rotación de segmentos en medio de un lote.
+ */
+class MessageHistoryTest {
+
+    private static final long SEGMENT_BYTES = 1024 * 1024; // El mínimo que acepta el historial
+
+    @TempDir
+    Path directory;
+
+    private MessageHistory history;
+
+    @AfterEach
+    void closeHistory() {
+        if (history != null) {
+            history.close();
+        }
+    }
+
+    @Test
+    void recoversAndTruncatesTornTail() throws Exception {
+        open();
+        long last = append("Franz", "Alexis", "uno", "dos", "tres");
+        history.close();
+        Path segment = directory.resolve(MessageHistory.segmentName(0));
+        long size = Files.size(segment);
+
+        // Registro a medio escribir: la longitud promete más bytes de los que llegaron
+        ByteBuffer torn = ByteBuffer.allocate(12);
+        torn.putInt(100).putInt(0xCAFE).putInt(7).flip();
+        appendBytes(segment, torn);
+
+        open();
+        assertBodies(history.page("Franz", "Alexis", MessageHistory.NO_MESSAGE, 10), "uno", "dos", "tres");
+        assertEquals(last, history.page("Alexis", "Franz", MessageHistory.NO_MESSAGE, 1)
+                .getMessages().get(0).getId());
+        history.close();
+        assertEquals(size, Files.size(segment), "la cola rota se trunca");
+
+        // Lo nuevo se escribe donde terminaba el último registro válido
+        open();
+        append("Alexis", "Franz", "cuatro");
+        history.close();
+        open();
+        assertBodies(history.page("Franz", "Alexis", MessageHistory.NO_MESSAGE, 10),
+                "uno", "dos", "tres", "cuatro");
+    }
+
+    @Test
+    void dropsLastRecordWithBadChecksum() throws Exception {
+        open();
+        append("Franz", "Alexis", "uno", "dos", "tres");
+        history.close();
+        Path segment = directory.resolve(MessageHistory.segmentName(0));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 0xFF)).rewind();
+            channel.write(last, channel.size() - 1);
+        }
+
+        open();
+        assertBodies(history.page("Franz", "Alexis", MessageHistory.NO_MESSAGE, 10), "uno", "dos");
+        append("Franz", "Alexis", "tres otra vez");
+        assertBodies(history.page("Franz", "Alexis", MessageHistory.NO_MESSAGE, 10),
+                "uno", "dos", "tres otra vez");
+    }
+
+    @Test
+    void pagesBackwardsWithCursor() throws Exception {
+        open();
+        append("Franz", "Alexis", "uno", "dos", "tres", "cuatro", "cinco");
+
+        MessageHistory.Page newest = history.page("Franz", "Alexis", MessageHistory.NO_MESSAGE, 2);
+        assertBodies(newest, "cuatro", "cinco");
+        MessageHistory.Page middle = history.page("Alexis", "Franz", newest.getNextCursor(), 2);
+        assertBodies(middle, "dos", "tres");
+        MessageHistory.Page oldest = history.page("Franz", "Alexis", middle.getNextCursor(), 2);
+        assertBodies(oldest, "uno");
+        assertEquals(MessageHistory.NO_MESSAGE, oldest.getNextCursor());
+    }
+
+    @Test
+    void rejectsCursorFromAnotherConversation() throws Exception {
+        open();
+        append("Franz", "Alexis", "para Alexis");
+        long foreign = append("Franz", "Roy", "para Roy");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> history.page("Franz", "Alexis", foreign, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> history.page("Alexis", "Roy", foreign, 10));
+        // El mismo cursor sí vale en su conversación
+        assertBodies(history.page("Roy", "Franz", foreign, 10), "para Roy");
+    }
+
+    @Test
+    void rotatesSegmentInTheMiddleOfABatch() throws Exception {
+        openPaused();
+        // Encolados antes de arrancar el escritor, salen en lotes de 256; 600 mensajes de
+        // 8 KB no entran en un segmento de 1 MB
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        List<String> bodies = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            String body = i + ":" + "x".repeat(8 * 1024);
+            bodies.add(body);
+            futures.add(history.append(i % 2 == 0 ? "Franz" : "Alexis", i % 2 == 0 ? "Alexis" : "Franz", body));
+        }
+        history.start();
+        long[] ids = new long[futures.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = futures.get(i).get(10, TimeUnit.SECONDS);
+        }
+        assertTrue(ids[ids.length - 1] >>> 32 >= 4, "se usaron varios segmentos");
+
+        assertEquals(bodies, readAll("Franz", "Alexis"));
+        history.close();
+        open();
+        assertEquals(bodies, readAll("Alexis", "Franz"));
+    }
+
+    @Test
+    void failedBatchAfterRotationLeavesNoGap() throws Exception {
+        // Segmento activo a medio llenar
+        open();
+        for (int i = 0; i < 50; i++) {
+            append("Franz", "Alexis", i + ":" + "x".repeat(8 * 1024));
+        }
+        history.close();
+
+        // Un lote que rota de segmento y luego falla por un mensaje demasiado grande
+        openPaused();
+        for (int i = 0; i < 100; i++) {
+            history.append("Franz", "Alexis", i + ":" + "x".repeat(8 * 1024));
+        }
+        CompletableFuture<Long> tooBig = history.append("Franz", "Alexis", "x".repeat(2 * 1024 * 1024));
+        history.start();
+        assertThrows(ExecutionException.class, () -> tooBig.get(10, TimeUnit.SECONDS));
+
+        long after = append("Franz", "Alexis", "después");
+        assertEquals(1, after >>> 32);
+        assertEquals(MessageHistory.SEGMENT_HEADER_BYTES, (int) after,
+                "el siguiente lote empieza al principio del segmento nuevo");
+        history.close();
+        open();
+        List<StoredMessage> newest = history.page("Franz", "Alexis", MessageHistory.NO_MESSAGE, 1).getMessages();
+        assertEquals(1, newest.size());
+        assertEquals("después", newest.get(0).getBody());
+        assertEquals(after, newest.get(0).getId());
+    }
+
+    private void open() throws IOException {
+        openPaused();
+        history.start();
+    }
+
+    // Sin arrancar el escritor: lo que se agregue queda encolado hasta start()
+    private void openPaused() throws IOException {
+        history = new MessageHistory(directory, SEGMENT_BYTES, 1024, false);
+    }
+
+    // Agrega los mensajes uno por uno y devuelve el id del último
+    private long append(String sender, String recipient, String... bodies) throws Exception {
+        long id = MessageHistory.NO_MESSAGE;
+        for (String body : bodies) {
+            id = history.append(sender, recipient, body).get(10, TimeUnit.SECONDS);
+        }
+        return id;
+    }
+
+    private List<String> readAll(String userA, String userB) {
+        List<String> bodies = new ArrayList<>();
+        long cursor = MessageHistory.NO_MESSAGE;
+        do {
+            MessageHistory.Page page = history.page(userA, userB, cursor, 50);
+            List<String> older = new ArrayList<>();
+            for (StoredMessage message : page.getMessages()) {
+                older.add(message.getBody());
+            }
+            bodies.addAll(0, older);
+            cursor = page.getNextCursor();
+        } while (cursor != MessageHistory.NO_MESSAGE);
+        return bodies;
+    }
+
+    private static void assertBodies(MessageHistory.Page page, String... expected) {
+        List<String> bodies = new ArrayList<>();
+        for (StoredMessage message : page.getMessages()) {
+            bodies.add(message.getBody());
+        }
+        assertEquals(Arrays.asList(expected), bodies);
+    }
+
+    private static void appendBytes(Path file, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+}